@@ -0,0 +1,29 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.restcontrib.cctray.jersey;
+
+import javax.ws.rs.ext.Provider;
+import jetbrains.buildServer.server.rest.jersey.AbstractSingletonBeanProvider;
+import jetbrains.buildServer.server.restcontrib.cctray.request.CCTraySnapshotCache;
+
+@Provider
+public class CCTraySnapshotCacheProvider extends AbstractSingletonBeanProvider<CCTraySnapshotCache> {
+  public CCTraySnapshotCacheProvider(final CCTraySnapshotCache object) {
+    super(object, CCTraySnapshotCache.class);
+  }
+}
@@ -72,6 +72,15 @@ public class Project {
     private SBuildType myBuildType;
     protected ServiceLocator myServiceLocator;
 
+    private boolean myPrecomputed;
+    private String myName;
+    private String myActivity;
+    private String myLastBuildStatus;
+    private String myLastBuildLabel;
+    private String myLastBuildTime;
+    private String myNextBuildTime;
+    private String myWebUrl;
+
     public Project() {
     }
 
@@ -80,6 +89,22 @@ public class Project {
         myBuildType = buildType;
     }
 
+    /**
+     * @return a copy with all the values calculated at once, so that it no longer depends on the current build configuration state and can be cached
+     */
+    public Project getSnapshot() {
+        final Project result = new Project();
+        result.myName = getName();
+        result.myActivity = getActivity();
+        result.myLastBuildStatus = getLastBuildStatus();
+        result.myLastBuildLabel = getLastBuildLabel();
+        result.myLastBuildTime = getLastBuildTime();
+        result.myNextBuildTime = getNextBuildTime();
+        result.myWebUrl = getWebUrl();
+        result.myPrecomputed = true;
+        return result;
+    }
+
     /**
      * Gets the value of the name property.
      *
@@ -90,6 +115,7 @@ public class Project {
     @XmlJavaTypeAdapter(CollapsedStringAdapter.class)
     @XmlSchemaType(name = "NMTOKEN")
     public String getName() {
+        if (myPrecomputed) return myName;
         return myBuildType.getFullName();
     }
 
@@ -102,6 +128,7 @@ public class Project {
     @XmlAttribute(name = "activity", required = true)
     @XmlJavaTypeAdapter(CollapsedStringAdapter.class)
     public String getActivity() {
+        if (myPrecomputed) return myActivity;
         final List<SRunningBuild> runningBuilds = myBuildType.getRunningBuilds();
         if (runningBuilds.size() > 0) {
             return "Building";
@@ -130,6 +157,7 @@ public class Project {
     @XmlAttribute(name = "lastBuildStatus", required = true)
     @XmlJavaTypeAdapter(CollapsedStringAdapter.class)
     public String getLastBuildStatus() {
+        if (myPrecomputed) return myLastBuildStatus;
         if (myBuildType.getStatus().isFailed()) {
             return "Failure";
         }
@@ -149,6 +177,7 @@ public class Project {
     @XmlJavaTypeAdapter(CollapsedStringAdapter.class)
     @XmlSchemaType(name = "NMTOKEN")
     public String getLastBuildLabel() {
+        if (myPrecomputed) return myLastBuildLabel;
         final SFinishedBuild lastBuild = myBuildType.getLastChangesFinished();
         if (lastBuild == null) {
             // is this OK?
@@ -166,6 +195,7 @@ public class Project {
     @XmlAttribute(name = "lastBuildTime", required = true)
     @XmlSchemaType(name = "dateTime")
     public String getLastBuildTime() {
+        if (myPrecomputed) return myLastBuildTime;
         final SFinishedBuild lastBuild = myBuildType.getLastChangesFinished();
         if (lastBuild == null) {
             // is this OK?
@@ -183,6 +213,7 @@ public class Project {
     @XmlAttribute(name = "nextBuildTime")
     @XmlSchemaType(name = "dateTime")
     public String getNextBuildTime() {
+        if (myPrecomputed) return myNextBuildTime;
         final List<SQueuedBuild> queuedBuilds = myBuildType.getQueuedBuilds(null);
         for (SQueuedBuild build : queuedBuilds) {
             if (!build.isPersonal()) {
@@ -223,6 +254,7 @@ public class Project {
      */
     @XmlAttribute(name = "webUrl", required = true)
     public String getWebUrl() {
+        if (myPrecomputed) return myWebUrl;
         final WebLinks webLinks = myServiceLocator.getSingletonService(WebLinks.class);
         return webLinks.getConfigurationHomePageUrl(myBuildType);
     }
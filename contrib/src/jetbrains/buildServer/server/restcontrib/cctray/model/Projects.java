@@ -24,6 +24,8 @@
 
 package jetbrains.buildServer.server.restcontrib.cctray.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -91,6 +93,7 @@ public class Projects {
 
     private List<SBuildType> myBuildTypes;
     protected ServiceLocator myServiceLocator;
+    private List<Project> myProjects;
 
     public Projects() {
     }
@@ -100,6 +103,19 @@ public class Projects {
         myBuildTypes = buildTypes;
     }
 
+    /**
+     * @return a copy with all the projects' values calculated at once, see {@link Project#getSnapshot()}
+     */
+    public Projects getSnapshot() {
+        final List<Project> projects = new ArrayList<Project>();
+        for (Project project : getProject()) {
+            projects.add(project.getSnapshot());
+        }
+        final Projects result = new Projects();
+        result.myProjects = Collections.unmodifiableList(projects);
+        return result;
+    }
+
     /**
      * Gets the value of the project property.
      * 
@@ -124,6 +140,9 @@ public class Projects {
      */
     @XmlElement(name = "Project", required = true)
     public List<Project> getProject() {
+        if (myProjects != null) {
+            return myProjects;
+        }
         //todo: check when empty projects collection
         return CollectionsUtil.convertCollection(myBuildTypes, new Converter<Project, SBuildType>() {
             public Project createFrom(@NotNull SBuildType source) {
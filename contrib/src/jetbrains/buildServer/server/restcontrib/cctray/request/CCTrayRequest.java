@@ -17,18 +17,20 @@
 package jetbrains.buildServer.server.restcontrib.cctray.request;
 
 import com.sun.jersey.spi.resource.Singleton;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
-import javax.ws.rs.core.Context;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.*;
 import jetbrains.buildServer.ServiceLocator;
 import jetbrains.buildServer.server.rest.data.BuildTypeFinder;
 import jetbrains.buildServer.server.rest.data.Locator;
+import jetbrains.buildServer.server.rest.data.PermissionChecker;
 import jetbrains.buildServer.server.rest.request.Constants;
 import jetbrains.buildServer.server.restcontrib.cctray.model.Projects;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.EncryptUtil;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -40,19 +42,49 @@ import org.jetbrains.annotations.NotNull;
 public class CCTrayRequest {
   @Context @NotNull private ServiceLocator myServiceLocator;
   @Context @NotNull private BuildTypeFinder myBuildTypeFinder;
+  @Context @NotNull private PermissionChecker myPermissionChecker;
+  @Context @NotNull private CCTraySnapshotCache mySnapshotCache;
 
   @GET
   @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-  public Projects serveProjectsConvenienceCopy(@QueryParam("locator") String buildTypeLocator) {
-    return serveProjects(buildTypeLocator);
+  public Response serveProjectsConvenienceCopy(@QueryParam("locator") String buildTypeLocator,
+                                               @Context Request request,
+                                               @Context HttpServletRequest servletRequest) {
+    return serveProjects(buildTypeLocator, request, servletRequest);
   }
 
+  /**
+   * The response is served from a snapshot shared between the clients of the same user and is validated with ETag,
+   * so that a client polling with "If-None-Match" gets "304 Not Modified" until a build starts/finishes or the configuration changes.
+   */
   @GET
   @Path("/projects.xml")
   @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
-  public Projects serveProjects(@QueryParam("locator") String buildTypeLocator) {
+  public Response serveProjects(@QueryParam("locator") String buildTypeLocator,
+                                @Context Request request,
+                                @Context HttpServletRequest servletRequest) {
     String actualLocator = Locator.setDimension(buildTypeLocator, BuildTypeFinder.TEMPLATE_FLAG_DIMENSION_NAME, "false");
     actualLocator = Locator.setDimensionIfNotPresent(actualLocator, BuildTypeFinder.PAUSED, String.valueOf(TeamCityProperties.getBoolean("rest.cctray.includePausedBuildTypes")));
-    return new Projects(myServiceLocator, myBuildTypeFinder.getBuildTypes(null, actualLocator));
+    final String finalLocator = actualLocator;
+    final CCTraySnapshotCache.Snapshot snapshot = mySnapshotCache.getSnapshot(String.valueOf(finalLocator), myPermissionChecker.getCurrent(),
+                                                                              () -> new Projects(myServiceLocator, myBuildTypeFinder.getBuildTypes(null, finalLocator)));
+
+    //XML and JSON representations of the same data should have different tags
+    final EntityTag eTag = new EntityTag(EncryptUtil.md5(snapshot.getDigest() + "\n" + servletRequest.getHeader(HttpHeaders.ACCEPT)));
+    final Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+    if (notModified != null) {
+      return notModified.header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+    }
+    return Response.ok(snapshot.getProjects()).tag(eTag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+  }
+
+  @NotNull
+  public static CCTrayRequest createForTests(@NotNull final ServiceLocator serviceLocator, @NotNull final CCTraySnapshotCache snapshotCache) {
+    final CCTrayRequest result = new CCTrayRequest();
+    result.myServiceLocator = serviceLocator;
+    result.myBuildTypeFinder = serviceLocator.getSingletonService(BuildTypeFinder.class);
+    result.myPermissionChecker = serviceLocator.getSingletonService(PermissionChecker.class);
+    result.mySnapshotCache = snapshotCache;
+    return result;
   }
-}
\ No newline at end of file
+}
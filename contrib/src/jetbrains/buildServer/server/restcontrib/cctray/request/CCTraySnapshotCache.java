@@ -0,0 +1,198 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.restcontrib.cctray.request;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import jetbrains.buildServer.server.restcontrib.cctray.model.Project;
+import jetbrains.buildServer.server.restcontrib.cctray.model.Projects;
+import jetbrains.buildServer.serverSide.*;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
+import jetbrains.buildServer.serverSide.auth.Permissions;
+import jetbrains.buildServer.users.User;
+import jetbrains.buildServer.util.EncryptUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches CCTray responses which are polled by many clients with the same parameters.
+ * A snapshot is stored per locator, user and the user's permissions (as the set of visible build configurations depends on them),
+ * so a snapshot calculated before a role change is not served after it.
+ * All the snapshots are invalidated on any build start/finish, build queue change or configuration change,
+ * and are also expired after a time as the queued builds estimates and pending changes are not tracked via the listener.
+ */
+public class CCTraySnapshotCache extends BuildServerAdapter {
+  private static final String PROPERTIES_PREFIX = "rest.cctray.snapshotCache";
+
+  private final ConcurrentHashMap<String, Snapshot> mySnapshots = new ConcurrentHashMap<>();
+  /**
+   * Incremented on each invalidation, so that a snapshot calculated concurrently with an invalidation is not used for the later requests
+   */
+  private final AtomicLong myVersion = new AtomicLong();
+
+  public CCTraySnapshotCache(@NotNull final SBuildServer server) {
+    server.addListener(this);
+  }
+
+  /**
+   * @param calculator calculates the data when there is no actual snapshot, is called in the current request's security context
+   */
+  @NotNull
+  public Snapshot getSnapshot(@NotNull final String locator, @NotNull final AuthorityHolder authorityHolder, @NotNull final Supplier<Projects> calculator) {
+    final User user = authorityHolder.getAssociatedUser();
+    if (user == null || !TeamCityProperties.getBooleanOrTrue(PROPERTIES_PREFIX + ".enabled")) {
+      return new Snapshot(calculator.get().getSnapshot(), myVersion.get(), System.currentTimeMillis());
+    }
+
+    final String key = user.getId() + ":" + getPermissionsDigest(authorityHolder) + ":" + locator;
+    final long now = System.currentTimeMillis();
+    final long version = myVersion.get();
+    final Snapshot existing = mySnapshots.get(key);
+    if (existing != null && existing.myVersion == version && now - existing.myCreated <= getMaxAge()) {
+      return existing;
+    }
+
+    final Snapshot result = new Snapshot(calculator.get().getSnapshot(), version, now);
+    if (mySnapshots.size() >= TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".maxEntries", 1000)) {
+      mySnapshots.clear();
+    }
+    mySnapshots.put(key, result);
+    return result;
+  }
+
+  public int getSize() {
+    return mySnapshots.size();
+  }
+
+  public void invalidateAll() {
+    myVersion.incrementAndGet();
+    mySnapshots.clear();
+  }
+
+  /**
+   * @return a hash of the global and per-project permissions of the user, changes when the user's roles or the roles' permissions change
+   */
+  @NotNull
+  static String getPermissionsDigest(@NotNull final AuthorityHolder authorityHolder) {
+    final StringBuilder result = new StringBuilder();
+    result.append(new TreeSet<>(authorityHolder.getGlobalPermissions().toList()));
+    for (Map.Entry<String, Permissions> entry : new TreeMap<>(authorityHolder.getProjectsPermissions()).entrySet()) {
+      result.append('|').append(entry.getKey()).append(new TreeSet<>(entry.getValue().toList()));
+    }
+    return EncryptUtil.md5(result.toString());
+  }
+
+  private static long getMaxAge() {
+    return TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".maxAgeSeconds", 30) * 1000L;
+  }
+
+  @Override
+  public void buildStarted(@NotNull final SRunningBuild build) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildFinished(@NotNull final SRunningBuild build) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildInterrupted(@NotNull final SRunningBuild build) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildTypeAddedToQueue(@NotNull final SQueuedBuild queuedBuild) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildRemovedFromQueue(@NotNull final SQueuedBuild queued, final User user, final String comment) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildTypeActiveStatusChanged(@NotNull final SBuildType buildType) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildTypeRegistered(@NotNull final SBuildType buildType) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildTypeUnregistered(@NotNull final SBuildType buildType) {
+    invalidateAll();
+  }
+
+  @Override
+  public void buildTypePersisted(@NotNull final SBuildType buildType) {
+    invalidateAll();
+  }
+
+  @Override
+  public void projectPersisted(@NotNull final String projectId) {
+    invalidateAll();
+  }
+
+  @Override
+  public void serverConfigurationReloaded() {
+    invalidateAll();
+  }
+
+  public static class Snapshot {
+    @NotNull private final Projects myProjects;
+    @NotNull private final String myDigest;
+    private final long myVersion;
+    private final long myCreated;
+
+    private Snapshot(@NotNull final Projects projects, final long version, final long created) {
+      myProjects = projects;
+      myVersion = version;
+      myCreated = created;
+      final StringBuilder state = new StringBuilder();
+      for (Project project : projects.getProject()) {
+        state.append(project.getName()).append('|').append(project.getActivity()).append('|').append(project.getLastBuildStatus()).append('|')
+             .append(project.getLastBuildLabel()).append('|').append(project.getLastBuildTime()).append('|').append(project.getNextBuildTime()).append('|')
+             .append(project.getWebUrl()).append('\n');
+      }
+      myDigest = EncryptUtil.md5(state.toString());
+    }
+
+    /**
+     * @return the data with all the values precomputed, safe to be serialized concurrently
+     */
+    @NotNull
+    public Projects getProjects() {
+      return myProjects;
+    }
+
+    /**
+     * @return a hash of the data which does not depend on the snapshot creation time, so that the same data produces the same ETag
+     */
+    @NotNull
+    public String getDigest() {
+      return myDigest;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.restcontrib.cctray.request;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.core.*;
+import jetbrains.buildServer.controllers.fakes.FakeHttpServletRequest;
+import jetbrains.buildServer.server.rest.data.BaseFinderTest;
+import jetbrains.buildServer.server.restcontrib.cctray.model.Projects;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.serverSide.auth.RoleScope;
+import jetbrains.buildServer.serverSide.impl.ProjectEx;
+import jetbrains.buildServer.users.SUser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CCTraySnapshotCacheTest extends BaseFinderTest<SBuildType> {
+  private CCTraySnapshotCache myCache;
+  private CCTrayRequest myRequest;
+  private ProjectEx myProject1;
+  private ProjectEx myProject2;
+  private SBuildType myBuildType1;
+  private SUser myUser;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    myCache = new CCTraySnapshotCache(myServer);
+    myRequest = CCTrayRequest.createForTests(myFixture, myCache);
+    myProject1 = createProject("project1", "project1");
+    myProject2 = createProject("project2", "project2");
+    myBuildType1 = myProject1.createBuildType("buildType1", "buildType1");
+    myProject2.createBuildType("buildType2", "buildType2");
+    myUser = createUser("user1");
+    myUser.addRole(RoleScope.projectScope(myProject1.getProjectId()), getProjectViewerRole());
+  }
+
+  @Test
+  public void testInvalidation() throws Throwable {
+    final AtomicInteger calculations = new AtomicInteger();
+    myFixture.getSecurityContext().runAs(myUser, () -> {
+      final CCTraySnapshotCache.Snapshot snapshot = getSnapshot(calculations);
+      assertSame(snapshot, getSnapshot(calculations));
+      assertEquals(1, calculations.get());
+      assertEquals(1, myCache.getSize());
+
+      build().in(myBuildType1).finish();
+      final CCTraySnapshotCache.Snapshot afterBuild = getSnapshot(calculations);
+      assertEquals(2, calculations.get());
+      assertFalse(snapshot.getDigest().equals(afterBuild.getDigest()));
+      assertSame(afterBuild, getSnapshot(calculations));
+
+      myCache.invalidateAll();
+      assertEquals(0, myCache.getSize());
+      final CCTraySnapshotCache.Snapshot afterInvalidation = getSnapshot(calculations);
+      assertEquals(3, calculations.get());
+      assertEquals("the same data produces the same digest", afterBuild.getDigest(), afterInvalidation.getDigest());
+
+      setInternalProperty("rest.cctray.snapshotCache.enabled", "false");
+      getSnapshot(calculations);
+      getSnapshot(calculations);
+      assertEquals(5, calculations.get());
+    });
+  }
+
+  @Test
+  public void testRoleChange() throws Throwable {
+    myFixture.getSecurityContext().runAs(myUser, () -> {
+      assertEquals(1, getProjects(serveProjects(MediaType.APPLICATION_XML, null)).getProject().size());
+
+      myUser.addRole(RoleScope.projectScope(myProject2.getProjectId()), getProjectViewerRole());
+      assertEquals("snapshot calculated with other permissions is not used", 2, getProjects(serveProjects(MediaType.APPLICATION_XML, null)).getProject().size());
+    });
+
+    final SUser user2 = createUser("user2");
+    user2.addRole(RoleScope.projectScope(myProject2.getProjectId()), getProjectViewerRole());
+    myFixture.getSecurityContext().runAs(user2, () -> {
+      assertEquals(1, getProjects(serveProjects(MediaType.APPLICATION_XML, null)).getProject().size());
+    });
+  }
+
+  @Test
+  public void testETag() throws Throwable {
+    myFixture.getSecurityContext().runAs(myUser, () -> {
+      final Response response = serveProjects(MediaType.APPLICATION_XML, null);
+      assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+      assertEquals(HttpHeaders.ACCEPT, response.getMetadata().getFirst(HttpHeaders.VARY));
+      final EntityTag eTag = getETag(response);
+      assertNotNull(eTag);
+      assertFalse(eTag.isWeak());
+
+      final Response notModified = serveProjects(MediaType.APPLICATION_XML, eTag);
+      assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), notModified.getStatus());
+      assertEquals(HttpHeaders.ACCEPT, notModified.getMetadata().getFirst(HttpHeaders.VARY));
+      assertNull(notModified.getEntity());
+
+      final Response json = serveProjects(MediaType.APPLICATION_JSON, eTag);
+      assertEquals("XML and JSON representations have different tags", Response.Status.OK.getStatusCode(), json.getStatus());
+      assertFalse(eTag.equals(getETag(json)));
+
+      myCache.invalidateAll();
+      assertEquals("the same data has the same tag after invalidation", Response.Status.NOT_MODIFIED.getStatusCode(), serveProjects(MediaType.APPLICATION_XML, eTag).getStatus());
+
+      build().in(myBuildType1).finish();
+      final Response changed = serveProjects(MediaType.APPLICATION_XML, eTag);
+      assertEquals(Response.Status.OK.getStatusCode(), changed.getStatus());
+      assertFalse(eTag.equals(getETag(changed)));
+    });
+  }
+
+  @NotNull
+  private CCTraySnapshotCache.Snapshot getSnapshot(@NotNull final AtomicInteger calculations) {
+    return myCache.getSnapshot("locator", myFixture.getSecurityContext().getAuthorityHolder(), () -> {
+      calculations.incrementAndGet();
+      return new Projects(myFixture, myBuildTypeFinder.getBuildTypes(null, null));
+    });
+  }
+
+  @NotNull
+  private Response serveProjects(@NotNull final String accept, @Nullable final EntityTag ifNoneMatch) {
+    final FakeHttpServletRequest servletRequest = new FakeHttpServletRequest();
+    servletRequest.addHeader(HttpHeaders.ACCEPT, accept);
+    return myRequest.serveProjects(null, new IfNoneMatchRequest(ifNoneMatch), servletRequest);
+  }
+
+  @NotNull
+  private static Projects getProjects(@NotNull final Response response) {
+    return (Projects)response.getEntity();
+  }
+
+  @Nullable
+  private static EntityTag getETag(@NotNull final Response response) {
+    return (EntityTag)response.getMetadata().getFirst(HttpHeaders.ETAG);
+  }
+
+  /**
+   * Evaluates "If-None-Match" precondition only, as the resource does
+   */
+  private static class IfNoneMatchRequest implements Request {
+    @Nullable private final EntityTag myIfNoneMatch;
+
+    IfNoneMatchRequest(@Nullable final EntityTag ifNoneMatch) {
+      myIfNoneMatch = ifNoneMatch;
+    }
+
+    public String getMethod() {
+      return "GET";
+    }
+
+    public Variant selectVariant(final List<Variant> variants) {
+      return null;
+    }
+
+    public Response.ResponseBuilder evaluatePreconditions(final EntityTag eTag) {
+      return eTag.equals(myIfNoneMatch) ? Response.notModified(eTag) : null;
+    }
+
+    public Response.ResponseBuilder evaluatePreconditions(final Date lastModified) {
+      return null;
+    }
+
+    public Response.ResponseBuilder evaluatePreconditions(final Date lastModified, final EntityTag eTag) {
+      return evaluatePreconditions(eTag);
+    }
+
+    public Response.ResponseBuilder evaluatePreconditions() {
+      return null;
+    }
+  }
+}
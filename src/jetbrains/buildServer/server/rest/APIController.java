@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
@@ -45,9 +46,11 @@ import jetbrains.buildServer.plugins.PluginManager;
 import jetbrains.buildServer.plugins.bean.PluginInfo;
 import jetbrains.buildServer.plugins.bean.ServerPluginInfo;
 import jetbrains.buildServer.server.rest.data.RestContext;
+import jetbrains.buildServer.server.rest.jersey.EntityValidatorsFilter;
 import jetbrains.buildServer.server.rest.jersey.ExceptionMapperBase;
 import jetbrains.buildServer.server.rest.jersey.ExtensionsAwareResourceConfig;
 import jetbrains.buildServer.server.rest.jersey.JerseyWebComponent;
+import jetbrains.buildServer.server.rest.jersey.MetricsResourceFilterFactory;
 import jetbrains.buildServer.server.rest.jersey.WadlGenerator;
 import jetbrains.buildServer.server.rest.request.BuildRequest;
 import jetbrains.buildServer.server.rest.request.Constants;
@@ -59,6 +62,7 @@ import jetbrains.buildServer.serverSide.BuildServerAdapter;
 import jetbrains.buildServer.serverSide.SBuildServer;
 import jetbrains.buildServer.serverSide.SecurityContextEx;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
 import jetbrains.buildServer.util.*;
 import jetbrains.buildServer.web.CorsOrigins;
 import jetbrains.buildServer.web.impl.RestApiFacade;
@@ -107,6 +111,11 @@ public class APIController extends BaseController implements ServletContextAware
 
   private final JerseyWebComponent myWebComponent;
   private final AtomicBoolean myWebComponentInitialized = new AtomicBoolean(false);
+  private final long myCreationTime = System.nanoTime();
+  /**
+   * Durations of the Jersey initialization phases in milliseconds, by phase name in the order of registration
+   */
+  private final Map<String, String> myStartupStatistics = Collections.synchronizedMap(new LinkedHashMap<String, String>());
   private final ConfigurableApplicationContext myConfigurableApplicationContext;
   private final SecurityContextEx mySecurityContext;
   private final WebControllerManager myWebControllerManager;
@@ -114,6 +123,8 @@ public class APIController extends BaseController implements ServletContextAware
   private final AuthorizationInterceptor myAuthorizationInterceptor;
   @NotNull private final HttpAuthenticationManager myAuthManager;
   @NotNull private final PluginManager myPluginManager;
+  @NotNull private final FailedAttemptsThrottler myAuthTokenThrottler;
+  @NotNull private final AsyncRequestExecutor myAsyncRequestExecutor;
 
   private ClassLoader myClassloader;
   private String myAuthToken;
@@ -133,7 +144,9 @@ public class APIController extends BaseController implements ServletContextAware
                        @NotNull final JerseyWebComponent jerseyWebComponent,
                        final AuthorizationInterceptor authorizationInterceptor,
                        @NotNull final HttpAuthenticationManager authManager,
-                       @NotNull final PluginManager pluginManager) {
+                       @NotNull final PluginManager pluginManager,
+                       @NotNull final FailedAttemptsThrottler authTokenThrottler,
+                       @NotNull final AsyncRequestExecutor asyncRequestExecutor) {
     super(server);
     LOG = Logger.getInstance(APIController.class.getName() + "/" + pluginDescriptor.getPluginName());
     myWebControllerManager = webControllerManager;
@@ -142,6 +155,8 @@ public class APIController extends BaseController implements ServletContextAware
     myAuthorizationInterceptor = authorizationInterceptor;
     myPluginManager = pluginManager;
     myAuthManager = authManager;
+    myAuthTokenThrottler = authTokenThrottler;
+    myAsyncRequestExecutor = asyncRequestExecutor;
     setSupportedMethods(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.POST, HttpMethod.PUT, HttpMethod.OPTIONS, HttpMethod.DELETE);
 
     myConfigurableApplicationContext = configurableApplicationContext;
@@ -217,17 +232,26 @@ public class APIController extends BaseController implements ServletContextAware
             // workaround for http://jetbrains.net/tracker/issue2/TW-7656
             doUnderContextClassLoader(myClassloader, new FuncThrow<Void, Throwable>() {
               public Void apply() throws Throwable {
+                final long start = System.nanoTime();
                 final Set<ConfigurableApplicationContext> contexts = new HashSet<ConfigurableApplicationContext>();
                 contexts.add(myConfigurableApplicationContext);
                 for (RESTControllerExtension extension : getExtensions()) {
                   contexts.add(extension.getContext());
                 }
                 myWebComponent.setContexts(contexts);
+                final long contextsSet = System.nanoTime();
+                registerStartupPhase("contexts", contextsSet - start);
                 // ExtensionsAwareResourceConfig not initialized yet. We should wait for all extensions to load first.
                 // Now it's time to initialize and scan for extensions.
                 final ExtensionsAwareResourceConfig config = getApplicationContext().getBean(ExtensionsAwareResourceConfig.class);
                 config.onReload();
+                final long resourcesFound = System.nanoTime();
+                registerStartupPhase("resourceDiscovery", resourcesFound - contextsSet);
                 myWebComponent.init(createJerseyConfig());
+                final long finish = System.nanoTime();
+                registerStartupPhase("webComponentInit", finish - resourcesFound);
+                registerStartupPhase("total", finish - start);
+                registerStartupPhase("sinceControllerCreation", finish - myCreationTime);
                 return null;
               }
             });
@@ -362,6 +386,8 @@ public class APIController extends BaseController implements ServletContextAware
         initParameters.put(ResourceConfig.PROPERTY_WADL_GENERATOR_CONFIG, WadlGenerator.class.getCanonicalName());
         initParameters.put(JSONConfiguration.FEATURE_POJO_MAPPING, "true");
         initParameters.put(WebComponent.RESOURCE_CONFIG_CLASS, ExtensionsAwareResourceConfig.class.getCanonicalName());
+        initParameters.put(ResourceConfig.PROPERTY_RESOURCE_FILTER_FACTORIES, MetricsResourceFilterFactory.class.getCanonicalName());
+        initParameters.put(ResourceConfig.PROPERTY_CONTAINER_RESPONSE_FILTERS, EntityValidatorsFilter.class.getCanonicalName());
         if (TeamCityProperties.getBoolean(APIController.REST_RESPONSE_PRETTYFORMAT)) {
           initParameters.put(FeaturesAndProperties.FEATURE_FORMATTED, "true");
         }
@@ -428,12 +454,18 @@ public class APIController extends BaseController implements ServletContextAware
     if (TeamCityProperties.getBoolean("rest.use.authToken")) {
       String authToken = request.getParameter("authToken");
       if (StringUtil.isNotEmpty(authToken) && StringUtil.isNotEmpty(getAuthToken())) {
+        //to prevent brute-forcing, reject requests from the addresses with too many wrong attempts
+        final String clientAddress = WebUtil.getRemoteAddress(request);
+        final long retryDelay = myAuthTokenThrottler.getRetryDelay(clientAddress);
+        if (retryDelay > 0) {
+          response.setHeader("Retry-After", String.valueOf((retryDelay + 999) / 1000));
+          reportRestErrorResponse(response, FailedAttemptsThrottler.SC_TOO_MANY_REQUESTS, null, "Too many wrong authToken attempts, retry later", Level.INFO, request);
+          return null;
+        }
         if (authToken.equals(getAuthToken())) {
           runAsSystem = true;
         } else {
-          synchronized (this) {
-            Thread.sleep(10000); //to prevent brute-forcing
-          }
+          myAuthTokenThrottler.registerFailedAttempt(clientAddress);
           reportRestErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, null, "Wrong authToken specified",
                                   Level.INFO, request);
           return null;
@@ -442,6 +474,7 @@ public class APIController extends BaseController implements ServletContextAware
     }
 
     boolean errorEncountered = false;
+    boolean processedAsync = false;
     final boolean runAsSystemActual = runAsSystem;
     try {
 
@@ -466,45 +499,90 @@ public class APIController extends BaseController implements ServletContextAware
         }
       }
 
-      patchThread(requestDump, internalRequest, () -> {
-        // workaround for http://jetbrains.net/tracker/issue2/TW-7656
-        doUnderContextClassLoader(getClass().getClassLoader(), new FuncThrow<Void, Throwable>() {
-          public Void apply() throws Throwable {
-            return new RestContext(name -> request.getAttribute(CONTEXT_REQUEST_ARGUMENTS_PREFIX + name))
-              .run(() -> {
-              // patching request
-              final HttpServletRequest actualRequest =
-                new RequestWrapper(patchRequest(request, "Accept", "overrideAccept"), myRequestPathTransformInfo);
-
-              if (runAsSystemActual) {
-                if (shouldLogToDebug && LOG.isDebugEnabled()) LOG.debug("Executing request with system security level");
-                mySecurityContext.runAsSystem(new SecurityContextEx.RunAsAction() {
-                  public void run() throws Throwable {
-                    myWebComponent.doFilter(actualRequest, response, null);
-                  }
-                });
-              } else {
-                myWebComponent.doFilter(actualRequest, response, null);
-              }
-              return null;
+      final String asyncEndpoint = myAsyncRequestExecutor.getEndpoint(request);
+      if (asyncEndpoint != null) {
+        final AuthorityHolder authorityHolder = mySecurityContext.getAuthorityHolder();
+        processedAsync = myAsyncRequestExecutor.submit(request, asyncEndpoint, () -> {
+          boolean asyncErrorEncountered = false;
+          try {
+            mySecurityContext.runAs(authorityHolder, () -> {
+              processRequest(request, response, requestDump, internalRequest, shouldLogToDebug, runAsSystemActual);
             });
+          } catch (Throwable throwable) {
+            asyncErrorEncountered = true;
+            processException(request, response, throwable);
+          } finally {
+            logRequestFinished(request, response, requestStart, requestDump, asyncErrorEncountered);
           }
         });
+        if (!processedAsync) {
+          response.setHeader("Retry-After", String.valueOf(myAsyncRequestExecutor.getRetryAfterSeconds()));
+          reportRestErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, null, "Too many requests are being processed for this URL, retry later", Level.INFO,
+                                  request);
+        }
         return null;
-      });
+      }
+
+      processRequest(request, response, requestDump, internalRequest, shouldLogToDebug, runAsSystemActual);
     } catch (Throwable throwable) {
       errorEncountered = true;
       processException(request, response, throwable);
     } finally{
-      if (shouldLogToDebug && LOG.isDebugEnabled()) {
-        LOG.debug("REST API" + (internalRequest ? " internal" : "") + " request processing finished in " +
-                  TimePrinter.createMillisecondsFormatter().formatTime(requestStart.elapsedMillis()) +
-                  (errorEncountered ? " with errors, original " : ", ") + "status code: " + getStatus(response) + ", request: " + requestDump.get());
+      if (!processedAsync) {
+        logRequestFinished(request, response, requestStart, requestDump, errorEncountered);
       }
     }
     return null;
   }
 
+  private void processRequest(@NotNull final HttpServletRequest request, @NotNull final HttpServletResponse response, @NotNull final CachingValue<String> requestDump,
+                              final boolean internalRequest, final boolean shouldLogToDebug, final boolean runAsSystem) throws Throwable {
+    patchThread(requestDump, internalRequest, () -> {
+      // workaround for http://jetbrains.net/tracker/issue2/TW-7656
+      doUnderContextClassLoader(getClass().getClassLoader(), new FuncThrow<Void, Throwable>() {
+        public Void apply() throws Throwable {
+          final boolean readOnlyRequest = HttpMethod.GET.equals(request.getMethod()) || HttpMethod.HEAD.equals(request.getMethod());
+          final RestContext restContext = new RestContext(name -> request.getAttribute(CONTEXT_REQUEST_ARGUMENTS_PREFIX + name), readOnlyRequest);
+          try {
+            return restContext.run(() -> {
+            // patching request
+            final HttpServletRequest actualRequest =
+              new RequestWrapper(patchRequest(request, "Accept", "overrideAccept"), myRequestPathTransformInfo);
+
+            if (runAsSystem) {
+              if (shouldLogToDebug && LOG.isDebugEnabled()) LOG.debug("Executing request with system security level");
+              mySecurityContext.runAsSystem(new SecurityContextEx.RunAsAction() {
+                public void run() throws Throwable {
+                  myWebComponent.doFilter(actualRequest, response, null);
+                }
+              });
+            } else {
+              myWebComponent.doFilter(actualRequest, response, null);
+            }
+            return null;
+            });
+          } finally {
+            restContext.registerResourceMethodMetrics();
+            if (shouldLogToDebug && LOG.isDebugEnabled()) {
+              final String cacheStatistics = restContext.getFinderResultsCacheStatistics();
+              if (cacheStatistics != null) LOG.debug("REST API request " + cacheStatistics + ", request: " + requestDump.get());
+            }
+          }
+        }
+      });
+      return null;
+    });
+  }
+
+  private void logRequestFinished(@NotNull final HttpServletRequest request, @NotNull final HttpServletResponse response, @NotNull final Stopwatch requestStart,
+                                  @NotNull final CachingValue<String> requestDump, final boolean errorEncountered) {
+    if (shouldLogToDebug(request) && LOG.isDebugEnabled()) {
+      LOG.debug("REST API" + (RestApiFacade.isInternal(request) ? " internal" : "") + " request processing finished in " +
+                TimePrinter.createMillisecondsFormatter().formatTime(requestStart.elapsedMillis()) +
+                (errorEncountered ? " with errors, original " : ", ") + "status code: " + getStatus(response) + ", request: " + requestDump.get());
+    }
+  }
+
   private void processException(@NotNull final HttpServletRequest request, @NotNull final HttpServletResponse response, @NotNull final Throwable throwable) {
     // Sometimes Jersey throws IllegalArgumentException and probably other without utilizing ExceptionMappers
     // also exceptions during serialization seem to not pass through the mappers (too late already?) - see TW-56461
@@ -639,6 +717,20 @@ public class APIController extends BaseController implements ServletContextAware
     response.addHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS));
   }
 
+  public void registerStartupPhase(@NotNull final String phase, final long durationNanos) {
+    myStartupStatistics.put(phase, String.valueOf(TimeUnit.NANOSECONDS.toMillis(durationNanos)));
+  }
+
+  /**
+   * @return durations of the Jersey initialization phases in milliseconds, for the last (re)initialization
+   */
+  @NotNull
+  public Map<String, String> getStartupStatistics() {
+    synchronized (myStartupStatistics) {
+      return new LinkedHashMap<String, String>(myStartupStatistics);
+    }
+  }
+
   @NotNull
   public String[] getBasePackages() {
     return new String[]{
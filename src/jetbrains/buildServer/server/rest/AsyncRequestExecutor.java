@@ -0,0 +1,214 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.NamedThreadFactory;
+import jetbrains.buildServer.util.StringUtil;
+import jetbrains.buildServer.web.util.WebUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Processes heavy REST requests on a dedicated bounded thread pool using Servlet 3 asynchronous processing,
+ * so that slow requests do not occupy the servlet container threads shared with the TeamCity web UI.
+ * Disabled by default, enabled with "rest.request.async.enabled" internal property.
+ * The requests are grouped into endpoints by the "rest.request.async.endpoints" patterns matched against the request URL, other requests are processed synchronously.
+ * Each endpoint has its own limit of the requests being queued or processed, there is also a limit for all the endpoints.
+ * A request over the limit is not queued: the caller should reject it right away.
+ */
+public class AsyncRequestExecutor {
+  private static final Logger LOG = Logger.getInstance(AsyncRequestExecutor.class.getName());
+
+  private static final String PROPERTIES_PREFIX = "rest.request.async";
+  private static final String DEFAULT_ENDPOINTS = ".*/app/rest/(.+/)?builds([/?].*)?;.*/app/rest/(.+/)?testOccurrences([/?].*)?;" +
+                                                  ".*/app/rest/(.+/)?problemOccurrences([/?].*)?;.*/app/rest/(.+/)?changes([/?].*)?";
+
+  private final ConcurrentHashMap<String, AtomicInteger> myRequestsInProgress = new ConcurrentHashMap<>();
+  private final AtomicInteger myAllRequestsInProgress = new AtomicInteger();
+  private final LongAdder myProcessedRequests = new LongAdder();
+  private final LongAdder myRejectedRequests = new LongAdder();
+  private volatile ThreadPoolExecutor myExecutor;
+  @NotNull private volatile Endpoints myEndpoints = new Endpoints("", "", Collections.emptyList());
+
+  /**
+   * @return the endpoint pattern matching the request if it is to be processed asynchronously, null if the request should be processed synchronously
+   */
+  @Nullable
+  public String getEndpoint(@NotNull final HttpServletRequest request) {
+    if (!TeamCityProperties.getBoolean(PROPERTIES_PREFIX + ".enabled") || !request.isAsyncSupported() || request.isAsyncStarted()) return null;
+    final String requestUrl = WebUtil.getRequestUrl(request);
+    for (Pattern endpoint : getEndpoints().myPatterns) {
+      if (endpoint.matcher(requestUrl).matches()) {
+        return endpoint.pattern();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Puts the request into asynchronous mode and schedules the task to process it. The request is completed after the task is finished.
+   * If the request cannot be put into asynchronous mode (e.g. the response is already committed), the task is run synchronously in the current thread.
+   * @param task should process the request entirely, including reporting errors into the response
+   * @return false if there are too many requests for the endpoint or for all the endpoints: the task is not scheduled and the request is not put into asynchronous mode
+   */
+  public boolean submit(@NotNull final HttpServletRequest request, @NotNull final String endpoint, @NotNull final Runnable task) {
+    final AtomicInteger endpointRequests = myRequestsInProgress.computeIfAbsent(endpoint, k -> new AtomicInteger());
+    if (endpointRequests.incrementAndGet() > TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".maxRequestsPerEndpoint", 20)) {
+      endpointRequests.decrementAndGet();
+      myRejectedRequests.increment();
+      return false;
+    }
+    if (myAllRequestsInProgress.incrementAndGet() > TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".maxRequests", 100)) {
+      myAllRequestsInProgress.decrementAndGet();
+      endpointRequests.decrementAndGet();
+      myRejectedRequests.increment();
+      return false;
+    }
+
+    final AsyncContext asyncContext;
+    try {
+      asyncContext = request.startAsync();
+      asyncContext.setTimeout(0); //the request can take as long as it would if processed synchronously
+    } catch (RuntimeException e) {
+      endpointRequests.decrementAndGet();
+      myAllRequestsInProgress.decrementAndGet();
+      LOG.debug("Cannot start asynchronous processing of REST request, processing it synchronously: " + e.toString());
+      task.run();
+      return true;
+    }
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    final Runnable asyncTask = () -> {
+      final Thread thread = Thread.currentThread();
+      final ClassLoader previousClassLoader = thread.getContextClassLoader();
+      thread.setContextClassLoader(contextClassLoader);
+      try {
+        task.run();
+      } catch (Throwable e) {
+        LOG.warnAndDebugDetails("Error while processing REST request asynchronously", e);
+      } finally {
+        thread.setContextClassLoader(previousClassLoader);
+        endpointRequests.decrementAndGet();
+        myAllRequestsInProgress.decrementAndGet();
+        myProcessedRequests.increment();
+        asyncContext.complete();
+      }
+    };
+    try {
+      getExecutor().execute(asyncTask);
+    } catch (RejectedExecutionException e) {
+      // the pool is shut down, the request is already in asynchronous mode so process it in the current thread
+      asyncTask.run();
+    }
+    return true;
+  }
+
+  @NotNull
+  public Map<String, String> getStatistics() {
+    final Map<String, String> result = new LinkedHashMap<>();
+    result.put("enabled", String.valueOf(TeamCityProperties.getBoolean(PROPERTIES_PREFIX + ".enabled")));
+    result.put("requestsInProgress", String.valueOf(myAllRequestsInProgress.get()));
+    result.put("processedRequests", String.valueOf(myProcessedRequests.sum()));
+    result.put("rejectedRequests", String.valueOf(myRejectedRequests.sum()));
+    final ThreadPoolExecutor executor = myExecutor;
+    result.put("activeThreads", String.valueOf(executor == null ? 0 : executor.getActiveCount()));
+    final TreeMap<String, String> byEndpoint = new TreeMap<>();
+    myRequestsInProgress.forEach((endpoint, count) -> byEndpoint.put("requestsInProgress:" + endpoint, String.valueOf(count.get())));
+    result.putAll(byEndpoint);
+    return result;
+  }
+
+  /**
+   * Stops accepting new tasks into the pool, the requests submitted afterwards are processed in the submitting thread.
+   */
+  public synchronized void dispose() {
+    final ThreadPoolExecutor executor = myExecutor;
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  public int getRetryAfterSeconds() {
+    return TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".retryAfterSeconds", 5);
+  }
+
+  /**
+   * Is called for each request on the servlet container threads, so the patterns are compiled only when the properties change
+   */
+  @NotNull
+  private Endpoints getEndpoints() {
+    final String endpoints = TeamCityProperties.getProperty(PROPERTIES_PREFIX + ".endpoints", DEFAULT_ENDPOINTS);
+    final String delimiter = TeamCityProperties.getProperty(PROPERTIES_PREFIX + ".endpoints.delimiter", ";");
+    final Endpoints result = myEndpoints;
+    if (endpoints.equals(result.myEndpoints) && delimiter.equals(result.myDelimiter)) return result;
+
+    final List<Pattern> patterns = new ArrayList<>();
+    if (!StringUtil.isEmptyOrSpaces(endpoints)) {
+      for (String endpoint : endpoints.split(delimiter)) {
+        try {
+          patterns.add(Pattern.compile(endpoint.trim()));
+        } catch (PatternSyntaxException e) {
+          LOG.warn("Ignoring invalid pattern in \"" + PROPERTIES_PREFIX + ".endpoints\" internal property: " + e.getMessage());
+        }
+      }
+    }
+    //concurrent updates store equal values, so no synchronization is necessary
+    final Endpoints updated = new Endpoints(endpoints, delimiter, patterns);
+    myEndpoints = updated;
+    return updated;
+  }
+
+  @NotNull
+  private ThreadPoolExecutor getExecutor() {
+    ThreadPoolExecutor result = myExecutor;
+    if (result == null) {
+      synchronized (this) {
+        result = myExecutor;
+        if (result == null) {
+          final int threads = TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".threads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+          // the queue is bounded by the limits of the requests in progress checked before submitting
+          result = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("REST API async request processing"));
+          result.allowCoreThreadTimeOut(true);
+          LOG.debug("Created REST API async request processing pool with " + threads + " threads");
+          myExecutor = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static class Endpoints {
+    @NotNull private final String myEndpoints;
+    @NotNull private final String myDelimiter;
+    @NotNull private final List<Pattern> myPatterns;
+
+    private Endpoints(@NotNull final String endpoints, @NotNull final String delimiter, @NotNull final List<Pattern> patterns) {
+      myEndpoints = endpoints;
+      myDelimiter = delimiter;
+      myPatterns = patterns;
+    }
+  }
+}
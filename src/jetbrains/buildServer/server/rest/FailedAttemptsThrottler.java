@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Limits the rate of failed authToken attempts per client and overall without blocking any threads.
+ * Each client has a bucket of "maxAttempts" failed attempts which is refilled by one attempt each "intervalSeconds",
+ * and all the clients share a bucket of "global.maxAttempts" failed attempts refilled by one each "global.intervalSeconds",
+ * so that using many addresses does not multiply the allowed attempts rate.
+ * While a bucket is empty, the client's requests are to be rejected right away.
+ * A bucket is stored as the time when it becomes full again, so that the state can be updated without locks.
+ * The per-client buckets are kept in a cache bounded by "maxTrackedClients" and expiring after the time a bucket gets full again.
+ */
+public class FailedAttemptsThrottler {
+  public static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private static final String PROPERTIES_PREFIX = "rest.authToken.throttling";
+  private static final String GLOBAL_PROPERTIES_PREFIX = PROPERTIES_PREFIX + ".global";
+
+  @NotNull private final Cache<String, AtomicLong> myBucketFullTimes;
+  private final AtomicLong myGlobalBucketFullTime = new AtomicLong();
+  private final AtomicLong myFailedAttempts = new AtomicLong();
+  private final AtomicLong myRejectedRequests = new AtomicLong();
+
+  public FailedAttemptsThrottler() {
+    myBucketFullTimes = CacheBuilder.newBuilder()
+                                    .maximumSize(TeamCityProperties.getInteger(PROPERTIES_PREFIX + ".maxTrackedClients", 10000))
+                                    //a client is not let to fail when its bucket is empty, so the bucket is full again after at most maxAttempts intervals since the last failure
+                                    .expireAfterWrite(getMaxAttempts(PROPERTIES_PREFIX) * getInterval(PROPERTIES_PREFIX), TimeUnit.MILLISECONDS)
+                                    .ticker(new Ticker() {
+                                      @Override
+                                      public long read() {
+                                        return TimeUnit.MILLISECONDS.toNanos(now());
+                                      }
+                                    })
+                                    .build();
+  }
+
+  /**
+   * @return 0 if the client can make an attempt, otherwise the number of milliseconds until the next attempt is allowed. Non-zero result is counted as a rejected request.
+   */
+  public long getRetryDelay(@NotNull final String clientId) {
+    final long now = now();
+    final AtomicLong bucketFullTime = myBucketFullTimes.getIfPresent(clientId);
+    final long clientDelay = bucketFullTime == null ? 0 : getRetryDelay(bucketFullTime, now, PROPERTIES_PREFIX);
+    final long result = Math.max(clientDelay, getRetryDelay(myGlobalBucketFullTime, now, GLOBAL_PROPERTIES_PREFIX));
+    if (result <= 0) return 0;
+    myRejectedRequests.incrementAndGet();
+    return result;
+  }
+
+  public void registerFailedAttempt(@NotNull final String clientId) {
+    myFailedAttempts.incrementAndGet();
+    final long now = now();
+    final AtomicLong bucketFullTime;
+    try {
+      bucketFullTime = myBucketFullTimes.get(clientId, () -> new AtomicLong(now));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e); //cannot happen: the loader does not throw
+    }
+    registerFailedAttempt(bucketFullTime, now, PROPERTIES_PREFIX);
+    myBucketFullTimes.put(clientId, bucketFullTime); //restart the expiration
+    registerFailedAttempt(myGlobalBucketFullTime, now, GLOBAL_PROPERTIES_PREFIX);
+  }
+
+  @NotNull
+  public Map<String, String> getStatistics() {
+    final long now = now();
+    final long burstTolerance = getBurstTolerance(PROPERTIES_PREFIX);
+    final Map<String, String> result = new LinkedHashMap<>();
+    result.put("failedAttempts", String.valueOf(myFailedAttempts.get()));
+    result.put("rejectedRequests", String.valueOf(myRejectedRequests.get()));
+    myBucketFullTimes.cleanUp();
+    result.put("trackedClients", String.valueOf(myBucketFullTimes.size()));
+    result.put("blockedClients", String.valueOf(myBucketFullTimes.asMap().values().stream().filter(time -> time.get() - now > burstTolerance).count()));
+    result.put("globalRetryDelayMs", String.valueOf(Math.max(0, getRetryDelay(myGlobalBucketFullTime, now, GLOBAL_PROPERTIES_PREFIX))));
+    return result;
+  }
+
+  private static long getRetryDelay(@NotNull final AtomicLong bucketFullTime, final long now, @NotNull final String propertiesPrefix) {
+    return bucketFullTime.get() - now - getBurstTolerance(propertiesPrefix);
+  }
+
+  private static void registerFailedAttempt(@NotNull final AtomicLong bucketFullTime, final long now, @NotNull final String propertiesPrefix) {
+    final long interval = getInterval(propertiesPrefix);
+    bucketFullTime.updateAndGet(current -> Math.max(current, now) + interval);
+  }
+
+  private static long getInterval(@NotNull final String propertiesPrefix) {
+    return Math.max(1, TeamCityProperties.getInteger(propertiesPrefix + ".intervalSeconds", 10)) * 1000L;
+  }
+
+  private static int getMaxAttempts(@NotNull final String propertiesPrefix) {
+    return Math.max(1, TeamCityProperties.getInteger(propertiesPrefix + ".maxAttempts", GLOBAL_PROPERTIES_PREFIX.equals(propertiesPrefix) ? 30 : 3));
+  }
+
+  private static long getBurstTolerance(@NotNull final String propertiesPrefix) {
+    return (getMaxAttempts(propertiesPrefix) - 1) * getInterval(propertiesPrefix);
+  }
+
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+}
@@ -32,6 +32,7 @@ public interface RESTControllerExtension extends ServerExtension {
   /**
    * Allows to add packages to scan for JAX-RS resources for REST API resources.
    * The classes from the package should be available in the same classloader as the REST API plugin.
+   * To avoid scanning the package on REST API initialization, generate {@link jetbrains.buildServer.server.rest.jersey.ResourceIndex} for the package at build time.
    *
    * @return fully-qualified name of the package to scan for JAX-RS resources.
    */
@@ -16,9 +16,10 @@
 
 package jetbrains.buildServer.server.rest;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Map;
-import java.util.Set;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -28,12 +29,19 @@ import org.jetbrains.annotations.Nullable;
  */
 public class RequestPathTransformInfo implements PathTransformator {
   @NotNull private Map<String, String> myPathMapping;
+  /**
+   * Keys of myPathMapping, longest first, so that the first matching one is the largest
+   */
+  @NotNull private String[] myPathsByLength = new String[0];
 
   public RequestPathTransformInfo() {
   }
 
   public void setPathMapping(@Nullable final Map<String, String> pathMapping) {
     myPathMapping = pathMapping != null ? pathMapping : Collections.<String, String>emptyMap();
+    final String[] paths = myPathMapping.keySet().toArray(new String[0]);
+    Arrays.sort(paths, Comparator.comparingInt(String::length).reversed());
+    myPathsByLength = paths;
   }
 
   @Override
@@ -42,20 +50,18 @@ public class RequestPathTransformInfo implements PathTransformator {
   }
 
   @NotNull
-  private static String getLargestMatchingSubstring(@NotNull final String path, final Set<String> substrings) {
-    String result = "";
-    for (String substring : substrings) {
-      boolean matches = path.contains(substring);
-      if (matches && result.length() < substring.length()) {
-        result = substring;
+  private static String getLargestMatchingSubstring(@NotNull final String path, @NotNull final String[] substringsByLength) {
+    for (String substring : substringsByLength) {
+      if (path.contains(substring)) {
+        return substring;
       }
     }
-    return result;
+    return "";
   }
 
   @NotNull
   public String getTransformedPath(@NotNull final String path) {
-    String matching = getLargestMatchingSubstring(path, myPathMapping.keySet());
+    String matching = getLargestMatchingSubstring(path, myPathsByLength);
     if (matching.length() == 0){
       return path;
     }
@@ -70,7 +76,7 @@ public class RequestPathTransformInfo implements PathTransformator {
 
   @NotNull
   public PathTransformator getReverseTransformator(@NotNull final String originalPath, final boolean prefixSupported) {
-    final String matching = getLargestMatchingSubstring(originalPath, myPathMapping.keySet());
+    final String matching = getLargestMatchingSubstring(originalPath, myPathsByLength);
     if (matching.length() == 0){
       return new PathTransformator(){
         @NotNull
@@ -82,19 +88,20 @@ public class RequestPathTransformInfo implements PathTransformator {
 
     final String prefix = prefixSupported ? originalPath.substring(0, originalPath.indexOf(matching)) : "";
     final String prefixWithNewPart = prefix + myPathMapping.get(matching);
+    final String prefixWithOriginalPart = prefix + matching;
     return new PathTransformator(){
       @NotNull
       public String getTransformedPath(@NotNull final String path) {
         if (!path.startsWith(prefixWithNewPart)){
           return path; //some wrong path
         }
-        if (path.startsWith(prefix + matching)){
+        if (path.startsWith(prefixWithOriginalPart)){
           return path; //path already in due form. Should generally not happen, however
         }
         if (path.startsWith(matching)){
           return prefix + path; //path already partly in due form. Should generally not happen, however
         }
-        return prefix + matching + path.substring(prefixWithNewPart.length());
+        return prefixWithOriginalPart + path.substring(prefixWithNewPart.length());
       }
     };
   }
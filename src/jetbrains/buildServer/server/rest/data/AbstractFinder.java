@@ -64,6 +64,14 @@ public abstract class AbstractFinder<ITEM> extends FinderImpl<ITEM> implements F
   @NotNull
   public abstract  ItemFilter<ITEM> getFilter(@NotNull final Locator locator);
 
+  /**
+   * @see LocatorDataBinding#getPrefilteredItemsAfter(String)
+   */
+  @Nullable
+  public ItemHolder<ITEM> getPrefilteredItemsAfter(@NotNull final Locator locator, @NotNull final String cursorKey) {
+    return null;
+  }
+
   @NotNull
   @Override
   public LocatorDataBinding<ITEM> getLocatorDataBinding(@NotNull final Locator locator) {
@@ -79,6 +87,12 @@ public abstract class AbstractFinder<ITEM> extends FinderImpl<ITEM> implements F
       public ItemFilter<ITEM> getFilter() {
         return AbstractFinder.this.getFilter(locator);
       }
+
+      @Nullable
+      @Override
+      public ItemHolder<ITEM> getPrefilteredItemsAfter(@NotNull final String cursorKey) {
+        return AbstractFinder.this.getPrefilteredItemsAfter(locator, cursorKey);
+      }
     };
   }
 
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import jetbrains.buildServer.serverSide.*;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Caches agent to build configuration compatibility: a pair of bit sets indexed by agent id is stored per build configuration.
+ * The entries are invalidated on agent, build configuration and project changes, and are also expired after a time as a safety net for the changes not reported via the listener.
+ */
+public class AgentCompatibilityCache extends BuildServerAdapter {
+  private final ConcurrentHashMap<String, BuildTypeEntry> myEntries = new ConcurrentHashMap<>();
+  /**
+   * Incremented on each invalidation, so that a value calculated concurrently with an invalidation is not stored
+   */
+  private final AtomicLong myGeneration = new AtomicLong();
+
+  public AgentCompatibilityCache(@NotNull final SBuildServer server) {
+    server.addListener(this);
+  }
+
+  /**
+   * @param calculator calculates the compatibility when it is not cached, should not depend on anything but the agent and the build configuration settings
+   */
+  public boolean isCompatible(@NotNull final SBuildAgent agent, @NotNull final SBuildType buildType, @NotNull final BooleanSupplier calculator) {
+    final int agentId = agent.getId();
+    if (agentId < 0 || !TeamCityProperties.getBooleanOrTrue("rest.agents.compatibilityCache.enabled")) return calculator.getAsBoolean();
+
+    final long generation = myGeneration.get();
+    final long now = System.currentTimeMillis();
+    final BuildTypeEntry entry = myEntries.compute(buildType.getInternalId(), (k, existing) -> existing == null || existing.isExpired(now) ? new BuildTypeEntry(now) : existing);
+    synchronized (entry) {
+      if (entry.myKnown.get(agentId)) return entry.myCompatible.get(agentId);
+    }
+
+    final boolean result = calculator.getAsBoolean();
+    synchronized (entry) {
+      if (myGeneration.get() == generation && myEntries.get(buildType.getInternalId()) == entry) {
+        entry.myKnown.set(agentId);
+        entry.myCompatible.set(agentId, result);
+      }
+    }
+    return result;
+  }
+
+  public int getSize() {
+    return myEntries.size();
+  }
+
+  public void invalidateAll() {
+    myGeneration.incrementAndGet();
+    myEntries.clear();
+  }
+
+  private void invalidate(@NotNull final SBuildAgent agent) {
+    myGeneration.incrementAndGet();
+    final int agentId = agent.getId();
+    if (agentId < 0) return;
+    for (BuildTypeEntry entry : myEntries.values()) {
+      synchronized (entry) {
+        entry.myKnown.clear(agentId);
+      }
+    }
+  }
+
+  private void invalidate(@NotNull final SBuildType buildType) {
+    myGeneration.incrementAndGet();
+    myEntries.remove(buildType.getInternalId());
+  }
+
+  @Override
+  public void agentRegistered(@NotNull final SBuildAgent agent, final long currentlyRunningBuildId) {
+    invalidate(agent);
+  }
+
+  @Override
+  public void agentDescriptionUpdated(@NotNull final SBuildAgent agent) {
+    invalidate(agent);
+  }
+
+  @Override
+  public void agentUnregistered(@NotNull final SBuildAgent agent) {
+    invalidate(agent);
+  }
+
+  @Override
+  public void agentRemoved(@NotNull final SBuildAgent agent) {
+    invalidate(agent);
+  }
+
+  @Override
+  public void buildTypeRegistered(@NotNull final SBuildType buildType) {
+    invalidate(buildType);
+  }
+
+  @Override
+  public void buildTypeUnregistered(@NotNull final SBuildType buildType) {
+    invalidate(buildType);
+  }
+
+  @Override
+  public void buildTypePersisted(@NotNull final SBuildType buildType) {
+    invalidate(buildType);
+  }
+
+  @Override
+  public void buildTypeTemplatePersisted(@NotNull final BuildTypeTemplate buildTemplate) {
+    invalidateAll();
+  }
+
+  @Override
+  public void projectPersisted(@NotNull final String projectId) {
+    invalidateAll(); //parameters and requirements are inherited by all the nested build configurations
+  }
+
+  @Override
+  public void serverConfigurationReloaded() {
+    invalidateAll();
+  }
+
+  private static class BuildTypeEntry {
+    private final long myCreated;
+    private final BitSet myKnown = new BitSet();
+    private final BitSet myCompatible = new BitSet();
+
+    BuildTypeEntry(final long created) {
+      myCreated = created;
+    }
+
+    boolean isExpired(final long now) {
+      return now - myCreated > TeamCityProperties.getInteger("rest.agents.compatibilityCache.maxAgeSeconds", 300) * 1000L;
+    }
+  }
+}
@@ -355,14 +355,14 @@ public class AgentFinder extends AbstractFinder<SBuildAgent> {
 
   private boolean isCompatibleWithAny(@NotNull final SBuildAgent agent, @NotNull final List<SBuildType> buildTypes) {
     for (final SBuildType buildType : buildTypes) {
-      if (canActuallyRun(agent, buildType)) return true;
+      if (canActuallyRun(agent, buildType, myServiceLocator)) return true;
     }
     return false;
   }
 
   private boolean isCompatibleWithAll(@NotNull final SBuildAgent agent, @NotNull final List<SBuildType> buildTypes) {
     for (final SBuildType buildType : buildTypes) {
-      if (!canActuallyRun(agent, buildType)) return false;
+      if (!canActuallyRun(agent, buildType, myServiceLocator)) return false;
     }
     return true;
   }
@@ -385,6 +385,17 @@ public class AgentFinder extends AbstractFinder<SBuildAgent> {
     return getCompatibilityData(agent, buildType).isCompatible();
   }
 
+  /**
+   * Same as {@link #canActuallyRun(SBuildAgent, SBuildType)}, but uses {@link AgentCompatibilityCache} when available.
+   * Agent policy and pool are checked each time, so that the removal of a project from a pool is taken into account right away.
+   */
+  public static boolean canActuallyRun(@NotNull final SBuildAgent agent, @NotNull final SBuildType buildType, @NotNull final ServiceLocator serviceLocator) {
+    final AgentCompatibilityCache compatibilityCache = serviceLocator.findSingletonService(AgentCompatibilityCache.class);
+    if (compatibilityCache == null) return canActuallyRun(agent, buildType);
+    if (!getAgentType(agent).getPolicy().isBuildTypeAllowed(buildType.getBuildTypeId()) || !agent.getAgentPool().containsProjectId(buildType.getProjectId())) return false;
+    return compatibilityCache.isCompatible(agent, buildType, () -> canActuallyRun(agent, buildType));
+  }
+
   @NotNull
   public static List<Compatibility.AgentCompatibilityData> getIncompatible(final @NotNull SBuildAgent agent,
                                                                            final @Nullable List<SBuildType> buildTypes,
@@ -392,6 +403,7 @@ public class AgentFinder extends AbstractFinder<SBuildAgent> {
     ArrayList<Compatibility.AgentCompatibilityData> result = new ArrayList<>();
     List<SBuildType> buildTypesToProcess = buildTypes != null ? buildTypes : serviceLocator.getSingletonService(ProjectManager.class).getAllBuildTypes();
     for (final SBuildType buildType : buildTypesToProcess) {
+      if (canActuallyRun(agent, buildType, serviceLocator)) continue; //details are necessary only for incompatible ones
       Compatibility.AgentCompatibilityData compatibilityData = getCompatibilityData(agent, buildType);
       if (!compatibilityData.isCompatible()) {
         result.add(compatibilityData);
@@ -438,7 +450,7 @@ public class AgentFinder extends AbstractFinder<SBuildAgent> {
     }
 
     SBuildType buildType = build.getBuildType();
-    if (buildType != null && !getCompatibilityData(agent, buildType).isCompatible()) {
+    if (buildType != null && !canActuallyRun(agent, buildType, myServiceLocator)) {
       return false;  //todo: optimize, as this calculates compatibility second time
     }
     return true;
@@ -468,7 +480,7 @@ public class AgentFinder extends AbstractFinder<SBuildAgent> {
         if (buildType != null) {
           final List<BuildAgentEx> agents = serviceLocator.getSingletonService(BuildAgentManagerEx.class).getAllAgents();
           result.addAll(
-            agents.stream().filter(a -> a.isAuthorized() && a.isRegistered() && getCompatibilityData(a, buildType).isCompatible()).collect(Collectors.toList()));
+            agents.stream().filter(a -> a.isAuthorized() && a.isRegistered() && canActuallyRun(a, buildType, serviceLocator)).collect(Collectors.toList()));
         }
       }
     }
@@ -16,16 +16,30 @@
 
 package jetbrains.buildServer.server.rest.data;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.intellij.openapi.diagnostic.Logger;
-import java.io.BufferedOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.List;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.StreamingOutput;
+import jetbrains.buildServer.ServiceLocator;
+import jetbrains.buildServer.server.rest.errors.BadRequestException;
+import jetbrains.buildServer.server.rest.errors.OperationException;
+import jetbrains.buildServer.server.rest.util.ParallelProcessing;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.crypt.EncryptUtil;
 import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.util.TCStreamUtil;
 import jetbrains.buildServer.util.browser.Browser;
 import jetbrains.buildServer.util.browser.BrowserException;
 import jetbrains.buildServer.util.browser.Element;
@@ -44,10 +58,95 @@ public class ArchiveElement implements Element {
 
   private final List<ArtifactTreeElement> myArtifacts;
   private final String myName;
+  @NotNull private final Compression myCompression;
+  @Nullable private final ServiceLocator myServiceLocator;
+  @Nullable private final String myUniqueId;
+  @Nullable private StoredArchiveLayout myStoredLayout;
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  /**
+   * CRC of the stored entries, to serve ranges of the same archive without reading all the preceding files again
+   */
+  private static final Cache<String, Long> ourCrcCache = CacheBuilder.newBuilder()
+                                                                      .maximumSize(TeamCityProperties.getInteger("rest.build.artifacts.archive.crcCacheSize", 10000))
+                                                                      .build();
+
+  public enum Compression {
+    DEFLATE,
+    /**
+     * No compression, useful for already compressed artifacts
+     */
+    STORE;
+
+    @NotNull
+    public static Compression getByName(@Nullable final String name) {
+      if (name == null) return DEFLATE;
+      for (Compression compression : values()) {
+        if (compression.name().equalsIgnoreCase(name)) return compression;
+      }
+      throw new BadRequestException("Unsupported compression '" + name + "'. Supported are: " + Arrays.toString(values()).toLowerCase());
+    }
+  }
 
   public ArchiveElement(final List<ArtifactTreeElement> artifacts, final String name) {
     myArtifacts = artifacts;
     myName = name;
+    myCompression = Compression.DEFLATE;
+    myServiceLocator = null;
+    myUniqueId = null;
+  }
+
+  /**
+   * @param serviceLocator used to prepare the entries in parallel
+   */
+  public ArchiveElement(@NotNull final List<ArtifactTreeElement> artifacts, @NotNull final String name, @NotNull final Compression compression,
+                        @NotNull final ServiceLocator serviceLocator) {
+    this(artifacts, name, compression, serviceLocator, null);
+  }
+
+  /**
+   * @param uniqueId identifies the set of the artifacts (e.g. the build) to cache details of the artifacts between the requests, null to disable caching
+   */
+  public ArchiveElement(@NotNull final List<ArtifactTreeElement> artifacts, @NotNull final String name, @NotNull final Compression compression,
+                        @NotNull final ServiceLocator serviceLocator, @Nullable final String uniqueId) {
+    myArtifacts = artifacts;
+    myName = name;
+    myCompression = compression;
+    myServiceLocator = serviceLocator;
+    myUniqueId = uniqueId;
+  }
+
+  /**
+   * Ranges are supported only for not compressed archives as only in that case the archive layout is known in advance
+   */
+  public boolean isRangeSupported() {
+    return getStoredLayout() != null;
+  }
+
+  /**
+   * @return strong entity tag of the archive if ranges are supported for it, null otherwise.
+   * The content of a not compressed archive is defined by the entries' names, sizes and modification times, so ranges of different archives are not mixed on resuming.
+   */
+  @Nullable
+  public EntityTag getStrongETag() {
+    final StoredArchiveLayout storedLayout = getStoredLayout();
+    if (storedLayout == null) return null;
+    final StringBuilder state = new StringBuilder();
+    for (LayoutEntry entry : storedLayout.myEntries) {
+      state.append(entry.myArtifact.getFullName()).append('|').append(entry.myDirectory).append('|').append(entry.mySize).append('|')
+           .append(getLastModified(entry.myArtifact)).append('\n');
+    }
+    return new EntityTag(EncryptUtil.md5(state.toString()));
+  }
+
+  @Nullable
+  private StoredArchiveLayout getStoredLayout() {
+    if (myCompression != Compression.STORE || myServiceLocator == null) return null;
+    if (myStoredLayout == null) {
+      myStoredLayout = StoredArchiveLayout.create(myArtifacts);
+    }
+    return myStoredLayout.myTotalSize < 0 ? null : myStoredLayout;
   }
 
   @NotNull
@@ -74,8 +173,17 @@ public class ArchiveElement implements Element {
   }
 
   public StreamingOutput getStreamingOutput(@Nullable final Long startOffset, @Nullable final Long length, final Supplier<String> detailsForLog) {
+    final StoredArchiveLayout storedLayout = getStoredLayout();
+    if (storedLayout != null) {
+      //noinspection ConstantConditions
+      return out -> storedLayout.write(out, startOffset != null ? startOffset : 0, length, myServiceLocator, myUniqueId, detailsForLog);
+    }
     if (startOffset != null || length != null){
-      throw new IllegalStateException("Partial streaming is not yet supported");
+      throw new IllegalStateException("Partial streaming is supported only for not compressed archive of files with known sizes");
+    }
+
+    if (myServiceLocator != null && (myCompression != Compression.DEFLATE || TeamCityProperties.getBooleanOrTrue("rest.build.artifacts.archive.parallel"))) {
+      return out -> writePrepared(out, myServiceLocator, detailsForLog);
     }
 
     return new StreamingOutput() {
@@ -140,13 +248,536 @@ public class ArchiveElement implements Element {
   }
 
 
+  /**
+   * Writes the archive preparing the entries (compressing or calculating CRC for stored ones) in parallel and writing them in the original order.
+   * Only entries not larger than "rest.build.artifacts.archive.parallel.maxEntrySize" are compressed in advance as a whole to limit the memory used,
+   * larger ones are read while writing and compressed in parallel in blocks of "rest.build.artifacts.archive.parallel.blockSize", see {@link #writeDeflatedInBlocks}.
+   * Setting the block size to 0 makes the larger entries compressed in the writing thread.
+   * Like with the not parallel writing, the entry names are written in the platform encoding (TW-12815) and the artifacts which cannot be read are skipped.
+   */
+  private void writePrepared(@NotNull final OutputStream out, @NotNull final ServiceLocator serviceLocator, @NotNull final Supplier<String> detailsForLog) {
+    final long maxPreparedSize = TeamCityProperties.getLong("rest.build.artifacts.archive.parallel.maxEntrySize", 4 * 1024 * 1024);
+    final int blockSize = TeamCityProperties.getInteger("rest.build.artifacts.archive.parallel.blockSize", 1024 * 1024);
+    final int compressionLevel = TeamCityProperties.getInteger("rest.build.artifacts.archive.compressionLevel", Deflater.DEFAULT_COMPRESSION);
+    final Charset nameCharset = getNameCharset();
+    final ZipStreamWriter writer = new ZipStreamWriter(new BufferedOutputStream(out));
+    int errorsCount = 0;
+    final ParallelProcessing.OrderedResults<PreparedEntry> entries =
+      ParallelProcessing.mapLazily(myArtifacts, artifact -> prepare(artifact, maxPreparedSize, compressionLevel), serviceLocator);
+    try {
+      while (entries.hasNext()) {
+        final PreparedEntry entry = entries.next();
+        final ArtifactTreeElement artifact = entry.myArtifact;
+        if (!artifact.isLeaf()) {
+          writer.putDirectory(artifact.getFullName(), nameCharset, artifact.getLastModified());
+        }
+        if (!artifact.isContentAvailable()) continue;
+
+        if (entry.myError != null) {
+          errorsCount++;
+          LOG.warnAndDebugDetails("Error packing artifact, ignoring. File: '" + artifact.getFullName() + "'", entry.myError);
+          continue;
+        }
+        if (entry.myData != null) {
+          writer.putEntry(ZipStreamWriter.Entry.file(artifact.getFullName(), nameCharset, artifact.getLastModified(), ZipStreamWriter.METHOD_DEFLATED, entry.myCrc,
+                                                     entry.myDataLength, entry.mySize), entry.myData, entry.myDataLength);
+          continue;
+        }
+
+        final InputStream stream;
+        try {
+          stream = artifact.getInputStream();
+        } catch (Exception e) {
+          errorsCount++;
+          LOG.warnAndDebugDetails("Error packing artifact, ignoring. File: '" + artifact.getFullName() + "'", e);
+          continue;
+        }
+        try {
+          if (myCompression == Compression.STORE) {
+            writer.putEntry(ZipStreamWriter.Entry.file(artifact.getFullName(), nameCharset, getLastModified(artifact), ZipStreamWriter.METHOD_STORED, entry.myCrc,
+                                                       entry.mySize, entry.mySize), stream);
+          } else if (blockSize > 0) {
+            writeDeflatedInBlocks(writer, artifact, nameCharset, stream, blockSize, compressionLevel, serviceLocator);
+          } else {
+            writer.putDeflatedEntry(artifact.getFullName(), nameCharset, artifact.getLastModified(), stream, compressionLevel);
+          }
+        } catch (ZipStreamWriter.EntryDataException e) {
+          errorsCount++;
+          LOG.warnAndDebugDetails("Error packing artifact, the archived file is incomplete. File: '" + artifact.getFullName() + "'", e);
+        } finally {
+          FileUtil.close(stream);
+        }
+      }
+      writer.finish();
+    } catch (IOException e) {
+      // errors reading the artifacts are handled above, so this is an error writing the response and the archive cannot be completed
+      throw new OperationException("Error while writing archive for " + detailsForLog.get() + ": " + e.toString(), e);
+    } finally {
+      entries.close();
+      if (errorsCount > 0) {
+        LOG.warn("Encountered " + errorsCount + " errors while processing " + detailsForLog.get());
+      }
+    }
+  }
+
+  /**
+   * Writes the entry compressing its content in parallel, like pigz does: the content is read and its CRC is calculated in the writing thread,
+   * each block is compressed with the preceding {@link #DICTIONARY_SIZE} bytes of the content as the dictionary and is flushed to the byte boundary,
+   * so that the compressed blocks form a single deflate stream when written one after another and the compression ratio is almost the same as for the entire content.
+   * At most "rest.parallel.perRequestLimit" blocks are held in memory at once.
+   */
+  private static void writeDeflatedInBlocks(@NotNull final ZipStreamWriter writer, @NotNull final ArtifactTreeElement artifact, @NotNull final Charset nameCharset,
+                                            @NotNull final InputStream stream, final int blockSize, final int compressionLevel,
+                                            @NotNull final ServiceLocator serviceLocator) throws IOException {
+    final BlockReader reader = new BlockReader(stream, blockSize);
+    writer.startDeflatedEntry(artifact.getFullName(), nameCharset, artifact.getLastModified());
+    try (ParallelProcessing.OrderedResults<ExposedByteArrayOutputStream> compressedBlocks =
+           ParallelProcessing.mapLazily(reader, block -> block.compress(compressionLevel), serviceLocator)) {
+      while (compressedBlocks.hasNext()) {
+        final ExposedByteArrayOutputStream compressed = compressedBlocks.next();
+        writer.writeEntryData(compressed.getBuffer(), 0, compressed.size());
+      }
+    }
+    final byte[] lastBlock = compressLastBlock(compressionLevel);
+    writer.writeEntryData(lastBlock, 0, lastBlock.length);
+    writer.closeDeflatedEntry(reader.myCrc.getValue(), reader.mySize);
+    if (reader.myError != null) {
+      throw new ZipStreamWriter.EntryDataException("Error reading data for entry '" + artifact.getFullName() + "', the entry is truncated to " + reader.mySize +
+                                                   " bytes: " + reader.myError.toString(), reader.myError);
+    }
+  }
+
+  /**
+   * @return empty final deflate block which completes the stream of the blocks compressed via {@link ContentBlock#compress(int)}
+   */
+  @NotNull
+  private static byte[] compressLastBlock(final int compressionLevel) {
+    final Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      deflater.finish();
+      final ExposedByteArrayOutputStream result = new ExposedByteArrayOutputStream(16);
+      final byte[] buffer = new byte[16];
+      while (!deflater.finished()) {
+        result.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return result.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Reads the content by blocks updating its CRC and size. A reading error ends the content, it is available as {@link #myError} then.
+   */
+  private static class BlockReader implements Iterator<ContentBlock> {
+    @NotNull private final InputStream myStream;
+    private final int myBlockSize;
+    @NotNull private final CRC32 myCrc = new CRC32();
+    private long mySize = 0;
+    @Nullable private IOException myError;
+    @Nullable private byte[] myDictionary;
+    @Nullable private ContentBlock myNext;
+    private boolean myEnd = false;
+
+    BlockReader(@NotNull final InputStream stream, final int blockSize) {
+      myStream = stream;
+      myBlockSize = blockSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (myNext == null && !myEnd) myNext = read();
+      return myNext != null;
+    }
+
+    @Override
+    public ContentBlock next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      final ContentBlock result = myNext;
+      myNext = null;
+      return result;
+    }
+
+    @Nullable
+    private ContentBlock read() {
+      final byte[] data = new byte[myBlockSize];
+      int length = 0;
+      try {
+        while (length < data.length) {
+          final int read = myStream.read(data, length, data.length - length);
+          if (read < 0) {
+            myEnd = true;
+            break;
+          }
+          length += read;
+        }
+      } catch (IOException e) {
+        myError = e;
+        myEnd = true;
+      }
+      if (length == 0) return null;
+
+      myCrc.update(data, 0, length);
+      mySize += length;
+      final ContentBlock result = new ContentBlock(data, length, myDictionary);
+      myDictionary = getDictionary(myDictionary, data, length);
+      return result;
+    }
+
+    @NotNull
+    private static byte[] getDictionary(@Nullable final byte[] previous, @NotNull final byte[] data, final int length) {
+      if (length >= DICTIONARY_SIZE || previous == null) {
+        return Arrays.copyOfRange(data, Math.max(0, length - DICTIONARY_SIZE), length);
+      }
+      final int fromPrevious = Math.min(previous.length, DICTIONARY_SIZE - length);
+      final byte[] result = new byte[fromPrevious + length];
+      System.arraycopy(previous, previous.length - fromPrevious, result, 0, fromPrevious);
+      System.arraycopy(data, 0, result, fromPrevious, length);
+      return result;
+    }
+  }
+
+  private static class ContentBlock {
+    @NotNull private final byte[] myData;
+    private final int myLength;
+    @Nullable private final byte[] myDictionary;
+
+    ContentBlock(@NotNull final byte[] data, final int length, @Nullable final byte[] dictionary) {
+      myData = data;
+      myLength = length;
+      myDictionary = dictionary;
+    }
+
+    /**
+     * @return raw deflate data of the block without the final block marker, ending on the byte boundary
+     */
+    @NotNull
+    ExposedByteArrayOutputStream compress(final int compressionLevel) {
+      final Deflater deflater = new Deflater(compressionLevel, true);
+      try {
+        if (myDictionary != null) deflater.setDictionary(myDictionary);
+        deflater.setInput(myData, 0, myLength);
+        final ExposedByteArrayOutputStream result = new ExposedByteArrayOutputStream(Math.max(myLength / 2, 64));
+        final byte[] buffer = new byte[64 * 1024];
+        int compressed;
+        do {
+          compressed = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          result.write(buffer, 0, compressed);
+        } while (compressed == buffer.length || !deflater.needsInput());
+        return result;
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * @return charset for the entry names, the platform one is used as in the archives created by the server (TW-12815)
+   */
+  @NotNull
+  private static Charset getNameCharset() {
+    return Charset.defaultCharset();
+  }
+
+  @NotNull
+  private PreparedEntry prepare(@NotNull final ArtifactTreeElement artifact, final long maxPreparedSize, final int compressionLevel) {
+    final PreparedEntry result = new PreparedEntry(artifact);
+    if (!artifact.isContentAvailable()) return result;
+    try {
+      final long size = artifact.getSize();
+      if (myCompression == Compression.DEFLATE && (size < 0 || size > maxPreparedSize)) {
+        return result; //will be compressed while writing
+      }
+      if (myCompression == Compression.STORE && myUniqueId != null && size >= 0) {
+        //the data is read again while writing, so read it here only if the CRC is not known from the previous requests
+        result.myCrc = getCrc(artifact, size, myUniqueId);
+        result.mySize = size;
+        return result;
+      }
+      final InputStream stream = artifact.getInputStream();
+      try {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[64 * 1024];
+        long actualSize = 0;
+        if (myCompression == Compression.STORE) {
+          int read;
+          while ((read = stream.read(buffer)) >= 0) {
+            crc.update(buffer, 0, read);
+            actualSize += read;
+          }
+        } else {
+          final ExposedByteArrayOutputStream compressed = new ExposedByteArrayOutputStream((int)Math.max(size / 2, 32));
+          final Deflater deflater = new Deflater(compressionLevel, true);
+          try {
+            final DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(compressed, deflater, buffer.length);
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+              crc.update(buffer, 0, read);
+              deflaterOutput.write(buffer, 0, read);
+              actualSize += read;
+            }
+            deflaterOutput.finish();
+          } finally {
+            deflater.end();
+          }
+          result.myData = compressed.getBuffer();
+          result.myDataLength = compressed.size();
+        }
+        result.myCrc = crc.getValue();
+        result.mySize = actualSize;
+      } finally {
+        FileUtil.close(stream);
+      }
+    } catch (Exception e) {
+      result.myError = e;
+    }
+    return result;
+  }
+
+  /**
+   * @return last modification time to use in the archive, not dependent on the current time so that the archive is the same when requested again
+   */
+  private static long getLastModified(@NotNull final ArtifactTreeElement artifact) {
+    final Long result = artifact.getLastModified();
+    return result != null ? result : 0;
+  }
+
+  /**
+   * Layout of the archive with not compressed entries: the offsets of all the entries are known from the artifacts sizes,
+   * so any range of the archive can be written without writing the preceding data.
+   * CRC of the entries is calculated only for the entries whose headers are written.
+   */
+  private static class StoredArchiveLayout {
+    @NotNull private final List<LayoutEntry> myEntries;
+    private final long myCentralDirectoryOffset;
+    private final long myTotalSize;
+
+    private StoredArchiveLayout(@NotNull final List<LayoutEntry> entries, final long centralDirectoryOffset, final long totalSize) {
+      myEntries = entries;
+      myCentralDirectoryOffset = centralDirectoryOffset;
+      myTotalSize = totalSize;
+    }
+
+    /**
+     * @return layout with negative total size if the layout cannot be computed
+     */
+    @NotNull
+    static StoredArchiveLayout create(@NotNull final List<ArtifactTreeElement> artifacts) {
+      final List<LayoutEntry> entries = new ArrayList<>();
+      long offset = 0;
+      for (ArtifactTreeElement artifact : artifacts) {
+        if (!artifact.isLeaf()) {
+          final LayoutEntry entry = new LayoutEntry(artifact, true, offset, 0);
+          entries.add(entry);
+          offset += entry.getLength();
+        }
+        if (!artifact.isContentAvailable()) continue;
+        final long size;
+        try {
+          size = artifact.getSize();
+        } catch (IllegalStateException e) {
+          return new StoredArchiveLayout(Collections.emptyList(), -1, -1);
+        }
+        if (size < 0) return new StoredArchiveLayout(Collections.emptyList(), -1, -1);
+        final LayoutEntry entry = new LayoutEntry(artifact, false, offset, size);
+        entries.add(entry);
+        offset += entry.getLength();
+      }
+      final int centralDirectoryLength = ZipStreamWriter.getCentralDirectory(getZipEntries(entries, null), offset).length;
+      return new StoredArchiveLayout(entries, offset, offset + centralDirectoryLength);
+    }
+
+    @NotNull
+    private static List<ZipStreamWriter.Entry> getZipEntries(@NotNull final List<LayoutEntry> entries, @Nullable final List<Long> crcs) {
+      final List<ZipStreamWriter.Entry> result = new ArrayList<>(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        result.add(entries.get(i).getZipEntry(crcs == null ? 0 : crcs.get(i)));
+      }
+      return result;
+    }
+
+    void write(@NotNull final OutputStream out, final long start, @Nullable final Long length, @NotNull final ServiceLocator serviceLocator,
+               @Nullable final String uniqueId, @NotNull final Supplier<String> detailsForLog) throws IOException {
+      final long end = length != null ? Math.min(start + length, myTotalSize) : myTotalSize;
+      final OutputStream output = new BufferedOutputStream(out);
+      final List<LayoutEntry> affectedEntries = new ArrayList<>();
+      for (LayoutEntry entry : myEntries) {
+        if (entry.myOffset < end && entry.myOffset + entry.getLength() > start) affectedEntries.add(entry);
+      }
+      try (ParallelProcessing.OrderedResults<Long> crcs = ParallelProcessing.mapLazily(affectedEntries, entry -> entry.isHeaderIn(start, end) ? entry.getCrc(uniqueId) : 0,
+                                                                                       serviceLocator)) {
+        for (LayoutEntry entry : affectedEntries) {
+          final long crc = crcs.next();
+          writeRange(output, ZipStreamWriter.getLocalHeader(entry.getZipEntry(crc)), entry.myOffset, start, end);
+          if (entry.myDirectory) continue;
+          final long dataOffset = entry.myOffset + entry.myHeaderLength;
+          final long from = Math.max(start, dataOffset);
+          final long to = Math.min(end, dataOffset + entry.mySize);
+          if (from >= to) continue;
+          final InputStream stream = entry.myArtifact.getInputStream();
+          try {
+            TCStreamUtil.skip(stream, from - dataOffset);
+            final long copied = copy(stream, output, to - from);
+            if (copied != to - from) {
+              throw new IOException("Artifact '" + entry.myArtifact.getFullName() + "' was modified while being archived");
+            }
+          } finally {
+            FileUtil.close(stream);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        throw e; // entries of the stored archive cannot be skipped as that would change the layout
+      } catch (Exception e) {
+        throw new OperationException("Error while writing archive for " + detailsForLog.get() + ": " + e.toString(), e);
+      }
+
+      if (end > myCentralDirectoryOffset) {
+        final List<LayoutEntry> fileEntries = myEntries.stream().filter(e -> !e.myDirectory).collect(Collectors.toList());
+        final Map<LayoutEntry, Long> fileCrcs = new HashMap<>();
+        final List<Long> computedCrcs = ParallelProcessing.map(fileEntries, entry -> entry.getCrc(uniqueId), serviceLocator);
+        for (int i = 0; i < fileEntries.size(); i++) {
+          fileCrcs.put(fileEntries.get(i), computedCrcs.get(i));
+        }
+        final List<Long> crcs = myEntries.stream().map(e -> e.myDirectory ? 0L : fileCrcs.get(e)).collect(Collectors.toList());
+        writeRange(output, ZipStreamWriter.getCentralDirectory(getZipEntries(myEntries, crcs), myCentralDirectoryOffset), myCentralDirectoryOffset, start, end);
+      }
+      output.flush();
+    }
+
+    private static void writeRange(@NotNull final OutputStream output, @NotNull final byte[] bytes, final long bytesOffset, final long start, final long end)
+      throws IOException {
+      final long from = Math.max(start, bytesOffset);
+      final long to = Math.min(end, bytesOffset + bytes.length);
+      if (from < to) output.write(bytes, (int)(from - bytesOffset), (int)(to - from));
+    }
+
+    private static long copy(@NotNull final InputStream input, @NotNull final OutputStream output, final long length) throws IOException {
+      final byte[] buffer = new byte[(int)Math.min(64 * 1024, length)];
+      long copied = 0;
+      while (copied < length) {
+        final int read = input.read(buffer, 0, (int)Math.min(buffer.length, length - copied));
+        if (read < 0) break;
+        output.write(buffer, 0, read);
+        copied += read;
+      }
+      return copied;
+    }
+  }
+
+  private static class LayoutEntry {
+    @NotNull private final ArtifactTreeElement myArtifact;
+    private final boolean myDirectory;
+    private final long myOffset;
+    private final long mySize;
+    private final int myHeaderLength;
+
+    LayoutEntry(@NotNull final ArtifactTreeElement artifact, final boolean directory, final long offset, final long size) {
+      myArtifact = artifact;
+      myDirectory = directory;
+      myOffset = offset;
+      mySize = size;
+      myHeaderLength = ZipStreamWriter.getLocalHeader(getZipEntry(0)).length;
+    }
+
+    long getLength() {
+      return myHeaderLength + mySize;
+    }
+
+    boolean isHeaderIn(final long start, final long end) {
+      return !myDirectory && myOffset < end && myOffset + myHeaderLength > start;
+    }
+
+    @NotNull
+    ZipStreamWriter.Entry getZipEntry(final long crc) {
+      final ZipStreamWriter.Entry result = myDirectory
+                                           ? ZipStreamWriter.Entry.directory(myArtifact.getFullName(), getNameCharset(), getLastModified(myArtifact))
+                                           : ZipStreamWriter.Entry.file(myArtifact.getFullName(), getNameCharset(), getLastModified(myArtifact), ZipStreamWriter.METHOD_STORED,
+                                                                        crc, mySize, mySize);
+      result.setOffset(myOffset);
+      return result;
+    }
+
+    long getCrc(@Nullable final String uniqueId) {
+      return ArchiveElement.getCrc(myArtifact, mySize, uniqueId);
+    }
+  }
+
+  /**
+   * @param uniqueId see {@link #ArchiveElement(List, String, Compression, ServiceLocator, String)}, the CRC is cached if not null
+   */
+  private static long getCrc(@NotNull final ArtifactTreeElement artifact, final long size, @Nullable final String uniqueId) {
+    if (uniqueId == null) {
+      try {
+        return computeCrc(artifact);
+      } catch (IOException e) {
+        throw new OperationException("Error reading artifact '" + artifact.getFullName() + "': " + e.toString(), e);
+      }
+    }
+    final String key = uniqueId + "|" + artifact.getFullName() + "|" + size + "|" + getLastModified(artifact);
+    try {
+      return ourCrcCache.get(key, () -> computeCrc(artifact));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw new OperationException("Error reading artifact '" + artifact.getFullName() + "': " + cause.toString(), (Exception)cause);
+    }
+  }
+
+  private static long computeCrc(@NotNull final ArtifactTreeElement artifact) throws IOException {
+    final InputStream stream;
+    try {
+      stream = artifact.getInputStream();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e.toString(), e);
+    }
+    try {
+      final CRC32 crc = new CRC32();
+      final byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = stream.read(buffer)) >= 0) {
+        crc.update(buffer, 0, read);
+      }
+      return crc.getValue();
+    } finally {
+      FileUtil.close(stream);
+    }
+  }
+
+  private static class PreparedEntry {
+    @NotNull private final ArtifactTreeElement myArtifact;
+    @Nullable private byte[] myData;
+    private int myDataLength;
+    private long myCrc;
+    private long mySize;
+    @Nullable private Exception myError;
+
+    PreparedEntry(@NotNull final ArtifactTreeElement artifact) {
+      myArtifact = artifact;
+    }
+  }
+
+  private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+    ExposedByteArrayOutputStream(final int size) {
+      super(size);
+    }
+
+    @NotNull
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
   @NotNull
   public InputStream getInputStream() throws IllegalStateException, IOException, BrowserException {
     throw new IllegalStateException("Operation is not supported");
   }
 
   public long getSize() throws IllegalStateException {
-    return -1;
+    final StoredArchiveLayout storedLayout = getStoredLayout();
+    return storedLayout != null ? storedLayout.myTotalSize : -1;
   }
 
   @NotNull
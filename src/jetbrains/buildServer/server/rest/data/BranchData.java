@@ -16,9 +16,7 @@
 
 package jetbrains.buildServer.server.rest.data;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 import jetbrains.buildServer.ServiceLocator;
 import jetbrains.buildServer.server.rest.errors.OperationException;
 import jetbrains.buildServer.server.rest.model.PagerData;
@@ -89,6 +87,8 @@ public abstract class BranchData implements Branch {
       @NotNull
       @Override
       public PagedSearchResult<BuildPromotion> getBuilds(@Nullable final String locator) {
+        final PagedSearchResult<BuildPromotion> prefetchedBuilds = getPrefetchedBuilds(locator);
+        if (prefetchedBuilds != null) return prefetchedBuilds;
         BuildPromotionFinder buildPromotionFinder = serviceLocator.getSingletonService(BuildPromotionFinder.class);
         return buildPromotionFinder.getItems(Locator.setDimensionIfNotPresent(
           BuildPromotionFinder.getLocator(getBuildType(), branch, locator), PagerData.COUNT, String.valueOf(1)));
@@ -153,6 +153,74 @@ public abstract class BranchData implements Branch {
     };
   }
 
+  /**
+   * Finds the latest build matching "buildsLocator" for all the branches at once: the builds of each build type are searched once instead of a search per branch.
+   * The found builds are then returned by {@link #getBuilds(String)} for the same locator. Branches not resolved this way are still searched separately.
+   */
+  public static void prefetchLatestBuilds(@NotNull final List<BranchData> branches, @Nullable final String buildsLocator, @NotNull final ServiceLocator serviceLocator) {
+    if (branches.size() < 2 || !isLatestBuildLocator(buildsLocator) || !TeamCityProperties.getBooleanOrTrue("rest.beans.branches.prefetchBuilds")) return;
+
+    final Map<SBuildType, Map<String, List<BranchData>>> branchesByBuildType = new LinkedHashMap<>();
+    for (BranchData branch : branches) {
+      final SBuildType buildType = branch.getBuildType();
+      if (buildType == null || branch.getPrefetchedBuilds(buildsLocator) != null) continue;
+      branchesByBuildType.computeIfAbsent(buildType, k -> new HashMap<>()).computeIfAbsent(getBranchKey(branch.isDefaultBranch(), branch.getName()), k -> new ArrayList<>()).add(branch);
+    }
+
+    final int lookupLimit = TeamCityProperties.getInteger("rest.beans.branches.prefetchBuilds.lookupLimit", 5000);
+    final BuildPromotionFinder buildPromotionFinder = serviceLocator.getSingletonService(BuildPromotionFinder.class);
+    for (Map.Entry<SBuildType, Map<String, List<BranchData>>> entry : branchesByBuildType.entrySet()) {
+      final Map<String, List<BranchData>> unresolved = entry.getValue();
+      if (unresolved.size() < 2) continue; //nothing to save
+
+      String locator = BuildPromotionFinder.getLocator(entry.getKey(), null, buildsLocator);
+      locator = Locator.setDimension(locator, BuildPromotionFinder.BRANCH, Locator.getStringLocator(BranchFinder.DEFAULT, "any"));
+      locator = Locator.setDimension(locator, PagerData.COUNT, lookupLimit);
+      locator = Locator.setDimension(locator, FinderImpl.DIMENSION_LOOKUP_LIMIT, lookupLimit);
+      final int[] matchedCount = new int[1];
+      final PagedSearchResult<BuildPromotion> result = buildPromotionFinder.processItems(locator, build -> {
+        matchedCount[0]++;
+        final BranchData buildBranch = fromBuild(build);
+        //the same as the branch is matched by BranchFinder.getLocator(branch): by the display name of the build's branch
+        final List<BranchData> resolved = unresolved.remove(getBranchKey(buildBranch.isDefaultBranch(), buildBranch.getDisplayName()));
+        if (resolved != null) {
+          resolved.forEach(branch -> branch.setPrefetchedBuilds(buildsLocator, Collections.singletonList(build)));
+        }
+        return !unresolved.isEmpty();
+      });
+
+      if (!unresolved.isEmpty() && !result.myLookupLimitReached && matchedCount[0] < lookupLimit) {
+        //all the matching builds are processed: the rest of the branches have no builds
+        unresolved.values().forEach(list -> list.forEach(branch -> branch.setPrefetchedBuilds(buildsLocator, Collections.emptyList())));
+      }
+    }
+  }
+
+  /**
+   * @return true if the locator finds the latest build with filtering only, so that it can be used for all the branches at once
+   */
+  private static boolean isLatestBuildLocator(@Nullable final String buildsLocator) {
+    if (buildsLocator == null) return false;
+    final Locator locator = Locator.createPotentiallyEmptyLocator(buildsLocator);
+    if (locator.isSingleValue()) return false;
+    for (String dimension : locator.getDefinedDimensions()) {
+      if (!LATEST_BUILD_FILTERING_DIMENSIONS.contains(dimension)) return false;
+    }
+    final String count = locator.lookupSingleDimensionValue(PagerData.COUNT);
+    return count == null || "1".equals(count);
+  }
+
+  private static final Set<String> LATEST_BUILD_FILTERING_DIMENSIONS = new HashSet<>(Arrays.asList(
+    PagerData.COUNT, BuildPromotionFinder.STATE, BuildPromotionFinder.STATUS, BuildPromotionFinder.RUNNING, BuildPromotionFinder.CANCELED, BuildPromotionFinder.FAILED_TO_START,
+    BuildPromotionFinder.PERSONAL, BuildPromotionFinder.PINNED, BuildPromotionFinder.TAG, BuildPromotionFinder.PROPERTY, BuildPromotionFinder.AGENT, BuildPromotionFinder.AGENT_NAME,
+    BuildPromotionFinder.USER, BuildPromotionFinder.COMPOSITE, BuildPromotionFinder.HANGING, BuildPromotionFinder.DEFAULT_FILTERING,
+    BuildPromotionFinder.QUEUED_TIME, BuildPromotionFinder.STARTED_TIME, BuildPromotionFinder.FINISHED_TIME, BuildPromotionFinder.SINCE_DATE, BuildPromotionFinder.UNTIL_DATE));
+
+  @NotNull
+  private static String getBranchKey(final boolean isDefault, @NotNull final String name) {
+    return isDefault ? Branch.DEFAULT_BRANCH_NAME : name;
+  }
+
   public static boolean isBranched(@NotNull BranchData d) {
     return NOT_BRANCHED_BUILD != d;
   }
@@ -178,6 +246,8 @@ public abstract class BranchData implements Branch {
   }
 
   @NotNull private final String myBranchName;
+  @Nullable private String myPrefetchedBuildsLocator;
+  @Nullable private PagedSearchResult<BuildPromotion> myPrefetchedBuilds;
 
   public BranchData(@NotNull final String branchName) {
     myBranchName = branchName;
@@ -246,6 +316,16 @@ public abstract class BranchData implements Branch {
     return false;
   }
 
+  @Nullable
+  protected PagedSearchResult<BuildPromotion> getPrefetchedBuilds(@Nullable final String locator) {
+    return myPrefetchedBuilds != null && Objects.equals(myPrefetchedBuildsLocator, locator) ? myPrefetchedBuilds : null;
+  }
+
+  private void setPrefetchedBuilds(@Nullable final String locator, @NotNull final List<BuildPromotion> builds) {
+    myPrefetchedBuildsLocator = locator;
+    myPrefetchedBuilds = new PagedSearchResult<>(builds, null, 1);
+  }
+
   private static class MergingBranchData extends BranchData {
     private final List<BranchData> myBranches = new ArrayList<>();
     private @NotNull final String myName;
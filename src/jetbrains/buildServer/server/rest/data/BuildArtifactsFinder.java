@@ -353,6 +353,32 @@ public class BuildArtifactsFinder extends AbstractFinder<ArtifactTreeElement> {
     return new BuildHoldingElement(holder.getArtifact(), buildPromotion);
   }
 
+  /**
+   * @return the file on the local file system holding the element's content as is or null if there is no such file
+   *         (e.g. the element is a directory, an entry inside an archive or the artifact is not stored on the server's disk)
+   */
+  @Nullable
+  public static File getLocalFile(@NotNull final Element element) {
+    if (!element.isLeaf() || !element.isContentAvailable()) {
+      return null;
+    }
+    File result = null;
+    if (element instanceof FileSystemBrowser.FileElement) {
+      result = ((FileSystemBrowser.FileElement)element).getFile();
+    } else if (element instanceof BuildHoldingElement) {
+      final BuildHoldingElement buildHoldingElement = (BuildHoldingElement)element;
+      final String relativePath = buildHoldingElement.getBuildArtifact().getRelativePath();
+      if (relativePath.contains("!/")) {
+        return null; //inside archive
+      }
+      result = new File(buildHoldingElement.getBuildPromotion().getArtifactsDirectory(), relativePath);
+    }
+    if (result == null || !result.isFile() || result.length() != element.getSize()) {
+      return null;
+    }
+    return result;
+  }
+
   @Nullable
   private static Element getSingleItemByPatternPath(final @NotNull String pathWithPatterns, final @NotNull Element root, final @NotNull Browser browser,
                                                     final @NotNull ServiceLocator serviceLocator) {
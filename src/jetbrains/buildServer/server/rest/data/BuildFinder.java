@@ -188,6 +188,15 @@ public class BuildFinder {
     return new PagedSearchResult<BuildPromotion>(toBuildPromotions(getBuilds(buildsFilter)), buildsFilter.getStart(), buildsFilter.getCount());
   }
 
+  /**
+   * @see BuildPromotionFinder#getBuildPromotionsBatched(Collection, String)
+   */
+  @Nullable
+  public Map<String, List<BuildPromotion>> getBuildsBatched(@NotNull final Collection<SBuildType> buildTypes, @NotNull final String locatorText) {
+    if (TeamCityProperties.getBoolean(LEGACY_BUILDS_FILTERING_FORCED)) return null;
+    return myBuildPromotionFinder.getBuildPromotionsBatched(buildTypes, locatorText);
+  }
+
   private boolean useByPromotionFiltering(@NotNull final Locator locator) {
     final Boolean byPromotion = locator.getSingleDimensionValueAsBoolean(BuildPromotionFinder.BY_PROMOTION, !TeamCityProperties.getBoolean(LEGACY_BUILDS_FILTERING));
     return byPromotion != null && byPromotion;
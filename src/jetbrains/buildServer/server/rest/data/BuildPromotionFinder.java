@@ -38,6 +38,7 @@ import jetbrains.buildServer.server.rest.model.Util;
 import jetbrains.buildServer.server.rest.model.agent.Agent;
 import jetbrains.buildServer.server.rest.model.build.Build;
 import jetbrains.buildServer.server.rest.request.Constants;
+import jetbrains.buildServer.server.rest.util.ParallelProcessing;
 import jetbrains.buildServer.server.rest.util.StreamUtil;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.auth.AccessDeniedException;
@@ -124,6 +125,11 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
   public static final String REVISION = "revision"; /*experimental*/
 
   protected static final String STROB_BUILD_LOCATOR = "locator";
+  /**
+   * Dimensions which are processed the same way for any build type, see {@link #getBuildPromotionsBatched(Collection, String)}
+   */
+  private static final Set<String> BATCHED_SEARCH_DIMENSIONS = new HashSet<>(Arrays.asList(PagerData.COUNT, DIMENSION_LOOKUP_LIMIT, STATE, RUNNING, BRANCH, STATUS, PERSONAL,
+                                                                                           CANCELED, FAILED_TO_START, PINNED, DEFAULT_FILTERING));
   public static final BuildPromotionComparator BUILD_PROMOTIONS_COMPARATOR = new BuildPromotionComparator();
   public static final SnapshotDepsTraverser SNAPSHOT_DEPENDENCIES_TRAVERSER = new SnapshotDepsTraverser();
   private final Finder<TriggeredBy> myTriggerByFinder;
@@ -140,6 +146,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
   private final MetadataStorageEx myMetadataStorage;
   private final TimeCondition myTimeCondition;
   private final PermissionChecker myPermissionChecker;
+  @NotNull private GraphFinder.Traverser<BuildPromotion> mySnapshotDependenciesTraverser = SNAPSHOT_DEPENDENCIES_TRAVERSER;
   @NotNull private final ServiceLocator myServiceLocator;
 
   @NotNull
@@ -280,7 +287,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
   @Override
   public ItemFilter<BuildPromotion> getFilter(@NotNull final Locator locator) {
 
-    final MultiCheckerFilter<BuildPromotion> result = new MultiCheckerFilter<BuildPromotion>();
+    final MultiCheckerFilter<BuildPromotion> result = new MultiCheckerFilter<BuildPromotion>("builds");
 
     //checking permissions to view - workaround for TW-45544
     result.add(item -> {
@@ -292,12 +299,13 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       }
     });
 
+    //all the checkers below can be reordered: each of them handles promotions in any state and does not rely on another checker
     if (locator.isSingleValue()) {
       try {
         long foundPromotionId = getBuildPromotionById(locator.getSingleValueAsLong(), myBuildPromotionManager, myBuildsManager).getId();
-        result.add(item -> foundPromotionId == item.getId());
+        result.addIndependent("id", MultiCheckerFilter.COST_TRIVIAL, item -> foundPromotionId == item.getId());
       } catch (NotFoundException e) {
-        result.add(item -> false);
+        result.addIndependent("id", MultiCheckerFilter.COST_TRIVIAL, item -> false);
       }
     }
 
@@ -313,38 +321,38 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     if (id != null) {
       try {
         long foundPromotionId = getBuildPromotionById(id, myBuildPromotionManager, myBuildsManager).getId();
-        result.add(item -> foundPromotionId == item.getId());
+        result.addIndependent("id", MultiCheckerFilter.COST_TRIVIAL, item -> foundPromotionId == item.getId());
       } catch (NotFoundException e) {
-        result.add(item -> false);
+        result.addIndependent("id", MultiCheckerFilter.COST_TRIVIAL, item -> false);
       }
     }
     final Long promotionId = locator.getSingleDimensionValueAsLong(PROMOTION_ID);
     if (promotionId != null) {
       try {
         long foundPromotionId = BuildFinder.getBuildPromotion(promotionId, myBuildPromotionManager).getId();
-        result.add(item -> foundPromotionId == item.getId());
+        result.addIndependent("promotionId", MultiCheckerFilter.COST_TRIVIAL, item -> foundPromotionId == item.getId());
       } catch (NotFoundException e) {
-        result.add(item -> false);
+        result.addIndependent("promotionId", MultiCheckerFilter.COST_TRIVIAL, item -> false);
       }
     }
     final Long promotionIdAlias = locator.getSingleDimensionValueAsLong(PROMOTION_ID_ALIAS);
     if (promotionIdAlias != null) {
       try {
         long foundPromotionId = BuildFinder.getBuildPromotion(promotionIdAlias, myBuildPromotionManager).getId();
-        result.add(item -> foundPromotionId == item.getId());
+        result.addIndependent("promotionId", MultiCheckerFilter.COST_TRIVIAL, item -> foundPromotionId == item.getId());
       } catch (NotFoundException e) {
-        result.add(item -> false);
+        result.addIndependent("promotionId", MultiCheckerFilter.COST_TRIVIAL, item -> false);
       }
     }
     final Long buildId = locator.getSingleDimensionValueAsLong(BUILD_ID);
     if (buildId != null) {
-      result.add(item -> buildId.equals(item.getAssociatedBuildId()));
+      result.addIndependent("buildId", MultiCheckerFilter.COST_TRIVIAL, item -> buildId.equals(item.getAssociatedBuildId()));
     }
 
     Locator stateLocator = getStateLocator(locator);
 
     if (!isStateIncluded(stateLocator, STATE_QUEUED)) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("state.queued", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           return item.getQueuedBuild() == null;
         }
@@ -352,7 +360,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     }
 
     if (!isStateIncluded(stateLocator, STATE_RUNNING)) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("state.running", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           final SBuild associatedBuild = item.getAssociatedBuild();
           return associatedBuild == null || associatedBuild.isFinished();
@@ -361,7 +369,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     }
 
     if (!isStateIncluded(stateLocator, STATE_FINISHED)) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("state.finished", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           final SBuild associatedBuild = item.getAssociatedBuild();
           return associatedBuild == null || !associatedBuild.isFinished();
@@ -371,13 +379,13 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Boolean composite = locator.getSingleDimensionValueAsBoolean(COMPOSITE);
     if (composite != null) {
-      result.add(item -> FilterUtil.isIncludedByBooleanFilter(composite, item.isCompositeBuild()));
+      result.addIndependent("composite", MultiCheckerFilter.COST_TRIVIAL, item -> FilterUtil.isIncludedByBooleanFilter(composite, item.isCompositeBuild()));
     }
 
     if (locator.isUnused(PROJECT)) {
       SProject project = getProjectFromDimension(locator, PROJECT);
       if (project != null) {
-        result.add(item -> {
+        result.addIndependent("project", MultiCheckerFilter.COST_LOOKUP, item -> {
           final SBuildType buildType = item.getBuildType();
           return buildType != null && project.equals(buildType.getProject());
         });
@@ -387,7 +395,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     if (locator.isUnused(AFFECTED_PROJECT)) {
       SProject affectedProject = getProjectFromDimension(locator, AFFECTED_PROJECT);
       if (affectedProject != null && !affectedProject.isRootProject()) {
-        result.add(item -> {
+        result.addIndependent("affectedProject", MultiCheckerFilter.COST_LOOKUP, item -> {
           final SBuildType buildType = item.getBuildType();
           return buildType != null && ProjectFinder.isSameOrParent(affectedProject, buildType.getProject());
         });
@@ -401,7 +409,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         if (buildTypes.isEmpty()) {
           throw new NotFoundException("No build types found for locator '" + buildTypeLocator + "'");
         }
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("buildType", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return buildTypes.contains(item.getParentBuildType());
           }  //todo: use build types Filter instead
@@ -424,7 +432,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         Set<String> branchNames = getBranchNamesSet(branches.myEntries);
         Set<String> branchDisplayNames = getBranchDisplayNamesSet(branches.myEntries);
         boolean defaultBranchIncluded = branches.myEntries.stream().anyMatch(Branch::isDefaultBranch);
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("branch", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             final Branch buildBranch = BranchData.fromBuild(item);
             return (defaultBranchIncluded && buildBranch.isDefaultBranch()) || branchNames.contains(buildBranch.getName()) || branchDisplayNames.contains(buildBranch.getDisplayName());
@@ -441,7 +449,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
                                         " create filter: " + locatorException.getMessage(), locatorException);
         }
         if (!branchFilterDetails.isAnyBranch()) {
-          result.add(new FilterConditionChecker<BuildPromotion>() {
+          result.addIndependent("branch", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
             public boolean isIncluded(@NotNull final BuildPromotion item) {
               return branchFilterDetails.isIncluded(item);
             }
@@ -452,14 +460,14 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Boolean branched = locator.getSingleDimensionValueAsBoolean(BRANCHED);
     if (branched != null) {
-      result.add(item -> FilterUtil.isIncludedByBooleanFilter(branched, item.getBranch() != null));
+      result.addIndependent("branched", MultiCheckerFilter.COST_TRIVIAL, item -> FilterUtil.isIncludedByBooleanFilter(branched, item.getBranch() != null));
     }
 
     if (locator.isUnused(AGENT)) {
       final String agentLocator = locator.getSingleDimensionValue(AGENT);
       if (agentLocator != null) {
         Set<Integer> agentIds = myAgentFinder.getItemsNotEmpty(agentLocator).myEntries.stream().map(agent -> agent.getId()).filter(i -> i != Agent.UNKNOWN_AGENT_ID).collect(Collectors.toSet());
-        result.add(item -> {
+        result.addIndependent("agent", MultiCheckerFilter.COST_LOOKUP, item -> {
           final SQueuedBuild queuedBuild = item.getQueuedBuild(); //for queued build using compatible agents
           if (queuedBuild != null) {
             return queuedBuild.getCanRunOnAgents().stream().anyMatch(agent -> agentIds.contains(agent.getId()));
@@ -479,7 +487,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     if (tags != null) {
       final List<String> tagsList = Arrays.asList(tags.split(","));
       if (tagsList.size() > 0) {
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("tags", MultiCheckerFilter.COST_DATA_LOADING, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return item.getTags().containsAll(tagsList);
           }
@@ -491,7 +499,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     if (!tag.isEmpty()) {
       if (tag.size() == 1 && tag.get(0).startsWith("format:extended")) { //pre-9.1 compatibility
         //todo: log this?
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("tag", MultiCheckerFilter.COST_DATA_LOADING, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             try {
               return isTagsMatchLocator(item.getTags(), new Locator(tag.get(0)));
@@ -502,7 +510,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         });
       } else {
         for (String singleTag : tag) {
-          result.add(new FilterConditionChecker<BuildPromotion>() {
+          result.addIndependent("tag", MultiCheckerFilter.COST_DATA_LOADING, new FilterConditionChecker<BuildPromotion>() {
             public boolean isIncluded(@NotNull final BuildPromotion item) {
               return TagFinder.isIncluded(item, singleTag, myUserFinder);
             }
@@ -514,7 +522,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     final String compatibleAagentLocator = locator.getSingleDimensionValue(COMPATIBLE_AGENT); //experimental, only for queued builds
     if (compatibleAagentLocator != null) {
       final SBuildAgent agent = myAgentFinder.getItem(compatibleAagentLocator);
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("compatibleAgent", MultiCheckerFilter.COST_HEAVY, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           return myAgentFinder.canActuallyRun(agent, item);
         }
@@ -523,7 +531,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Long compatibleAgentsCount = locator.getSingleDimensionValueAsLong(COMPATIBLE_AGENTS_COUNT); //experimental, only for queued builds
     if (compatibleAgentsCount != null) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("compatibleAgentsCount", MultiCheckerFilter.COST_HEAVY, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           long count = 0;
           for (SBuildAgent agent : myAgentFinder.getItems(null).myEntries) { //or should process unauthorized as well?
@@ -537,7 +545,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Boolean personal = locator.getSingleDimensionValueAsBoolean(PERSONAL);
     if (personal != null) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("personal", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           return FilterUtil.isIncludedByBooleanFilter(personal, item.isPersonal());
         }
@@ -546,7 +554,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Boolean history = locator.getSingleDimensionValueAsBoolean(HISTORY);
     if (history != null) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("history", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           return FilterUtil.isIncludedByBooleanFilter(history, item.isOutOfChangesSequence());
         }
@@ -556,7 +564,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     final String userDimension = locator.getSingleDimensionValue(USER);
     if (userDimension != null) {
       final SUser user = myUserFinder.getItem(userDimension);
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("user", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           SUser owner = item.getOwner();
           if (owner != null) {
@@ -572,13 +580,13 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     final String triggeredDimension = locator.getSingleDimensionValue(TRIGGERED);
     if (triggeredDimension != null) {
       final ItemFilter<TriggeredBy> filter = myTriggerByFinder.getFilter(triggeredDimension);
-      result.add(item -> Util.resolveNull(getTriggeredBy(item), filter::isIncluded, false));
+      result.addIndependent("triggered", MultiCheckerFilter.COST_LOOKUP, item -> Util.resolveNull(getTriggeredBy(item), filter::isIncluded, false));
     }
 
     final List<String> properties = locator.getDimensionValue(PROPERTY);
     if (!properties.isEmpty()) {
       final Matcher<ParametersProvider> parameterCondition = ParameterCondition.create(properties);
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("property", MultiCheckerFilter.COST_HEAVY, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           if (!Build.canViewRuntimeData(myPermissionChecker, item)) return false;
           //does not correspond to Build.getProperties() which includes less parameters
@@ -591,7 +599,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       final String snapshotDepDimension = locator.getSingleDimensionValue(SNAPSHOT_DEP);
       if (snapshotDepDimension != null) {
         final Set<BuildPromotion> snapshotRelatedBuilds = new HashSet<>(getSnapshotRelatedBuilds(snapshotDepDimension));
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("snapshotDependency", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return snapshotRelatedBuilds.contains(item);
           }
@@ -603,7 +611,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       final String artifactDepDimension = locator.getSingleDimensionValue(ARTIFACT_DEP);
       if (artifactDepDimension != null) {
         final Set<BuildPromotion> artifactRelatedBuilds = new HashSet<>(getArtifactRelatedBuilds(artifactDepDimension, locator));
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("artifactDependency", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return artifactRelatedBuilds.contains(item);
           }
@@ -615,7 +623,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       final String equivalent = locator.getSingleDimensionValue(EQUIVALENT);
       if (equivalent != null) {
         final Set<BuildPromotion> filter = new HashSet<BuildPromotion>(((BuildPromotionEx)getItem(equivalent)).getStartedEquivalentPromotions(-1));
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("equivalent", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return filter.contains(item);
           }
@@ -632,7 +640,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
           BuildMetadataEntry metadataEntry = metadataEntries.next();
           buildIds.add(metadataEntry.getBuildId());
         }
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("metadata", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             if (!Build.canViewRuntimeData(myPermissionChecker, item)) return false;
             return buildIds.contains(item.getAssociatedBuildId());
@@ -646,7 +654,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       if (graphLocator != null) {
         final GraphFinder<BuildPromotion> graphFinder = new BuildPromotionOrderedFinder(BuildPromotionFinder.this);
         final Set<BuildPromotion> filter = new HashSet<BuildPromotion>(graphFinder.getItems(graphLocator).myEntries);
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("ordered", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return filter.contains(item);
           }
@@ -664,7 +672,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         if (queuedBuild != null) {
           //compare queued builds by id (triggering sequence)
           final long buildPromotionId = getBuildId(sinceBuildPromotion);
-          result.add(new FilterConditionChecker<BuildPromotion>() {
+          result.addIndependent("sinceBuild", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
             public boolean isIncluded(@NotNull final BuildPromotion item) {
               return buildPromotionId < getBuildId(item);
             }
@@ -674,7 +682,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
           final SBuild limitingBuild = sinceBuildPromotion.getAssociatedBuild();
           if (limitingBuild != null) {
             final Date startDate = limitingBuild.getStartDate();
-            result.add(new FilterConditionChecker<BuildPromotion>() {
+            result.addIndependent("sinceBuild", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
               public boolean isIncluded(@NotNull final BuildPromotion item) {
                 final SBuild build = item.getAssociatedBuild();
                 if (build == null) return true;
@@ -688,7 +696,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         //build not found by sinceBuild locator, extract id ad filter using it
         sinceBuildId = getBuildId(sinceBuildDimension);
         final long sinceBuildIdFinal = sinceBuildId;
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("sinceBuild", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return sinceBuildIdFinal < getBuildId(item);
           }
@@ -704,7 +712,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         if (queuedBuild != null) {
           //compare queued builds by id (triggering sequence)
           final long buildPromotionId = getBuildId(untilBuildPromotion);
-          result.add(new FilterConditionChecker<BuildPromotion>() {
+          result.addIndependent("untilBuild", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
             public boolean isIncluded(@NotNull final BuildPromotion item) {
               return !(buildPromotionId < getBuildId(item));
             }
@@ -714,7 +722,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
           final SBuild limitingBuild = untilBuildPromotion.getAssociatedBuild();
           if (limitingBuild != null) {
             final Date startDate = limitingBuild.getStartDate();
-            result.add(new FilterConditionChecker<BuildPromotion>() {
+            result.addIndependent("untilBuild", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
               public boolean isIncluded(@NotNull final BuildPromotion item) {
                 final SBuild build = item.getAssociatedBuild();
                 return build == null || !startDate.before(build.getStartDate());
@@ -725,7 +733,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       } catch (NotFoundException e) {
         //build not found by sinceBuild locator, extract id ad filter using it
         final long untilBuildId = getBuildId(untilBuild);
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("untilBuild", MultiCheckerFilter.COST_TRIVIAL, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             return !(untilBuildId < getBuildId(item));
           }
@@ -735,27 +743,27 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     TimeCondition.FilterAndLimitingDate<BuildPromotion> queuedFiltering =
       myTimeCondition.processTimeConditions(QUEUED_TIME, locator, TimeCondition.QUEUED_BUILD_TIME, TimeCondition.QUEUED_BUILD_TIME);
-    if (queuedFiltering != null) result.add(queuedFiltering.getFilter());
+    if (queuedFiltering != null) result.addIndependent("queuedDate", MultiCheckerFilter.COST_LOOKUP, queuedFiltering.getFilter());
 
     TimeCondition.FilterAndLimitingDate<BuildPromotion> startedFiltering =
       myTimeCondition.processTimeConditions(STARTED_TIME, locator, TimeCondition.STARTED_BUILD_TIME, TimeCondition.STARTED_BUILD_TIME);
     @Nullable Date sinceStartDate = null;
     if (startedFiltering != null) {
-      result.add(startedFiltering.getFilter());
+      result.addIndependent("startDate", MultiCheckerFilter.COST_LOOKUP, startedFiltering.getFilter());
       sinceStartDate = startedFiltering.getLimitingDate();
     }
 
     //todo: add processing cut of based on assumption of max build time (say, a week); for other times as well
     TimeCondition.FilterAndLimitingDate<BuildPromotion> finishFiltering =
       myTimeCondition.processTimeConditions(FINISHED_TIME, locator, TimeCondition.FINISHED_BUILD_TIME, TimeCondition.FINISHED_BUILD_TIME);
-    if (finishFiltering != null) result.add(finishFiltering.getFilter());
+    if (finishFiltering != null) result.addIndependent("finishDate", MultiCheckerFilter.COST_LOOKUP, finishFiltering.getFilter());
 
     final String revisionLocatorText = locator.getSingleDimensionValue(REVISION);
     if (revisionLocatorText != null) {
       final Locator revisionLocator = new Locator(revisionLocatorText, "version", "internalVersion", "vcsRoot", Locator.LOCATOR_SINGLE_VALUE_UNUSED_NAME);
       final String revision = revisionLocator.getSingleValue();
       if (revision != null) {
-        result.add(new FilterConditionChecker<BuildPromotion>() {
+        result.addIndependent("revision", MultiCheckerFilter.COST_DATA_LOADING, new FilterConditionChecker<BuildPromotion>() {
           public boolean isIncluded(@NotNull final BuildPromotion item) {
             final List<BuildRevision> buildRevisions = item.getRevisions();
             for (BuildRevision rev : buildRevisions) {
@@ -773,7 +781,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
         final ValueCondition internalVersionCondition = ParameterCondition.createValueCondition(revisionLocator.getSingleDimensionValue("internalVersion"));
         revisionLocator.checkLocatorFullyProcessed();
         if (vcsRoot != null || versionCondition != null || internalVersionCondition != null) {
-          result.add(new FilterConditionChecker<BuildPromotion>() {
+          result.addIndependent("revision", MultiCheckerFilter.COST_DATA_LOADING, new FilterConditionChecker<BuildPromotion>() {
             public boolean isIncluded(@NotNull final BuildPromotion item) {
               final List<BuildRevision> revisions = item.getRevisions();
               for (BuildRevision rev : revisions) {
@@ -792,7 +800,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final MultiCheckerFilter<SBuild> buildFilter = getBuildFilter(locator);
     if (buildFilter.getSubFiltersCount() > 0) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("build", MultiCheckerFilter.COST_DATA_LOADING, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           final SBuild build = item.getAssociatedBuild();
           if (build == null) {
@@ -807,7 +815,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Boolean canceled = locator.getSingleDimensionValueAsBoolean(CANCELED);
     if (canceled != null) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("canceled", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           final SBuild build = item.getAssociatedBuild();
           return FilterUtil.isIncludedByBooleanFilter(canceled, build != null && build.getCanceledInfo() != null);
@@ -817,7 +825,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     final Boolean failedToStart = locator.getSingleDimensionValueAsBoolean(FAILED_TO_START);
     if (failedToStart != null) {
-      result.add(new FilterConditionChecker<BuildPromotion>() {
+      result.addIndependent("failedToStart", MultiCheckerFilter.COST_LOOKUP, new FilterConditionChecker<BuildPromotion>() {
         public boolean isIncluded(@NotNull final BuildPromotion item) {
           final SBuild build = item.getAssociatedBuild();
           return FilterUtil.isIncludedByBooleanFilter(failedToStart, build != null && build.isInternalError());
@@ -1176,11 +1184,18 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
       final String strobBuildLocator = strobLocator.getSingleDimensionValue(STROB_BUILD_LOCATOR);
 
-      final AggregatingItemHolder<BuildPromotion> strobResult = new AggregatingItemHolder<>();
+      final List<String> finalBuildLocators = new ArrayList<>(partialLocators.size());
       for (Locator partialLocator : partialLocators) {
         partialLocator.setDimensionIfNotPresent(PagerData.COUNT, "1");  //limit to single item per strob item by default
-        final String finalBuildLocator = Locator.createLocator(strobBuildLocator, partialLocator, new String[]{}).getStringRepresentation();
-        strobResult.add(getItemHolder(getItems(finalBuildLocator).myEntries));
+        finalBuildLocators.add(Locator.createLocator(strobBuildLocator, partialLocator, new String[]{}).getStringRepresentation());
+      }
+      //sub-queries are independent, so they can be run in parallel; the results are added in the order of the sub-queries to keep the response stable
+      final List<List<BuildPromotion>> partialResults = TeamCityProperties.getBooleanOrTrue("rest.request.builds.strob.parallel")
+                                                        ? ParallelProcessing.map(finalBuildLocators, buildLocator -> getItems(buildLocator).myEntries, myServiceLocator)
+                                                        : finalBuildLocators.stream().map(buildLocator -> getItems(buildLocator).myEntries).collect(Collectors.toList());
+      final AggregatingItemHolder<BuildPromotion> strobResult = new AggregatingItemHolder<>();
+      for (List<BuildPromotion> partialResult : partialResults) {
+        strobResult.add(getItemHolder(partialResult));
       }
       strobLocator.checkLocatorFullyProcessed();
       return strobResult;
@@ -1456,15 +1471,76 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
     stateLocator.checkLocatorFullyProcessed();
 
-    final ItemHolder<BuildPromotion> finishedBuildsFinal = finishedBuilds;
-    return new ItemHolder<BuildPromotion>() {
-      public void process(@NotNull final ItemProcessor<BuildPromotion> processor) {
-        new CollectionItemHolder<BuildPromotion>(result).process(processor);
-        if (finishedBuildsFinal != null) {
-          finishedBuildsFinal.process(processor);
-        }
+    return new BuildsByStateItemHolder(result, finishedBuilds);
+  }
+
+  @Nullable
+  @Override
+  public String getCursorKey(@NotNull final BuildPromotion buildPromotion) {
+    return String.valueOf(buildPromotion.getId());
+  }
+
+  @Override
+  public boolean isCursorSupported() {
+    return true;
+  }
+
+  @Nullable
+  @Override
+  public ItemHolder<BuildPromotion> getPrefilteredItemsAfter(@NotNull final Locator locator, @NotNull final String cursorKey) {
+    final long promotionId;
+    try {
+      promotionId = Long.parseLong(cursorKey);
+    } catch (NumberFormatException e) {
+      throw new BadRequestException("Invalid '" + DIMENSION_CURSOR + "' dimension value: cannot get build promotion id from '" + cursorKey + "'");
+    }
+    if (myBuildPromotionManager.findPromotionById(promotionId) == null) {
+      throw new BadRequestException("The build referenced by '" + DIMENSION_CURSOR + "' dimension is not found. Request the first page again.");
+    }
+    final ItemHolder<BuildPromotion> items = getPrefilteredItems(locator);
+    if (items instanceof BuildsByStateItemHolder) {
+      return ((BuildsByStateItemHolder)items).getItemsAfter(promotionId);
+    }
+    return null;
+  }
+
+  /**
+   * Queued and running builds followed by finished builds from the history
+   */
+  private static class BuildsByStateItemHolder implements ItemHolder<BuildPromotion> {
+    @NotNull private final List<BuildPromotion> myQueuedAndRunning;
+    @Nullable private final ItemHolder<BuildPromotion> myFinished;
+
+    BuildsByStateItemHolder(@NotNull final List<BuildPromotion> queuedAndRunning, @Nullable final ItemHolder<BuildPromotion> finished) {
+      myQueuedAndRunning = queuedAndRunning;
+      myFinished = finished;
+    }
+
+    public void process(@NotNull final ItemProcessor<BuildPromotion> processor) {
+      for (BuildPromotion item : myQueuedAndRunning) {
+        if (!processor.processItem(item)) return;
+      }
+      if (myFinished != null) {
+        myFinished.process(processor);
+      }
+    }
+
+    /**
+     * Does not look into queued and running builds if the cursor build is not there (e.g. already finished).
+     * Finished builds history has no positioning API, so it is iterated by promotion id without filtering up to the cursor build.
+     */
+    @NotNull
+    ItemHolder<BuildPromotion> getItemsAfter(final long promotionId) {
+      for (int i = 0; i < myQueuedAndRunning.size(); i++) {
+        if (myQueuedAndRunning.get(i).getId() == promotionId) {
+          return new BuildsByStateItemHolder(myQueuedAndRunning.subList(i + 1, myQueuedAndRunning.size()), myFinished);
         }
-    };
+      }
+      if (myFinished == null) {
+        return getItemHolder(Collections.emptyList());
+      }
+      return new SkippingItemHolder<>(myFinished, item -> item.getId() == promotionId);
+    }
   }
 
   private HashSet<SBuildType> getBuildTypes(final @NotNull Locator locator) {
@@ -1632,18 +1708,96 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
     return locator.getStringRepresentation();
   }
 
+  /**
+   * Finds builds of each of the build types the same way as {@link #getBuildPromotions(SBuildType, String)} does, but with a single pass over the builds of all the build types.
+   * Each build type gets its own filter and paging while the builds are retrieved once for all of them, so that the pass stops as soon as all the build types got their builds.
+   * The pass is limited by "rest.request.builds.batchedSearch.maxProcessedItemsPerBuildType" property multiplied by the number of build types:
+   * the build types without enough matching builds are better processed one by one then.
+   * @return found builds by internal build type id, only for the build types for which the search was completed.
+   *         null if the locator is not supported for the batched search
+   */
+  @Nullable
+  public Map<String, List<BuildPromotion>> getBuildPromotionsBatched(@NotNull final Collection<SBuildType> buildTypes, @NotNull final String locatorText) {
+    if (buildTypes.isEmpty()) return null;
+    final Map<String, FilterItemProcessor<BuildPromotion>> processors = new HashMap<>();
+    final Map<String, PagingItemFilter<BuildPromotion>> filters = new HashMap<>();
+    final ItemHolder<BuildPromotion> builds;
+    try {
+      final Locator locator = new Locator(locatorText);
+      if (locator.isSingleValue() || !BATCHED_SEARCH_DIMENSIONS.containsAll(locator.getDefinedDimensions())) return null;
+
+      Locator buildTypeLocator = null;
+      for (SBuildType buildType : buildTypes) {
+        buildTypeLocator = createLocator(patchLocatorWithBuildType(buildType, new Locator(locator)), null);
+        setLocatorDefaults(buildTypeLocator);
+        final Long count = getCountNotMarkingAsUsed(buildTypeLocator);
+        final PagingItemFilter<BuildPromotion> filter =
+          new PagingItemFilter<>(getFilter(buildTypeLocator), null, count == null ? null : count.intValue(), getLookupLimit(buildTypeLocator));
+        filters.put(buildType.getInternalId(), filter);
+        processors.put(buildType.getInternalId(), new FilterItemProcessor<>(filter));
+      }
+
+      //all the dimensions except for the build type are the same for all the build types, so the builds of all of them can be retrieved at once
+      final Locator allBuildTypesLocator = new Locator(buildTypeLocator);
+      allBuildTypesLocator.setDimension(BUILD_TYPE, Locator.createEmptyLocator().setDimension(DIMENSION_ITEM, buildTypes.stream().map(BuildTypeFinder::getLocator)
+                                                                                                                            .collect(Collectors.toList())).getStringRepresentation());
+      builds = getPrefilteredItems(allBuildTypesLocator);
+    } catch (LocatorProcessException | BadRequestException | NotFoundException e) {
+      LOG.debug("Cannot process builds of " + buildTypes.size() + " build types by locator \"" + locatorText + "\" at once, will process them one by one: " + e.toString());
+      return null;
+    }
+
+    final long maxProcessedItems = (long)buildTypes.size() * TeamCityProperties.getInteger("rest.request.builds.batchedSearch.maxProcessedItemsPerBuildType", 100);
+    final Set<String> notCompleted = new HashSet<>(processors.keySet());
+    final long[] processedItems = new long[1];
+    builds.process(item -> {
+      if (processedItems[0]++ >= maxProcessedItems) return false;
+      final SBuildType buildType = item.getParentBuildType();
+      if (buildType == null || !notCompleted.contains(buildType.getInternalId())) return true;
+      final FilterItemProcessor<BuildPromotion> processor = processors.get(buildType.getInternalId());
+      final PagingItemFilter<BuildPromotion> filter = filters.get(buildType.getInternalId());
+      if (!processor.processItem(item) ||
+          filter.getCount() != null && processor.getResultCount() >= filter.getCount() ||
+          filter.getLookupLimit() != null && processor.getTotalItemsProcessed() >= filter.getLookupLimit()) {
+        notCompleted.remove(buildType.getInternalId());
+      }
+      return !notCompleted.isEmpty();
+    });
+
+    final boolean allProcessed = processedItems[0] <= maxProcessedItems; //all the builds are processed or all the build types are completed
+    final Map<String, List<BuildPromotion>> result = new HashMap<>();
+    for (Map.Entry<String, FilterItemProcessor<BuildPromotion>> entry : processors.entrySet()) {
+      if (allProcessed || !notCompleted.contains(entry.getKey())) {
+        result.put(entry.getKey(), entry.getValue().getResult());
+      }
+    }
+    return result;
+  }
+
+  //used in tests
+  void setSnapshotDependenciesTraverser(@NotNull final GraphFinder.Traverser<BuildPromotion> snapshotDependenciesTraverser) {
+    mySnapshotDependenciesTraverser = snapshotDependenciesTraverser;
+  }
+
+  /**
+   * The builds are sorted, so all the related builds are retrieved regardless of "count" of the builds locator.
+   * The graph is traversed lazily, so "count" and "lookupLimit" of the dimension itself stop the traversal once enough builds are found.
+   */
   @NotNull
   private List<BuildPromotion> getSnapshotRelatedBuilds(@NotNull final String snapshotDepDimension) {
-    final GraphFinder<BuildPromotion> graphFinder = new GraphFinder<BuildPromotion>(this, SNAPSHOT_DEPENDENCIES_TRAVERSER);
-    final List<BuildPromotion> result = graphFinder.getItems(snapshotDepDimension).myEntries;
+    final GraphFinder<BuildPromotion> graphFinder = new GraphFinder<BuildPromotion>(this, mySnapshotDependenciesTraverser);
+    final List<BuildPromotion> result = new ArrayList<>(graphFinder.getItems(snapshotDepDimension).myEntries);
     Collections.sort(result, BUILD_PROMOTIONS_COMPARATOR);
     return result; //todo: patch branch locator, personal, etc.???
   }
 
+  /**
+   * See {@link #getSnapshotRelatedBuilds(String)}
+   */
   @NotNull
   private List<BuildPromotion> getArtifactRelatedBuilds(@NotNull final String depDimension, @NotNull final Locator locator) {
     final GraphFinder<BuildPromotion> graphFinder = new GraphFinder<BuildPromotion>(this, new ArtifactDepsTraverser(locator));
-    final List<BuildPromotion> result = graphFinder.getItems(depDimension).myEntries;
+    final List<BuildPromotion> result = new ArrayList<>(graphFinder.getItems(depDimension).myEntries);
     Collections.sort(result, BUILD_PROMOTIONS_COMPARATOR);
     return result; //todo: patch branch locator, personal, etc.???
   }
@@ -1806,6 +1960,11 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
       super(finder, new BuildPromotionOrderSupportTraverser());
     }
 
+    @Override
+    protected boolean isLazyTraversalSupported() {
+      return false;
+    }
+
     @Override
     protected void collectLinked(@NotNull final Set<BuildPromotion> result,
                                  @NotNull final Collection<BuildPromotion> toProcess,
@@ -1985,7 +2144,7 @@ public class BuildPromotionFinder extends AbstractFinder<BuildPromotion> {
 
   @Nullable
   private Integer getSnapshotRelatedBuildsCheapCount(@NotNull final String snapshotDepDimension, @Nullable final Integer limitingCount) {
-    final GraphFinder<BuildPromotion> graphFinder = new GraphFinder<BuildPromotion>(this, SNAPSHOT_DEPENDENCIES_TRAVERSER);
+    final GraphFinder<BuildPromotion> graphFinder = new GraphFinder<BuildPromotion>(this, mySnapshotDependenciesTraverser);
     GraphFinder.ParsedLocator<BuildPromotion> parsedLocator = graphFinder.getParsedLocator(snapshotDepDimension);
 
     Integer count = parsedLocator.getCount();
@@ -314,7 +314,7 @@ public class BuildTypeFinder extends AbstractFinder<BuildTypeOrTemplate> {
         public boolean isIncluded(@NotNull final BuildTypeOrTemplate item) {
           if (item.getBuildType() == null) return false;
           for (SBuildAgent agent : agents) {
-            if (AgentFinder.canActuallyRun(agent, item.getBuildType())) return true;
+            if (AgentFinder.canActuallyRun(agent, item.getBuildType(), myServiceLocator)) return true;
           }
           return false;
         }
@@ -328,7 +328,7 @@ public class BuildTypeFinder extends AbstractFinder<BuildTypeOrTemplate> {
           if (item.getBuildType() == null) return false;
           long count = 0;
           for (SBuildAgent agent : myAgentFinder.getItems(null).myEntries) { //or should process unauthorized as well?
-            if (AgentFinder.canActuallyRun(agent, item.getBuildType()) && agent.isRegistered() && agent.isAuthorized() && agent.isEnabled()) count++;
+            if (AgentFinder.canActuallyRun(agent, item.getBuildType(), myServiceLocator) && agent.isRegistered() && agent.isAuthorized() && agent.isEnabled()) count++;
             if (count > compatibleAgentsCount) return false;
           }
           return count == compatibleAgentsCount;
@@ -406,7 +406,7 @@ public class BuildTypeFinder extends AbstractFinder<BuildTypeOrTemplate> {
     final String snapshotDependencies = locator.getSingleDimensionValue(SNAPSHOT_DEPENDENCY);
     if (snapshotDependencies != null) {
       final GraphFinder<BuildTypeOrTemplate> graphFinder = new GraphFinder<BuildTypeOrTemplate>(this, new SnapshotDepsTraverser(myPermissionChecker));
-      final List<BuildTypeOrTemplate> boundingList = graphFinder.getItems(snapshotDependencies).myEntries;
+      final Set<BuildTypeOrTemplate> boundingList = new HashSet<BuildTypeOrTemplate>(graphFinder.getItems(snapshotDependencies).myEntries);
       result.add(new FilterConditionChecker<BuildTypeOrTemplate>() {
         public boolean isIncluded(@NotNull final BuildTypeOrTemplate item) {
           return boundingList.contains(item);
@@ -417,7 +417,7 @@ public class BuildTypeFinder extends AbstractFinder<BuildTypeOrTemplate> {
     final String artifactDependencies = locator.getSingleDimensionValue(ARTIFACT_DEPENDENCY);
     if (artifactDependencies != null) {
       final GraphFinder<BuildTypeOrTemplate> graphFinder = new GraphFinder<BuildTypeOrTemplate>(this, new ArtifactDepsTraverser(myPermissionChecker));
-      final List<BuildTypeOrTemplate> boundingList = graphFinder.getItems(artifactDependencies).myEntries;
+      final Set<BuildTypeOrTemplate> boundingList = new HashSet<BuildTypeOrTemplate>(graphFinder.getItems(artifactDependencies).myEntries);
       result.add(new FilterConditionChecker<BuildTypeOrTemplate>() {
         public boolean isIncluded(@NotNull final BuildTypeOrTemplate item) {
           return boundingList.contains(item);
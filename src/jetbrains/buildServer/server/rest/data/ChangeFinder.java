@@ -20,6 +20,7 @@ import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import jetbrains.buildServer.ServiceLocator;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import jetbrains.buildServer.server.rest.errors.LocatorProcessException;
@@ -514,6 +515,9 @@ public class ChangeFinder extends AbstractFinder<SVcsModification> {
     final String vcsRootInstanceLocator = locator.getSingleDimensionValue(VCS_ROOT_INSTANCE);
     if (vcsRootInstanceLocator != null) {
       final VcsRootInstance vcsRootInstance = myVcsRootInstanceFinder.getItem(vcsRootInstanceLocator);
+      if (isPagedHistoryEnabled()) {
+        return FinderDataBinding.getItemHolder(getPagedChanges(Collections.singletonList(vcsRootInstance), sinceChangeId));
+      }
       if (sinceChangeId != null) {
         return getItemHolder(myVcsModificationHistory.getModificationsInRange(vcsRootInstance, sinceChangeId, null)); //todo: use lookupLimit here or otherwise limit processing
       } else {
@@ -547,10 +551,17 @@ public class ChangeFinder extends AbstractFinder<SVcsModification> {
 
     final String projectLocator = locator.getSingleDimensionValue(PROJECT);
     if (projectLocator != null) {
-      return getItemHolder(getProjectChanges(myVcsModificationHistory, myProjectFinder.getItem(projectLocator), sinceChangeId));
+      final SProject project = myProjectFinder.getItem(projectLocator);
+      if (isPagedHistoryEnabled()) {
+        return FinderDataBinding.getItemHolder(getPagedChanges(project.getVcsRootInstances(), sinceChangeId));
+      }
+      return getItemHolder(getProjectChanges(myVcsModificationHistory, project, sinceChangeId));
     }
 
     if (sinceChangeId != null) {
+      if (isPagedHistoryEnabled()) {
+        return FinderDataBinding.getItemHolder(getPagedChanges(Collections.singletonList(null), sinceChangeId));
+      }
       return getItemHolder(myVcsModificationHistory.getModificationsInRange(null, sinceChangeId, null));  //todo: use lookupLimit here or otherwise limit processing
     }
 
@@ -741,6 +752,42 @@ public class ChangeFinder extends AbstractFinder<SVcsModification> {
     }
   }
 
+  private static boolean isPagedHistoryEnabled() {
+    return TeamCityProperties.getBooleanOrTrue("rest.request.changes.pagedHistory");
+  }
+
+  /**
+   * Loads the changes of each root by id ranges, newest first, and merges them by id.
+   * As the result is a lazy stream, only the ranges necessary to get the items requested (up to "count" or "lookupLimit") are loaded.
+   * A root without recent changes is searched only down to about the oldest change returned.
+   * @param roots roots to get the changes of, "null" root means all the roots
+   */
+  @NotNull
+  private Stream<SVcsModification> getPagedChanges(@NotNull final List<VcsRootInstance> roots, @Nullable final Long sinceChangeId) {
+    final Long latestChangeId = getLatestChangeId();
+    if (latestChangeId == null) return Stream.empty();
+    final int pageSize = TeamCityProperties.getInteger("rest.request.changes.pagedHistory.pageSize", 100);
+    final List<DescendingIdRangeIterator<SVcsModification>> rootChanges = new ArrayList<>(roots.size());
+    for (VcsRootInstance root : roots) {
+      rootChanges.add(new DescendingIdRangeIterator<SVcsModification>((fromId, toId) -> myVcsModificationHistory.getModificationsInRange(root, fromId, toId),
+                                                                      SVcsModification::getId, latestChangeId, sinceChangeId != null ? sinceChangeId : -1, pageSize)); //ids are not negative
+    }
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(DescendingIdRangeIterator.merge(rootChanges), Spliterator.ORDERED), false);
+  }
+
+  /**
+   * @return id of a recent change to start paging from, the ranges loaded do not rely on it being the largest id
+   */
+  @Nullable
+  private Long getLatestChangeId() {
+    final Long[] result = new Long[1];
+    ((VcsModificationHistoryEx)myVcsModificationHistory).processModifications(item -> {
+      result[0] = item.getId();
+      return false;
+    });
+    return result[0];
+  }
+
   static private List<SVcsModification> getProjectChanges(@NotNull final VcsModificationHistory vcsHistory,
                                                           @NotNull final SProject project,
                                                           @Nullable final Long sinceChangeId) {
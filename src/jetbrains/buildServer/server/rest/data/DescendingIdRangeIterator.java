@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.*;
+import java.util.function.ToLongFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Iterates over items with increasing ids (like VCS modifications) from the newest to the oldest one, loading the items by id ranges.
+ * The next range is loaded only when all the items of the previous one are consumed.
+ * The size of the range is adjusted to the number of items found, so that sparse ids are processed in a logarithmic number of loads.
+ * Several iterators can be merged with {@link #merge(Collection)} loading the ranges of each iterator only when its items can be the next ones in the result.
+ */
+public class DescendingIdRangeIterator<T> implements Iterator<T> {
+  @NotNull private final RangeLoader<T> myLoader;
+  @NotNull private final ToLongFunction<T> myIdGetter;
+  private final long myLowerBound;
+  private final int myPageSize;
+
+  private long myUpperBound;
+  private boolean myUpperBoundIsOpen = true;
+  private long myRangeSize;
+  @NotNull private List<T> myCurrentPage = Collections.emptyList();
+  private int myCurrentPageIndex;
+
+  /**
+   * @param loader      loads the items within a range of ids
+   * @param idGetter    gets the id of an item
+   * @param startId     an id close to the largest one, the first range has no upper bound and includes the items with ids greater than (startId - pageSize)
+   * @param lowerBound  only the items with ids greater than this one are returned
+   * @param pageSize    the number of items to load at once the range size is adjusted to
+   */
+  public DescendingIdRangeIterator(@NotNull final RangeLoader<T> loader,
+                                   @NotNull final ToLongFunction<T> idGetter,
+                                   final long startId,
+                                   final long lowerBound,
+                                   final int pageSize) {
+    myLoader = loader;
+    myIdGetter = idGetter;
+    myLowerBound = lowerBound;
+    myPageSize = Math.max(1, pageSize);
+    myUpperBound = Math.max(startId, lowerBound);
+    myRangeSize = myPageSize;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!isNextLoaded()) {
+      if (!loadNextRangeIfNeeded()) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    return myCurrentPage.get(myCurrentPageIndex++);
+  }
+
+  /**
+   * Merges the iterators into one returning the items from the newest to the oldest one.
+   * The next range of an iterator is loaded only when the ids in the range can be greater than the ids of the items already loaded by other iterators,
+   * so an iterator without recent items is not searched down to its first item until the items before it are requested.
+   */
+  @NotNull
+  public static <T> Iterator<T> merge(@NotNull final Collection<DescendingIdRangeIterator<T>> iterators) {
+    return new MergingIterator<T>(iterators);
+  }
+
+  private boolean isNextLoaded() {
+    return myCurrentPageIndex < myCurrentPage.size();
+  }
+
+  /**
+   * @return the id of the next item if it is loaded, otherwise the id no remaining item can exceed
+   */
+  private long getNextIdUpperBound() {
+    if (isNextLoaded()) return myIdGetter.applyAsLong(myCurrentPage.get(myCurrentPageIndex));
+    return myUpperBoundIsOpen ? Long.MAX_VALUE : myUpperBound;
+  }
+
+  /**
+   * Loads the next range if all the items loaded are consumed. The range can contain no items.
+   * @return false if there are no more items
+   */
+  private boolean loadNextRangeIfNeeded() {
+    if (isNextLoaded()) return true;
+    if (!myUpperBoundIsOpen && myUpperBound <= myLowerBound) return false;
+    myCurrentPage = loadNextPage();
+    myCurrentPageIndex = 0;
+    return true;
+  }
+
+  @NotNull
+  private List<T> loadNextPage() {
+    final long from = myUpperBound - myLowerBound > myRangeSize ? myUpperBound - myRangeSize : myLowerBound;
+    final long to = myUpperBound;
+    final boolean toIsOpen = myUpperBoundIsOpen;
+
+    //extend the range by one on both sides not to depend on the loader's bounds inclusion, the result is filtered anyway
+    final List<T> result = new ArrayList<>();
+    for (T item : myLoader.load(from == Long.MIN_VALUE ? from : from - 1, toIsOpen || to == Long.MAX_VALUE ? null : to + 1)) {
+      final long id = myIdGetter.applyAsLong(item);
+      if (id > from && (toIsOpen || id <= to)) result.add(item);
+    }
+    result.sort(Comparator.comparingLong(myIdGetter).reversed());
+
+    myUpperBound = from;
+    myUpperBoundIsOpen = false;
+    if (result.size() * 2 < myPageSize) {
+      myRangeSize = myRangeSize > Long.MAX_VALUE / 4 ? myRangeSize : myRangeSize * 2;
+    } else if (result.size() > myPageSize * 2) {
+      myRangeSize = Math.max(1, myRangeSize / 2);
+    }
+    return result;
+  }
+
+  private static class MergingIterator<T> implements Iterator<T> {
+    @NotNull private final PriorityQueue<DescendingIdRangeIterator<T>> myIterators;
+
+    MergingIterator(@NotNull final Collection<DescendingIdRangeIterator<T>> iterators) {
+      myIterators = new PriorityQueue<>(Math.max(1, iterators.size()),
+                                        Comparator.comparingLong((DescendingIdRangeIterator<T> it) -> it.getNextIdUpperBound()).reversed()
+                                                  .thenComparing(it -> !it.isNextLoaded())); //prefer already loaded item of the same id
+      myIterators.addAll(iterators);
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!myIterators.isEmpty()) {
+        final DescendingIdRangeIterator<T> top = myIterators.peek();
+        if (top.isNextLoaded()) return true;
+        // the next item of this iterator might be the greatest one: load a range and compare again
+        myIterators.poll();
+        if (top.loadNextRangeIfNeeded()) {
+          myIterators.add(top);
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      final DescendingIdRangeIterator<T> top = myIterators.poll();
+      final T result = top.next();
+      myIterators.add(top);
+      return result;
+    }
+  }
+
+  public interface RangeLoader<T> {
+    /**
+     * @param fromId the lower bound of the range
+     * @param toId   the upper bound of the range, null means no upper bound
+     * @return items with the ids in the range, in any order. Bounds inclusion is not important: the items outside of the range requested by the iterator are ignored
+     */
+    @NotNull
+    Collection<T> load(long fromId, @Nullable Long toId);
+  }
+}
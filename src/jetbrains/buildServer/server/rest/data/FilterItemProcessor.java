@@ -18,6 +18,7 @@ package jetbrains.buildServer.server.rest.data;
 
 import java.util.ArrayList;
 import jetbrains.buildServer.util.ItemProcessor;
+import org.jetbrains.annotations.Nullable;
 
 /**
 * @author Yegor.Yarko
@@ -28,9 +29,20 @@ public class FilterItemProcessor<T> implements ItemProcessor<T> {
   private long myTotalItemsProcessed = 0;
   private final PagingItemFilter<T> myFilter;
   private final ArrayList<T> myList = new ArrayList<T>();
+  @Nullable private final ItemProcessor<T> myConsumer;
+  private int myResultCount = 0;
+  private boolean myStoppedByConsumer = false;
 
   public FilterItemProcessor(final PagingItemFilter<T> filter) {
+    this(filter, null);
+  }
+
+  /**
+   * @param consumer if specified, matched items are passed to it instead of being collected into the result list
+   */
+  public FilterItemProcessor(final PagingItemFilter<T> filter, @Nullable final ItemProcessor<T> consumer) {
     myFilter = filter;
+    myConsumer = consumer;
   }
 
   public boolean processItem(final T item) {
@@ -46,15 +58,32 @@ public class FilterItemProcessor<T> implements ItemProcessor<T> {
       return true;
     }
     if (myFilter.isIncludedByRange(myCurrentIndex++)) {
-      myList.add(item);
+      myResultCount++;
+      if (myConsumer == null) {
+        myList.add(item);
+      } else if (!myConsumer.processItem(item)) {
+        myStoppedByConsumer = true;
+        return false;
+      }
     }
     return true;
   }
 
+  /**
+   * @return matched items, always empty if consumer is specified
+   */
   public ArrayList<T> getResult() {
     return myList;
   }
 
+  public int getResultCount() {
+    return myResultCount;
+  }
+
+  public boolean isStoppedByConsumer() {
+    return myStoppedByConsumer;
+  }
+
   public long getProcessedItemsCount() {
     return myCurrentIndex;
   }
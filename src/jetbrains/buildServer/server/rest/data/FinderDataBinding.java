@@ -19,6 +19,7 @@ package jetbrains.buildServer.server.rest.data;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import jetbrains.buildServer.server.rest.errors.NotFoundException;
 import jetbrains.buildServer.util.ItemProcessor;
@@ -66,11 +67,40 @@ public interface FinderDataBinding<ITEM> {
      */
     @NotNull
     ItemFilter<ITEM> getFilter();
+
+    /**
+     * Experimental. Same as {@link #getPrefilteredItems()}, but positioned right after the item with the cursor key passed (see {@link FinderDataBinding#getCursorKey(Object)})
+     * Should be implemented when the binding can seek in its prefiltered items cheaper than by iterating over them
+     * @return null if seeking is not supported, in this case prefiltered items are skipped up to the cursor item without filtering
+     */
+    @Nullable
+    default ItemHolder<ITEM> getPrefilteredItemsAfter(@NotNull final String cursorKey) {
+      return null;
+    }
   }
 
   @NotNull
   String getItemLocator(@NotNull final ITEM item);
 
+  /**
+   * Experimental. Returns the key of the item which can be used to continue paging right after it (keyset pagination) instead of "start" dimension.
+   * The key should be unique among the prefiltered items and stay the same while the item exists.
+   * Should be implemented along with {@link #isCursorSupported()}
+   * @return null if continuation cursors are not supported
+   */
+  @Nullable
+  default String getCursorKey(@NotNull final ITEM item) {
+    return null;
+  }
+
+  /**
+   * Experimental.
+   * @return true if {@link #getCursorKey(Object)} returns keys for the items, "cursor" dimension is rejected otherwise
+   */
+  default boolean isCursorSupported() {
+    return false;
+  }
+
   /**
    * Returns new empty set which ensures proper items matching
    * Is used for "unique" dimension processing
@@ -125,6 +155,29 @@ public interface FinderDataBinding<ITEM> {
     }
   }
 
+  /**
+   * Skips all the items up to and including the first item matched by "isCursorItem", passes all the following items to the processor
+   * Skipped items are not filtered, so this is cheaper than paging with "start", still the items are iterated over
+   */
+  static class SkippingItemHolder<P> implements ItemHolder<P> {
+    @NotNull private final ItemHolder<P> myItemHolder;
+    @NotNull private final Predicate<P> myIsCursorItem;
+
+    public SkippingItemHolder(@NotNull final ItemHolder<P> itemHolder, @NotNull final Predicate<P> isCursorItem) {
+      myItemHolder = itemHolder;
+      myIsCursorItem = isCursorItem;
+    }
+
+    public void process(@NotNull final ItemProcessor<P> processor) {
+      boolean[] cursorFound = new boolean[1];
+      myItemHolder.process(item -> {
+        if (cursorFound[0]) return processor.processItem(item);
+        cursorFound[0] = myIsCursorItem.test(item);
+        return true;
+      });
+    }
+  }
+
   /**
    * Works only for P with due hash/equals
    *
@@ -17,8 +17,10 @@
 package jetbrains.buildServer.server.rest.data;
 
 import com.intellij.openapi.diagnostic.Logger;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import jetbrains.buildServer.server.rest.errors.LocatorProcessException;
@@ -44,6 +46,7 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
 
   public static final String DIMENSION_ID = "id";
   public static final String DIMENSION_LOOKUP_LIMIT = "lookupLimit";
+  public static final String DIMENSION_CURSOR = "cursor"; //experimental, opaque value produced by the previous page, see FinderDataBinding.getCursorKey
 
   public static final String LOGIC_OP_OR = "or";
   public static final String LOGIC_OP_AND = "and";
@@ -92,8 +95,8 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
   @Override
   @NotNull
   public ITEM getItem(@Nullable final String locatorText) {
-    return NamedThreadFactory.executeWithNewThreadNameFuncThrow("Using " + getName() + " to get single item for locator \"" + locatorText + "\"",
-                                                         () -> getItem(locatorText, null));
+    return getCachedResult("item:", locatorText, () -> NamedThreadFactory.executeWithNewThreadNameFuncThrow("Using " + getName() + " to get single item for locator \"" + locatorText + "\"",
+                                                                                                   () -> getItem(locatorText, null)));
   }
 
   /**
@@ -103,8 +106,25 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
   @Override
   @NotNull
   public PagedSearchResult<ITEM> getItems(@Nullable final String locatorText) {
-    return NamedThreadFactory.executeWithNewThreadNameFuncThrow("Using " + getName() + " to get items for locator \"" + locatorText + "\"",
-                                                                () -> getItemsByLocator(getLocatorOrNull(locatorText), true));
+    //the result can be shared between the callers within the request, so the entries are exposed read-only
+    return getCachedResult("items:", locatorText, () -> NamedThreadFactory.executeWithNewThreadNameFuncThrow("Using " + getName() + " to get items for locator \"" + locatorText + "\"",
+                                                                                                          () -> getReadOnly(getItemsByLocator(getLocatorOrNull(locatorText), true))));
+  }
+
+  @NotNull
+  private static <T> PagedSearchResult<T> getReadOnly(@NotNull final PagedSearchResult<T> result) {
+    return new PagedSearchResult<>(Collections.unmodifiableList(result.myEntries), result.myActualCount, result.myStart, result.myCount, result.myActuallyProcessedCount,
+                                   result.myLookupLimit, result.myLookupLimitReached, result.getLastProcessedItem(), result.getNextCursor());
+  }
+
+  /**
+   * Nested locators are resolved many times while processing a request (e.g. the same project locator for each build in the response),
+   * so the results are memoized for the current request when the request allows that, see {@link RestContext#getCachedFinderResult(Object, String, Supplier)}
+   */
+  private <T> T getCachedResult(@NotNull final String kind, @Nullable final String locatorText, @NotNull final Supplier<T> calculator) {
+    final RestContext restContext = RestContext.getThreadLocal();
+    if (restContext == null || locatorText == null) return calculator.get();
+    return restContext.getCachedFinderResult(this, kind + locatorText, calculator);
   }
 
   @NotNull
@@ -135,6 +155,18 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
     return getItemsByLocator(getLocatorOrNull(locatorText, locatorDefaults), true);
   }
 
+  /**
+   * Same as {@link #getItems(String)}, but the found items are passed to the "consumer" as soon as they are matched instead of being collected into the result.
+   * Use this to process large result sets without holding all the items in memory.
+   * @param consumer gets the found items in the same order as they would be returned by {@link #getItems(String)}, can return false to stop the search
+   * @returns the search result without entries, but with all the paging details
+   */
+  @NotNull
+  public PagedSearchResult<ITEM> processItems(@Nullable final String locatorText, @NotNull final ItemProcessor<ITEM> consumer) {
+    return NamedThreadFactory.executeWithNewThreadNameFuncThrow("Using " + getName() + " to process items for locator \"" + locatorText + "\"",
+                                                                () -> getItemsByLocator(getLocatorOrNull(locatorText), true, consumer));
+  }
+
 
   @NotNull
   protected Locator createLocator(@Nullable final String locatorText, @Nullable final Locator locatorDefaults) {
@@ -145,6 +177,7 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
     result.addHiddenDimensions(AbstractFinder.DIMENSION_UNIQUE);  //experimental, should actually depend on FinderDataBinding.getContainerSet returning not null
     result.addHiddenDimensions(OPTIONS_REPORT_ERROR_ON_NOTHING_FOUND); //experimental
     result.addHiddenDimensions(CONTEXT_ITEM_DIMENSION_NAME); //experimental, internal
+    result.addHiddenDimensions(DIMENSION_CURSOR); //experimental
     for (String hiddenDimension : myDataBinding.getHiddenDimensions()) {
       result.addHiddenDimensions(hiddenDimension);
     }
@@ -161,6 +194,7 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
     knownDimensions.add(PagerData.START);
     knownDimensions.add(PagerData.COUNT);
     knownDimensions.add(DIMENSION_LOOKUP_LIMIT);
+    knownDimensions.add(DIMENSION_CURSOR);
     knownDimensions.add(OPTIONS_REPORT_ERROR_ON_NOTHING_FOUND);
     knownDimensions.add(CONTEXT_ITEM_DIMENSION_NAME); //experimental, internal
     return knownDimensions.toArray(new String[knownDimensions.size()]);
@@ -207,6 +241,14 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
 
   @NotNull
   private PagedSearchResult<ITEM> getItemsByLocator(@Nullable final Locator originalLocator, final boolean multipleItemsQuery) {
+    return getItemsByLocator(originalLocator, multipleItemsQuery, null);
+  }
+
+  /**
+   * @param consumer if specified, the found items are passed to it instead of being collected into the result (the result entries can still contain some items)
+   */
+  @NotNull
+  private PagedSearchResult<ITEM> getItemsByLocator(@Nullable final Locator originalLocator, final boolean multipleItemsQuery, @Nullable final ItemProcessor<ITEM> consumer) {
     long startTime = System.nanoTime();
     Locator locator;
     if (originalLocator == null) {
@@ -226,7 +268,7 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
 
       //so far do not support additional filtering or other dimensions if context item is used
       locator.checkLocatorFullyProcessed();
-      return new PagedSearchResult<ITEM>(contextObjects, null, null);
+      return passToConsumer(new PagedSearchResult<ITEM>(contextObjects, null, null), consumer);
     }
 
     if (!locator.isEmpty()) {
@@ -272,7 +314,7 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
           }
         }
 
-        return new PagedSearchResult<ITEM>(Collections.singletonList(singleItem), null, null);
+        return passToConsumer(new PagedSearchResult<ITEM>(Collections.singletonList(singleItem), null, null), consumer);
       }
       locator.markAllUnused(); // nothing found - no dimensions should be marked as used then
     }
@@ -280,7 +322,8 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
     PagingItemFilter<ITEM> pagingFilter;
     try {
       FinderDataBinding.LocatorDataBinding<ITEM> locatorDataBinding = getDataBindingWithLogicOpsSupport(locator, myDataBinding);
-      unfilteredItems = locatorDataBinding.getPrefilteredItems();
+      final String cursor = locator.getSingleDimensionValue(DIMENSION_CURSOR);
+      unfilteredItems = cursor == null ? locatorDataBinding.getPrefilteredItems() : getPrefilteredItemsAfter(locatorDataBinding, cursor);
       Set<ITEM> containerSet = myDataBinding.createContainerSet();
       if (containerSet != null) {
         boolean deduplicate = locator.getSingleDimensionValueAsStrictBoolean(DIMENSION_UNIQUE, locator.isAnyPresent(DIMENSION_ITEM));
@@ -304,7 +347,58 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
     }
     locator.checkLocatorFullyProcessed();
     final FinderDataBinding.ItemHolder<ITEM> finalUnfilteredItems = unfilteredItems;
-    return NamedThreadFactory.executeWithNewThreadNameFuncThrow("Filtering items", () -> getItems(pagingFilter, finalUnfilteredItems, locator, startTime));
+    return NamedThreadFactory.executeWithNewThreadNameFuncThrow("Filtering items", () -> getItems(pagingFilter, finalUnfilteredItems, locator, startTime, consumer));
+  }
+
+  @NotNull
+  private PagedSearchResult<ITEM> passToConsumer(@NotNull final PagedSearchResult<ITEM> result, @Nullable final ItemProcessor<ITEM> consumer) {
+    if (consumer != null) {
+      for (ITEM item : result.myEntries) {
+        if (!consumer.processItem(item)) break;
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private FinderDataBinding.ItemHolder<ITEM> getPrefilteredItemsAfter(@NotNull final FinderDataBinding.LocatorDataBinding<ITEM> locatorDataBinding,
+                                                                     @NotNull final String cursor) {
+    if (!myDataBinding.isCursorSupported()) {
+      throw new BadRequestException("Dimension '" + DIMENSION_CURSOR + "' is not supported for " + getName() + ". Use '" + PagerData.START + "' dimension instead.");
+    }
+    final String cursorKey = decodeCursor(cursor);
+    final FinderDataBinding.ItemHolder<ITEM> result = locatorDataBinding.getPrefilteredItemsAfter(cursorKey);
+    if (result != null) return result;
+    return new FinderDataBinding.SkippingItemHolder<>(locatorDataBinding.getPrefilteredItems(), item -> cursorKey.equals(myDataBinding.getCursorKey(item)));
+  }
+
+  @NotNull
+  private String decodeCursor(@NotNull final String cursor) {
+    try {
+      return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Invalid '" + DIMENSION_CURSOR + "' dimension value '" + cursor + "'. Use the value from 'nextHref' of the previous page.", e);
+    }
+  }
+
+  @NotNull
+  private static String encodeCursor(@NotNull final String cursorKey) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(cursorKey.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return cursor to get the next page from, null if no next page is expected or the cursor is not supported
+   */
+  @Nullable
+  private String getNextCursor(@NotNull final PagingItemFilter<ITEM> filter, final int resultSize) {
+    if (!TeamCityProperties.getBooleanOrTrue("rest.page.cursor.enabled")) return null;
+    // last processed item is the last returned one when count is reached or the last checked one when lookupLimit is reached
+    final ITEM lastProcessedItem = filter.getLastProcessedItem();
+    if (lastProcessedItem == null) return null;
+    final boolean nextPageAvailable = filter.getCount() != null && resultSize >= filter.getCount() || filter.isLookupLimitReached();
+    if (!nextPageAvailable) return null;
+    final String cursorKey = myDataBinding.getCursorKey(lastProcessedItem);
+    return cursorKey == null ? null : encodeCursor(cursorKey);
   }
 
   @Nullable
@@ -346,36 +440,38 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
   @NotNull
   private PagedSearchResult<ITEM> getItems(final @NotNull PagingItemFilter<ITEM> filter,
                                            final @NotNull FinderDataBinding.ItemHolder<ITEM> unfilteredItems,
-                                           @NotNull final Locator locator, final long startTime) {
+                                           @NotNull final Locator locator, final long startTime, @Nullable final ItemProcessor<ITEM> consumer) {
     final long filteringStartTime = System.nanoTime();
-    final FilterItemProcessor<ITEM> filterItemProcessor = new FilterItemProcessor<ITEM>(filter);
+    final FilterItemProcessor<ITEM> filterItemProcessor = new FilterItemProcessor<ITEM>(filter, consumer);
     unfilteredItems.process(filterItemProcessor);
     final ArrayList<ITEM> result = filterItemProcessor.getResult();
+    final int resultCount = filterItemProcessor.getResultCount();
     final long finishTime = System.nanoTime();
     final long totalItemsProcessed = filterItemProcessor.getTotalItemsProcessed();
     final long processingTimeMs = TimeUnit.MILLISECONDS.convert(finishTime - startTime, TimeUnit.NANOSECONDS);
+    RestMetrics.registerFinderSearch(getName(), finishTime - startTime, totalItemsProcessed, resultCount, filter.isLookupLimitReached());
     if (totalItemsProcessed >= TeamCityProperties.getLong("rest.finder.processedItemsLogLimit", 1)) {
       final String lookupLimitMessage =
         filter.isLookupLimitReached() ? " (lookupLimit of " + filter.getLookupLimit() + " reached). Last processed item: " + LogUtil.describe(filter.getLastProcessedItem()) : "";
       if (LOG.isDebugEnabled()) {
-        LOG.debug("While processing locator '" + locator + "' by finder " + getName() + ", " + result.size() + " items were matched by the filter from " +
+        LOG.debug("While processing locator '" + locator + "' by finder " + getName() + ", " + resultCount + " items were matched by the filter from " +
                   totalItemsProcessed + " processed in total" + lookupLimitMessage + ", took " + processingTimeMs + " ms (filtering " +
                   TimeUnit.MILLISECONDS.convert(finishTime - filteringStartTime, TimeUnit.NANOSECONDS) + " ms)");
       }
     }
     if (processingTimeMs > TeamCityProperties.getLong("rest.finder.timeWarnLimit", 10000)
         || (processingTimeMs > TeamCityProperties.getLong("rest.finder.minimumTimeWarnLimit", 1000)
-            && ((totalItemsProcessed - result.size()) > TeamCityProperties.getLong("rest.finder.processedAndFilteredItemsWarnLimit", 10000)
+            && ((totalItemsProcessed - resultCount) > TeamCityProperties.getLong("rest.finder.processedAndFilteredItemsWarnLimit", 10000)
                 || totalItemsProcessed > TeamCityProperties.getLong("rest.finder.processedItemsWarnLimit", 100000)))) {
       LOG.info("Server performance can be affected by REST request and finder " + getName() + " with locator '" + locator + "': " +
-               totalItemsProcessed + " items were processed and " + result.size() + " items were returned, took " + TimePrinter
+               totalItemsProcessed + " items were processed and " + resultCount + " items were returned, took " + TimePrinter
                  .createMillisecondsFormatter().formatTime(processingTimeMs));
     }
-    if (result.isEmpty() && isReportErrorOnNothingFound(locator)){
+    if (resultCount == 0 && isReportErrorOnNothingFound(locator)){
       throw new NotFoundException("Nothing is found by " + getLocatorDetailsForMessage(locator) + ".");
     }
-    return new PagedSearchResult<ITEM>(result, filter.getStart(), filter.getCount(), totalItemsProcessed,
-                                       filter.getLookupLimit(), filter.isLookupLimitReached(), filter.getLastProcessedItem());
+    return new PagedSearchResult<ITEM>(result, resultCount, filter.getStart(), filter.getCount(), totalItemsProcessed,
+                                       filter.getLookupLimit(), filter.isLookupLimitReached(), filter.getLastProcessedItem(), getNextCursor(filter, resultCount));
   }
 
   @NotNull
@@ -443,6 +539,19 @@ public class FinderImpl<ITEM> implements Finder<ITEM> {
         }
         return getFilterWithLogicOpsSupport(locator, myLocatorDataBinding);
       }
+
+      @Nullable
+      @Override
+      public FinderDataBinding.ItemHolder<ITEM> getPrefilteredItemsAfter(@NotNull final String cursorKey) {
+        if (!locator.lookupDimensionValue(DIMENSION_ITEM).isEmpty()) {
+          return null;
+        }
+
+        if (myLocatorDataBinding == null) {
+          myLocatorDataBinding = originalDataBinding.getLocatorDataBinding(locator);
+        }
+        return myLocatorDataBinding.getPrefilteredItemsAfter(cursorKey);
+      }
     };
   }
 
@@ -21,6 +21,7 @@ import java.util.*;
 import jetbrains.buildServer.server.rest.errors.OperationException;
 import jetbrains.buildServer.server.rest.model.PagerData;
 import jetbrains.buildServer.util.CollectionsUtil;
+import jetbrains.buildServer.util.ItemProcessor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -80,12 +81,32 @@ public class GraphFinder<T> extends AbstractFinder<T> {
     final List<T> stopItems = getItemsFromDimension(locator, DIMENSION_STOP);
     Long lookupLimit = locator.getSingleDimensionValueAsLong(DIMENSION_LOOKUP_LIMIT, getDefaultLookupLimit());
 
+    if (isLazyTraversalSupported()) {
+      if (toItems.isEmpty()) {
+        if (fromItems.isEmpty()) return getItemHolder(Collections.<T>emptyList());
+        return getTraversingItemHolder(fromItems, join(toItems, stopItems), null, includeOriginal, lookupLimit, myTraverser.getParents(), recursive);
+      }
+      Set<T> meetItems = null;
+      if (!fromItems.isEmpty()) {
+        //bidirectional mode: the items reachable from both sides are returned. Collecting "from" side and then traversing "to" side until all the collected items are met
+        meetItems = new LinkedHashSet<T>();
+        if (includeOriginal) {
+          meetItems.addAll(fromItems);
+        }
+        collectLinked(meetItems, fromItems, join(toItems, stopItems), lookupLimit, myTraverser.getParents(), recursive);
+        if (meetItems.isEmpty()) {
+          meetItems = null; //for compatibility: when nothing is found from one side, the items found from the other side are returned
+        }
+      }
+      return getTraversingItemHolder(toItems, join(fromItems, stopItems), meetItems, includeOriginal, lookupLimit, myTraverser.getChildren(), recursive);
+    }
+
     Set<T> resultTo = new LinkedHashSet<T>();
     if (!toItems.isEmpty()) {
       if (includeOriginal) {
         resultTo.addAll(toItems);
       }
-      collectLinked(resultTo, toItems, CollectionsUtil.join(fromItems, stopItems), lookupLimit, myTraverser.getChildren(), recursive);
+      collectLinked(resultTo, toItems, join(fromItems, stopItems), lookupLimit, myTraverser.getChildren(), recursive);
     }
 
     Set<T> resultFrom = new LinkedHashSet<T>();
@@ -93,7 +114,7 @@ public class GraphFinder<T> extends AbstractFinder<T> {
       if (includeOriginal) {
         resultFrom.addAll(fromItems);
       }
-      collectLinked(resultFrom, fromItems, CollectionsUtil.join(toItems, stopItems), lookupLimit, myTraverser.getParents(), recursive);
+      collectLinked(resultFrom, fromItems, join(toItems, stopItems), lookupLimit, myTraverser.getParents(), recursive);
     }
 
     ArrayList<T> result;
@@ -102,7 +123,86 @@ public class GraphFinder<T> extends AbstractFinder<T> {
     } else {
       result = new ArrayList<T>(!resultTo.isEmpty() ? resultTo : resultFrom);
     }
-    return getItemHolder(result); //can improve performance by performing traversing in the holder, not retrieving all upfront, this will also add support for lookupLimit
+    return getItemHolder(result);
+  }
+
+  /**
+   * @return false if {@link #collectLinked(Set, Collection, Collection, Long, LinkRetriever, boolean)} is overridden, so that all the items are collected with it before returning them
+   */
+  protected boolean isLazyTraversalSupported() {
+    return true;
+  }
+
+  /**
+   * Traverses the graph breadth-first passing the items to the processor as soon as they are found, so that the traversal stops once the processor has got enough items.
+   * The order of the items is the same as collected by {@link #collectLinked(Set, Collection, Collection, Long, LinkRetriever, boolean)}.
+   *
+   * @param meetItems if not null, only the items from the set are returned and the traversal stops when all of them are found.
+   *                  For compatibility, if nothing is found by the traversal, all the items of the set are returned.
+   * @param lookupLimit is applied here only in "meetItems" mode as otherwise each found item is returned and the limit is applied to the returned items by the caller
+   */
+  @NotNull
+  private ItemHolder<T> getTraversingItemHolder(@NotNull final List<T> initialItems,
+                                                @NotNull final Set<T> stopItems,
+                                                @Nullable final Set<T> meetItems,
+                                                final boolean includeInitial,
+                                                @Nullable final Long lookupLimit,
+                                                @NotNull final LinkRetriever<T> linkRetriever,
+                                                final boolean recursive) {
+    return processor -> {
+      final Set<T> found = new HashSet<T>();
+      final Set<T> expanded = new HashSet<T>();
+      final int[] metCount = new int[1];
+      final ItemProcessor<T> resultProcessor = item -> {
+        if (meetItems != null) {
+          if (!meetItems.contains(item)) return true;
+          metCount[0]++;
+        }
+        return processor.processItem(item) && (meetItems == null || metCount[0] < meetItems.size());
+      };
+
+      if (includeInitial) {
+        for (T item : initialItems) {
+          if (found.add(item) && !resultProcessor.processItem(item)) return;
+        }
+      }
+      long foundLinkedCount = 0;
+      Collection<T> toProcess = initialItems;
+      while (!toProcess.isEmpty()) {
+        final List<T> linkedItems = new ArrayList<T>();
+        for (T item : toProcess) {
+          if (stopItems.contains(item)) {
+            if (found.add(item) && !resultProcessor.processItem(item)) return;
+          } else if (expanded.add(item)) {
+            for (T linked : linkRetriever.getLinked(item)) {
+              if (found.add(linked)) {
+                foundLinkedCount++;
+                if (!resultProcessor.processItem(linked)) return;
+                linkedItems.add(linked);
+              }
+            }
+          }
+        }
+        toProcess = linkedItems;
+        if (!recursive) break;
+        if (meetItems != null && lookupLimit != null && foundLinkedCount >= lookupLimit) {
+          LOG.debug("Hit lookupLimit " + lookupLimit + " while traversing graph, result is partial");
+          break;
+        }
+      }
+      if (meetItems != null && found.isEmpty()) {
+        for (T item : meetItems) {
+          if (!processor.processItem(item)) return;
+        }
+      }
+    };
+  }
+
+  @NotNull
+  private static <S> Set<S> join(@NotNull final Collection<S> items1, @NotNull final Collection<S> items2) {
+    final Set<S> result = new HashSet<S>(items1);
+    result.addAll(items2);
+    return result;
   }
 
   @NotNull
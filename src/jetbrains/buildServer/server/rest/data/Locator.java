@@ -16,6 +16,8 @@
 
 package jetbrains.buildServer.server.rest.data;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.intellij.openapi.diagnostic.Logger;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -46,6 +48,9 @@ import org.jetbrains.annotations.Nullable;
  *
  * Usual mode supports single value locators. In extended mode, those will result in single dimension with value as name and empty value.
  *
+ * Parsed dimensions of usual mode locators are cached by the locator text and shared between Locator instances (see {@link ParsedLocator}),
+ * the instance itself only tracks the used dimensions and copies the dimensions on the first modification.
+ *
  * @author Yegor.Yarko
  *         Date: 13.08.2010
  */
@@ -60,10 +65,14 @@ public class Locator {
   private static final String BASE64_ESCAPE_FAKE_DIMENSION = "$base64";
   public static final String HELP_DIMENSION = "$help";
 
+  private static final int PARSED_LOCATORS_CACHE_MAX_TEXT_LENGTH = 2000;
+  @Nullable private static final Cache<String, ParsedLocator> ourParsedLocators = createParsedLocatorsCache();
+
   private final String myRawValue;
   private final boolean myExtendedMode;
   private boolean modified = false;
-  private final LinkedHashMap<String, List<String>> myDimensions;
+  private Map<String, List<String>> myDimensions;
+  private boolean myDimensionsShared; //true if myDimensions should be copied before modification
   private final String mySingleValue;
 
   @NotNull private final Set<String> myUsedDimensions;
@@ -84,10 +93,9 @@ public class Locator {
   public Locator(@NotNull final Locator locator) {
     myRawValue = locator.myRawValue;
     modified = locator.modified;
-    myDimensions = new LinkedHashMap<String, List<String>>();
-    for (Map.Entry<String, List<String>> entry : locator.myDimensions.entrySet()) {
-      myDimensions.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
-    }
+    myDimensions = locator.myDimensions;
+    myDimensionsShared = true;
+    locator.myDimensionsShared = true;
 
     mySingleValue = locator.mySingleValue;
     myUsedDimensions = new HashSet<String>(locator.myUsedDimensions);
@@ -134,7 +142,78 @@ public class Locator {
       mySingleValue = null;
       myHiddenSupportedDimensions.add(HELP_DIMENSION);
       myIgnoreUnusedDimensions.add(HELP_DIMENSION);
-      myDimensions = parse(locator, mySupportedDimensions, myHiddenSupportedDimensions, myExtendedMode);
+      if (extendedMode) {
+        myDimensions = parse(locator, mySupportedDimensions, myHiddenSupportedDimensions, myExtendedMode);
+      } else {
+        myDimensions = getParsedDimensions(locator, mySupportedDimensions, myHiddenSupportedDimensions);
+        myDimensionsShared = true;
+      }
+    }
+  }
+
+  @Nullable
+  private static Cache<String, ParsedLocator> createParsedLocatorsCache() {
+    final int size = TeamCityProperties.getInteger("rest.locator.parsedCacheSize", 1000);
+    if (size <= 0) return null;
+    return CacheBuilder.newBuilder().maximumSize(size).build();
+  }
+
+  /**
+   * @return parsed dimensions which should not be modified
+   */
+  @NotNull
+  private static Map<String, List<String>> getParsedDimensions(@NotNull final String locator,
+                                                               @Nullable final String[] supportedDimensions, @NotNull final Collection<String> hiddenSupportedDimensions) {
+    if (ourParsedLocators == null || locator.length() > PARSED_LOCATORS_CACHE_MAX_TEXT_LENGTH) {
+      return parse(locator, supportedDimensions, hiddenSupportedDimensions, false);
+    }
+    final ParsedLocator cached = ourParsedLocators.getIfPresent(locator);
+    if (cached != null && cached.isValidFor(supportedDimensions, hiddenSupportedDimensions)) {
+      return cached.myDimensions;
+    }
+    // parse anyway if the cached names are not valid for these supported dimensions: this reports the due error
+    final ParsedLocator result = new ParsedLocator(parse(locator, supportedDimensions, hiddenSupportedDimensions, false));
+    ourParsedLocators.put(locator, result);
+    return result.myDimensions;
+  }
+
+  /**
+   * Immutable result of usual mode locator text parsing.
+   * Parsing result does not depend on the supported dimensions, they only define whether names with not alpha-numeric symbols are valid.
+   */
+  private static final class ParsedLocator {
+    @NotNull private final Map<String, List<String>> myDimensions;
+    @NotNull private final List<String> myNamesRequiringSupport;
+
+    ParsedLocator(@NotNull final LinkedHashMap<String, List<String>> dimensions) {
+      final LinkedHashMap<String, List<String>> result = new LinkedHashMap<>(dimensions.size());
+      final ArrayList<String> namesRequiringSupport = new ArrayList<>(0);
+      for (Map.Entry<String, List<String>> entry : dimensions.entrySet()) {
+        result.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        if (!isValidName(entry.getKey(), null, Collections.emptyList(), false)) {
+          namesRequiringSupport.add(entry.getKey());
+        }
+      }
+      myDimensions = Collections.unmodifiableMap(result);
+      myNamesRequiringSupport = namesRequiringSupport;
+    }
+
+    boolean isValidFor(@Nullable final String[] supportedDimensions, @NotNull final Collection<String> hiddenSupportedDimensions) {
+      for (String name : myNamesRequiringSupport) {
+        if (!isValidName(name, supportedDimensions, hiddenSupportedDimensions, false)) return false;
+      }
+      return true;
+    }
+  }
+
+  private void ensureDimensionsModifiable() {
+    if (myDimensionsShared) {
+      final LinkedHashMap<String, List<String>> copy = new LinkedHashMap<>(myDimensions.size() + 2);
+      for (Map.Entry<String, List<String>> entry : myDimensions.entrySet()) {
+        copy.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+      }
+      myDimensions = copy;
+      myDimensionsShared = false;
     }
   }
 
@@ -821,6 +900,7 @@ public class Locator {
     if (isSingleValue()) {
       throw new IllegalArgumentException("Attempt to set dimension '" + name + "' for single value locator.");
     }
+    ensureDimensionsModifiable();
     myDimensions.put(name, new ArrayList<>(values));
     markUnused(name);
     modified = true; // todo: use setDimension to replace the dimension in myRawValue
@@ -861,6 +941,7 @@ public class Locator {
       throw new LocatorProcessException("Attempt to remove dimension '" + name + "' for single value locator.");
     }
     boolean result = myDimensions.get(name) != null;
+    ensureDimensionsModifiable();
     myDimensions.remove(name);
     modified = true; // todo: use setDimension to replace the dimension in myRawValue
     return result;
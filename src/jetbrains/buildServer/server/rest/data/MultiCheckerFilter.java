@@ -16,33 +16,108 @@
 
 package jetbrains.buildServer.server.rest.data;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
+ * Checkers are evaluated in the order of addition, so a checker can rely on the previously added ones (e.g. a permission check).
+ * The only exception are consecutive checkers added via {@link #addIndependent(String, int, FilterConditionChecker)}: they are evaluated
+ * in the order of the expected cost of excluding an item, cheap and selective checkers go first.
+ * The estimation is refined with the statistics collected for the checker name over all the requests.
+ *
  * @author Yegor.Yarko
  *         Date: 09.09.2009
  */
 public class MultiCheckerFilter<T> implements ItemFilter<T> {
-  @NotNull private final List<FilterConditionChecker<T>> myCheckers;
+  /**
+   * Estimated costs of a checker evaluation, roughly in units of a simple field comparison
+   */
+  public static final int COST_TRIVIAL = 1;
+  public static final int COST_LOOKUP = 10;
+  public static final int COST_DATA_LOADING = 100;
+  public static final int COST_HEAVY = 1000;
+
+  private static final int NANOS_PER_COST_UNIT = 50;
+  private static final int MIN_EVALUATIONS_FOR_STATS = 100;
+  private static final int TIMING_SAMPLING_MASK = 0xF; //measure time for each 16th evaluation
+  private static final int REORDER_PERIOD = 1024;
+
+  private static final Map<String, CheckerStats> ourStats = new ConcurrentHashMap<>();
+
+  @NotNull private final List<OrderedChecker<T>> myCheckers = new ArrayList<>();
+  @Nullable private final String myName;
+  private final boolean myReorderingEnabled;
+  private final boolean myStatsEnabled;
+  private boolean myHasIndependentCheckers;
+  private OrderedChecker<T>[] myCurrentOrder;
+  private long myProcessedCount;
 
   public MultiCheckerFilter() {
-    myCheckers = new ArrayList<FilterConditionChecker<T>>();
+    this(null);
+  }
+
+  /**
+   * @param name prefix for the names of the checkers in the collected statistics
+   */
+  public MultiCheckerFilter(@Nullable final String name) {
+    myName = name;
+    myReorderingEnabled = TeamCityProperties.getBooleanOrTrue("rest.filters.reordering.enabled");
+    myStatsEnabled = TeamCityProperties.getBooleanOrTrue("rest.filters.stats.enabled");
   }
 
   public MultiCheckerFilter<T> add(FilterConditionChecker<T> checker) {
+    return add(new OrderedChecker<>(checker, COST_TRIVIAL, null, myCheckers.size(), false));
+  }
+
+  /**
+   * Adds a checker which is evaluated in the order of addition and collects the statistics for it
+   * @param name          identifies the checker in the statistics, should be the same for the same logic between the requests
+   * @param estimatedCost one of COST_* constants
+   */
+  public MultiCheckerFilter<T> add(@NotNull final String name, final int estimatedCost, @NotNull final FilterConditionChecker<T> checker) {
+    return add(new OrderedChecker<>(checker, estimatedCost, getStats(name), myCheckers.size(), false));
+  }
+
+  /**
+   * Adds a checker which can be evaluated in any order relatively to the adjacent checkers added via this method.
+   * The checker should not rely on any other checker being evaluated before it, e.g. should handle items of any state and check permissions itself if needed.
+   * @param name          identifies the checker in the statistics, should be the same for the same logic between the requests
+   * @param estimatedCost one of COST_* constants, used until enough statistics is collected for the checker
+   */
+  public MultiCheckerFilter<T> addIndependent(@NotNull final String name, final int estimatedCost, @NotNull final FilterConditionChecker<T> checker) {
+    myHasIndependentCheckers = true;
+    return add(new OrderedChecker<>(checker, estimatedCost, getStats(name), myCheckers.size(), true));
+  }
+
+  @NotNull
+  private MultiCheckerFilter<T> add(@NotNull final OrderedChecker<T> checker) {
     myCheckers.add(checker);
+    myCurrentOrder = null;
     return this;
   }
 
+  @Nullable
+  private CheckerStats getStats(@NotNull final String name) {
+    if (!myStatsEnabled) return null;
+    return ourStats.computeIfAbsent(myName == null ? name : myName + ":" + name, k -> new CheckerStats());
+  }
+
   public int getSubFiltersCount(){
     return myCheckers.size();
   }
 
   public boolean isIncluded(@NotNull T item) {
-    for (FilterConditionChecker<T> checker : myCheckers) {
-      if (!checker.isIncluded(item)) {
+    if (myCurrentOrder == null || (myReorderingEnabled && myHasIndependentCheckers && myProcessedCount % REORDER_PERIOD == 0)) {
+      myCurrentOrder = getOrder();
+    }
+    final boolean measureTime = myStatsEnabled && (myProcessedCount & TIMING_SAMPLING_MASK) == 0;
+    myProcessedCount++;
+    for (OrderedChecker<T> checker : myCurrentOrder) {
+      if (!checker.isIncluded(item, measureTime)) {
         return false;
       }
     }
@@ -52,4 +127,107 @@ public class MultiCheckerFilter<T> implements ItemFilter<T> {
   public boolean shouldStop(@NotNull final T item) {
     return false;
   }
+
+  /**
+   * Sorts each run of the adjacent independent checkers, other checkers stay at their places
+   */
+  @NotNull
+  @SuppressWarnings("unchecked")
+  private OrderedChecker<T>[] getOrder() {
+    final OrderedChecker<T>[] result = myCheckers.toArray(new OrderedChecker[myCheckers.size()]);
+    if (!myReorderingEnabled || !myHasIndependentCheckers) return result;
+    final Comparator<OrderedChecker<T>> comparator = Comparator.comparingDouble(OrderedChecker<T>::getExpectedCostPerExclusion).thenComparingInt(checker -> checker.myIndex);
+    int runStart = 0;
+    while (runStart < result.length) {
+      if (!result[runStart].myIndependent) {
+        runStart++;
+        continue;
+      }
+      int runEnd = runStart + 1;
+      while (runEnd < result.length && result[runEnd].myIndependent) runEnd++;
+      Arrays.sort(result, runStart, runEnd, comparator);
+      runStart = runEnd;
+    }
+    return result;
+  }
+
+  /**
+   * @return statistics for all the named checkers evaluated since the server start, sorted by the checker name
+   */
+  @NotNull
+  public static Map<String, String> getStatistics() {
+    final TreeMap<String, String> result = new TreeMap<>();
+    for (Map.Entry<String, CheckerStats> entry : ourStats.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().toString());
+    }
+    return result;
+  }
+
+  public static void resetStatistics() {
+    ourStats.clear();
+  }
+
+  private static class OrderedChecker<T> {
+    @NotNull private final FilterConditionChecker<T> myChecker;
+    private final int myEstimatedCost;
+    @Nullable private final CheckerStats myStats;
+    private final int myIndex;
+    private final boolean myIndependent;
+
+    OrderedChecker(@NotNull final FilterConditionChecker<T> checker, final int estimatedCost, @Nullable final CheckerStats stats, final int index, final boolean independent) {
+      myChecker = checker;
+      myEstimatedCost = estimatedCost;
+      myStats = stats;
+      myIndex = index;
+      myIndependent = independent;
+    }
+
+    boolean isIncluded(@NotNull final T item, final boolean measureTime) {
+      if (myStats == null) return myChecker.isIncluded(item);
+      final long start = measureTime ? System.nanoTime() : 0;
+      final boolean result = myChecker.isIncluded(item);
+      if (measureTime) myStats.registerTime(System.nanoTime() - start);
+      (result ? myStats.myIncluded : myStats.myExcluded).increment();
+      return result;
+    }
+
+    /**
+     * Sorting the checkers of a conjunction by (cost / probability to exclude an item) minimizes the total expected evaluation cost
+     */
+    double getExpectedCostPerExclusion() {
+      double cost = myEstimatedCost * NANOS_PER_COST_UNIT;
+      double exclusionProbability = 0.5;
+      if (myStats != null) {
+        final long included = myStats.myIncluded.sum();
+        final long excluded = myStats.myExcluded.sum();
+        if (included + excluded >= MIN_EVALUATIONS_FOR_STATS) {
+          exclusionProbability = (excluded + 1.0) / (included + excluded + 2.0);
+        }
+        final long timed = myStats.myTimedCount.sum();
+        if (timed >= MIN_EVALUATIONS_FOR_STATS / (TIMING_SAMPLING_MASK + 1)) {
+          cost = (double)myStats.myTimedNanos.sum() / timed;
+        }
+      }
+      return cost / exclusionProbability;
+    }
+  }
+
+  private static class CheckerStats {
+    private final LongAdder myIncluded = new LongAdder();
+    private final LongAdder myExcluded = new LongAdder();
+    private final LongAdder myTimedCount = new LongAdder();
+    private final LongAdder myTimedNanos = new LongAdder();
+
+    void registerTime(final long nanos) {
+      myTimedCount.increment();
+      myTimedNanos.add(nanos);
+    }
+
+    @Override
+    public String toString() {
+      final long timed = myTimedCount.sum();
+      return "included: " + myIncluded.sum() + ", excluded: " + myExcluded.sum() + ", averageNanos: " + (timed == 0 ? "-" : String.valueOf(myTimedNanos.sum() / timed)) +
+             " (" + timed + " timed)";
+    }
+  }
 }
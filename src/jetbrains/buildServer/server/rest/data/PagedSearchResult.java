@@ -33,6 +33,7 @@ public class PagedSearchResult<T> {
   public final boolean myLookupLimitReached;
   @Nullable public final Long myLookupLimit;
   @Nullable private T myLastProcessedItem;
+  @Nullable private String myNextCursor;
 
   public PagedSearchResult(@NotNull final List<T> entries, @Nullable final Long requestedStart, @Nullable final Integer requestedCount) {
     myEntries = entries;
@@ -46,14 +47,30 @@ public class PagedSearchResult<T> {
 
   public PagedSearchResult(@NotNull final List<T> entries, @Nullable final Long requestedStart, @Nullable final Integer requestedCount,
                            @Nullable final Long actuallyProcessedCount, @Nullable final Long lookupLimit, final boolean lookupLimitReached, @Nullable final T lastProcessedItem) {
+    this(entries, entries.size(), requestedStart, requestedCount, actuallyProcessedCount, lookupLimit, lookupLimitReached, lastProcessedItem, null);
+  }
+
+  public PagedSearchResult(@NotNull final List<T> entries, @Nullable final Long requestedStart, @Nullable final Integer requestedCount,
+                           @Nullable final Long actuallyProcessedCount, @Nullable final Long lookupLimit, final boolean lookupLimitReached, @Nullable final T lastProcessedItem,
+                           @Nullable final String nextCursor) {
+    this(entries, entries.size(), requestedStart, requestedCount, actuallyProcessedCount, lookupLimit, lookupLimitReached, lastProcessedItem, nextCursor);
+  }
+
+  /**
+   * @param actualCount number of the items found, can differ from the size of "entries" when the items were streamed and not collected
+   */
+  public PagedSearchResult(@NotNull final List<T> entries, final int actualCount, @Nullable final Long requestedStart, @Nullable final Integer requestedCount,
+                           @Nullable final Long actuallyProcessedCount, @Nullable final Long lookupLimit, final boolean lookupLimitReached, @Nullable final T lastProcessedItem,
+                           @Nullable final String nextCursor) {
     myEntries = entries;
-    myActualCount = entries.size();
+    myActualCount = actualCount;
     myStart = requestedStart;
     myCount = requestedCount;
     myActuallyProcessedCount = actuallyProcessedCount;
     myLookupLimit = lookupLimit;
     myLookupLimitReached = lookupLimitReached;
     myLastProcessedItem = lastProcessedItem;
+    myNextCursor = nextCursor;
   }
 
   @Nullable
@@ -61,6 +78,14 @@ public class PagedSearchResult<T> {
     return myLastProcessedItem;
   }
 
+  /**
+   * @return opaque value for the "cursor" locator dimension to get the page following the current one, null if not supported
+   */
+  @Nullable
+  public String getNextCursor() {
+    return myNextCursor;
+  }
+
   public boolean isNextPageAvailable(){
     return myCount != null && myActualCount >= myCount || myLookupLimit != null && myLookupLimitReached;
   }
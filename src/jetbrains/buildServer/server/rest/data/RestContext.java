@@ -16,8 +16,15 @@
 
 package jetbrains.buildServer.server.rest.data;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import jetbrains.buildServer.server.rest.errors.OperationException;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.util.FuncThrow;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -30,9 +37,40 @@ public class RestContext {
   private final static ThreadLocal<RestContext> ourThreadLocalInstance = new ThreadLocal<>();
 
   private final Function<String, Object> myFunction;
+  /**
+   * Finder results memoized for the context lifetime: finder -> locator key -> result. Null if memoization is not allowed for the context.
+   */
+  @Nullable private final ConcurrentHashMap<Object, ConcurrentHashMap<String, Object>> myFinderResults;
+  private final AtomicInteger myFinderResultsSize = new AtomicInteger();
+  /**
+   * Total number of items in the memoized results, a list result accounts for all its entries
+   */
+  private final AtomicInteger myFinderResultsItems = new AtomicInteger();
+  private final LongAdder myFinderResultsHits = new LongAdder();
+  private final LongAdder myFinderResultsMisses = new LongAdder();
+  /**
+   * Values resolved at once for a number of items before the beans for the items are created: kind -> item key -> value. Null if prefetching is not allowed for the context.
+   */
+  @Nullable private final ConcurrentHashMap<String, ConcurrentHashMap<Object, Object>> myPrefetched;
+  /**
+   * Limits the number of tasks of the request run in parallel at the same time, see {@link jetbrains.buildServer.server.rest.util.ParallelProcessing}
+   */
+  @Nullable private volatile Semaphore myParallelTasksPermits;
+  @Nullable private String myResourceMethod;
+  private long myResourceMethodStartNanos;
+  private long myResourceMethodFinishNanos;
 
   public RestContext(Function<String, Object> function) {
+    this(function, false);
+  }
+
+  /**
+   * @param readOnly true if nothing is modified while the context is active, so that the same locator resolves to the same result within the context and the finder results can be memoized
+   */
+  public RestContext(Function<String, Object> function, final boolean readOnly) {
     myFunction = function;
+    myFinderResults = readOnly && TeamCityProperties.getBooleanOrTrue("rest.request.finderResultsCache.enabled") ? new ConcurrentHashMap<>() : null;
+    myPrefetched = readOnly && TeamCityProperties.getBooleanOrTrue("rest.request.prefetch.enabled") ? new ConcurrentHashMap<>() : null;
   }
 
 
@@ -69,6 +107,136 @@ public class RestContext {
     return myFunction.apply(name);
   }
 
+  /**
+   * Returns the result calculated before within the context for the same finder and locator or calculates and remembers it when memoization is allowed.
+   * The result should not be modified by the callers.
+   * Only the results with a limited number of items are remembered and the total number of the remembered items is limited as well.
+   * @param key locator text with the details on how the result is calculated from it
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getCachedFinderResult(@NotNull final Object finder, @NotNull final String key, @NotNull final Supplier<T> calculator) {
+    if (myFinderResults == null) return calculator.get();
+    final ConcurrentHashMap<String, Object> finderResults = myFinderResults.computeIfAbsent(finder, k -> new ConcurrentHashMap<>());
+    final Object cached = finderResults.get(key);
+    if (cached != null) {
+      myFinderResultsHits.increment();
+      return (T)cached;
+    }
+    myFinderResultsMisses.increment();
+    //not using computeIfAbsent as the calculation can recursively use the cache
+    final T result = calculator.get();
+    if (result == null || myFinderResultsSize.get() >= TeamCityProperties.getInteger("rest.request.finderResultsCache.maxEntries", 10000)) return result;
+    final int items = getItemsCount(result);
+    if (items > TeamCityProperties.getInteger("rest.request.finderResultsCache.maxResultItems", 1000)) return result;
+    //reserving the items before adding so that concurrent additions do not exceed the limit
+    if (myFinderResultsItems.addAndGet(items) > TeamCityProperties.getInteger("rest.request.finderResultsCache.maxItems", 100000)) {
+      myFinderResultsItems.addAndGet(-items);
+      return result;
+    }
+    if (finderResults.putIfAbsent(key, result) == null) {
+      myFinderResultsSize.incrementAndGet();
+    } else {
+      myFinderResultsItems.addAndGet(-items);
+    }
+    return result;
+  }
+
+  private static int getItemsCount(@NotNull final Object finderResult) {
+    if (finderResult instanceof PagedSearchResult) {
+      return Math.max(1, ((PagedSearchResult<?>)finderResult).myEntries.size());
+    }
+    return 1;
+  }
+
+  /**
+   * @return true if the values can be prefetched within the context, see {@link #putPrefetched(String, Map)}
+   */
+  public boolean isPrefetchAllowed() {
+    return myPrefetched != null;
+  }
+
+  /**
+   * Remembers the values calculated in advance for a number of items, e.g. with a single query instead of a query per item. Does nothing if prefetching is not allowed for the context.
+   * @param kind identifies the way the values are calculated, including the locator used
+   */
+  public void putPrefetched(@NotNull final String kind, @NotNull final Map<?, ?> values) {
+    if (myPrefetched == null) return;
+    myPrefetched.computeIfAbsent(kind, k -> new ConcurrentHashMap<>()).putAll(values);
+  }
+
+  /**
+   * @return the value remembered via {@link #putPrefetched(String, Map)} or null if there is none, the caller should calculate the value itself then
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T> T getPrefetched(@NotNull final String kind, @NotNull final Object itemKey) {
+    if (myPrefetched == null) return null;
+    final ConcurrentHashMap<Object, Object> values = myPrefetched.get(kind);
+    return values == null ? null : (T)values.get(itemKey);
+  }
+
+  /**
+   * @param permits number of permits to create the semaphore with if it is not yet created for the context
+   * @return the semaphore limiting the number of tasks of the request run in parallel, shared by all the parallel processing calls within the context
+   */
+  @NotNull
+  public Semaphore getParallelTasksPermits(final int permits) {
+    Semaphore result = myParallelTasksPermits;
+    if (result == null) {
+      synchronized (this) {
+        result = myParallelTasksPermits;
+        if (result == null) {
+          result = new Semaphore(permits);
+          myParallelTasksPermits = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Marks the start of the resource method invocation for {@link RestMetrics}, the last marked method is reported if there are several (e.g. with sub-resource locators)
+   * @param method identifies the resource method, e.g. "GET BuildRequest.serveBuilds"
+   */
+  public void markResourceMethodStarted(@NotNull final String method) {
+    myResourceMethod = method;
+    myResourceMethodStartNanos = System.nanoTime();
+    myResourceMethodFinishNanos = 0;
+  }
+
+  /**
+   * Marks that the resource method returned, so the rest of the request processing is the response serialization
+   */
+  public void markResourceMethodFinished() {
+    myResourceMethodFinishNanos = System.nanoTime();
+  }
+
+  /**
+   * Registers the timings of the resource method marked within the context in {@link RestMetrics}. Should be called after the response is written.
+   */
+  public void registerResourceMethodMetrics() {
+    if (myResourceMethod == null) return;
+    final long now = System.nanoTime();
+    if (myResourceMethodFinishNanos == 0) {
+      RestMetrics.registerResourceMethod(myResourceMethod, now - myResourceMethodStartNanos, -1);
+    } else {
+      RestMetrics.registerResourceMethod(myResourceMethod, myResourceMethodFinishNanos - myResourceMethodStartNanos, now - myResourceMethodFinishNanos);
+    }
+    myResourceMethod = null;
+  }
+
+  /**
+   * @return description of the finder results memoization effectiveness or null if memoization is not used in the context
+   */
+  @Nullable
+  public String getFinderResultsCacheStatistics() {
+    if (myFinderResults == null) return null;
+    final long hits = myFinderResultsHits.sum();
+    final long total = hits + myFinderResultsMisses.sum();
+    return "finder results cache: " + hits + " hits of " + total + " lookups" + (total == 0 ? "" : " (" + (hits * 100 / total) + "%)") + ", " + myFinderResultsSize.get() + " entries" +
+           " with " + myFinderResultsItems.get() + " items";
+  }
+
   private boolean isValidName(@NotNull final String name) {
     if (name.isEmpty()) return false;
     return Character.isLetter(name.charAt(0)) && name.chars().allMatch(ch -> Character.isLetter(ch) || Character.isDigit(ch));
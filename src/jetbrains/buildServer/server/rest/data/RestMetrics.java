@@ -0,0 +1,204 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import jetbrains.buildServer.server.rest.util.Histogram;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Registry of the REST API metrics collected since the server start (or the last reset):
+ * latency of the resource methods split into the lookup (resource method invocation) and the response serialization time,
+ * and per finder: latency, number of processed and returned items and the number of searches which reached lookupLimit.
+ * Allows to find out the abusive requests and locators without enabling debug logging.
+ */
+public class RestMetrics {
+  private static final String PROMETHEUS_PREFIX = "teamcity_rest_";
+  private static final double[] PERCENTILES = {50, 90, 99};
+
+  private static final Map<String, ResourceMethodMetrics> ourResourceMethods = new ConcurrentHashMap<>();
+  private static final Map<String, FinderMetrics> ourFinders = new ConcurrentHashMap<>();
+
+  public static boolean isEnabled() {
+    return TeamCityProperties.getBooleanOrTrue("rest.metrics.enabled");
+  }
+
+  /**
+   * @param method             identifies the resource method, e.g. "GET BuildRequest.serveBuilds"
+   * @param serializationNanos time since the resource method returned till the response was written, negative if the method did not return normally
+   */
+  public static void registerResourceMethod(@NotNull final String method, final long lookupNanos, final long serializationNanos) {
+    if (!isEnabled()) return;
+    final ResourceMethodMetrics metrics = ourResourceMethods.computeIfAbsent(method, k -> new ResourceMethodMetrics());
+    metrics.myLookup.record(toMicros(lookupNanos));
+    if (serializationNanos >= 0) {
+      metrics.mySerialization.record(toMicros(serializationNanos));
+      metrics.myTotal.record(toMicros(lookupNanos + serializationNanos));
+    } else {
+      metrics.myTotal.record(toMicros(lookupNanos));
+      metrics.myFailed.increment();
+    }
+  }
+
+  public static void registerFinderSearch(@NotNull final String finderName, final long nanos, final long processedItems, final long returnedItems,
+                                          final boolean lookupLimitReached) {
+    if (!isEnabled()) return;
+    final FinderMetrics metrics = ourFinders.computeIfAbsent(finderName, k -> new FinderMetrics());
+    metrics.myTime.record(toMicros(nanos));
+    metrics.myProcessedItems.record(processedItems);
+    metrics.myReturnedItems.record(returnedItems);
+    if (lookupLimitReached) metrics.myLookupLimitReached.increment();
+  }
+
+  public static void reset() {
+    ourResourceMethods.clear();
+    ourFinders.clear();
+  }
+
+  /**
+   * @return all the metrics as name-value pairs sorted by the resource method and finder names, times are in milliseconds
+   */
+  @NotNull
+  public static Map<String, String> getStatistics() {
+    final Map<String, String> result = new LinkedHashMap<>();
+    for (Map.Entry<String, ResourceMethodMetrics> entry : new TreeMap<>(ourResourceMethods).entrySet()) {
+      final String prefix = "resourceMethod:" + entry.getKey() + ":";
+      final ResourceMethodMetrics metrics = entry.getValue();
+      result.put(prefix + "count", String.valueOf(metrics.myLookup.getCount()));
+      result.put(prefix + "failed", String.valueOf(metrics.myFailed.sum()));
+      putHistogram(result, prefix + "totalMs", metrics.myTotal, true);
+      putHistogram(result, prefix + "lookupMs", metrics.myLookup, true);
+      putHistogram(result, prefix + "serializationMs", metrics.mySerialization, true);
+    }
+    for (Map.Entry<String, FinderMetrics> entry : new TreeMap<>(ourFinders).entrySet()) {
+      final String prefix = "finder:" + entry.getKey() + ":";
+      final FinderMetrics metrics = entry.getValue();
+      result.put(prefix + "count", String.valueOf(metrics.myTime.getCount()));
+      result.put(prefix + "lookupLimitReached", String.valueOf(metrics.myLookupLimitReached.sum()));
+      putHistogram(result, prefix + "timeMs", metrics.myTime, true);
+      putHistogram(result, prefix + "processedItems", metrics.myProcessedItems, false);
+      putHistogram(result, prefix + "returnedItems", metrics.myReturnedItems, false);
+    }
+    return result;
+  }
+
+  /**
+   * @return all the metrics in Prometheus text exposition format, times are in seconds
+   */
+  @NotNull
+  public static String getPrometheusText() {
+    final StringBuilder result = new StringBuilder();
+    final TreeMap<String, ResourceMethodMetrics> resourceMethods = new TreeMap<>(ourResourceMethods);
+    final TreeMap<String, FinderMetrics> finders = new TreeMap<>(ourFinders);
+
+    appendPrometheusHeader(result, "resource_method_duration_seconds", "summary",
+                           "Time of REST resource methods processing: lookup is the method invocation, serialization is writing the response");
+    for (Map.Entry<String, ResourceMethodMetrics> entry : resourceMethods.entrySet()) {
+      final String labels = "method=\"" + escapeLabelValue(entry.getKey()) + "\"";
+      appendPrometheusSummary(result, "resource_method_duration_seconds", labels + ",phase=\"total\"", entry.getValue().myTotal, true);
+      appendPrometheusSummary(result, "resource_method_duration_seconds", labels + ",phase=\"lookup\"", entry.getValue().myLookup, true);
+      appendPrometheusSummary(result, "resource_method_duration_seconds", labels + ",phase=\"serialization\"", entry.getValue().mySerialization, true);
+    }
+    appendPrometheusHeader(result, "resource_method_failed_total", "counter", "Number of REST resource method invocations which finished with an exception");
+    for (Map.Entry<String, ResourceMethodMetrics> entry : resourceMethods.entrySet()) {
+      appendPrometheusValue(result, "resource_method_failed_total", "method=\"" + escapeLabelValue(entry.getKey()) + "\"", String.valueOf(entry.getValue().myFailed.sum()));
+    }
+
+    appendPrometheusHeader(result, "finder_duration_seconds", "summary", "Time of REST finders searches");
+    for (Map.Entry<String, FinderMetrics> entry : finders.entrySet()) {
+      appendPrometheusSummary(result, "finder_duration_seconds", "finder=\"" + escapeLabelValue(entry.getKey()) + "\"", entry.getValue().myTime, true);
+    }
+    appendPrometheusHeader(result, "finder_processed_items", "summary", "Number of items processed by a REST finder search");
+    for (Map.Entry<String, FinderMetrics> entry : finders.entrySet()) {
+      appendPrometheusSummary(result, "finder_processed_items", "finder=\"" + escapeLabelValue(entry.getKey()) + "\"", entry.getValue().myProcessedItems, false);
+    }
+    appendPrometheusHeader(result, "finder_returned_items", "summary", "Number of items matched by a REST finder search");
+    for (Map.Entry<String, FinderMetrics> entry : finders.entrySet()) {
+      appendPrometheusSummary(result, "finder_returned_items", "finder=\"" + escapeLabelValue(entry.getKey()) + "\"", entry.getValue().myReturnedItems, false);
+    }
+    appendPrometheusHeader(result, "finder_lookup_limit_reached_total", "counter", "Number of REST finder searches stopped by lookupLimit");
+    for (Map.Entry<String, FinderMetrics> entry : finders.entrySet()) {
+      appendPrometheusValue(result, "finder_lookup_limit_reached_total", "finder=\"" + escapeLabelValue(entry.getKey()) + "\"",
+                            String.valueOf(entry.getValue().myLookupLimitReached.sum()));
+    }
+    return result.toString();
+  }
+
+  private static long toMicros(final long nanos) {
+    return TimeUnit.MICROSECONDS.convert(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @NotNull
+  private static String format(final long value, final boolean time, final double divisor) {
+    if (!time) return String.valueOf(value);
+    return String.format(Locale.ENGLISH, "%.6f", value / divisor).replaceAll("\\.?0+$", "");
+  }
+
+  private static void putHistogram(@NotNull final Map<String, String> result, @NotNull final String prefix, @NotNull final Histogram histogram, final boolean time) {
+    final long count = histogram.getCount();
+    result.put(prefix + ".mean", count == 0 ? "0" : format(histogram.getSum() / count, time, 1000.0));
+    for (double percentile : PERCENTILES) {
+      result.put(prefix + ".p" + (int)percentile, format(histogram.getValueAtPercentile(percentile), time, 1000.0));
+    }
+    result.put(prefix + ".max", format(histogram.getMax(), time, 1000.0));
+  }
+
+  private static void appendPrometheusHeader(@NotNull final StringBuilder result, @NotNull final String name, @NotNull final String type, @NotNull final String help) {
+    result.append("# HELP ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(help).append('\n');
+    result.append("# TYPE ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void appendPrometheusSummary(@NotNull final StringBuilder result, @NotNull final String name, @NotNull final String labels,
+                                              @NotNull final Histogram histogram, final boolean time) {
+    for (double percentile : PERCENTILES) {
+      appendPrometheusValue(result, name, labels + ",quantile=\"" + percentile / 100 + "\"", format(histogram.getValueAtPercentile(percentile), time, 1000000.0));
+    }
+    appendPrometheusValue(result, name + "_sum", labels, format(histogram.getSum(), time, 1000000.0));
+    appendPrometheusValue(result, name + "_count", labels, String.valueOf(histogram.getCount()));
+  }
+
+  private static void appendPrometheusValue(@NotNull final StringBuilder result, @NotNull final String name, @NotNull final String labels, @NotNull final String value) {
+    result.append(PROMETHEUS_PREFIX).append(name).append('{').append(labels).append("} ").append(value).append('\n');
+  }
+
+  @NotNull
+  private static String escapeLabelValue(@NotNull final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static class ResourceMethodMetrics {
+    private final Histogram myTotal = new Histogram();
+    private final Histogram myLookup = new Histogram();
+    private final Histogram mySerialization = new Histogram();
+    private final LongAdder myFailed = new LongAdder();
+  }
+
+  private static class FinderMetrics {
+    private final Histogram myTime = new Histogram();
+    private final Histogram myProcessedItems = new Histogram();
+    private final Histogram myReturnedItems = new Histogram();
+    private final LongAdder myLookupLimitReached = new LongAdder();
+  }
+}
@@ -16,6 +16,9 @@
 
 package jetbrains.buildServer.server.rest.data;
 
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import jetbrains.buildServer.requirements.RequirementType;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import org.jetbrains.annotations.Contract;
@@ -28,16 +31,20 @@ import org.jetbrains.annotations.Nullable;
  */
 public class ValueCondition {
   @Nullable private final String myParameterValue;
+  @Nullable private final String myLowerCaseParameterValue;
   @NotNull private final RequirementType myRequirementType;
   @Nullable private Boolean myIgnoreCase;
+  @NotNull private Predicate<String> myMatcher;
 
   public ValueCondition(@NotNull final RequirementType requirementType, @Nullable final String value, @Nullable final Boolean ignoreCase) {
     myParameterValue = value;
+    myLowerCaseParameterValue = toLower(value);
     myRequirementType = requirementType;
     myIgnoreCase = ignoreCase;
     if (myRequirementType.isParameterRequired() && myParameterValue == null) {
       throw new BadRequestException("Wrong parameter condition: requirement type '" + requirementType.getName() + "' requires specification of the value");
     }
+    myMatcher = createMatcher();
   }
 
   public boolean getActualIgnoreCase() {
@@ -51,6 +58,7 @@ public class ValueCondition {
 
   public void setIgnoreCase(final boolean ignoreCase) {
     myIgnoreCase = ignoreCase;
+    myMatcher = createMatcher();
   }
 
   public boolean matches(@Nullable final String value) {
@@ -64,24 +72,94 @@ public class ValueCondition {
       return false;
     }
     try {
-      if (getActualIgnoreCase()) {
-        if (myRequirementType.equals(RequirementType.MATCHES) || myRequirementType.equals(RequirementType.DOES_NOT_MATCH)) {
-          //special case as regexp cannot be lowercased
-          return myRequirementType.matchValues(myParameterValue, toLower(value));
-        }
-        return myRequirementType.matchValues(toLower(myParameterValue), toLower(value));
-      } else {
-        return myRequirementType.matchValues(myParameterValue, value);
-      }
+      return myMatcher.test(value);
     } catch (Exception e) {
       //e.g. more-than can throw NumberFormatException for non-number
       return false;
     }
   }
 
+  private boolean matchesByRequirementType(@Nullable final String value) {
+    if (getActualIgnoreCase()) {
+      if (myRequirementType.equals(RequirementType.MATCHES) || myRequirementType.equals(RequirementType.DOES_NOT_MATCH)) {
+        //special case as regexp cannot be lowercased
+        return myRequirementType.matchValues(myParameterValue, toLower(value));
+      }
+      return myRequirementType.matchValues(myLowerCaseParameterValue, toLower(value));
+    } else {
+      return myRequirementType.matchValues(myParameterValue, value);
+    }
+  }
+
+  /**
+   * The matcher is prepared once per condition: the pattern is compiled and the value is lower-cased here and not on each match.
+   * Requirement types without a specialized matcher and null values are processed by RequirementType itself.
+   */
+  @NotNull
+  private Predicate<String> createMatcher() {
+    final Predicate<String> specialized = createSpecializedMatcher();
+    if (specialized == null) {
+      return this::matchesByRequirementType;
+    }
+    return value -> value != null ? specialized.test(value) : matchesByRequirementType(null);
+  }
+
+  @Nullable
+  private Predicate<String> createSpecializedMatcher() {
+    if (myParameterValue == null) return null;
+    final String parameterValue = myParameterValue;
+    final boolean ignoreCase = getActualIgnoreCase();
+
+    if (myRequirementType.equals(RequirementType.MATCHES) || myRequirementType.equals(RequirementType.DOES_NOT_MATCH)) {
+      final Pattern pattern;
+      try {
+        pattern = Pattern.compile(parameterValue);
+      } catch (PatternSyntaxException e) {
+        return null;
+      }
+      final boolean expected = myRequirementType.equals(RequirementType.MATCHES);
+      if (ignoreCase) {
+        //regexp cannot be lowercased, so only the value is
+        return value -> pattern.matcher(value.toLowerCase()).matches() == expected;
+      }
+      return value -> pattern.matcher(value).matches() == expected;
+    }
+
+    final String expectedValue = ignoreCase ? myLowerCaseParameterValue : parameterValue;
+    assert expectedValue != null;
+    if (myRequirementType.equals(RequirementType.EQUALS)) {
+      return ignoreCase ? value -> value.equalsIgnoreCase(expectedValue) : value -> value.equals(expectedValue);
+    }
+    if (myRequirementType.equals(RequirementType.DOES_NOT_EQUAL)) {
+      return ignoreCase ? value -> !value.equalsIgnoreCase(expectedValue) : value -> !value.equals(expectedValue);
+    }
+    if (myRequirementType.equals(RequirementType.STARTS_WITH)) {
+      return ignoreCase ? value -> value.regionMatches(true, 0, expectedValue, 0, expectedValue.length()) : value -> value.startsWith(expectedValue);
+    }
+    if (myRequirementType.equals(RequirementType.ENDS_WITH)) {
+      return ignoreCase ? value -> value.regionMatches(true, value.length() - expectedValue.length(), expectedValue, 0, expectedValue.length())
+                        : value -> value.endsWith(expectedValue);
+    }
+    if (myRequirementType.equals(RequirementType.CONTAINS)) {
+      return ignoreCase ? value -> containsIgnoreCase(value, expectedValue) : value -> value.contains(expectedValue);
+    }
+    if (myRequirementType.equals(RequirementType.DOES_NOT_CONTAIN)) {
+      return ignoreCase ? value -> !containsIgnoreCase(value, expectedValue) : value -> !value.contains(expectedValue);
+    }
+    return null;
+  }
+
+  private static boolean containsIgnoreCase(@NotNull final String value, @NotNull final String part) {
+    final int length = part.length();
+    for (int i = 0, last = value.length() - length; i <= last; i++) {
+      if (value.regionMatches(true, i, part, 0, length)) return true;
+    }
+    return false;
+  }
+
   @Nullable
   @Contract("!null -> !null; null -> null")
-  private String toLower(@Nullable final String value) {
+  private static String toLower(@Nullable final String value) {
     return value == null ? null : value.toLowerCase();
   }
 
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Minimal ZIP writer which allows to write entries which are already compressed or whose CRC is already known,
+ * so that the content can be prepared separately (e.g. in parallel) and the archive layout can be computed in advance.
+ * ZIP64 extensions are used only when necessary. Entry names are written in the specified charset, the language encoding flag is set for UTF-8 names.
+ * Errors reading the entry content do not break the archive, see {@link EntryDataException}.
+ *
+ * Not thread-safe.
+ */
+public class ZipStreamWriter {
+  public static final int METHOD_STORED = 0;
+  public static final int METHOD_DEFLATED = 8;
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_END_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final short ZIP64_EXTRA_ID = 0x0001;
+
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+  private static final short VERSION_DEFAULT = 20;
+  private static final short VERSION_ZIP64 = 45;
+  private static final short FLAG_DATA_DESCRIPTOR = 1 << 3;
+  private static final short FLAG_UTF8 = 1 << 11;
+  private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+  @NotNull private final OutputStream myOutput;
+  @NotNull private final List<Entry> myEntries = new ArrayList<>();
+  private long myOffset = 0;
+  @Nullable private Entry myDeflatedEntry;
+
+  public ZipStreamWriter(@NotNull final OutputStream output) {
+    myOutput = output;
+  }
+
+  /**
+   * Thrown after the entry whose content could not be read completely is written, so that the archive is still valid and writing can proceed with the next entry.
+   * The entry is truncated if it is compressed while writing, otherwise its missing content is filled with zeros to keep the declared size.
+   */
+  public static class EntryDataException extends IOException {
+    public EntryDataException(@NotNull final String message, @Nullable final Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  public static class Entry {
+    @NotNull private final String myNameString;
+    @NotNull private final byte[] myName;
+    private final boolean myUtf8Name;
+    private final int myDosTime;
+    private final int myMethod;
+    private final boolean myDirectory;
+    private final boolean myDataDescriptor;
+    private final boolean myZip64Local;
+    private long myCrc;
+    private long myCompressedSize;
+    private long mySize;
+    private long myOffset;
+
+    private Entry(@NotNull final String name, @NotNull final Charset nameCharset, @Nullable final Long lastModified, final int method, final boolean directory,
+                  final boolean dataDescriptor, final boolean zip64Local, final long crc, final long compressedSize, final long size) {
+      myNameString = name;
+      myName = name.getBytes(nameCharset);
+      myUtf8Name = StandardCharsets.UTF_8.equals(nameCharset);
+      myDosTime = toDosTime(lastModified != null ? lastModified : System.currentTimeMillis());
+      myMethod = method;
+      myDirectory = directory;
+      myDataDescriptor = dataDescriptor;
+      myZip64Local = zip64Local;
+      myCrc = crc;
+      myCompressedSize = compressedSize;
+      mySize = size;
+    }
+
+    /**
+     * Creates entry with known CRC and sizes.
+     * Note: unless the last modification time is specified, the entry bytes depend on the current time.
+     */
+    @NotNull
+    public static Entry file(@NotNull final String name, @NotNull final Charset nameCharset, @Nullable final Long lastModified, final int method, final long crc,
+                             final long compressedSize, final long size) {
+      return new Entry(name, nameCharset, lastModified, method, false, false, compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC, crc, compressedSize, size);
+    }
+
+    @NotNull
+    public static Entry directory(@NotNull final String name, @NotNull final Charset nameCharset, @Nullable final Long lastModified) {
+      return new Entry(name.endsWith("/") ? name : name + "/", nameCharset, lastModified, METHOD_STORED, true, false, false, 0, 0, 0);
+    }
+
+    public long getSize() {
+      return mySize;
+    }
+
+    public long getCompressedSize() {
+      return myCompressedSize;
+    }
+
+    public long getOffset() {
+      return myOffset;
+    }
+
+    /**
+     * Sets offset of the entry local header in the archive. Only necessary for the entries not written via the writer, e.g. to compute central directory in advance.
+     */
+    public void setOffset(final long offset) {
+      myOffset = offset;
+    }
+  }
+
+  /**
+   * @return number of bytes written so far
+   */
+  public long getOffset() {
+    return myOffset;
+  }
+
+  public void putDirectory(@NotNull final String name, @NotNull final Charset nameCharset, @Nullable final Long lastModified) throws IOException {
+    putEntry(Entry.directory(name, nameCharset, lastModified), null);
+  }
+
+  /**
+   * Writes the entry with known CRC and sizes.
+   * @param content provides exactly {@link Entry#getCompressedSize()} bytes of the entry data (compressed if the entry method is {@link #METHOD_DEFLATED})
+   * @throws EntryDataException if the content could not be read completely, the entry is written anyway
+   */
+  public void putEntry(@NotNull final Entry entry, @Nullable final InputStream content) throws IOException {
+    if (content == null && entry.myCompressedSize != 0) {
+      throw new IllegalArgumentException("No content specified for not empty entry");
+    }
+    entry.myOffset = myOffset;
+    write(getLocalHeader(entry));
+    myEntries.add(entry);
+    if (content == null) return;
+
+    final byte[] buffer = new byte[(int)Math.min(64 * 1024, Math.max(entry.myCompressedSize, 1))];
+    long copied = 0;
+    IOException readError = null;
+    while (copied < entry.myCompressedSize) {
+      final int read;
+      try {
+        read = content.read(buffer, 0, (int)Math.min(buffer.length, entry.myCompressedSize - copied));
+      } catch (IOException e) {
+        readError = e;
+        break;
+      }
+      if (read < 0) break;
+      myOutput.write(buffer, 0, read);
+      copied += read;
+      myOffset += read;
+    }
+    if (copied == entry.myCompressedSize) return;
+
+    final long missing = entry.myCompressedSize - copied;
+    Arrays.fill(buffer, (byte)0);
+    while (copied < entry.myCompressedSize) {
+      final int length = (int)Math.min(buffer.length, entry.myCompressedSize - copied);
+      myOutput.write(buffer, 0, length);
+      copied += length;
+      myOffset += length;
+    }
+    throw new EntryDataException(readError != null
+                                 ? "Error reading data for entry '" + entry.myNameString + "', " + missing + " bytes are filled with zeros: " + readError.toString()
+                                 : "Unexpected end of data for entry '" + entry.myNameString + "', " + missing + " bytes are filled with zeros", readError);
+  }
+
+  public void putEntry(@NotNull final Entry entry, @NotNull final byte[] content, final int contentLength) throws IOException {
+    if (contentLength != entry.myCompressedSize) throw new IllegalArgumentException("Content length " + contentLength + " differs from the entry size " + entry.myCompressedSize);
+    entry.myOffset = myOffset;
+    write(getLocalHeader(entry));
+    myOutput.write(content, 0, contentLength);
+    myOffset += contentLength;
+    myEntries.add(entry);
+  }
+
+  /**
+   * Deflates the content while writing it, CRC and sizes are written after the data.
+   * Like in java.util.zip.ZipOutputStream, ZIP64 sizes are used in the data descriptor only if the actual sizes require that.
+   * @throws EntryDataException if the content could not be read completely, the entry is truncated then
+   */
+  public void putDeflatedEntry(@NotNull final String name, @NotNull final Charset nameCharset, @Nullable final Long lastModified, @NotNull final InputStream content,
+                               final int compressionLevel) throws IOException {
+    startDeflatedEntry(name, nameCharset, lastModified);
+    final CRC32 crc = new CRC32();
+    long size = 0;
+    IOException readError = null;
+    final Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      final DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(new OutputStream() {
+        @Override
+        public void write(final int b) throws IOException {
+          writeEntryData(new byte[]{(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NotNull final byte[] b, final int off, final int len) throws IOException {
+          writeEntryData(b, off, len);
+        }
+      }, deflater, 64 * 1024);
+      final byte[] buffer = new byte[64 * 1024];
+      while (true) {
+        final int read;
+        try {
+          read = content.read(buffer);
+        } catch (IOException e) {
+          readError = e;
+          break;
+        }
+        if (read < 0) break;
+        crc.update(buffer, 0, read);
+        deflaterOutput.write(buffer, 0, read);
+        size += read;
+      }
+      deflaterOutput.finish();
+    } finally {
+      deflater.end();
+    }
+    closeDeflatedEntry(crc.getValue(), size);
+    if (readError != null) {
+      throw new EntryDataException("Error reading data for entry '" + name + "', the entry is truncated to " + size + " bytes: " + readError.toString(), readError);
+    }
+  }
+
+  /**
+   * Starts the entry whose content is compressed by the caller, e.g. in parallel.
+   * The content should be written via {@link #writeEntryData(byte[], int, int)} as a single raw deflate stream and the entry should be closed via {@link #closeDeflatedEntry(long, long)}.
+   */
+  public void startDeflatedEntry(@NotNull final String name, @NotNull final Charset nameCharset, @Nullable final Long lastModified) throws IOException {
+    if (myDeflatedEntry != null) throw new IllegalStateException("Entry '" + myDeflatedEntry.myNameString + "' is not closed");
+    final Entry entry = new Entry(name, nameCharset, lastModified, METHOD_DEFLATED, false, true, false, 0, 0, 0);
+    entry.myOffset = myOffset;
+    write(getLocalHeader(entry));
+    myDeflatedEntry = entry;
+  }
+
+  public void writeEntryData(@NotNull final byte[] data, final int offset, final int length) throws IOException {
+    if (myDeflatedEntry == null) throw new IllegalStateException("No entry is started");
+    myOutput.write(data, offset, length);
+    myOffset += length;
+    myDeflatedEntry.myCompressedSize += length;
+  }
+
+  /**
+   * Writes the data descriptor of the entry started via {@link #startDeflatedEntry(String, Charset, Long)}
+   * @param crc CRC of the not compressed content
+   * @param size size of the not compressed content
+   */
+  public void closeDeflatedEntry(final long crc, final long size) throws IOException {
+    final Entry entry = myDeflatedEntry;
+    if (entry == null) throw new IllegalStateException("No entry is started");
+    myDeflatedEntry = null;
+    entry.myCrc = crc;
+    entry.mySize = size;
+
+    final boolean zip64 = entry.myCompressedSize >= ZIP64_MAGIC || entry.mySize >= ZIP64_MAGIC;
+    final ByteBuffer descriptor = buffer(zip64 ? 24 : 16);
+    descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+    descriptor.putInt((int)entry.myCrc);
+    if (zip64) {
+      descriptor.putLong(entry.myCompressedSize);
+      descriptor.putLong(entry.mySize);
+    } else {
+      descriptor.putInt((int)entry.myCompressedSize);
+      descriptor.putInt((int)entry.mySize);
+    }
+    write(descriptor.array());
+    myEntries.add(entry);
+  }
+
+  /**
+   * Writes the central directory. The underlying stream is flushed, but not closed.
+   */
+  public void finish() throws IOException {
+    write(getCentralDirectory(myEntries, myOffset));
+    myOutput.flush();
+  }
+
+  @NotNull
+  public static byte[] getLocalHeader(@NotNull final Entry entry) {
+    final ByteBuffer result = buffer(30 + entry.myName.length + (entry.myZip64Local ? 20 : 0));
+    result.putInt(LOCAL_HEADER_SIGNATURE);
+    result.putShort(entry.myZip64Local ? VERSION_ZIP64 : VERSION_DEFAULT);
+    result.putShort(getFlags(entry));
+    result.putShort((short)entry.myMethod);
+    result.putInt(entry.myDosTime);
+    if (entry.myDataDescriptor) {
+      result.putInt(0);
+      result.putInt(0);
+      result.putInt(0);
+    } else {
+      result.putInt((int)entry.myCrc);
+      result.putInt(entry.myZip64Local ? (int)ZIP64_MAGIC : (int)entry.myCompressedSize);
+      result.putInt(entry.myZip64Local ? (int)ZIP64_MAGIC : (int)entry.mySize);
+    }
+    result.putShort((short)entry.myName.length);
+    result.putShort((short)(entry.myZip64Local ? 20 : 0));
+    result.put(entry.myName);
+    if (entry.myZip64Local) {
+      result.putShort(ZIP64_EXTRA_ID);
+      result.putShort((short)16);
+      result.putLong(entry.mySize);
+      result.putLong(entry.myCompressedSize);
+    }
+    return result.array();
+  }
+
+  /**
+   * @param offset offset of the central directory start in the archive
+   * @return central directory and end of central directory records
+   */
+  @NotNull
+  public static byte[] getCentralDirectory(@NotNull final List<Entry> entries, final long offset) {
+    int length = 0;
+    for (Entry entry : entries) {
+      length += 46 + entry.myName.length + getCentralZip64ExtraLength(entry);
+    }
+    final boolean zip64End = entries.size() >= ZIP64_MAGIC_SHORT || offset >= ZIP64_MAGIC || length >= ZIP64_MAGIC;
+    final ByteBuffer result = buffer(length + (zip64End ? 56 + 20 : 0) + 22);
+
+    for (Entry entry : entries) {
+      final boolean zip64Size = entry.mySize >= ZIP64_MAGIC || entry.myCompressedSize >= ZIP64_MAGIC;
+      final boolean zip64Offset = entry.myOffset >= ZIP64_MAGIC;
+      final int extraLength = getCentralZip64ExtraLength(entry);
+      result.putInt(CENTRAL_HEADER_SIGNATURE);
+      result.putShort(extraLength > 0 || entry.myZip64Local ? VERSION_ZIP64 : VERSION_DEFAULT);
+      result.putShort(extraLength > 0 || entry.myZip64Local ? VERSION_ZIP64 : VERSION_DEFAULT);
+      result.putShort(getFlags(entry));
+      result.putShort((short)entry.myMethod);
+      result.putInt(entry.myDosTime);
+      result.putInt((int)entry.myCrc);
+      result.putInt(zip64Size ? (int)ZIP64_MAGIC : (int)entry.myCompressedSize);
+      result.putInt(zip64Size ? (int)ZIP64_MAGIC : (int)entry.mySize);
+      result.putShort((short)entry.myName.length);
+      result.putShort((short)extraLength);
+      result.putShort((short)0); //comment length
+      result.putShort((short)0); //disk number
+      result.putShort((short)0); //internal attributes
+      result.putInt(entry.myDirectory ? DIRECTORY_ATTRIBUTE : 0);
+      result.putInt(zip64Offset ? (int)ZIP64_MAGIC : (int)entry.myOffset);
+      result.put(entry.myName);
+      if (extraLength > 0) {
+        result.putShort(ZIP64_EXTRA_ID);
+        result.putShort((short)(extraLength - 4));
+        if (zip64Size) {
+          result.putLong(entry.mySize);
+          result.putLong(entry.myCompressedSize);
+        }
+        if (zip64Offset) result.putLong(entry.myOffset);
+      }
+    }
+
+    if (zip64End) {
+      final long zip64EndOffset = offset + length;
+      result.putInt(ZIP64_END_SIGNATURE);
+      result.putLong(44);
+      result.putShort(VERSION_ZIP64);
+      result.putShort(VERSION_ZIP64);
+      result.putInt(0);
+      result.putInt(0);
+      result.putLong(entries.size());
+      result.putLong(entries.size());
+      result.putLong(length);
+      result.putLong(offset);
+
+      result.putInt(ZIP64_END_LOCATOR_SIGNATURE);
+      result.putInt(0);
+      result.putLong(zip64EndOffset);
+      result.putInt(1);
+    }
+
+    result.putInt(END_SIGNATURE);
+    result.putShort((short)0);
+    result.putShort((short)0);
+    result.putShort((short)(zip64End ? ZIP64_MAGIC_SHORT : entries.size()));
+    result.putShort((short)(zip64End ? ZIP64_MAGIC_SHORT : entries.size()));
+    result.putInt(zip64End ? (int)ZIP64_MAGIC : length);
+    result.putInt(zip64End ? (int)ZIP64_MAGIC : (int)offset);
+    result.putShort((short)0); //comment length
+    return result.array();
+  }
+
+  private static short getFlags(@NotNull final Entry entry) {
+    return (short)((entry.myUtf8Name ? FLAG_UTF8 : 0) | (entry.myDataDescriptor ? FLAG_DATA_DESCRIPTOR : 0));
+  }
+
+  private static int getCentralZip64ExtraLength(@NotNull final Entry entry) {
+    int result = 0;
+    if (entry.mySize >= ZIP64_MAGIC || entry.myCompressedSize >= ZIP64_MAGIC) result += 16;
+    if (entry.myOffset >= ZIP64_MAGIC) result += 8;
+    return result == 0 ? 0 : result + 4;
+  }
+
+  private void write(@NotNull final byte[] bytes) throws IOException {
+    myOutput.write(bytes);
+    myOffset += bytes.length;
+  }
+
+  @NotNull
+  private static ByteBuffer buffer(final int length) {
+    return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int toDosTime(final long time) {
+    final Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    final int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16); //1980-01-01
+    }
+    return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16 |
+           calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+  }
+}
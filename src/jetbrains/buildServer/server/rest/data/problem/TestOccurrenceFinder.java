@@ -18,6 +18,9 @@ package jetbrains.buildServer.server.rest.data.problem;
 
 import com.google.common.collect.ComparisonChain;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import jetbrains.buildServer.ServiceLocator;
 import jetbrains.buildServer.messages.Status;
 import jetbrains.buildServer.responsibility.TestNameResponsibilityEntry;
 import jetbrains.buildServer.server.rest.data.*;
@@ -27,6 +30,7 @@ import jetbrains.buildServer.server.rest.model.Util;
 import jetbrains.buildServer.server.rest.model.problem.TestOccurrence;
 import jetbrains.buildServer.server.rest.request.BuildRequest;
 import jetbrains.buildServer.server.rest.request.Constants;
+import jetbrains.buildServer.server.rest.util.ParallelProcessing;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.mute.CurrentMuteInfo;
 import jetbrains.buildServer.tests.TestName;
@@ -62,13 +66,15 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
 
   @NotNull private final BuildHistoryEx myBuildHistory;
   @NotNull private final CurrentProblemsManager myCurrentProblemsManager;
+  @NotNull private final ServiceLocator myServiceLocator;
 
   public TestOccurrenceFinder(final @NotNull TestFinder testFinder,
                               final @NotNull BuildFinder buildFinder,
                               final @NotNull BuildTypeFinder buildTypeFinder,
                               final @NotNull ProjectFinder projectFinder,
                               final @NotNull BuildHistoryEx buildHistory,
-                              final @NotNull CurrentProblemsManager currentProblemsManager) {
+                              final @NotNull CurrentProblemsManager currentProblemsManager,
+                              final @NotNull ServiceLocator serviceLocator) {
     super(DIMENSION_ID, TEST, BUILD_TYPE, BUILD, AFFECTED_PROJECT, CURRENT, STATUS, BRANCH, IGNORED, MUTED, CURRENTLY_MUTED, CURRENTLY_INVESTIGATED);
     setHiddenDimensions(EXPAND_INVOCATIONS, INVOCATIONS);
     myTestFinder = testFinder;
@@ -77,6 +83,7 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
     myProjectFinder = projectFinder;
     myBuildHistory = buildHistory;
     myCurrentProblemsManager = currentProblemsManager;
+    myServiceLocator = serviceLocator;
   }
 
   @Override
@@ -182,54 +189,34 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
     if (buildDimension != null) {
       List<BuildPromotion> builds = myBuildFinder.getBuilds(null, buildDimension).myEntries;
 
+      final List<SBuild> associatedBuilds = builds.stream().map(BuildPromotion::getAssociatedBuild).filter(Objects::nonNull).collect(Collectors.toList());
+      final Boolean expandInvocations = locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS);
+
       String testDimension = locator.getSingleDimensionValue(TEST);
       if (testDimension == null) {
-        AggregatingItemHolder<STestRun> result = new AggregatingItemHolder<>();
-        for (BuildPromotion build : builds) {
-          SBuild associatedBuild = build.getAssociatedBuild();
-          if (associatedBuild != null) {
-            result.add(getPossibleExpandedTestsHolder(getBuildStatistics(associatedBuild, locator).getAllTests(), locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS)));
-          }
-        }
-        return result;
+        final BuildStatisticsOptions options = getBuildStatisticsOptions(locator); //calculate in the request thread as locator is not thread-safe
+        return getLazilyLoadedTestRuns(associatedBuilds, build -> build.getBuildStatistics(options).getAllTests(), expandInvocations);
       }
 
-      final PagedSearchResult<STest> tests = myTestFinder.getItems(testDimension);
-      final ArrayList<STestRun> result = new ArrayList<STestRun>();
-      for (BuildPromotion build : builds) {
-        SBuild associatedBuild = build.getAssociatedBuild();
-        if (associatedBuild != null) {
-          for (STest test : tests.myEntries) {
-            STestRun item = findTest(test.getTestNameId(), associatedBuild);
-            if (item != null) {
-              result.add(item);
-            }
-          }
-        }
-      }
-      return getPossibleExpandedTestsHolder(result, locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
+      final List<Long> testNameIds = myTestFinder.getItems(testDimension).myEntries.stream().map(STest::getTestNameId).collect(Collectors.toList());
+      return getLazilyLoadedTestRuns(associatedBuilds, build -> findTests(testNameIds, build), expandInvocations);
     }
 
     String testDimension = locator.getSingleDimensionValue(TEST);
     if (testDimension != null) {
       final PagedSearchResult<STest> tests = myTestFinder.getItems(testDimension);
+      final String branch = getBranch(locator);
 
       String buildTypeDimension = locator.getSingleDimensionValue(BUILD_TYPE);
       if (buildTypeDimension != null) {
         final SBuildType buildType = myBuildTypeFinder.getBuildType(null, buildTypeDimension, false);
-        final ArrayList<STestRun> result = new ArrayList<STestRun>();
-        for (STest test : tests.myEntries) {
-          result.addAll(myBuildHistory.getTestHistory(test.getTestNameId(), buildType.getBuildTypeId(), 0, getBranch(locator))); //no personal builds
-        }
-        return getPossibleExpandedTestsHolder(result, locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
+        return getLazilyLoadedTestRuns(tests.myEntries, test -> myBuildHistory.getTestHistory(test.getTestNameId(), buildType.getBuildTypeId(), 0, branch), //no personal builds
+                                       locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
       }
 
-      final ArrayList<STestRun> result = new ArrayList<STestRun>();
       final SProject affectedProject = getAffectedProject(locator);
-      for (STest test : tests.myEntries) {
-        result.addAll(myBuildHistory.getTestHistory(test.getTestNameId(), affectedProject, 0, getBranch(locator))); //no personal builds
-      }
-      return getPossibleExpandedTestsHolder(result, locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
+      return getLazilyLoadedTestRuns(tests.myEntries, test -> myBuildHistory.getTestHistory(test.getTestNameId(), affectedProject, 0, branch), //no personal builds
+                                     locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
     }
 
     Boolean currentDimension = locator.getSingleDimensionValueAsBoolean(CURRENT);
@@ -241,12 +228,10 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
     Boolean currentlyMutedDimension = locator.getSingleDimensionValueAsBoolean(CURRENTLY_MUTED);
     if (currentlyMutedDimension != null && currentlyMutedDimension) {
       final SProject affectedProject = getAffectedProject(locator);
-      final Set<STest> currentlyMutedTests = myTestFinder.getCurrentlyMutedTests(affectedProject);
-      final ArrayList<STestRun> result = new ArrayList<STestRun>();
-      for (STest test : currentlyMutedTests) {
-        result.addAll(myBuildHistory.getTestHistory(test.getTestNameId(), affectedProject, 0, getBranch(locator)));  //no personal builds
-      }
-      return getPossibleExpandedTestsHolder(result, locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
+      final List<STest> currentlyMutedTests = new ArrayList<>(myTestFinder.getCurrentlyMutedTests(affectedProject));
+      final String branch = getBranch(locator);
+      return getLazilyLoadedTestRuns(currentlyMutedTests, test -> myBuildHistory.getTestHistory(test.getTestNameId(), affectedProject, 0, branch),  //no personal builds
+                                     locator.getSingleDimensionValueAsBoolean(EXPAND_INVOCATIONS));
     }
 
     ArrayList<String> exampleLocators = new ArrayList<String>();
@@ -258,6 +243,24 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
     throw new BadRequestException("Unsupported test occurrence locator '" + locator.getStringRepresentation() + "'. Try one of locator dimensions: " + DataProvider.dumpQuoted(exampleLocators));
   }
 
+  /**
+   * Test runs are loaded for several sources (builds, tests) at a time in parallel while being processed in the order of the sources.
+   * Loading stops once the processing does not need more items, e.g. when "count" or "lookupLimit" is reached.
+   */
+  @NotNull
+  private <S> ItemHolder<STestRun> getLazilyLoadedTestRuns(@NotNull final List<S> sources,
+                                                           @NotNull final Function<S, Iterable<STestRun>> testRunsLoader,
+                                                           @Nullable final Boolean expandInvocations) {
+    return processor -> {
+      try (ParallelProcessing.OrderedResults<Iterable<STestRun>> testRuns = ParallelProcessing.mapLazily(sources, testRunsLoader, myServiceLocator)) {
+        boolean[] processingContinues = new boolean[]{true};
+        while (processingContinues[0] && testRuns.hasNext()) {
+          getPossibleExpandedTestsHolder(testRuns.next(), expandInvocations).process(item -> processingContinues[0] = processor.processItem(item));
+        }
+      }
+    };
+  }
+
   @NotNull
   private STestRun processInvocationExpansion(@NotNull final STestRun item, @Nullable final Boolean expandInvocations) {
     if (expandInvocations == null || !expandInvocations) {
@@ -537,6 +540,11 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
 
   @NotNull
   public static BuildStatistics getBuildStatistics(@NotNull final SBuild build, @Nullable final Locator locator) {
+    return build.getBuildStatistics(getBuildStatisticsOptions(locator));
+  }
+
+  @NotNull
+  private static BuildStatisticsOptions getBuildStatisticsOptions(@Nullable final Locator locator) {
     //  This is different from build.getFullStatistics() in the following ways:
     //  - stacktrace are not pre-loaded (loads all them into memory), but will be retrieved in a lazy fashion
     //  - compilation errors are not loaded (not necessary)
@@ -553,13 +561,26 @@ public class TestOccurrenceFinder extends AbstractFinder<STestRun> {
       optionsMask |= BuildStatisticsOptions.PASSED_TESTS;
     }
 
-    return build.getBuildStatistics(new BuildStatisticsOptions(optionsMask, 0));
+    return new BuildStatisticsOptions(optionsMask, 0);
   }
 
+  /**
+   * Finds the runs of all the tests in the build loading the build statistics only once
+   * @return test runs in the order of the tests
+   */
   //todo: use getBuildStatistics
-  @Nullable
-  private STestRun findTest(final @NotNull Long testNameId, final @NotNull SBuild build) {
-    return build.getBuildStatistics(ALL_TESTS_NO_DETAILS).findTestByTestNameId(testNameId);
+  @NotNull
+  private static List<STestRun> findTests(final @NotNull List<Long> testNameIds, final @NotNull SBuild build) {
+    if (testNameIds.isEmpty()) return Collections.emptyList();
+    final BuildStatistics statistics = build.getBuildStatistics(ALL_TESTS_NO_DETAILS);
+    final List<STestRun> result = new ArrayList<>();
+    for (Long testNameId : testNameIds) {
+      STestRun item = statistics.findTestByTestNameId(testNameId);
+      if (item != null) {
+        result.add(item);
+      }
+    }
+    return result;
   }
 
   //todo: use getBuildStatistics
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.jersey;
+
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import java.util.Date;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Supports conditional GET for the resource methods which return entity beans (so that the entity type is known to the API description),
+ * see {@link #setValidators(HttpContext, EntityTag, Date)}.
+ */
+public class EntityValidatorsFilter implements ContainerResponseFilter {
+  public static final String VALIDATED_CACHE_CONTROL = "private,must-revalidate";
+
+  private static final String VALIDATORS_PROPERTY = EntityValidatorsFilter.class.getName() + ".validators";
+
+  /**
+   * Sets the validators of the entity to be returned by the resource method. The validators are added to the successful response.
+   * If the request preconditions are met, the response is replaced with "304 Not Modified" (or "412 Precondition Failed") and the entity is not sent.
+   *
+   * @param lastModified last modification time of the entity, null if not known
+   * @return true if the request preconditions are met, the resource method does not need to compute the entity then
+   */
+  public static boolean setValidators(@NotNull final HttpContext context, @NotNull final EntityTag eTag, @Nullable final Date lastModified) {
+    final Validators validators = new Validators(eTag, lastModified);
+    context.getProperties().put(VALIDATORS_PROPERTY, validators);
+    return validators.evaluatePreconditions(context.getRequest()) != null;
+  }
+
+  public ContainerResponse filter(final ContainerRequest request, final ContainerResponse response) {
+    final Object validators = request.getProperties().get(VALIDATORS_PROPERTY);
+    if (!(validators instanceof Validators) || response.getStatus() != Response.Status.OK.getStatusCode()) {
+      return response;
+    }
+    final Validators entityValidators = (Validators)validators;
+    final Response.ResponseBuilder preconditionsResponse = entityValidators.evaluatePreconditions(request);
+    if (preconditionsResponse != null) {
+      response.setResponse(preconditionsResponse.tag(entityValidators.myETag).header(HttpHeaders.CACHE_CONTROL, VALIDATED_CACHE_CONTROL).build());
+      return response;
+    }
+    final MultivaluedMap<String, Object> headers = response.getHttpHeaders();
+    headers.putSingle(HttpHeaders.ETAG, entityValidators.myETag);
+    headers.putSingle(HttpHeaders.CACHE_CONTROL, VALIDATED_CACHE_CONTROL);
+    if (entityValidators.myLastModified != null) {
+      headers.putSingle(HttpHeaders.LAST_MODIFIED, entityValidators.myLastModified);
+    }
+    return response;
+  }
+
+  private static class Validators {
+    @NotNull private final EntityTag myETag;
+    @Nullable private final Date myLastModified;
+
+    Validators(@NotNull final EntityTag eTag, @Nullable final Date lastModified) {
+      myETag = eTag;
+      myLastModified = lastModified;
+    }
+
+    @Nullable
+    Response.ResponseBuilder evaluatePreconditions(@NotNull final Request request) {
+      return myLastModified != null ? request.evaluatePreconditions(myLastModified, myETag) : request.evaluatePreconditions(myETag);
+    }
+  }
+}
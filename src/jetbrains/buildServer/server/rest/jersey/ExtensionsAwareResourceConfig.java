@@ -19,10 +19,7 @@ package jetbrains.buildServer.server.rest.jersey;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Pair;
 import com.sun.jersey.api.core.DefaultResourceConfig;
-import com.sun.jersey.core.spi.scanning.PackageNamesScanner;
 import com.sun.jersey.spi.container.ReloadListener;
-import com.sun.jersey.spi.scanning.AnnotationScannerListener;
-import com.sun.jersey.spi.scanning.PathProviderScannerListener;
 import java.lang.annotation.Annotation;
 import java.util.*;
 import javax.ws.rs.Path;
@@ -31,6 +28,7 @@ import jetbrains.buildServer.log.Loggers;
 import jetbrains.buildServer.plugins.bean.ServerPluginInfo;
 import jetbrains.buildServer.server.rest.APIController;
 import jetbrains.buildServer.server.rest.RESTControllerExtension;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -74,14 +72,23 @@ public class ExtensionsAwareResourceConfig extends DefaultResourceConfig impleme
 
   /**
    * Initialize and scan for root resource and provider classes in rest-core and extensions.
+   * The build-time {@link ResourceIndex} is used instead of the scanning when available.
    */
   public void init() {
     final Set<Class<?>> classes = getClasses();
+    final boolean useIndex = TeamCityProperties.getBooleanOrTrue("rest.jersey.resourceIndex.enabled");
     for (Pair<String[], ClassLoader> pair : getScanningInfo()) {
-      final AnnotationScannerListener asl = new PathProviderScannerListener(pair.second);
-      final PackageNamesScanner scanner = new PackageNamesScanner(pair.second, pair.first);
+      final long start = System.nanoTime();
+      if (useIndex) {
+        final Set<Class<?>> indexedClasses = ResourceIndex.load(pair.second, pair.first);
+        if (indexedClasses != null) {
+          classes.addAll(indexedClasses);
+          myController.registerStartupPhase("resourceDiscovery.index " + Arrays.toString(pair.first), System.nanoTime() - start);
+          continue;
+        }
+      }
       try {
-        scanner.scan(asl);
+        classes.addAll(ResourceIndex.scan(pair.second, pair.first));
       } catch (Throwable e) {
         String message = "Error initializing REST component while scanning for resources for " + myController.getPluginIdentifyingText() +
                          " for packages " + Arrays.toString(pair.first) + " via classloader '" + pair.second.toString() + "'.";
@@ -94,7 +101,7 @@ public class ExtensionsAwareResourceConfig extends DefaultResourceConfig impleme
         LOG.error(message, e);
         Loggers.SERVER.error(message);
       }
-      classes.addAll(asl.getAnnotatedClasses());
+      myController.registerStartupPhase("resourceDiscovery.scan " + Arrays.toString(pair.first), System.nanoTime() - start);
     }
 
     if (!classes.isEmpty()) {
@@ -44,15 +44,23 @@ public class JacksonObjectMapperResolver implements ContextResolver<ObjectMapper
   private final ObjectMapper myMapper;
 
   public JacksonObjectMapperResolver() {
-    myMapper = new ObjectMapper();
-    myMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-    myMapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector(myMapper.getTypeFactory()));
-    myMapper.setDateFormat(new SimpleDateFormat(Constants.TIME_FORMAT, Locale.ENGLISH));
-    myMapper.configure(SerializationFeature.WRITE_EMPTY_JSON_ARRAYS, true);
-    myMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, TeamCityProperties.getBoolean("rest.response.json.deserialize.ignoreUnknownProperties"));
+    myMapper = createObjectMapper();
+  }
+
+  /**
+   * @return new mapper configured the same way as the one used for JSON responses
+   */
+  public static ObjectMapper createObjectMapper() {
+    final ObjectMapper result = new ObjectMapper();
+    result.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    result.setAnnotationIntrospector(new JaxbAnnotationIntrospector(result.getTypeFactory()));
+    result.setDateFormat(new SimpleDateFormat(Constants.TIME_FORMAT, Locale.ENGLISH));
+    result.configure(SerializationFeature.WRITE_EMPTY_JSON_ARRAYS, true);
+    result.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, TeamCityProperties.getBoolean("rest.response.json.deserialize.ignoreUnknownProperties"));
     if (TeamCityProperties.getBoolean(APIController.REST_RESPONSE_PRETTYFORMAT)) {
-      myMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+      result.configure(SerializationFeature.INDENT_OUTPUT, true);
     }
+    return result;
   }
 
   public ObjectMapper getContext(Class<?> type) {
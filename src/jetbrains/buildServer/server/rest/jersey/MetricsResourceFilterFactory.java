@@ -0,0 +1,67 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest.jersey;
+
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.*;
+import java.util.Collections;
+import java.util.List;
+import jetbrains.buildServer.server.rest.data.RestContext;
+import jetbrains.buildServer.server.rest.data.RestMetrics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Marks the start and the end of the resource methods invocation in the request's {@link RestContext} so that the time is reported in {@link RestMetrics}.
+ * Jersey writes the response entity after the response filters are applied, so the time after the response filter is the serialization time.
+ */
+public class MetricsResourceFilterFactory implements ResourceFilterFactory {
+  public List<ResourceFilter> create(final AbstractMethod am) {
+    if (!(am instanceof AbstractResourceMethod)) return null;
+    final String name = ((AbstractResourceMethod)am).getHttpMethod() + " " + am.getResource().getResourceClass().getSimpleName() + "." + am.getMethod().getName();
+    return Collections.singletonList(new MetricsResourceFilter(name));
+  }
+
+  private static class MetricsResourceFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+    @NotNull private final String myName;
+
+    MetricsResourceFilter(@NotNull final String name) {
+      myName = name;
+    }
+
+    public ContainerRequestFilter getRequestFilter() {
+      return this;
+    }
+
+    public ContainerResponseFilter getResponseFilter() {
+      return this;
+    }
+
+    public ContainerRequest filter(final ContainerRequest request) {
+      final RestContext restContext = RestContext.getThreadLocal();
+      if (restContext != null && RestMetrics.isEnabled()) restContext.markResourceMethodStarted(myName);
+      return request;
+    }
+
+    public ContainerResponse filter(final ContainerRequest request, final ContainerResponse response) {
+      final RestContext restContext = RestContext.getThreadLocal();
+      if (restContext != null) restContext.markResourceMethodFinished();
+      return response;
+    }
+  }
+}
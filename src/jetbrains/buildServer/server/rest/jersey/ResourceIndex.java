@@ -0,0 +1,294 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.jersey;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.jersey.core.spi.scanning.PackageNamesScanner;
+import com.sun.jersey.spi.scanning.AnnotationScannerListener;
+import com.sun.jersey.spi.scanning.PathProviderScannerListener;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import javax.ws.rs.Path;
+import javax.ws.rs.ext.Provider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the Jersey root resource and provider classes generated at build time, so that the classpath is not scanned on each Jersey (re)initialization.
+ * The index is stored as a classpath resource per scanned package: {@link #INDEX_PATH_PREFIX}&lt;package&gt;.txt listing the class names one per line.
+ * The index records the state of the classpath entries containing the package, so that the index is not used when it seems outdated, without scanning the classes:
+ * <ul>
+ * <li>the classes located in the same classpath entry as the index: when they are packed into a jar together with the index, the index is up to date;
+ * when they are in a directory (e.g. during development), the index records the timestamp of the newest class file and is not used if the timestamp differs,
+ * so that a class added or recompiled after the index was generated is not missed;</li>
+ * <li>other classpath entries with the classes of the package: the index records the jar file name and size (or the directory and the newest class file timestamp)
+ * and is not used if the entries differ.</li>
+ * </ul>
+ * <p/>
+ * Use {@link #main(String[])} to generate the index, e.g. via "generate.rest.resource.index" macro in build.xml. REST API extensions can generate the index for their package
+ * in the same way to speed up the initialization. When there is no index or it does not match the class files, the package is scanned as before.
+ */
+public class ResourceIndex {
+  private static final Logger LOG = Logger.getInstance(ResourceIndex.class.getName());
+
+  public static final String INDEX_PATH_PREFIX = "META-INF/rest-api-resources/";
+  private static final String COMMENT_PREFIX = "#";
+  private static final String CLASSES_TIMESTAMP_PREFIX = COMMENT_PREFIX + " classes timestamp: ";
+  private static final String LOCATION_PREFIX = COMMENT_PREFIX + " location: ";
+  private static final String CLASS_FILE_SUFFIX = ".class";
+
+  @NotNull
+  public static String getIndexPath(@NotNull final String packageName) {
+    return INDEX_PATH_PREFIX + packageName + ".txt";
+  }
+
+  @NotNull
+  private static String getPackagePath(@NotNull final String packageName) {
+    return packageName.replace('.', '/');
+  }
+
+  /**
+   * @return classes listed in the index for all the packages or null if the index is not available for any of the packages or is not consistent with the classes
+   */
+  @Nullable
+  public static Set<Class<?>> load(@NotNull final ClassLoader classLoader, @NotNull final String[] packages) {
+    final Set<Class<?>> result = new HashSet<Class<?>>();
+    for (String packageName : packages) {
+      final String indexPath = getIndexPath(packageName);
+      final URL index = classLoader.getResource(indexPath);
+      if (index == null) {
+        LOG.debug("No resource index found for package '" + packageName + "', will scan the package");
+        return null;
+      }
+      try {
+        final IndexContent indexContent = IndexContent.read(index);
+        final String indexEntry = getClasspathEntry(index, indexPath);
+        final String packagePath = getPackagePath(packageName);
+        final Set<String> locations = new TreeSet<String>();
+        for (URL packageLocation : Collections.list(classLoader.getResources(packagePath))) {
+          if (indexEntry.equals(getClasspathEntry(packageLocation, packagePath))) {
+            final Long classesTimestamp = getClassesTimestamp(packageLocation);
+            if (classesTimestamp != null && !classesTimestamp.equals(indexContent.myClassesTimestamp)) {
+              LOG.warn("Class files of package '" + packageName + "' were modified at " + new Date(classesTimestamp) + ", after the resource index " + index + " was generated" +
+                       (indexContent.myClassesTimestamp == null ? "" : " for the classes of " + new Date(indexContent.myClassesTimestamp)) +
+                       ", the index seems outdated, will scan the package");
+              return null;
+            }
+          } else {
+            final String location = getLocation(packageLocation, packagePath);
+            if (location == null) {
+              LOG.warn("Cannot check classes of package '" + packageName + "' located at " + packageLocation + " against the resource index " + index + ", will scan the package");
+              return null;
+            }
+            locations.add(location);
+          }
+        }
+        if (!locations.equals(indexContent.myLocations)) {
+          LOG.warn("Classpath entries with package '" + packageName + "' " + locations + " do not match the resource index " + index + " " + indexContent.myLocations +
+                   ", the index seems outdated, will scan the package");
+          return null;
+        }
+        for (String className : indexContent.myClassNames) {
+          final Class<?> c = Class.forName(className, false, classLoader);
+          if (!c.isAnnotationPresent(Path.class) && !c.isAnnotationPresent(Provider.class)) {
+            LOG.warn("Class '" + className + "' listed in the resource index " + index + " is not annotated with @Path or @Provider, the index seems outdated, will scan the package");
+            return null;
+          }
+          result.add(c);
+        }
+      } catch (IOException e) {
+        LOG.warn("Error reading resource index " + index + ", will scan the package: " + e.toString());
+        return null;
+      } catch (ClassNotFoundException | LinkageError e) {
+        LOG.warn("Error loading class listed in the resource index " + index + ", the index seems outdated, will scan the package: " + e.toString());
+        return null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Scans the packages the same way it is done at runtime without the index
+   */
+  @NotNull
+  public static Set<Class<?>> scan(@NotNull final ClassLoader classLoader, @NotNull final String[] packages) {
+    final AnnotationScannerListener listener = new PathProviderScannerListener(classLoader);
+    new PackageNamesScanner(classLoader, packages).scan(listener);
+    return listener.getAnnotatedClasses();
+  }
+
+  /**
+   * @return the part of the resource URL identifying the classpath entry (jar or directory) the resource is located in
+   */
+  @NotNull
+  private static String getClasspathEntry(@NotNull final URL resource, @NotNull final String resourcePath) {
+    final String url = resource.toExternalForm();
+    return url.endsWith(resourcePath) ? url.substring(0, url.length() - resourcePath.length()) : url;
+  }
+
+  /**
+   * @return the last modification time of the newest class file of the package including subpackages if the package is located in a directory,
+   * null if the package is located in a jar
+   */
+  @Nullable
+  private static Long getClassesTimestamp(@NotNull final URL packageLocation) throws IOException {
+    if (!"file".equals(packageLocation.getProtocol())) return null;
+    return getNewestClassFileTimestamp(toFile(packageLocation));
+  }
+
+  /**
+   * @return description of the classpath entry the package is located in which changes when the classes of the package change (jar file name and size for a jar),
+   * null if the classpath entry cannot be described
+   */
+  @Nullable
+  private static String getLocation(@NotNull final URL packageLocation, @NotNull final String packagePath) throws IOException {
+    if ("file".equals(packageLocation.getProtocol())) {
+      return getClasspathEntry(packageLocation, packagePath) + " " + getNewestClassFileTimestamp(toFile(packageLocation));
+    }
+    if ("jar".equals(packageLocation.getProtocol())) {
+      final String path = packageLocation.getPath();
+      final int separatorIndex = path.indexOf("!/");
+      if (separatorIndex < 0) return null;
+      final URL jarUrl = new URL(path.substring(0, separatorIndex));
+      if (!"file".equals(jarUrl.getProtocol())) return null;
+      final File jar = toFile(jarUrl);
+      return jar.getName() + " " + jar.length();
+    }
+    return null;
+  }
+
+  @NotNull
+  private static File toFile(@NotNull final URL fileUrl) throws IOException {
+    try {
+      return new File(fileUrl.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      throw new IOException("Cannot get file for " + fileUrl, e);
+    }
+  }
+
+  private static long getNewestClassFileTimestamp(@NotNull final File directory) {
+    long result = 0;
+    final File[] files = directory.listFiles();
+    if (files == null) return result;
+    for (File file : files) {
+      if (file.isDirectory()) {
+        result = Math.max(result, getNewestClassFileTimestamp(file));
+      } else if (file.getName().endsWith(CLASS_FILE_SUFFIX)) {
+        result = Math.max(result, file.lastModified());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Writes the index for each of the packages scanning the packages via the classloader of this class
+   *
+   * @param args the directory to put the index into (usually the classes output directory) followed by the package names
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Usage: ResourceIndex <output directory> <package>...");
+    }
+    final File outputDir = new File(args[0]);
+    final ClassLoader classLoader = ResourceIndex.class.getClassLoader();
+    for (String packageName : Arrays.copyOfRange(args, 1, args.length)) {
+      final int classesCount = generate(outputDir, classLoader, packageName);
+      System.out.println("Written " + classesCount + " classes for package '" + packageName + "' to " + new File(outputDir, getIndexPath(packageName)).getAbsolutePath());
+    }
+  }
+
+  /**
+   * @param outputDir the directory to put the index into, the classes of the package located in the directory are considered to be packed together with the index
+   * @return number of the classes written to the index
+   */
+  static int generate(@NotNull final File outputDir, @NotNull final ClassLoader classLoader, @NotNull final String packageName) throws IOException {
+    final IndexContent indexContent = new IndexContent();
+    for (Class<?> c : scan(classLoader, new String[]{packageName})) {
+      indexContent.myClassNames.add(c.getName());
+    }
+    Collections.sort(indexContent.myClassNames);
+    final String packagePath = getPackagePath(packageName);
+    final File outputPackageDir = new File(outputDir, packagePath).getCanonicalFile();
+    for (URL packageLocation : Collections.list(classLoader.getResources(packagePath))) {
+      if ("file".equals(packageLocation.getProtocol()) && toFile(packageLocation).getCanonicalFile().equals(outputPackageDir)) {
+        indexContent.myClassesTimestamp = getClassesTimestamp(packageLocation);
+        continue;
+      }
+      final String location = getLocation(packageLocation, packagePath);
+      if (location == null) {
+        throw new IOException("Cannot describe classpath entry of package '" + packageName + "' located at " + packageLocation);
+      }
+      indexContent.myLocations.add(location);
+    }
+    indexContent.write(new File(outputDir, getIndexPath(packageName)), packageName);
+    return indexContent.myClassNames.size();
+  }
+
+  private static class IndexContent {
+    @Nullable private Long myClassesTimestamp;
+    @NotNull private final Set<String> myLocations = new TreeSet<String>();
+    @NotNull private final List<String> myClassNames = new ArrayList<String>();
+
+    private void write(@NotNull final File indexFile, @NotNull final String packageName) throws IOException {
+      final File parent = indexFile.getParentFile();
+      if (!parent.isDirectory() && !parent.mkdirs()) {
+        throw new IOException("Cannot create directory " + parent.getAbsolutePath());
+      }
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), StandardCharsets.UTF_8)) {
+        writer.write(COMMENT_PREFIX + " Jersey root resource and provider classes of package '" + packageName + "', generated at build time\n");
+        if (myClassesTimestamp != null) {
+          writer.write(CLASSES_TIMESTAMP_PREFIX + myClassesTimestamp + "\n");
+        }
+        for (String location : myLocations) {
+          writer.write(LOCATION_PREFIX + location + "\n");
+        }
+        for (String className : myClassNames) {
+          writer.write(className);
+          writer.write('\n');
+        }
+      }
+    }
+
+    @NotNull
+    private static IndexContent read(@NotNull final URL index) throws IOException {
+      final IndexContent result = new IndexContent();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith(CLASSES_TIMESTAMP_PREFIX)) {
+            try {
+              result.myClassesTimestamp = Long.valueOf(line.substring(CLASSES_TIMESTAMP_PREFIX.length()).trim());
+            } catch (NumberFormatException e) {
+              throw new IOException("Invalid classes timestamp line '" + line + "'", e);
+            }
+          } else if (line.startsWith(LOCATION_PREFIX)) {
+            result.myLocations.add(line.substring(LOCATION_PREFIX.length()).trim());
+          } else {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith(COMMENT_PREFIX)) {
+              result.myClassNames.add(line);
+            }
+          }
+        }
+      }
+      return result;
+    }
+  }
+}
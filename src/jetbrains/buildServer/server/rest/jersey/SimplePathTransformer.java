@@ -34,6 +34,10 @@ public class SimplePathTransformer implements PathTransformer {
   private final HttpHeaders myHeaders;
   private final RequestPathTransformInfo myRequestPathTransformInfo;
 
+  //the instance is created per request and is used for every href in the response, so the request-dependent parts are calculated once
+  private volatile PathTransformator myRequestTranslator;
+  private volatile String myUrlPrefix;
+
   public SimplePathTransformer(final HttpServletRequest request, final HttpHeaders headers, final RequestPathTransformInfo requestPathTransformInfo) {
     myRequest = request;
     myHeaders = headers;
@@ -42,19 +46,34 @@ public class SimplePathTransformer implements PathTransformer {
 
   public String transform(final String path) {
     if (path == null) return null;
-    if (!TeamCityProperties.getBoolean("rest.beans.href.useFullURLs") || myRequest == null) {
-      return getRequestTranslator().getTransformedPath(path);
+    return getUrlPrefix() + getRequestTranslator().getTransformedPath(path);
+  }
+
+  private String getUrlPrefix() {
+    String result = myUrlPrefix;
+    if (result == null) {
+      if (!TeamCityProperties.getBoolean("rest.beans.href.useFullURLs") || myRequest == null) {
+        result = "";
+      } else {
+        final String scheme = myRequest.getScheme();
+        final int port = myRequest.getServerPort();
+        result = scheme + "://" + myRequest.getServerName() +
+                 ((("http".equals(scheme) && port > 80) || ("https".equals(scheme) && port != 443)) ? ":" + port : "")
+                 + myRequest.getServletContext().getContextPath();
+      }
+      myUrlPrefix = result;
     }
-    final String scheme = myRequest.getScheme();
-    final int port = myRequest.getServerPort();
-    return scheme + "://" + myRequest.getServerName() +
-           ((("http".equals(scheme) && port > 80) || ("https".equals(scheme) && port != 443)) ? ":" + port : "")
-           + myRequest.getServletContext().getContextPath() + getRequestTranslator().getTransformedPath(path);
+    return result;
   }
 
   private PathTransformator getRequestTranslator() {
-    final String originalRequestPath =
-      myHeaders.getRequestHeader(Constants.ORIGINAL_REQUEST_URI_HEADER_NAME).get(0); //todo report appropriate message
-    return myRequestPathTransformInfo.getReverseTransformator(originalRequestPath, false);
+    PathTransformator result = myRequestTranslator;
+    if (result == null) {
+      final String originalRequestPath =
+        myHeaders.getRequestHeader(Constants.ORIGINAL_REQUEST_URI_HEADER_NAME).get(0); //todo report appropriate message
+      result = myRequestPathTransformInfo.getReverseTransformator(originalRequestPath, false);
+      myRequestTranslator = result;
+    }
+    return result;
   }
 }
@@ -16,14 +16,20 @@
 
 package jetbrains.buildServer.server.rest.model;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.intellij.openapi.util.text.StringUtil;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 import jetbrains.buildServer.server.rest.data.Locator;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import jetbrains.buildServer.server.rest.errors.LocatorProcessException;
+import jetbrains.buildServer.server.rest.errors.OperationException;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.Contract;
@@ -45,6 +51,13 @@ public class Fields {
 
   private static final String LOCATOR_CUSTOM_NAME = "$locator";
 
+  /**
+   * Parsed fields specifications are immutable, so they are shared between all the Fields instances with the same spec
+   */
+  private static final Cache<String, CompiledSpec> ourCompiledSpecs = CacheBuilder.newBuilder()
+                                                                                  .maximumSize(TeamCityProperties.getInteger("rest.beans.fields.specCacheSize", 1000))
+                                                                                  .build();
+
   public static final Fields NONE = new Fields(NONE_FIELDS_PATTERN, null, null, true); // no fields at all
   public static final Fields SHORT = new Fields(DEFAULT_FIELDS_SHORT_PATTERN, null, null, true); // short (reference) form. Uses short or none form for the fields.
   public static final Fields ALL = new Fields(ALL_FIELDS_PATTERN, null, null, true); // all fields are present and are in the short form
@@ -53,11 +66,15 @@ public class Fields {
   public static final Fields ALL_NESTED = new Fields(ALL_NESTED_FIELDS_PATTERN, null, null, true); // maximum, all fields are included in the same maximum form
 
   @NotNull private final String myFieldsSpec;
-  private Locator myFieldsSpecLocator;
+  @Nullable private CompiledSpec myCompiledSpec;
   @NotNull private final Map<String, Fields> myRestrictedFields;
+  /**
+   * Results of getNestedField: the same nested Fields is requested for each item of a list, so compute it once per Fields instance
+   */
+  @NotNull private final Map<String, NestedFields> myNestedFields = new ConcurrentHashMap<>();
 
   @Nullable
-  private Context myContext = null;
+  private final Context myContext;
 
   private Fields(@NotNull String actualFieldsSpec, @Nullable Map<String, Fields> restrictedFields, @Nullable Context context, boolean isInternal) {
     myFieldsSpec = actualFieldsSpec;
@@ -87,23 +104,23 @@ public class Fields {
   }
 
   public boolean isShort() {
-    return DEFAULT_FIELDS_SHORT_PATTERN.equals(myFieldsSpec) || getCustomDimension(DEFAULT_FIELDS_SHORT_PATTERN_ALTERNATIVE) != null;
+    return getCompiledSpec().myShort;
   }
 
   public boolean isAll() {
-    return getCustomDimension(ALL_FIELDS_PATTERN) != null;
+    return getCompiledSpec().myAll;
   }
 
   public boolean isLong() {
-    return getCustomDimension(DEFAULT_FIELDS_LONG_PATTERN) != null;
+    return getCompiledSpec().myLong;
   }
 
   public boolean isAllNested() {
-    return getCustomDimension(ALL_NESTED_FIELDS_PATTERN) != null;
+    return getCompiledSpec().myAllNested;
   }
 
   public boolean isNone() {
-    return getCustomDimension(NONE_FIELDS_PATTERN) != null;
+    return getCompiledSpec().myNone;
   }
 
   /**
@@ -201,7 +218,7 @@ public class Fields {
   private static String getNestedField(@NotNull final String fieldSpec, @NotNull final String dimensionName) {
     if (fieldSpec.contains(dimensionName)) return null; //performance optimization: first check if the string appears inside
 
-    return new Fields(fieldSpec).getCustomDimension(dimensionName);
+    return getCompiledSpec(fieldSpec).getDimension(dimensionName);
   }
 
   @NotNull
@@ -219,6 +236,19 @@ public class Fields {
    */
   @NotNull
   public Fields getNestedField(@NotNull final String nestedFieldName, @NotNull final Fields defaultForShort, @NotNull final Fields defaultForLong) {
+    final NestedFields cached = myNestedFields.get(nestedFieldName);
+    for (NestedFields entry = cached; entry != null; entry = entry.myNext) {
+      if (entry.myDefaultForShort.myFieldsSpec.equals(defaultForShort.myFieldsSpec) && entry.myDefaultForLong.myFieldsSpec.equals(defaultForLong.myFieldsSpec)) {
+        return entry.myResult;
+      }
+    }
+    final Fields result = createNestedField(nestedFieldName, defaultForShort, defaultForLong);
+    myNestedFields.put(nestedFieldName, new NestedFields(defaultForShort, defaultForLong, result, cached)); //concurrent modification can only lose an entry which will be computed again
+    return result;
+  }
+
+  @NotNull
+  private Fields createNestedField(@NotNull final String nestedFieldName, @NotNull final Fields defaultForShort, @NotNull final Fields defaultForLong) {
     final Boolean included = isIncluded(nestedFieldName);
     if (included != null && !included) {
       return NONE;
@@ -259,8 +289,7 @@ public class Fields {
 
   @Nullable
   public String getCustomDimension(@NotNull final String fieldName) {
-    final Locator parsedCustomFields = getParsedCustomFields();
-    return parsedCustomFields == null ? null : parsedCustomFields.lookupSingleDimensionValue(fieldName); //should use getSingleDimensionValue here, but since locator check is not invoked so far, can improve performance a bit by using lookupSingleDimensionValue
+    return getCompiledSpec().getDimension(fieldName);
   }
 
   @Nullable
@@ -322,20 +351,25 @@ public class Fields {
     return new Fields(myFieldsSpec, newRestrictedFields, myContext, true);
   }
 
-  @Nullable
-  private Locator getParsedCustomFields() {
-    if (myFieldsSpecLocator == null && !StringUtil.isEmpty(myFieldsSpec)) {
-      try {
-        myFieldsSpecLocator = new Locator(myFieldsSpec, true,
-                                          NONE_FIELDS_PATTERN, DEFAULT_FIELDS_SHORT_PATTERN_ALTERNATIVE, DEFAULT_FIELDS_LONG_PATTERN, ALL_FIELDS_PATTERN, ALL_NESTED_FIELDS_PATTERN,
-                                          LOCATOR_CUSTOM_NAME, OPTIONAL_FIELDS_PATTERN);
-        //should add to hidden dimension, but since the locator is not currently checked, save performance by not doing it so far
-        //myFieldsSpecLocator.addHiddenDimensions(OPTIONAL_FIELDS_PATTERN);
-      } catch (LocatorProcessException e) {
-        throw new LocatorProcessException("Error parsing fields specification: " + e.getMessage(), e);
-      }
+  @NotNull
+  private CompiledSpec getCompiledSpec() {
+    if (myCompiledSpec == null) {
+      myCompiledSpec = getCompiledSpec(myFieldsSpec);
+    }
+    return myCompiledSpec;
+  }
+
+  @NotNull
+  private static CompiledSpec getCompiledSpec(@NotNull final String fieldsSpec) {
+    if (StringUtil.isEmpty(fieldsSpec)) return CompiledSpec.EMPTY;
+    try {
+      return ourCompiledSpecs.get(fieldsSpec, () -> new CompiledSpec(fieldsSpec));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw new OperationException("Error parsing fields specification '" + fieldsSpec + "'", (Exception)cause);
     }
-    return myFieldsSpecLocator;
   }
 
   @NotNull
@@ -348,18 +382,100 @@ public class Fields {
     return getFieldsSpec();
   }
 
-  public void setContext(@NotNull final BuildPromotion buildPromotion) {
-    if (myContext == null) myContext = new Context();
-    myContext.buildPromotion = buildPromotion;
+  /**
+   * Fields instances are shared (see getNestedField), so the context is set on a copy
+   */
+  @NotNull
+  public Fields withContext(@NotNull final BuildPromotion buildPromotion) {
+    return new Fields(myFieldsSpec, myRestrictedFields, new Context(buildPromotion), true);
+  }
+
+  /**
+   * Fields specification parsed once, lookups do not allocate
+   */
+  private static final class CompiledSpec {
+    static final CompiledSpec EMPTY = new CompiledSpec();
+
+    @NotNull private final Map<String, String> myDimensions;
+    @NotNull private final Map<String, String> myDimensionErrors;
+    private final boolean myShort;
+    private final boolean myAll;
+    private final boolean myLong;
+    private final boolean myAllNested;
+    private final boolean myNone;
+
+    private CompiledSpec() {
+      myDimensions = Collections.emptyMap();
+      myDimensionErrors = Collections.emptyMap();
+      myShort = true;
+      myAll = false;
+      myLong = false;
+      myAllNested = false;
+      myNone = false;
+    }
+
+    private CompiledSpec(@NotNull final String fieldsSpec) {
+      final Locator locator;
+      try {
+        locator = new Locator(fieldsSpec, true,
+                              NONE_FIELDS_PATTERN, DEFAULT_FIELDS_SHORT_PATTERN_ALTERNATIVE, DEFAULT_FIELDS_LONG_PATTERN, ALL_FIELDS_PATTERN, ALL_NESTED_FIELDS_PATTERN,
+                              LOCATOR_CUSTOM_NAME, OPTIONAL_FIELDS_PATTERN);
+      } catch (LocatorProcessException e) {
+        throw new LocatorProcessException("Error parsing fields specification: " + e.getMessage(), e);
+      }
+      final HashMap<String, String> dimensions = new HashMap<>();
+      final HashMap<String, String> dimensionErrors = new HashMap<>();
+      for (String name : locator.getDefinedDimensions()) {
+        try {
+          dimensions.put(name, locator.lookupSingleDimensionValue(name));
+        } catch (LocatorProcessException e) {
+          dimensionErrors.put(name, e.getMessage()); //reported only when the dimension is actually looked up
+        }
+      }
+      myDimensions = dimensions;
+      myDimensionErrors = dimensionErrors;
+      myShort = getDimension(DEFAULT_FIELDS_SHORT_PATTERN_ALTERNATIVE) != null;
+      myAll = getDimension(ALL_FIELDS_PATTERN) != null;
+      myLong = getDimension(DEFAULT_FIELDS_LONG_PATTERN) != null;
+      myAllNested = getDimension(ALL_NESTED_FIELDS_PATTERN) != null;
+      myNone = getDimension(NONE_FIELDS_PATTERN) != null;
+    }
+
+    @Nullable
+    String getDimension(@NotNull final String name) {
+      final String result = myDimensions.get(name);
+      if (result == null && !myDimensionErrors.isEmpty()) {
+        final String error = myDimensionErrors.get(name);
+        if (error != null) throw new LocatorProcessException(error);
+      }
+      return result;
+    }
+  }
+
+  private static final class NestedFields {
+    @NotNull private final Fields myDefaultForShort;
+    @NotNull private final Fields myDefaultForLong;
+    @NotNull private final Fields myResult;
+    @Nullable private final NestedFields myNext;
+
+    NestedFields(@NotNull final Fields defaultForShort, @NotNull final Fields defaultForLong, @NotNull final Fields result, @Nullable final NestedFields next) {
+      myDefaultForShort = defaultForShort;
+      myDefaultForLong = defaultForLong;
+      myResult = result;
+      myNext = next;
+    }
   }
 
   private static class Context {
-    @Nullable
-    private BuildPromotion buildPromotion;
+    @NotNull
+    private final BuildPromotion buildPromotion;
+
+    Context(@NotNull final BuildPromotion buildPromotion) {
+      this.buildPromotion = buildPromotion;
+    }
 
     @NotNull
     public String process(@NotNull final String locator) {
-      if (buildPromotion == null) return locator;
       return StringUtil.replace(locator, "$context.build.id", String.valueOf(buildPromotion.getId()));
     }
   }
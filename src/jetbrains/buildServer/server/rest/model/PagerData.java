@@ -114,6 +114,18 @@ public class PagerData {
       final String newLocator = Locator.setDimension(nextHref.getCurrentLocatorText(), AbstractFinder.DIMENSION_LOOKUP_LIMIT, getNextLookUpLimit(pagedResult.myLookupLimit));
       nextHref = new UriModification(nextHref.getBuilder().replaceQueryParam(locatorQueryParameterName, Util.encodeUrlParamValue(newLocator)), newLocator);
     }
+
+    if (nextHref != null && pagedResult.getNextCursor() != null && !StringUtil.isEmpty(locatorQueryParameterName)) {
+      final String newLocator = getLocatorWithCursor(locatorText, pagedResult.getNextCursor(), count);
+      if (newLocator != null) {
+        // the next page is positioned by the cursor, so neither start nor increased lookupLimit is necessary
+        nextHref = new UriModification(uriBuilder.clone().replaceQueryParam(START, null).replaceQueryParam(COUNT, null)
+                                                 .replaceQueryParam(locatorQueryParameterName, Util.encodeUrlParamValue(newLocator)), newLocator);
+      }
+    }
+    if (prevHref != null && isCursorUsed(locatorText)) {
+      prevHref = null; //start is relative to the cursor, so previous page cannot be calculated
+    }
     myNextHref = nextHref == null ? null : getRelativePath(nextHref.getBuilder().build(), contextPath);
     myPrevHref = prevHref == null ? null : getRelativePath(prevHref.build(), contextPath);
   }
@@ -147,6 +159,28 @@ public class PagerData {
     return new UriModification(newBuilder.replaceQueryParam(locatorQueryParameterName, Util.encodeUrlParamValue(newLocator)), newLocator);
   }
 
+  @Nullable
+  private static String getLocatorWithCursor(@Nullable final String locatorText, @NotNull final String cursor, @Nullable final Long count) {
+    final Locator locator = Locator.createPotentiallyEmptyLocator(locatorText);
+    if (locator.isSingleValue()) return null;
+    locator.removeDimension(START);
+    locator.setDimension(AbstractFinder.DIMENSION_CURSOR, cursor);
+    if (count != null) {
+      locator.setDimension(COUNT, String.valueOf(count));
+    }
+    return locator.getStringRepresentation();
+  }
+
+  private static boolean isCursorUsed(@Nullable final String locatorText) {
+    if (StringUtil.isEmpty(locatorText)) return false;
+    try {
+      final Locator locator = new Locator(locatorText);
+      return !locator.isSingleValue() && locator.lookupSingleDimensionValue(AbstractFinder.DIMENSION_CURSOR) != null;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
   class UriModification {
     @NotNull private final UriBuilder myBuilder;
     @Nullable private final String myCurrentLocatorText;
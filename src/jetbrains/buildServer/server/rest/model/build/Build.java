@@ -1278,8 +1278,7 @@ public class Build {
   public Related getRelated() {
     return ValueWithDefault.decideDefault(myFields.isIncluded("related", false, false),
                                           () -> {
-                                            Fields nestedField = myFields.getNestedField("related", Fields.LONG, Fields.LONG);
-                                            nestedField.setContext(myBuildPromotion);
+                                            Fields nestedField = myFields.getNestedField("related", Fields.LONG, Fields.LONG).withContext(myBuildPromotion);
                                             return new Related(nestedField, myBeanContext);
                                           });
   }
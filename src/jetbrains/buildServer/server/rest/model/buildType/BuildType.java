@@ -427,7 +427,10 @@ public class BuildType {
         final Fields buildsFields = myFields.getNestedField("builds");
         final String buildsLocator = buildsFields.getLocator();
         if (buildsLocator != null){
-          builds = myBeanContext.getSingletonService(BuildFinder.class).getBuilds(myBuildType.getBuildType(), buildsLocator).myEntries;
+          builds = BuildTypesPrefetcher.getPrefetchedBuilds(myBuildType.getBuildType(), buildsLocator);
+          if (builds == null) {
+            builds = myBeanContext.getSingletonService(BuildFinder.class).getBuilds(myBuildType.getBuildType(), buildsLocator).myEntries;
+          }
           buildsHref = BuildTypeRequest.getBuildsHref(myBuildType.getBuildType(), buildsLocator);
         }else{
           buildsHref = BuildTypeRequest.getBuildsHref(myBuildType.getBuildType());
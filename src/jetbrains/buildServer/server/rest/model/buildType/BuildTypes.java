@@ -70,6 +70,7 @@ public class BuildTypes {
 
   public BuildTypes(@NotNull final List<BuildTypeOrTemplate> items, @Nullable final PagerData pagerData, @NotNull final Fields fields, @NotNull final BeanContext beanContext) {
     if (fields.isIncluded("buildType", false, true)){
+      BuildTypesPrefetcher.prefetchForBuildTypes(items, fields.getNestedField("buildType"), beanContext);
       this.buildTypes = new ArrayList<BuildType>(items.size());
       for (BuildTypeOrTemplate buildType : items) {
         this.buildTypes.add(new BuildType(buildType, fields.getNestedField("buildType"), beanContext));
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.model.buildType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jetbrains.buildServer.server.rest.data.BuildFinder;
+import jetbrains.buildServer.server.rest.data.BuildTypeFinder;
+import jetbrains.buildServer.server.rest.data.RestContext;
+import jetbrains.buildServer.server.rest.model.Fields;
+import jetbrains.buildServer.server.rest.util.BeanContext;
+import jetbrains.buildServer.server.rest.util.BuildTypeOrTemplate;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.serverSide.SProject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Resolves the nested collections requested via fields for all the build types of a response at once before the beans are created,
+ * so that a request like "projects?fields=project(buildTypes(buildType(builds(...))))" does not search for builds of each build type separately.
+ * The beans get the prefetched values via {@link RestContext} and fall back to their own queries for the values which were not prefetched.
+ */
+public class BuildTypesPrefetcher {
+  private static final String PROJECT_BUILD_TYPES = "project.buildTypes";
+  private static final String BUILD_TYPE_BUILDS = "buildType.builds";
+
+  /**
+   * Should be called before the beans for the projects are created with the same fields
+   */
+  public static void prefetchForProjects(@NotNull final List<SProject> projects, @NotNull final Fields projectFields, @NotNull final BeanContext beanContext) {
+    final RestContext restContext = getRestContext();
+    if (restContext == null || projects.size() < 2) return;
+
+    if (Boolean.FALSE.equals(projectFields.isIncluded("buildTypes", false))) return;
+    final Fields buildTypesFields = projectFields.getNestedField("buildTypes", Fields.NONE, Fields.LONG);
+    if (Boolean.FALSE.equals(buildTypesFields.isIncluded("buildType", false, true))) return;
+    final Fields buildTypeFields = buildTypesFields.getNestedField("buildType");
+    if (getBuildsLocator(buildTypeFields) == null) return; //build types of a project are cheap to get, so only worth collecting if something is to be prefetched for them
+
+    final String buildTypesLocator = buildTypesFields.getLocator();
+    final BuildTypeFinder buildTypeFinder = beanContext.getSingletonService(BuildTypeFinder.class);
+    final Map<String, List<BuildTypeOrTemplate>> buildTypesByProject = new HashMap<>();
+    final List<BuildTypeOrTemplate> allBuildTypes = new ArrayList<>();
+    for (SProject project : projects) {
+      final List<BuildTypeOrTemplate> buildTypes = buildTypeFinder.getBuildTypesPaged(project, buildTypesLocator, true).myEntries;
+      buildTypesByProject.put(project.getProjectId(), buildTypes);
+      allBuildTypes.addAll(buildTypes);
+    }
+    restContext.putPrefetched(getKind(PROJECT_BUILD_TYPES, buildTypesLocator), buildTypesByProject);
+
+    prefetchForBuildTypes(allBuildTypes, buildTypeFields, beanContext);
+  }
+
+  /**
+   * Should be called before the beans for the build types are created with the same fields
+   */
+  public static void prefetchForBuildTypes(@NotNull final List<BuildTypeOrTemplate> buildTypes, @NotNull final Fields buildTypeFields, @NotNull final BeanContext beanContext) {
+    final RestContext restContext = getRestContext();
+    if (restContext == null || buildTypes.size() < 2) return;
+
+    final String buildsLocator = getBuildsLocator(buildTypeFields);
+    if (buildsLocator != null) {
+      final String kind = getKind(BUILD_TYPE_BUILDS, buildsLocator);
+      final List<SBuildType> notPrefetched = buildTypes.stream().filter(BuildTypeOrTemplate::isBuildType).map(BuildTypeOrTemplate::getBuildType)
+                                                       .filter(buildType -> restContext.getPrefetched(kind, buildType.getInternalId()) == null).collect(Collectors.toList());
+      if (notPrefetched.size() > 1) {
+        final Map<String, List<BuildPromotion>> builds = beanContext.getSingletonService(BuildFinder.class).getBuildsBatched(notPrefetched, buildsLocator);
+        if (builds != null) {
+          restContext.putPrefetched(kind, builds);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return build types of the project found by the locator if they were prefetched, null otherwise
+   */
+  @Nullable
+  public static List<BuildTypeOrTemplate> getPrefetchedBuildTypes(@NotNull final SProject project, @Nullable final String buildTypesLocator) {
+    final RestContext restContext = getRestContext();
+    if (restContext == null) return null;
+    final List<BuildTypeOrTemplate> result = restContext.getPrefetched(getKind(PROJECT_BUILD_TYPES, buildTypesLocator), project.getProjectId());
+    return result == null ? null : new ArrayList<>(result);
+  }
+
+  /**
+   * @return builds of the build type found by the locator if they were prefetched, null otherwise
+   */
+  @Nullable
+  public static List<BuildPromotion> getPrefetchedBuilds(@NotNull final SBuildType buildType, @NotNull final String buildsLocator) {
+    final RestContext restContext = getRestContext();
+    if (restContext == null) return null;
+    final List<BuildPromotion> result = restContext.getPrefetched(getKind(BUILD_TYPE_BUILDS, buildsLocator), buildType.getInternalId());
+    return result == null ? null : new ArrayList<>(result);
+  }
+
+  /**
+   * @return locator of the builds to be included into the build type bean, null if the builds are not to be searched. Should be consistent with {@link BuildType#getBuilds()}
+   */
+  @Nullable
+  private static String getBuildsLocator(@NotNull final Fields buildTypeFields) {
+    if (Boolean.FALSE.equals(buildTypeFields.isIncluded("builds", false, true)) || Boolean.FALSE.equals(buildTypeFields.isIncluded("builds", false))) return null;
+    return buildTypeFields.getNestedField("builds").getLocator();
+  }
+
+  @NotNull
+  private static String getKind(@NotNull final String name, @Nullable final String locator) {
+    return locator == null ? name : name + ":" + locator;
+  }
+
+  @Nullable
+  private static RestContext getRestContext() {
+    final RestContext result = RestContext.getThreadLocal();
+    return result == null || !result.isPrefetchAllowed() ? null : result;
+  }
+}
@@ -35,6 +35,7 @@ import jetbrains.buildServer.server.rest.errors.NotFoundException;
 import jetbrains.buildServer.server.rest.model.*;
 import jetbrains.buildServer.server.rest.model.buildType.BuildType;
 import jetbrains.buildServer.server.rest.model.buildType.BuildTypes;
+import jetbrains.buildServer.server.rest.model.buildType.BuildTypesPrefetcher;
 import jetbrains.buildServer.server.rest.model.buildType.VcsRoots;
 import jetbrains.buildServer.server.rest.request.ProjectRequest;
 import jetbrains.buildServer.server.rest.request.VcsRootRequest;
@@ -172,7 +173,10 @@ public class Project {
       public BuildTypes get() {
         final Fields buildTypesFields = fields.getNestedField("buildTypes", Fields.NONE, Fields.LONG);
         final String buildTypesLocator = buildTypesFields.getLocator();
-        final List<BuildTypeOrTemplate> buildTypes = buildTypeFinder.getBuildTypesPaged(project, buildTypesLocator, true).myEntries;
+        List<BuildTypeOrTemplate> buildTypes = BuildTypesPrefetcher.getPrefetchedBuildTypes(project, buildTypesLocator);
+        if (buildTypes == null) {
+          buildTypes = buildTypeFinder.getBuildTypesPaged(project, buildTypesLocator, true).myEntries;
+        }
         return new BuildTypes(buildTypes, null, buildTypesFields, beanContext);
       }
     });
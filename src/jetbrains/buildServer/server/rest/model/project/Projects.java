@@ -26,6 +26,7 @@ import javax.xml.bind.annotation.XmlType;
 import jetbrains.buildServer.server.rest.data.ProjectFinder;
 import jetbrains.buildServer.server.rest.model.Fields;
 import jetbrains.buildServer.server.rest.model.PagerData;
+import jetbrains.buildServer.server.rest.model.buildType.BuildTypesPrefetcher;
 import jetbrains.buildServer.server.rest.util.BeanContext;
 import jetbrains.buildServer.server.rest.util.ValueWithDefault;
 import jetbrains.buildServer.serverSide.SProject;
@@ -66,6 +67,7 @@ public class Projects {
         public List<Project> get() {
           final ArrayList<Project> result = new ArrayList<Project>(projectObjects.size());
           final Fields nestedField = fields.getNestedField("project");
+          BuildTypesPrefetcher.prefetchForProjects(projectObjects, nestedField, beanContext);
           for (SProject project : projectObjects) {
             result.add(new Project(project, nestedField, beanContext));
           }
@@ -51,6 +51,7 @@ import jetbrains.buildServer.server.rest.model.problem.ProblemOccurrences;
 import jetbrains.buildServer.server.rest.model.problem.TestOccurrences;
 import jetbrains.buildServer.server.rest.util.AggregatedBuildArtifactsElementBuilder;
 import jetbrains.buildServer.server.rest.util.BeanContext;
+import jetbrains.buildServer.server.rest.util.CollectionStreamingOutput;
 import jetbrains.buildServer.serverSide.TriggeredBy;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.auth.*;
@@ -873,6 +874,46 @@ public class BuildRequest {
     return Builds.createFromBuildPromotions(pagedResult.myEntries, pagerData, new Fields(fields), myBeanContext);
   }
 
+  /**
+   * Experimental streaming alias for .../app/rest/builds?locator={buildLocator}: the builds are written to the response as soon as they are found,
+   * so large result sets (e.g. with "count:-1") do not need to be held in memory.
+   * "count", "href", "nextHref" and "prevHref" are written after the builds, see {@link CollectionStreamingOutput} for the details.
+   */
+  @GET
+  @Path("/streamed/{buildLocator}")
+  @Produces({"application/json"})
+  public Response getStreamedAsJson(@PathParam("buildLocator") String buildLocator, @QueryParam("fields") String fields,
+                                    @Context UriInfo uriInfo, @Context HttpServletRequest request) {
+    return Response.ok(getStreamed(CollectionStreamingOutput.Format.JSON, buildLocator, fields, uriInfo, request), MediaType.APPLICATION_JSON_TYPE).build();
+  }
+
+  /**
+   * Experimental, see {@link #getStreamedAsJson(String, String, UriInfo, HttpServletRequest)}
+   */
+  @GET
+  @Path("/streamed/{buildLocator}")
+  @Produces({"application/xml"})
+  public Response getStreamedAsXml(@PathParam("buildLocator") String buildLocator, @QueryParam("fields") String fields,
+                                   @Context UriInfo uriInfo, @Context HttpServletRequest request) {
+    return Response.ok(getStreamed(CollectionStreamingOutput.Format.XML, buildLocator, fields, uriInfo, request), MediaType.APPLICATION_XML_TYPE).build();
+  }
+
+  @NotNull
+  private StreamingOutput getStreamed(@NotNull final CollectionStreamingOutput.Format format, @NotNull final String buildLocator, @Nullable final String fields,
+                                      @NotNull final UriInfo uriInfo, @NotNull final HttpServletRequest request) {
+    final Fields buildsFields = new Fields(fields);
+    final Fields buildFields = buildsFields.getNestedField("build");
+    return new CollectionStreamingOutput<BuildPromotion, Build>(format, "builds", "build", Build.class, buildsFields, myBeanContext,
+                                                                 processor -> myBuildPromotionFinder.processItems(buildLocator, processor),
+                                                                 build -> new Build(build, buildFields, myBeanContext),
+                                                                 pagedResult -> {
+                                                                   UriBuilder uriBuilder = uriInfo.getRequestUriBuilder();
+                                                                   UriBuilder mainRequestUriBuilder = uriBuilder.replacePath(
+                                                                     uriBuilder.build().getPath().replace("/streamed/" + buildLocator, "")).queryParam("locator", buildLocator);
+                                                                   return new PagerData(mainRequestUriBuilder, request.getContextPath(), pagedResult, buildLocator, "locator");
+                                                                 });
+  }
+
   /**
    * Experimental.
    * @return List of error messages with associated entities, if any
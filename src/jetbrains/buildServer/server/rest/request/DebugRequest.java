@@ -45,6 +45,9 @@ import jetbrains.buildServer.diagnostic.ThreadDumpDataProvider;
 import jetbrains.buildServer.diagnostic.web.ThreadDumpsController;
 import jetbrains.buildServer.log.Loggers;
 import jetbrains.buildServer.responsibility.ResponsibilityManager;
+import jetbrains.buildServer.server.rest.APIController;
+import jetbrains.buildServer.server.rest.AsyncRequestExecutor;
+import jetbrains.buildServer.server.rest.FailedAttemptsThrottler;
 import jetbrains.buildServer.server.rest.data.*;
 import jetbrains.buildServer.server.rest.data.investigations.InvestigationWrapper;
 import jetbrains.buildServer.server.rest.errors.AuthorizationFailedException;
@@ -797,6 +800,84 @@ public class DebugRequest {
     return new Properties(Properties.createEntity(cacheStat, null), false, null, null, new Fields(fields), myBeanContext);
   }
 
+  @GET
+  @Path("/authToken/throttling/stats")
+  @Produces({"application/xml", "application/json"})
+  public Properties getAuthTokenThrottlingStats(@QueryParam("fields") final String fields) {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    Map<String, String> stats = myServiceLocator.getSingletonService(FailedAttemptsThrottler.class).getStatistics();
+    return new Properties(Properties.createEntity(stats, null), false, null, null, new Fields(fields), myBeanContext);
+  }
+
+  /**
+   * State of the asynchronous processing of heavy requests: the requests in progress overall and per endpoint, processed and rejected requests.
+   */
+  @GET
+  @Path("/requests/async/stats")
+  @Produces({"application/xml", "application/json"})
+  public Properties getAsyncRequestsStats(@QueryParam("fields") final String fields) {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    Map<String, String> stats = myServiceLocator.getSingletonService(AsyncRequestExecutor.class).getStatistics();
+    return new Properties(Properties.createEntity(stats, null), false, null, null, new Fields(fields), myBeanContext);
+  }
+
+  /**
+   * Durations of the REST API initialization phases in milliseconds, including the time of the resource classes discovery (via the build-time index or scanning) per classloader.
+   */
+  @GET
+  @Path("/jersey/startup/stats")
+  @Produces({"application/xml", "application/json"})
+  public Properties getJerseyStartupStats(@QueryParam("fields") final String fields) {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    Map<String, String> stats = myServiceLocator.getSingletonService(APIController.class).getStartupStatistics();
+    return new Properties(Properties.createEntity(stats, null), false, null, null, new Fields(fields), myBeanContext);
+  }
+
+  /**
+   * Statistics of the named filter conditions: how many items were included/excluded and the average sampled evaluation time.
+   */
+  @GET
+  @Path("/filters/stats")
+  @Produces({"application/xml", "application/json"})
+  public Properties getFiltersStats(@QueryParam("fields") final String fields) {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    return new Properties(Properties.createEntity(MultiCheckerFilter.getStatistics(), null), false, null, null, new Fields(fields), myBeanContext);
+  }
+
+  @DELETE
+  @Path("/filters/stats")
+  public void resetFiltersStats() {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    MultiCheckerFilter.resetStatistics();
+  }
+
+  /**
+   * Latency of the resource methods (split into the lookup and the response serialization time) and of the finders with the numbers of processed and returned items.
+   * Prometheus text exposition format is produced when "text/plain" is accepted.
+   */
+  @GET
+  @Path("/metrics")
+  @Produces({"application/xml", "application/json"})
+  public Properties getMetrics(@QueryParam("fields") final String fields) {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    return new Properties(Properties.createEntity(RestMetrics.getStatistics(), null), false, null, null, new Fields(fields), myBeanContext);
+  }
+
+  @GET
+  @Path("/metrics")
+  @Produces({"text/plain; version=0.0.4; charset=UTF-8"})
+  public String getMetricsForPrometheus() {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    return RestMetrics.getPrometheusText();
+  }
+
+  @DELETE
+  @Path("/metrics")
+  public void resetMetrics() {
+    myPermissionChecker.checkGlobalPermission(Permission.MANAGE_SERVER_INSTALLATION);
+    RestMetrics.reset();
+  }
+
   @GET
   @Path("/caches/buildPromotions/stats")
   @Produces({"application/xml", "application/json"})
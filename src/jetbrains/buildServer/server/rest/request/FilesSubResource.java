@@ -18,18 +18,27 @@ package jetbrains.buildServer.server.rest.request;
 
 import com.google.common.base.Stopwatch;
 import com.intellij.openapi.diagnostic.Logger;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.core.header.reader.HttpHeaderReader;
 import io.swagger.annotations.Api;
+import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
+import javax.ws.rs.core.EntityTag;
 import jetbrains.buildServer.controllers.HttpDownloadProcessor;
 import jetbrains.buildServer.server.rest.data.ArchiveElement;
 import jetbrains.buildServer.server.rest.data.BuildArtifactsFinder;
@@ -37,6 +46,7 @@ import jetbrains.buildServer.server.rest.data.Locator;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import jetbrains.buildServer.server.rest.errors.NotFoundException;
 import jetbrains.buildServer.server.rest.errors.OperationException;
+import jetbrains.buildServer.server.rest.jersey.EntityValidatorsFilter;
 import jetbrains.buildServer.server.rest.model.Fields;
 import jetbrains.buildServer.server.rest.model.Util;
 import jetbrains.buildServer.server.rest.model.files.FileApiUrlBuilder;
@@ -66,6 +76,12 @@ public class FilesSubResource {
   public static final String CONTENT = "/content";
   public static final String CHILDREN = "/children";
 
+  static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+  static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+  static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+  static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+  private static final String TOMCAT_RESPONSE_CLASS_NAME = "org.apache.catalina.connector.ResponseFacade";
+
   private final Provider myProvider;
   private final String myUrlPrefix;
   @NotNull private final BeanContext myBeanContext;
@@ -85,8 +101,9 @@ public class FilesSubResource {
   @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
   public Files getRoot(@QueryParam("basePath") final String basePath,
                        @QueryParam("locator") final String locator,
-                       @QueryParam("fields") String fields) {
-    return getChildren("", basePath, locator, fields);
+                       @QueryParam("fields") String fields,
+                       @Context HttpContext httpContext) {
+    return getChildren("", basePath, locator, fields, httpContext);
   }
 
   /**
@@ -98,8 +115,9 @@ public class FilesSubResource {
   public Files getChildrenAlias(@PathParam("path") @DefaultValue("") final String path,
                                 @QueryParam("basePath") final String basePath,
                                 @QueryParam("locator") final String locator,
-                                @QueryParam("fields") String fields) {
-    return getChildren(path, basePath, locator, fields);
+                                @QueryParam("fields") String fields,
+                                @Context HttpContext httpContext) {
+    return getChildren(path, basePath, locator, fields, httpContext);
   }
 
   @GET
@@ -108,7 +126,8 @@ public class FilesSubResource {
   public Files getChildren(@PathParam("path") @DefaultValue("") final String path,
                            @QueryParam("basePath") final String basePath,
                            @QueryParam("locator") final String locator,
-                           @QueryParam("fields") String fields) {
+                           @QueryParam("fields") String fields,
+                           @Context HttpContext httpContext) {
     if (!myArchiveBrowsingSupported && locator != null){
       final Boolean browseArchives = new Locator(locator).getSingleDimensionValueAsBoolean(BuildArtifactsFinder.ARCHIVES_DIMENSION_NAME);
       if (browseArchives != null && browseArchives){
@@ -117,14 +136,56 @@ public class FilesSubResource {
     }
     final FileApiUrlBuilder builder = fileApiUrlBuilder(locator, myUrlPrefix);
     final Element rootElement = myProvider.getElement(myProvider.preprocess(StringUtil.removeLeadingSlash(path)));
+
+    List<ArtifactTreeElement> items = null;
+    if (isValidatorsSupported(fields)) {
+      items = BuildArtifactsFinder.getItems(rootElement, myProvider.preprocess(basePath), locator, builder, myBeanContext.getServiceLocator());
+      final EntityTag eTag = getETag(Arrays.asList(myUrlPrefix, CHILDREN, rootElement.getFullName(), basePath, locator, fields,
+                                                   httpContext.getRequest().getHeaderValue(HttpHeaders.ACCEPT)), items);
+      if (EntityValidatorsFilter.setValidators(httpContext, eTag, null)) {
+        return new Files(); //not sent
+      }
+    }
+
+    final List<ArtifactTreeElement> precomputedItems = items;
     return new Files(null, new Files.DefaultFilesProvider(builder, myBeanContext) {
       @NotNull
       public List<? extends Element> getItems() {
+        if (precomputedItems != null) return precomputedItems;
         return BuildArtifactsFinder.getItems(rootElement, myProvider.preprocess(basePath), locator, builder, myBeanContext.getServiceLocator());
       }
     }, new Fields(fields), myBeanContext);
   }
 
+  /**
+   * Strong validators are computed from the state of the listed artifacts (path, size, modification time) and the representation-affecting request details.
+   * Nested children listings are not covered by the validators, so no validators are provided when "children" are requested via "fields".
+   * The validators are added to the response and conditional requests are processed by {@link EntityValidatorsFilter}.
+   */
+  private static boolean isValidatorsSupported(@Nullable final String fields) {
+    return TeamCityProperties.getBooleanOrTrue("rest.files.listing.validators.enabled") && (fields == null || !fields.contains("children"));
+  }
+
+  @NotNull
+  static EntityTag getETag(@NotNull final List<String> representationDetails, @NotNull final List<? extends Element> elements) {
+    final StringBuilder state = new StringBuilder();
+    for (String detail : representationDetails) {
+      state.append(detail == null ? "" : detail).append('\n');
+    }
+    for (Element element : elements) {
+      appendState(state, element);
+    }
+    return new EntityTag(EncryptUtil.md5(state.toString()));
+  }
+
+  private static void appendState(@NotNull final StringBuilder result, @NotNull final Element element) {
+    result.append(element.getFullName()).append('|').append(element.isLeaf()).append('|');
+    if (element.isContentAvailable()) {
+      result.append(element.getSize());
+    }
+    result.append('|').append(getLastModified(element)).append('\n');
+  }
+
   @Nullable
   private Element getParent(@NotNull final Element element) {
     final String parentPath = ArchiveUtil.getParentPath(element.getFullName());
@@ -164,7 +225,7 @@ public class FilesSubResource {
     String contentResponseBuilder = getSetting("rest.files.contentResponseBuilder", "coreWithDownloadProcessor", "responseBuilder", responseBuilder, true, "rest", "core", "coreWithDownloadProcessor");
     if ("rest".equals(contentResponseBuilder)) {
       //pre-2017.1 way of downloading files
-      final Response.ResponseBuilder builder = getContent(initialElement, request);
+      final Response.ResponseBuilder builder = getContent(initialElement, request, getSendfile(initialElement, request, response));
       myProvider.fileContentServed(preprocessedPath, request);
       setCacheControl(request, response);
       return builder.build();
@@ -302,8 +363,16 @@ public class FilesSubResource {
   @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
   public jetbrains.buildServer.server.rest.model.files.File getMetadata(@PathParam("path") final String path,
                                                                         @QueryParam("fields") String fields,
-                                                                        @Context HttpServletRequest request) {
+                                                                        @Context HttpContext httpContext) {
     final Element element = myProvider.getElement(myProvider.preprocess(StringUtil.removeLeadingSlash(path)));
+    if (isValidatorsSupported(fields)) {
+      final EntityTag eTag = getETag(Arrays.asList(myUrlPrefix, METADATA, fields, httpContext.getRequest().getHeaderValue(HttpHeaders.ACCEPT)),
+                                     Collections.singletonList(element));
+      final long lastModified = getLastModified(element);
+      if (EntityValidatorsFilter.setValidators(httpContext, eTag, lastModified >= 0 ? new Date(lastModified) : null)) {
+        return new jetbrains.buildServer.server.rest.model.files.File(); //not sent
+      }
+    }
     return new jetbrains.buildServer.server.rest.model.files.File(element, getParent(element), fileApiUrlBuilder(null, myUrlPrefix), new Fields(fields), myBeanContext);
   }
 
@@ -314,8 +383,10 @@ public class FilesSubResource {
                             @QueryParam("basePath") final String basePath,
                             @QueryParam("locator") final String locator,
                             @QueryParam("name") final String name,
+                            @QueryParam("compression") final String compression,
 //                            @QueryParam("ignoreErrors") final String ignoreErrors, //todo: implement
                             @Context HttpServletRequest request) {
+    final ArchiveElement.Compression archiveCompression = ArchiveElement.Compression.getByName(compression);
     final String processedPath = myProvider.preprocess(StringUtil.removeLeadingSlash(path));
     String actualBasePath = basePath != null ? myProvider.preprocess(basePath) : processedPath;
     String finalName = myProvider.preprocess(name);
@@ -330,15 +401,20 @@ public class FilesSubResource {
     final List<ArtifactTreeElement> elements = BuildArtifactsFinder.getItems(myProvider.getElement(processedPath), actualBasePath, actualLocator, urlBuilder,
                                                                              myBeanContext.getServiceLocator());
 
-    final ArchiveElement archiveElement = new ArchiveElement(elements, finalName);
+    final ArchiveElement archiveElement = new ArchiveElement(elements, finalName, archiveCompression, myBeanContext.getServiceLocator(), myUrlPrefix);
     final Response.ResponseBuilder builder = getContentByStream(archiveElement, request, new StreamingOutputProvider() {
       public boolean isRangeSupported() {
-        return false;
+        return archiveElement.isRangeSupported();
       }
 
       public StreamingOutput getStreamingOutput(@Nullable final Long startOffset, @Nullable final Long length) {
         return archiveElement.getStreamingOutput(startOffset, length, () -> "request " + WebUtil.getRequestDump(request));
       }
+
+      @Nullable
+      public EntityTag getStrongETag() {
+        return archiveElement.getStrongETag();
+      }
     });
     for (ArtifactTreeElement element : elements) {
       if (!myProvider.fileContentServed(Util.concatenatePath(actualBasePath, element.getFullName()), request)) break;
@@ -383,6 +459,14 @@ public class FilesSubResource {
   }
 
   public static Response.ResponseBuilder getContent(@NotNull final Element element, @NotNull final HttpServletRequest request) {
+    return getContent(element, request, null);
+  }
+
+  /**
+   * @param sendfile the file with the element's content to be sent by the servlet container, see {@link #getSendfile(Element, HttpServletRequest, HttpServletResponse)}.
+   *                 If null, the content is written to the response by the application.
+   */
+  public static Response.ResponseBuilder getContent(@NotNull final Element element, @NotNull final HttpServletRequest request, @Nullable final File sendfile) {
     return getContentByStream(element, request, new StreamingOutputProvider() {
       public boolean isRangeSupported() {
         return true;
@@ -391,9 +475,46 @@ public class FilesSubResource {
       public StreamingOutput getStreamingOutput(@Nullable final Long startOffset, @Nullable final Long length) {
         return FilesSubResource.getStreamingOutput(element, startOffset, length);
       }
+
+      @Override
+      public StreamingOutput getResponseOutput(@Nullable final Long startOffset, @Nullable final Long length) {
+        if (sendfile == null) {
+          return getStreamingOutput(startOffset, length);
+        }
+        final long start = startOffset != null ? startOffset : 0;
+        request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, sendfile.getAbsolutePath());
+        request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+        request.setAttribute(SENDFILE_END_ATTRIBUTE, length != null ? start + length : sendfile.length());
+        return output -> {
+          //the content is sent by the container after the response headers
+        };
+      }
     });
   }
 
+  /**
+   * Tomcat can send a file to the socket by the OS (sendfile) without copying the content via the JVM heap.
+   * The file is sent instead of the response body when the request has the corresponding attributes set before the response is committed.
+   *
+   * @return the local file with the element's content if it can be sent with sendfile for the request, null otherwise
+   */
+  @Nullable
+  public static File getSendfile(@NotNull final Element element, @NotNull final HttpServletRequest request, @NotNull final HttpServletResponse response) {
+    if (!TeamCityProperties.getBooleanOrTrue("rest.build.artifacts.sendfile.enabled") ||
+        !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+      return null;
+    }
+    //the container ignores the response body when sending the file, so it should not be processed by any wrapper (e.g. compressing one)
+    if (!TOMCAT_RESPONSE_CLASS_NAME.equals(response.getClass().getName())) {
+      return null;
+    }
+    final long size = element.isContentAvailable() ? element.getSize() : -1;
+    if (size < TeamCityProperties.getLong("rest.build.artifacts.sendfile.minSize", 48 * 1024)) {
+      return null; //not worth it for small files
+    }
+    return BuildArtifactsFinder.getLocalFile(element);
+  }
+
   public static Response.ResponseBuilder getContentByStream(@NotNull final Element element, @NotNull final HttpServletRequest request,
                                                             @NotNull final StreamingOutputProvider streamingOutputProvider) {
 
@@ -402,7 +523,9 @@ public class FilesSubResource {
     if (!element.isContentAvailable()) {
       throw new NotFoundException("Cannot provide content for '" + element.getFullName() + "' (not a file).");
     }
-    final String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+    final EntityTag strongETag = streamingOutputProvider.getStrongETag();
+    //the range is ignored and full content is sent if the content has changed since the client got the first part, see RFC 7233
+    final String rangeHeader = isRangeValidatorMatched(request.getHeader("If-Range"), strongETag, getLastModified(element)) ? request.getHeader(HttpHeaders.RANGE) : null;
 
     Long fullFileSize = null;
     try {
@@ -415,8 +538,9 @@ public class FilesSubResource {
     }
 
     Response.ResponseBuilder builder;
+    String multipartContentType = null;
     if (StringUtil.isEmpty(rangeHeader)) {
-      builder = Response.ok().entity(streamingOutputProvider.getStreamingOutput(null, null));
+      builder = Response.ok().entity(streamingOutputProvider.getResponseOutput(null, null));
       if (fullFileSize != null) {
         builder.header(HttpHeaders.CONTENT_LENGTH, fullFileSize);
       }
@@ -426,15 +550,25 @@ public class FilesSubResource {
       }
       try {
         HttpByteRange range = new HttpByteRange(rangeHeader, fullFileSize);
-        //todo: support requests with "Range: bytes=XX-" header and unknown content-length via multipart/byteranges Content-Type including Content-Range fields for each part
         if (range.getRangesCount() > 1) {
-          builder = Response.status(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE).entity("Multiple Range header ranges are not (yet) supported");
+          if (fullFileSize == null) {
+            builder = Response.status(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE).entity("Multiple Range header ranges are not supported for content of unknown size");
+          } else if (range.getRangesCount() > TeamCityProperties.getInteger("rest.build.artifacts.maxRangesCount", 100)) {
+            builder = Response.status(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE).entity("Too many ranges requested in the Range header");
+            builder.header("Content-Range", HttpByteRange.getContentRangeHeaderValueFor416Response(fullFileSize));
+          } else {
+            final MultipartRangesOutput multipartOutput = new MultipartRangesOutput(range, getContentType(element, request), streamingOutputProvider);
+            builder = Response.status(HttpServletResponse.SC_PARTIAL_CONTENT);
+            builder.entity(multipartOutput);
+            builder.header(HttpHeaders.CONTENT_LENGTH, multipartOutput.getLength());
+            multipartContentType = "multipart/byteranges; boundary=" + multipartOutput.getBoundary();
+          }
         } else {
           final HttpByteRange.SimpleRange firstRange = range.getSimpleRangesIterator().next();
 
           builder = Response.status(HttpServletResponse.SC_PARTIAL_CONTENT);
           final long rangeLength = firstRange.getLength();
-          builder.entity(streamingOutputProvider.getStreamingOutput(firstRange.getBeginIndex(), rangeLength));
+          builder.entity(streamingOutputProvider.getResponseOutput(firstRange.getBeginIndex(), rangeLength));
           builder.header("Content-Range", range.getContentRangeHeaderValue(firstRange));
           if (fullFileSize != null) {
             builder.header(HttpHeaders.CONTENT_LENGTH, rangeLength);
@@ -450,11 +584,7 @@ public class FilesSubResource {
 
     builder.header("Accept-Ranges", HttpByteRange.RANGE_UNIT_BYTES);
 
-    if (TeamCityProperties.getBooleanOrTrue("rest.build.artifacts.setMimeType")) {
-      builder = builder.type(WebUtil.getMimeType(request, element.getName()));
-    } else {
-      builder = builder.type(MediaType.APPLICATION_OCTET_STREAM_TYPE);
-    }
+    builder = builder.type(multipartContentType != null ? multipartContentType : getContentType(element, request));
     if (TeamCityProperties.getBooleanOrTrue("rest.build.artifacts.forceContentDisposition.Attachment")) {
       // make sure the file is not displayed in the browser (TW-27206)
       builder = builder.header("Content-Disposition", WebUtil.getContentDispositionValue(request, "attachment", element.getName()));
@@ -469,6 +599,8 @@ public class FilesSubResource {
       }
       final long size = element.getSize();
       builder.header("ETag", "W/\"" + EncryptUtil.md5((size >= 0 ? String.valueOf(size) : "") + (lastModified != null ? lastModified : "")) + "\""); //mark ETag as "weak"
+    } else if (strongETag != null) {
+      builder.tag(strongETag);
     } else {
       final long size = element.getSize();
       if (size >= 0) {
@@ -479,6 +611,98 @@ public class FilesSubResource {
     return builder;
   }
 
+  /**
+   * @param ifRange      value of "If-Range" request header
+   * @param strongETag   strong entity tag of the current content, if known
+   * @param lastModified last modification time of the current content, negative if unknown
+   * @return true if there is no "If-Range" header or it matches the current content, so the requested range can be served
+   */
+  static boolean isRangeValidatorMatched(@Nullable final String ifRange, @Nullable final EntityTag strongETag, final long lastModified) {
+    if (StringUtil.isEmpty(ifRange)) return true;
+    final String value = ifRange.trim();
+    if (value.startsWith("\"") || value.startsWith("W/")) {
+      final EntityTag requestedETag;
+      try {
+        requestedETag = EntityTag.valueOf(value);
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+      //weak entity tags never match in If-Range
+      return strongETag != null && !requestedETag.isWeak() && strongETag.getValue().equals(requestedETag.getValue());
+    }
+    if (strongETag != null || lastModified < 0) return false; //the content with a strong entity tag is validated only by it
+    try {
+      return HttpHeaderReader.readDate(value).getTime() / 1000 == lastModified / 1000;
+    } catch (ParseException e) {
+      return false;
+    }
+  }
+
+  @NotNull
+  private static String getContentType(@NotNull final Element element, @NotNull final HttpServletRequest request) {
+    if (TeamCityProperties.getBooleanOrTrue("rest.build.artifacts.setMimeType")) {
+      return WebUtil.getMimeType(request, element.getName());
+    }
+    return MediaType.APPLICATION_OCTET_STREAM;
+  }
+
+  /**
+   * Writes "multipart/byteranges" response body for a request with several ranges, see RFC 7233
+   */
+  private static class MultipartRangesOutput implements StreamingOutput {
+    @NotNull private final String myBoundary = Long.toHexString(Double.doubleToLongBits(Math.random())) + Long.toHexString(System.nanoTime());
+    @NotNull private final List<HttpByteRange.SimpleRange> myRanges = new ArrayList<>();
+    @NotNull private final List<byte[]> myPartHeaders = new ArrayList<>();
+    @NotNull private final byte[] myEnd;
+    @NotNull private final StreamingOutputProvider myStreamingOutputProvider;
+
+    MultipartRangesOutput(@NotNull final HttpByteRange range, @NotNull final String contentType, @NotNull final StreamingOutputProvider streamingOutputProvider) {
+      myStreamingOutputProvider = streamingOutputProvider;
+      final Iterator<HttpByteRange.SimpleRange> rangesIterator = range.getSimpleRangesIterator();
+      while (rangesIterator.hasNext()) {
+        final HttpByteRange.SimpleRange simpleRange = rangesIterator.next();
+        myRanges.add(simpleRange);
+        myPartHeaders.add(("\r\n--" + myBoundary + "\r\n" +
+                           "Content-Type: " + contentType + "\r\n" +
+                           "Content-Range: " + range.getContentRangeHeaderValue(simpleRange) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+      }
+      myEnd = ("\r\n--" + myBoundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @NotNull
+    String getBoundary() {
+      return myBoundary;
+    }
+
+    long getLength() {
+      long result = myEnd.length;
+      for (int i = 0; i < myRanges.size(); i++) {
+        result += myPartHeaders.get(i).length + myRanges.get(i).getLength();
+      }
+      return result;
+    }
+
+    public void write(final OutputStream output) throws IOException, WebApplicationException {
+      final OutputStream notClosingOutput = new FilterOutputStream(output) {
+        @Override
+        public void write(@NotNull final byte[] b, final int off, final int len) throws IOException {
+          out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+          flush();
+        }
+      };
+      for (int i = 0; i < myRanges.size(); i++) {
+        final HttpByteRange.SimpleRange range = myRanges.get(i);
+        output.write(myPartHeaders.get(i));
+        myStreamingOutputProvider.getStreamingOutput(range.getBeginIndex(), range.getLength()).write(notClosingOutput);
+      }
+      output.write(myEnd);
+    }
+  }
+
   private static StreamingOutput getStreamingOutput(@NotNull final Element element, @Nullable final Long startOffset, @Nullable final Long length) {
     return new StreamingOutput() {
       public void write(final OutputStream output) throws WebApplicationException {
@@ -510,6 +734,22 @@ public class FilesSubResource {
     boolean isRangeSupported();
 
     StreamingOutput getStreamingOutput(@Nullable final Long startOffset, @Nullable final Long length);
+
+    /**
+     * Same as {@link #getStreamingOutput(Long, Long)}, but is called only when the range is the entire response body (not a part of "multipart/byteranges" response)
+     * and before the response is committed
+     */
+    default StreamingOutput getResponseOutput(@Nullable final Long startOffset, @Nullable final Long length) {
+      return getStreamingOutput(startOffset, length);
+    }
+
+    /**
+     * @return strong entity tag of the content if it can be computed without reading the content, null otherwise
+     */
+    @Nullable
+    default EntityTag getStrongETag() {
+      return null;
+    }
   }
 
   abstract static class Provider {
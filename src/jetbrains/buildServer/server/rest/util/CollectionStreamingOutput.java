@@ -0,0 +1,249 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import jetbrains.buildServer.server.rest.data.PagedSearchResult;
+import jetbrains.buildServer.server.rest.errors.OperationException;
+import jetbrains.buildServer.server.rest.jersey.JacksonObjectMapperResolver;
+import jetbrains.buildServer.server.rest.model.Fields;
+import jetbrains.buildServer.server.rest.model.PagerData;
+import jetbrains.buildServer.util.ItemProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes a collection of beans to the response as soon as the items are found, without collecting all of them in memory.
+ * The output has the same structure as the usual collection bean (like {@link jetbrains.buildServer.server.rest.model.build.Builds}) with the exception that
+ * "count", "href", "nextHref" and "prevHref" are written after the items: in JSON these are the last fields of the object,
+ * in XML these are attributes of the "pager" element which is the last child of the collection element.
+ * Nothing is written until the first item is found, so errors in the locator are still reported as usual error responses.
+ */
+public class CollectionStreamingOutput<ITEM, BEAN> implements StreamingOutput {
+  public static final String PAGER_ELEMENT_NAME = "pager";
+
+  private static final ObjectMapper ourJsonMapper = JacksonObjectMapperResolver.createObjectMapper();
+  private static final Map<Class<?>, JAXBContext> ourJaxbContexts = new ConcurrentHashMap<>();
+
+  @NotNull private final Format myFormat;
+  @NotNull private final String myCollectionName;
+  @NotNull private final String myItemName;
+  @NotNull private final Class<BEAN> myBeanClass;
+  @NotNull private final Fields myFields;
+  @NotNull private final BeanContext myBeanContext;
+  @NotNull private final Function<ItemProcessor<ITEM>, PagedSearchResult<ITEM>> myItemsSource;
+  @NotNull private final Function<ITEM, BEAN> myBeanFactory;
+  @NotNull private final Function<PagedSearchResult<ITEM>, PagerData> myPagerDataFactory;
+
+  public enum Format {
+    JSON,
+    XML
+  }
+
+  /**
+   * @param collectionName    name of the collection element, e.g. "builds"
+   * @param itemName          name of the item element, e.g. "build"
+   * @param itemsSource       performs the search passing the found items to the processor, e.g. {@link jetbrains.buildServer.server.rest.data.FinderImpl#processItems(String, ItemProcessor)}
+   * @param beanFactory       creates a bean for an item, the bean should use the fields nested for the "itemName"
+   * @param pagerDataFactory  creates paging details from the search result
+   */
+  public CollectionStreamingOutput(@NotNull final Format format,
+                                   @NotNull final String collectionName,
+                                   @NotNull final String itemName,
+                                   @NotNull final Class<BEAN> beanClass,
+                                   @NotNull final Fields fields,
+                                   @NotNull final BeanContext beanContext,
+                                   @NotNull final Function<ItemProcessor<ITEM>, PagedSearchResult<ITEM>> itemsSource,
+                                   @NotNull final Function<ITEM, BEAN> beanFactory,
+                                   @NotNull final Function<PagedSearchResult<ITEM>, PagerData> pagerDataFactory) {
+    myFormat = format;
+    myCollectionName = collectionName;
+    myItemName = itemName;
+    myBeanClass = beanClass;
+    myFields = fields;
+    myBeanContext = beanContext;
+    myItemsSource = itemsSource;
+    myBeanFactory = beanFactory;
+    myPagerDataFactory = pagerDataFactory;
+  }
+
+  @Override
+  public void write(final OutputStream output) throws IOException, WebApplicationException {
+    final boolean includeItems = Boolean.TRUE.equals(myFields.isIncluded(myItemName, false, true));
+    final CollectionWriter writer = myFormat == Format.JSON ? new JsonCollectionWriter(output) : new XmlCollectionWriter(output);
+    final PagedSearchResult<ITEM> result;
+    try {
+      result = myItemsSource.apply(item -> {
+        if (includeItems) {
+          try {
+            writer.writeItem(myBeanFactory.apply(item));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        return true;
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause(); //most probably the client has closed the connection
+    }
+
+    final PagerData pagerData = myPagerDataFactory.apply(result);
+    writer.writeEnd(ValueWithDefault.decideIncludeByDefault(myFields.isIncluded("count", true, true), result.myActualCount),
+                    ValueWithDefault.decideDefault(myFields.isIncluded("href"), transformRelativePath(pagerData.getHref())),
+                    ValueWithDefault.decideDefault(myFields.isIncluded("nextHref"), transformRelativePath(pagerData.getNextHref())),
+                    ValueWithDefault.decideDefault(myFields.isIncluded("prevHref"), transformRelativePath(pagerData.getPrevHref())));
+  }
+
+  @Nullable
+  private String transformRelativePath(@Nullable final String href) {
+    return href == null ? null : myBeanContext.getApiUrlBuilder().transformRelativePath(href);
+  }
+
+  private interface CollectionWriter {
+    void writeItem(@NotNull Object bean) throws IOException;
+
+    void writeEnd(@Nullable Integer count, @Nullable String href, @Nullable String nextHref, @Nullable String prevHref) throws IOException;
+  }
+
+  private class JsonCollectionWriter implements CollectionWriter {
+    @NotNull private final OutputStream myOutput;
+    @NotNull private final ObjectWriter myItemWriter = ourJsonMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    @Nullable private JsonGenerator myGenerator;
+    private boolean myItemsStarted = false;
+
+    JsonCollectionWriter(@NotNull final OutputStream output) {
+      myOutput = output;
+    }
+
+    @NotNull
+    private JsonGenerator getGenerator() throws IOException {
+      if (myGenerator == null) {
+        myGenerator = ourJsonMapper.getFactory().createGenerator(myOutput, JsonEncoding.UTF8);
+        myGenerator.writeStartObject();
+      }
+      return myGenerator;
+    }
+
+    @Override
+    public void writeItem(@NotNull final Object bean) throws IOException {
+      final JsonGenerator generator = getGenerator();
+      if (!myItemsStarted) {
+        generator.writeArrayFieldStart(myItemName);
+        myItemsStarted = true;
+      }
+      myItemWriter.writeValue(generator, bean);
+    }
+
+    @Override
+    public void writeEnd(@Nullable final Integer count, @Nullable final String href, @Nullable final String nextHref, @Nullable final String prevHref) throws IOException {
+      final JsonGenerator generator = getGenerator();
+      if (myItemsStarted) {
+        generator.writeEndArray();
+      } else if (Boolean.TRUE.equals(myFields.isIncluded(myItemName, false, true))) {
+        generator.writeArrayFieldStart(myItemName); //same as WRITE_EMPTY_JSON_ARRAYS for usual beans
+        generator.writeEndArray();
+      }
+      if (count != null) generator.writeNumberField("count", count);
+      if (href != null) generator.writeStringField("href", href);
+      if (nextHref != null) generator.writeStringField("nextHref", nextHref);
+      if (prevHref != null) generator.writeStringField("prevHref", prevHref);
+      generator.writeEndObject();
+      generator.close();
+    }
+  }
+
+  private class XmlCollectionWriter implements CollectionWriter {
+    @NotNull private final OutputStream myOutput;
+    @Nullable private XMLStreamWriter myWriter;
+    @Nullable private Marshaller myMarshaller;
+
+    XmlCollectionWriter(@NotNull final OutputStream output) {
+      myOutput = output;
+    }
+
+    @NotNull
+    private XMLStreamWriter getWriter() throws XMLStreamException {
+      if (myWriter == null) {
+        myWriter = XMLOutputFactory.newFactory().createXMLStreamWriter(myOutput, "UTF-8");
+        myWriter.writeStartDocument("UTF-8", "1.0");
+        myWriter.writeStartElement(myCollectionName);
+      }
+      return myWriter;
+    }
+
+    @Override
+    public void writeItem(@NotNull final Object bean) throws IOException {
+      try {
+        final XMLStreamWriter writer = getWriter();
+        if (myMarshaller == null) {
+          myMarshaller = getJaxbContext(myBeanClass).createMarshaller();
+          myMarshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        }
+        myMarshaller.marshal(bean, writer);
+      } catch (XMLStreamException | JAXBException e) {
+        throw new IOException("Error writing XML: " + e.toString(), e);
+      }
+    }
+
+    @Override
+    public void writeEnd(@Nullable final Integer count, @Nullable final String href, @Nullable final String nextHref, @Nullable final String prevHref) throws IOException {
+      try {
+        final XMLStreamWriter writer = getWriter();
+        writer.writeEmptyElement(PAGER_ELEMENT_NAME);
+        if (count != null) writer.writeAttribute("count", String.valueOf(count));
+        if (href != null) writer.writeAttribute("href", href);
+        if (nextHref != null) writer.writeAttribute("nextHref", nextHref);
+        if (prevHref != null) writer.writeAttribute("prevHref", prevHref);
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+        myOutput.flush();
+      } catch (XMLStreamException e) {
+        throw new IOException("Error writing XML: " + e.toString(), e);
+      }
+    }
+  }
+
+  @NotNull
+  private static JAXBContext getJaxbContext(@NotNull final Class<?> beanClass) {
+    return ourJaxbContexts.computeIfAbsent(beanClass, aClass -> {
+      try {
+        return JAXBContext.newInstance(aClass);
+      } catch (JAXBException e) {
+        throw new OperationException("Error creating JAXB context for " + aClass.getName() + ": " + e.toString(), e);
+      }
+    });
+  }
+}
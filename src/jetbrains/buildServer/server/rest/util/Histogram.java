@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values with bounded relative error, in the spirit of HdrHistogram:
+ * each power of two range is split into {@link #SUB_BUCKETS} linear buckets, so a percentile is reported with the error of at most 1/8 of the value.
+ * Takes a fixed amount of memory (about 4 Kb) regardless of the number and range of the recorded values.
+ */
+public class Histogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray myCounts = new AtomicLongArray(SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS));
+  private final LongAdder mySum = new LongAdder();
+  private final LongAccumulator myMax = new LongAccumulator(Long::max, 0);
+
+  public void record(final long value) {
+    final long actual = Math.max(0, value);
+    myCounts.incrementAndGet(getBucketIndex(actual));
+    mySum.add(actual);
+    myMax.accumulate(actual);
+  }
+
+  public long getCount() {
+    long result = 0;
+    for (int i = 0; i < myCounts.length(); i++) {
+      result += myCounts.get(i);
+    }
+    return result;
+  }
+
+  public long getSum() {
+    return mySum.sum();
+  }
+
+  public long getMax() {
+    return myMax.get();
+  }
+
+  /**
+   * @param percentile from 0 to 100
+   * @return the highest value equivalent (falling into the same bucket) to the value at the percentile, but not more than the maximum recorded value. 0 if nothing was recorded.
+   */
+  public long getValueAtPercentile(final double percentile) {
+    final long[] counts = new long[myCounts.length()];
+    long total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = myCounts.get(i);
+      total += counts[i];
+    }
+    if (total == 0) return 0;
+    final long target = Math.max(1, (long)Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+    long accumulated = 0;
+    for (int i = 0; i < counts.length; i++) {
+      accumulated += counts[i];
+      if (accumulated >= target) {
+        return Math.min(getHighestEquivalentValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  static int getBucketIndex(final long value) {
+    if (value < SUB_BUCKETS) return (int)value;
+    final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  static long getHighestEquivalentValue(final int bucketIndex) {
+    if (bucketIndex < SUB_BUCKETS) return bucketIndex;
+    final int shift = (bucketIndex - SUB_BUCKETS) / SUB_BUCKETS;
+    final long subBucket = (bucketIndex - SUB_BUCKETS) % SUB_BUCKETS;
+    final long lowest = (SUB_BUCKETS + subBucket) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import jetbrains.buildServer.ServiceLocator;
+import jetbrains.buildServer.server.rest.data.RestContext;
+import jetbrains.buildServer.server.rest.errors.OperationException;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
+import jetbrains.buildServer.serverSide.SecurityContextEx;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs independent parts of a single request processing in parallel on a shared bounded thread pool, see {@link ParallelProcessingPool}.
+ * The tasks are run under the security context, REST context and context classloader of the calling thread.
+ * The number of tasks of a single request running at the same time is limited by "rest.parallel.perRequestLimit" for all the calls made within the request's {@link RestContext}
+ * (or for a single call when there is no REST context), so that a single heavy request cannot occupy the entire pool.
+ * When the pool is saturated or not available, or the call is made from a pool thread, the tasks are run in the calling thread.
+ */
+public class ParallelProcessing {
+  /**
+   * @return results of "function" applied to each of "items", in the order of "items"
+   */
+  @NotNull
+  public static <S, R> List<R> map(@NotNull final List<S> items, @NotNull final Function<S, R> function, @NotNull final ServiceLocator serviceLocator) {
+    final int perRequestLimit = TeamCityProperties.getInteger("rest.parallel.perRequestLimit", 4);
+    final ThreadPoolExecutor executor = getExecutor(items.size() > 1, perRequestLimit, serviceLocator);
+    if (executor == null) {
+      return mapSequentially(items, function);
+    }
+
+    final SecurityContextEx securityContext = serviceLocator.getSingletonService(SecurityContextEx.class);
+    final AuthorityHolder authorityHolder = securityContext.getAuthorityHolder();
+    final RestContext restContext = RestContext.getThreadLocal();
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    final Semaphore runningTasks = getRunningTasksLimit(restContext, perRequestLimit);
+    final List<Future<R>> futures = new ArrayList<>(items.size());
+    for (S item : items) {
+      try {
+        runningTasks.acquire();
+      } catch (InterruptedException e) {
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new OperationException("Interrupted while waiting for parallel processing results", e);
+      }
+      final FutureTask<R> task = new LimitedTask<>(() -> runInContext(() -> function.apply(item), securityContext, authorityHolder, restContext, contextClassLoader),
+                                                   runningTasks);
+      try {
+        executor.execute(task);
+        futures.add(task);
+      } catch (RejectedExecutionException e) {
+        // pool queue is full: do not wait, do the work in the request thread which already has all the contexts set
+        runningTasks.release();
+        final FutureTask<R> callerRunsTask = new FutureTask<>(() -> function.apply(item));
+        callerRunsTask.run();
+        futures.add(callerRunsTask);
+      }
+    }
+
+    final List<R> result = new ArrayList<>(items.size());
+    for (Future<R> future : futures) {
+      result.add(getResult(future, futures));
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@link #map(List, Function, ServiceLocator)}, but the results are provided as they become available in the order of "items"
+   * and only a limited number of items is processed ahead of the consumption, so that the results do not need to be held in memory all at once.
+   * The returned iterator should be used from the calling thread and closed if not read till the end.
+   */
+  @NotNull
+  public static <S, R> OrderedResults<R> mapLazily(@NotNull final List<S> items, @NotNull final Function<S, R> function, @NotNull final ServiceLocator serviceLocator) {
+    return mapLazily(items.iterator(), items.size() > 1, function, serviceLocator);
+  }
+
+  /**
+   * Same as {@link #mapLazily(List, Function, ServiceLocator)}, but the items are retrieved from "items" in the calling thread only when there is a room for more tasks,
+   * e.g. to read the data sequentially and process its parts in parallel.
+   */
+  @NotNull
+  public static <S, R> OrderedResults<R> mapLazily(@NotNull final Iterator<S> items, @NotNull final Function<S, R> function, @NotNull final ServiceLocator serviceLocator) {
+    return mapLazily(items, true, function, serviceLocator);
+  }
+
+  @NotNull
+  private static <S, R> OrderedResults<R> mapLazily(@NotNull final Iterator<S> source, final boolean severalItems, @NotNull final Function<S, R> function,
+                                                    @NotNull final ServiceLocator serviceLocator) {
+    final int perRequestLimit = TeamCityProperties.getInteger("rest.parallel.perRequestLimit", 4);
+    final ThreadPoolExecutor executor = getExecutor(severalItems, perRequestLimit, serviceLocator);
+    if (executor == null) {
+      return new OrderedResults<R>() {
+        @Override
+        protected void fill() {
+          if (myPending.isEmpty() && source.hasNext()) {
+            final S item = source.next();
+            myPending.add(new CallerRunsTask<>(() -> function.apply(item)));
+          }
+        }
+      };
+    }
+
+    final SecurityContextEx securityContext = serviceLocator.getSingletonService(SecurityContextEx.class);
+    final AuthorityHolder authorityHolder = securityContext.getAuthorityHolder();
+    final RestContext restContext = RestContext.getThreadLocal();
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    final Semaphore runningTasks = getRunningTasksLimit(restContext, perRequestLimit);
+    return new OrderedResults<R>() {
+      @Override
+      protected void fill() {
+        while (myPending.size() < perRequestLimit && source.hasNext()) {
+          if (!runningTasks.tryAcquire()) {
+            // the request already runs as many tasks as allowed: wait for the submitted ones or process the next item in the calling thread
+            if (myPending.isEmpty()) {
+              final S item = source.next();
+              myPending.add(new CallerRunsTask<>(() -> function.apply(item)));
+            }
+            return;
+          }
+          final S item = source.next();
+          final FutureTask<R> task = new LimitedTask<>(() -> runInContext(() -> function.apply(item), securityContext, authorityHolder, restContext, contextClassLoader),
+                                                       runningTasks);
+          try {
+            executor.execute(task);
+            myPending.add(task);
+          } catch (RejectedExecutionException e) {
+            // pool queue is full: the item will be processed in the calling thread when its result is requested, the thread already has all the contexts set
+            runningTasks.release();
+            myPending.add(new CallerRunsTask<>(() -> function.apply(item)));
+          }
+        }
+      }
+    };
+  }
+
+  public static abstract class OrderedResults<R> implements Iterator<R>, AutoCloseable {
+    protected final Deque<Future<R>> myPending = new ArrayDeque<>();
+
+    /**
+     * Adds more tasks to {@link #myPending}, if possible
+     */
+    protected abstract void fill();
+
+    @Override
+    public boolean hasNext() {
+      fill();
+      return !myPending.isEmpty();
+    }
+
+    @Override
+    public R next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      final Future<R> result = myPending.poll();
+      if (result instanceof CallerRunsTask) {
+        ((CallerRunsTask)result).run();
+      }
+      fill(); //keep the pool busy while the result is consumed
+      return getResult(result, Collections.emptyList());
+    }
+
+    @Override
+    public void close() {
+      myPending.forEach(f -> f.cancel(true));
+      myPending.clear();
+    }
+  }
+
+  private static class CallerRunsTask<R> extends FutureTask<R> {
+    CallerRunsTask(@NotNull final Callable<R> callable) {
+      super(callable);
+    }
+  }
+
+  /**
+   * Releases the permit when the task is completed or cancelled
+   */
+  private static class LimitedTask<R> extends FutureTask<R> {
+    @NotNull private final Semaphore myPermits;
+
+    LimitedTask(@NotNull final Callable<R> callable, @NotNull final Semaphore permits) {
+      super(callable);
+      myPermits = permits;
+    }
+
+    @Override
+    protected void done() {
+      myPermits.release();
+    }
+  }
+
+  /**
+   * @return the pool to run the items in parallel or null if the items should be processed in the calling thread
+   */
+  @Nullable
+  private static ThreadPoolExecutor getExecutor(final boolean severalItems, final int perRequestLimit, @NotNull final ServiceLocator serviceLocator) {
+    if (!severalItems || perRequestLimit < 2 || ParallelProcessingPool.isPoolThread() || !TeamCityProperties.getBooleanOrTrue("rest.parallel.enabled")) {
+      return null;
+    }
+    final ParallelProcessingPool pool = serviceLocator.findSingletonService(ParallelProcessingPool.class);
+    return pool == null ? null : pool.getExecutor();
+  }
+
+  @NotNull
+  private static Semaphore getRunningTasksLimit(@Nullable final RestContext restContext, final int perRequestLimit) {
+    return restContext != null ? restContext.getParallelTasksPermits(perRequestLimit) : new Semaphore(perRequestLimit);
+  }
+
+  private static <R> R getResult(@NotNull final Future<R> future, @NotNull final Collection<? extends Future<?>> toCancelOnError) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      toCancelOnError.forEach(f -> f.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new OperationException("Interrupted while waiting for parallel processing results", e);
+    } catch (ExecutionException e) {
+      toCancelOnError.forEach(f -> f.cancel(true));
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause; //report the same errors as sequential processing would
+      if (cause instanceof Error) throw (Error)cause;
+      throw new OperationException("Error during parallel processing: " + cause.toString(), e);
+    }
+  }
+
+  @NotNull
+  private static <S, R> List<R> mapSequentially(@NotNull final List<S> items, @NotNull final Function<S, R> function) {
+    if (items.isEmpty()) return Collections.emptyList();
+    final List<R> result = new ArrayList<>(items.size());
+    for (S item : items) {
+      result.add(function.apply(item));
+    }
+    return result;
+  }
+
+  private static <R> R runInContext(@NotNull final Callable<R> action,
+                                    @NotNull final SecurityContextEx securityContext, @NotNull final AuthorityHolder authorityHolder,
+                                    @Nullable final RestContext restContext, @Nullable final ClassLoader contextClassLoader) throws Exception {
+    final Thread thread = Thread.currentThread();
+    final ClassLoader previousClassLoader = thread.getContextClassLoader();
+    thread.setContextClassLoader(contextClassLoader);
+    try {
+      return securityContext.runAs(authorityHolder, () -> restContext == null ? action.call() : restContext.run(action::call));
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new OperationException("Error during parallel processing: " + e.toString(), new Exception(e));
+    } finally {
+      thread.setContextClassLoader(previousClassLoader);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.util;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.NamedThreadFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded thread pool used by {@link ParallelProcessing}. The pool is created on the first use and is shut down when the plugin is unloaded.
+ */
+public class ParallelProcessingPool {
+  private static final Logger LOG = Logger.getInstance(ParallelProcessingPool.class.getName());
+
+  private static final ThreadLocal<Boolean> ourInPoolThread = new ThreadLocal<>();
+
+  @Nullable private ThreadPoolExecutor myExecutor;
+  private boolean myDisposed = false;
+
+  /**
+   * @return true if the current thread is a thread of the pool
+   */
+  static boolean isPoolThread() {
+    return Boolean.TRUE.equals(ourInPoolThread.get());
+  }
+
+  /**
+   * @return the pool or null if the pool is already shut down
+   */
+  @Nullable
+  synchronized ThreadPoolExecutor getExecutor() {
+    if (myDisposed) return null;
+    if (myExecutor == null) {
+      final int threads = TeamCityProperties.getInteger("rest.parallel.threads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+      final ThreadFactory threadFactory = new NamedThreadFactory("REST API parallel processing");
+      myExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<>(TeamCityProperties.getInteger("rest.parallel.queueSize", 1000)),
+                                          runnable -> threadFactory.newThread(() -> {
+                                            ourInPoolThread.set(Boolean.TRUE);
+                                            runnable.run();
+                                          }));
+      myExecutor.allowCoreThreadTimeOut(true);
+      LOG.debug("Created REST API parallel processing pool with " + threads + " threads");
+    }
+    return myExecutor;
+  }
+
+  /**
+   * Shuts down the pool so that it is recreated with the current settings on the next use
+   */
+  public synchronized void resetExecutor() {
+    if (myExecutor != null) {
+      myExecutor.shutdown();
+      myExecutor = null;
+    }
+  }
+
+  public synchronized void dispose() {
+    myDisposed = true;
+    resetExecutor();
+  }
+}
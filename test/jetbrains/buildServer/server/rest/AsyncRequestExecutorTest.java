@@ -0,0 +1,228 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import jetbrains.buildServer.BaseTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AsyncRequestExecutorTest extends BaseTestCase {
+  private static final String BUILDS_ENDPOINT = ".*/app/rest/(.+/)?builds([/?].*)?";
+
+  private AsyncRequestExecutor myExecutor;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    setInternalProperty("rest.request.async.enabled", "true");
+    myExecutor = new AsyncRequestExecutor();
+  }
+
+  @Override
+  @AfterMethod
+  public void tearDown() throws Exception {
+    myExecutor.dispose();
+    super.tearDown();
+  }
+
+  @Test
+  public void testEndpoint() {
+    assertEquals(BUILDS_ENDPOINT, myExecutor.getEndpoint(new TestRequest("/app/rest/builds").myRequest));
+    assertEquals(BUILDS_ENDPOINT, myExecutor.getEndpoint(new TestRequest("/app/rest/buildTypes/id:bt1/builds?locator=count:1").myRequest));
+    assertNull(myExecutor.getEndpoint(new TestRequest("/app/rest/buildTypes").myRequest));
+    assertNull(myExecutor.getEndpoint(new TestRequest("/app/rest/server").myRequest));
+
+    final TestRequest notSupported = new TestRequest("/app/rest/builds");
+    notSupported.myAsyncSupported = false;
+    assertNull(myExecutor.getEndpoint(notSupported.myRequest));
+
+    setInternalProperty("rest.request.async.endpoints", ".*/app/rest/server;.*/app/rest/agents");
+    assertEquals(".*/app/rest/agents", myExecutor.getEndpoint(new TestRequest("/app/rest/agents").myRequest));
+    assertNull(myExecutor.getEndpoint(new TestRequest("/app/rest/builds").myRequest));
+
+    setInternalProperty("rest.request.async.endpoints", ".*/app/rest/(server;.*/app/rest/agents");
+    assertEquals("invalid patterns are ignored", ".*/app/rest/agents", myExecutor.getEndpoint(new TestRequest("/app/rest/agents").myRequest));
+
+    setInternalProperty("rest.request.async.endpoints.delimiter", ",");
+    setInternalProperty("rest.request.async.endpoints", ".*/app/rest/server,.*/app/rest/builds");
+    assertEquals(".*/app/rest/builds", myExecutor.getEndpoint(new TestRequest("/app/rest/builds").myRequest));
+    assertNull(myExecutor.getEndpoint(new TestRequest("/app/rest/agents").myRequest));
+
+    setInternalProperty("rest.request.async.enabled", "false");
+    assertNull(myExecutor.getEndpoint(new TestRequest("/app/rest/agents").myRequest));
+  }
+
+  @Test
+  public void testLimits() throws Exception {
+    setInternalProperty("rest.request.async.maxRequestsPerEndpoint", "1");
+    setInternalProperty("rest.request.async.maxRequests", "2");
+    final CountDownLatch release = new CountDownLatch(1);
+    final Runnable blockingTask = () -> {
+      try {
+        release.await(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    };
+
+    final TestRequest request1 = new TestRequest("/app/rest/builds");
+    assertTrue(myExecutor.submit(request1.myRequest, "endpoint1", blockingTask));
+    final TestRequest request2 = new TestRequest("/app/rest/builds");
+    assertFalse("over the endpoint limit", myExecutor.submit(request2.myRequest, "endpoint1", blockingTask));
+    assertEquals(0, request2.myStartedAsync.get());
+
+    final TestRequest request3 = new TestRequest("/app/rest/changes");
+    assertTrue(myExecutor.submit(request3.myRequest, "endpoint2", blockingTask));
+    final TestRequest request4 = new TestRequest("/app/rest/testOccurrences");
+    assertFalse("over the global limit", myExecutor.submit(request4.myRequest, "endpoint3", blockingTask));
+    assertEquals(0, request4.myStartedAsync.get());
+
+    assertEquals("2", myExecutor.getStatistics().get("requestsInProgress"));
+    assertEquals("2", myExecutor.getStatistics().get("rejectedRequests"));
+    assertEquals("0", myExecutor.getStatistics().get("requestsInProgress:endpoint3"));
+
+    release.countDown();
+    request1.waitCompleted();
+    request3.waitCompleted();
+    assertStatistics("0", "2");
+    assertEquals("0", myExecutor.getStatistics().get("requestsInProgress:endpoint1"));
+    assertEquals("0", myExecutor.getStatistics().get("requestsInProgress:endpoint2"));
+
+    final TestRequest request5 = new TestRequest("/app/rest/builds");
+    assertTrue("the limits are released after completion", myExecutor.submit(request5.myRequest, "endpoint1", () -> {}));
+    request5.waitCompleted();
+    assertStatistics("0", "3");
+  }
+
+  @Test
+  public void testFailingTaskReleasesLimits() throws Exception {
+    setInternalProperty("rest.request.async.maxRequestsPerEndpoint", "1");
+    final TestRequest request1 = new TestRequest("/app/rest/builds");
+    assertTrue(myExecutor.submit(request1.myRequest, "endpoint1", () -> {
+      throw new IllegalStateException("test");
+    }));
+    request1.waitCompleted();
+    assertStatistics("0", "1");
+
+    final TestRequest request2 = new TestRequest("/app/rest/builds");
+    assertTrue(myExecutor.submit(request2.myRequest, "endpoint1", () -> {}));
+    request2.waitCompleted();
+  }
+
+  @Test
+  public void testStartAsyncFailure() {
+    setInternalProperty("rest.request.async.maxRequestsPerEndpoint", "1");
+    final TestRequest request = new TestRequest("/app/rest/builds");
+    request.myStartAsyncError = new IllegalStateException("response is already committed");
+    final AtomicInteger runs = new AtomicInteger();
+    final Thread currentThread = Thread.currentThread();
+    assertTrue(myExecutor.submit(request.myRequest, "endpoint1", () -> {
+      assertSame(currentThread, Thread.currentThread());
+      runs.incrementAndGet();
+    }));
+    assertEquals(1, runs.get());
+    assertEquals(0, request.myCompleted.getCount());
+    assertEquals("0", myExecutor.getStatistics().get("requestsInProgress"));
+    assertEquals("0", myExecutor.getStatistics().get("requestsInProgress:endpoint1"));
+
+    final TestRequest request2 = new TestRequest("/app/rest/builds");
+    request2.myStartAsyncError = new IllegalStateException("response is already committed");
+    assertTrue("the limits are not leaked", myExecutor.submit(request2.myRequest, "endpoint1", runs::incrementAndGet));
+    assertEquals(2, runs.get());
+  }
+
+  @Test
+  public void testRejectedByPool() throws Exception {
+    final TestRequest request1 = new TestRequest("/app/rest/builds");
+    assertTrue(myExecutor.submit(request1.myRequest, "endpoint1", () -> {}));
+    request1.waitCompleted();
+
+    myExecutor.dispose();
+
+    final TestRequest request2 = new TestRequest("/app/rest/builds");
+    final Thread currentThread = Thread.currentThread();
+    final AtomicInteger runs = new AtomicInteger();
+    assertTrue(myExecutor.submit(request2.myRequest, "endpoint1", () -> {
+      assertSame(currentThread, Thread.currentThread());
+      runs.incrementAndGet();
+    }));
+    assertEquals(1, runs.get());
+    assertEquals(1, request2.myStartedAsync.get());
+    assertEquals(0, request2.myCompleted.getCount());
+    assertStatistics("0", "2");
+  }
+
+  private void assertStatistics(@NotNull final String inProgress, @NotNull final String processed) {
+    assertEquals(inProgress, myExecutor.getStatistics().get("requestsInProgress"));
+    assertEquals(processed, myExecutor.getStatistics().get("processedRequests"));
+  }
+
+  private static class TestRequest {
+    @NotNull private final HttpServletRequest myRequest;
+    @NotNull private final AtomicInteger myStartedAsync = new AtomicInteger();
+    @NotNull private final CountDownLatch myCompleted = new CountDownLatch(1);
+    private boolean myAsyncSupported = true;
+    @Nullable private RuntimeException myStartAsyncError;
+
+    TestRequest(@NotNull final String path) {
+      final int queryIndex = path.indexOf('?');
+      final String uri = queryIndex < 0 ? path : path.substring(0, queryIndex);
+      final String query = queryIndex < 0 ? null : path.substring(queryIndex + 1);
+      final AsyncContext asyncContext = (AsyncContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{AsyncContext.class}, (proxy, method, args) -> {
+        if ("complete".equals(method.getName())) myCompleted.countDown();
+        return null;
+      });
+      myRequest = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{HttpServletRequest.class}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getRequestURI":
+            return uri;
+          case "getRequestURL":
+            return new StringBuffer("http://localhost:8111").append(uri);
+          case "getQueryString":
+            return query;
+          case "getContextPath":
+          case "getServletPath":
+            return "";
+          case "isAsyncSupported":
+            return myAsyncSupported;
+          case "isAsyncStarted":
+            return myStartedAsync.get() > 0;
+          case "startAsync":
+            if (myStartAsyncError != null) throw myStartAsyncError;
+            myStartedAsync.incrementAndGet();
+            return asyncContext;
+          default:
+            return method.getReturnType() == boolean.class ? Boolean.FALSE : method.getReturnType() == int.class ? Integer.valueOf(0) : null;
+        }
+      });
+    }
+
+    void waitCompleted() throws InterruptedException {
+      assertTrue("request is not completed", myCompleted.await(30, TimeUnit.SECONDS));
+    }
+  }
+}
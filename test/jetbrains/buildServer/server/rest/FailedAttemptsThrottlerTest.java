@@ -0,0 +1,119 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest;
+
+import jetbrains.buildServer.BaseTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FailedAttemptsThrottlerTest extends BaseTestCase {
+  private long myNow;
+  private FailedAttemptsThrottler myThrottler;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    myNow = 1000000;
+    setInternalProperty("rest.authToken.throttling.maxAttempts", "3");
+    setInternalProperty("rest.authToken.throttling.intervalSeconds", "10");
+    myThrottler = createThrottler();
+  }
+
+  @Test
+  public void testDelay() {
+    assertEquals(0, myThrottler.getRetryDelay("client1"));
+    myThrottler.registerFailedAttempt("client1");
+    myThrottler.registerFailedAttempt("client1");
+    assertEquals(0, myThrottler.getRetryDelay("client1"));
+    myThrottler.registerFailedAttempt("client1");
+    assertEquals(10000, myThrottler.getRetryDelay("client1"));
+    assertEquals("other clients are not affected", 0, myThrottler.getRetryDelay("client2"));
+
+    myNow += 4000;
+    assertEquals(6000, myThrottler.getRetryDelay("client1"));
+    myNow += 6000;
+    assertEquals("one attempt is refilled", 0, myThrottler.getRetryDelay("client1"));
+    myThrottler.registerFailedAttempt("client1");
+    assertEquals(10000, myThrottler.getRetryDelay("client1"));
+
+    assertEquals("4", myThrottler.getStatistics().get("failedAttempts"));
+    assertEquals("3", myThrottler.getStatistics().get("rejectedRequests"));
+    assertEquals("1", myThrottler.getStatistics().get("blockedClients"));
+  }
+
+  @Test
+  public void testExpiry() {
+    myThrottler.registerFailedAttempt("client1");
+    myThrottler.registerFailedAttempt("client1");
+    myThrottler.registerFailedAttempt("client1");
+    myThrottler.registerFailedAttempt("client2");
+    assertEquals("2", myThrottler.getStatistics().get("trackedClients"));
+
+    myNow += 29000;
+    assertEquals("2", myThrottler.getStatistics().get("trackedClients"));
+    assertEquals(1000, myThrottler.getRetryDelay("client1"));
+
+    myNow += 1000;
+    assertEquals(0, myThrottler.getRetryDelay("client1"));
+    assertEquals("the buckets are full again, so the clients are no longer tracked", "0", myThrottler.getStatistics().get("trackedClients"));
+
+    myThrottler.registerFailedAttempt("client1");
+    assertEquals("1", myThrottler.getStatistics().get("trackedClients"));
+    assertEquals(0, myThrottler.getRetryDelay("client1"));
+  }
+
+  @Test
+  public void testBound() {
+    setInternalProperty("rest.authToken.throttling.maxTrackedClients", "10");
+    setInternalProperty("rest.authToken.throttling.global.maxAttempts", "1000");
+    myThrottler = createThrottler();
+    for (int i = 0; i < 100; i++) {
+      myThrottler.registerFailedAttempt("client" + i);
+    }
+    assertTrue(Integer.parseInt(myThrottler.getStatistics().get("trackedClients")) <= 10);
+    assertEquals("100", myThrottler.getStatistics().get("failedAttempts"));
+  }
+
+  @Test
+  public void testGlobalLimit() {
+    setInternalProperty("rest.authToken.throttling.global.maxAttempts", "5");
+    setInternalProperty("rest.authToken.throttling.global.intervalSeconds", "2");
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, myThrottler.getRetryDelay("client" + i));
+      myThrottler.registerFailedAttempt("client" + i);
+    }
+    assertEquals("a new address does not get more attempts", 2000, myThrottler.getRetryDelay("client5"));
+    assertEquals(2000, myThrottler.getRetryDelay("client0"));
+    assertEquals("2000", myThrottler.getStatistics().get("globalRetryDelayMs"));
+
+    myNow += 2000;
+    assertEquals(0, myThrottler.getRetryDelay("client5"));
+    myThrottler.registerFailedAttempt("client5");
+    assertEquals(2000, myThrottler.getRetryDelay("client6"));
+  }
+
+  private FailedAttemptsThrottler createThrottler() {
+    return new FailedAttemptsThrottler() {
+      @Override
+      protected long now() {
+        return myNow;
+      }
+    };
+  }
+}
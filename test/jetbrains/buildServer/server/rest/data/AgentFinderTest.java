@@ -17,6 +17,7 @@
 package jetbrains.buildServer.server.rest.data;
 
 import java.util.List;
+import java.util.function.BooleanSupplier;
 import jetbrains.buildServer.requirements.RequirementType;
 import jetbrains.buildServer.serverSide.*;
 import jetbrains.buildServer.serverSide.impl.MockBuildAgent;
@@ -244,6 +245,46 @@ public class AgentFinderTest extends BaseFinderTest<SBuildAgent> {
     checkAgents("compatible:(buildType:(id:" + bt30.getExternalId() + ")),incompatible:(buildType:(id:" + bt10.getExternalId() + "))", myAgent1);
   }
 
+  @Test
+  public void testCompatibilityCache() {
+    final AgentCompatibilityCache cache = new AgentCompatibilityCache(myServer);
+    final BuildTypeEx bt10 = registerBuildType("bt10", "Project");
+    final BuildTypeEx bt20 = registerBuildType("bt20", "Project");
+    final int[] calculations = new int[1];
+    final BooleanSupplier compatible = () -> {
+      calculations[0]++;
+      return true;
+    };
+    final BooleanSupplier incompatible = () -> {
+      calculations[0]++;
+      return false;
+    };
+
+    assertTrue(cache.isCompatible(myAgent1, bt10, compatible));
+    assertTrue(cache.isCompatible(myAgent1, bt10, incompatible));
+    assertFalse(cache.isCompatible(myAgent3, bt10, incompatible));
+    assertFalse(cache.isCompatible(myAgent1, bt20, incompatible));
+    assertFalse(cache.isCompatible(myAgent1, bt20, compatible));
+    assertEquals(3, calculations[0]);
+
+    cache.buildTypePersisted(bt10);
+    assertFalse(cache.isCompatible(myAgent1, bt10, incompatible));
+    assertFalse(cache.isCompatible(myAgent3, bt10, incompatible));
+    assertFalse(cache.isCompatible(myAgent1, bt20, compatible));
+    assertEquals(5, calculations[0]);
+
+    cache.agentDescriptionUpdated(myAgent1);
+    assertTrue(cache.isCompatible(myAgent1, bt10, compatible));
+    assertTrue(cache.isCompatible(myAgent1, bt20, compatible));
+    assertFalse(cache.isCompatible(myAgent3, bt10, compatible));
+    assertEquals(7, calculations[0]);
+
+    cache.invalidateAll();
+    assertEquals(0, cache.getSize());
+    assertTrue(cache.isCompatible(myAgent3, bt10, compatible));
+    assertEquals(8, calculations[0]);
+  }
+
   @Test
   public void testLocatorCompatibleForBuildWithoutPrefilter() throws Exception {
     setInternalProperty("rest.request.agents.compatibilityPrefilter", "false"); //non-default, pre-2017.1.2 value
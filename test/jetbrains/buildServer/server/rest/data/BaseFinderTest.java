@@ -36,6 +36,7 @@ import jetbrains.buildServer.server.rest.data.problem.TestOccurrenceFinder;
 import jetbrains.buildServer.server.rest.errors.NotFoundException;
 import jetbrains.buildServer.server.rest.util.BeanContext;
 import jetbrains.buildServer.server.rest.util.BeanFactory;
+import jetbrains.buildServer.server.rest.util.ParallelProcessingPool;
 import jetbrains.buildServer.serverSide.ArtifactDependencyFactory;
 import jetbrains.buildServer.serverSide.CurrentProblemsManager;
 import jetbrains.buildServer.serverSide.SBuildType;
@@ -53,6 +54,7 @@ import jetbrains.buildServer.util.ExceptionUtil;
 import jetbrains.buildServer.vcs.impl.VcsManagerImpl;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 
 /**
@@ -84,6 +86,7 @@ public abstract class BaseFinderTest<T> extends BaseServerTestCase{
   protected ChangeFinder myChangeFinder;
   protected UserGroupFinder myGroupFinder;
   protected TimeCondition myTimeCondition;
+  protected ParallelProcessingPool myParallelProcessingPool;
 
   static public BeanContext getBeanContext(final ServiceLocator serviceLocator) {
     final ApiUrlBuilder apiUrlBuilder = new ApiUrlBuilder(new PathTransformer() {
@@ -103,9 +106,18 @@ public abstract class BaseFinderTest<T> extends BaseServerTestCase{
     initFinders();
   }
 
+  @Override
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (myParallelProcessingPool != null) myParallelProcessingPool.dispose();
+    super.tearDown();
+  }
+
   protected void initFinders() {
     myVcsManager = myFixture.getVcsManager();
     myFixture.addService(myVcsManager);
+    myParallelProcessingPool = new ParallelProcessingPool();
+    myFixture.addService(myParallelProcessingPool);
     myFixture.addService(myProjectManager);
     myPermissionChecker = new PermissionChecker(myServer.getSecurityContext(), myProjectManager);
     myFixture.addService(myPermissionChecker);
@@ -159,7 +171,7 @@ public abstract class BaseFinderTest<T> extends BaseServerTestCase{
     myFixture.addService(myTestFinder);
 
     final CurrentProblemsManager currentProblemsManager = myServer.getSingletonService(CurrentProblemsManager.class);
-    myTestOccurrenceFinder = new TestOccurrenceFinder(myTestFinder, myBuildFinder, myBuildTypeFinder, myProjectFinder, myServer.getHistory(), currentProblemsManager);
+    myTestOccurrenceFinder = new TestOccurrenceFinder(myTestFinder, myBuildFinder, myBuildTypeFinder, myProjectFinder, myServer.getHistory(), currentProblemsManager, myFixture);
     myFixture.addService(myTestOccurrenceFinder);
 
     final BuildProblemManager buildProblemManager = myFixture.getSingletonService(BuildProblemManager.class);
@@ -17,8 +17,12 @@
 package jetbrains.buildServer.server.rest.data;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 import jetbrains.buildServer.server.rest.errors.LocatorProcessException;
+import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.BuildTypeEx;
 import jetbrains.buildServer.serverSide.BuildTypeOptions;
 import jetbrains.buildServer.serverSide.impl.MockVcsSupport;
@@ -92,6 +96,53 @@ public class BranchFinderTest extends BaseFinderTest<BranchData> {
     checkExceptionOnItemsSearch(LocatorProcessException.class, "buildType:(id:" + bt20.getExternalId() + "),changesFromDependencies:any");
   }
 
+  @Test
+  public void testPrefetchedLatestBuilds() {
+    final BuildTypeEx bt10 = registerBuildType("10", "Project");
+
+    MockVcsSupport vcs = new MockVcsSupport("vcs");
+    vcs.setDAGBased(true);
+    myFixture.getVcsManager().registerVcsSupport(vcs);
+    SVcsRootEx parentRoot1 = myFixture.addVcsRoot(vcs.getName(), "", bt10);
+    VcsRootInstance root1 = bt10.getVcsRootInstanceForParent(parentRoot1);
+    assert root1 != null;
+
+    setBranchSpec(root1, "+:*");
+
+    final BuildFinderTestBase.MockCollectRepositoryChangesPolicy changesPolicy = new BuildFinderTestBase.MockCollectRepositoryChangesPolicy();
+    vcs.setCollectChangesPolicy(changesPolicy);
+
+    myFixture.addModification(modification().in(root1).version("10").parentVersions("1"));
+    myFixture.addModification(modification().in(root1).version("20").parentVersions("1"));
+    myFixture.addModification(modification().in(root1).version("30").parentVersions("1"));
+
+    changesPolicy.setCurrentState(root1, RepositoryStateData.createVersionState("master", Util.map("master", "10", "branch1", "20", "branch2", "30")));
+    myFixture.getVcsModificationChecker().checkForModifications(bt10.getVcsRootInstances(), OperationRequestor.UNKNOWN);
+
+    build().in(bt10).finish();
+    build().in(bt10).withBranch("branch1").finish();
+    build().in(bt10).finish();
+    build().in(bt10).withBranch("branch1").failed().finish();
+    build().in(bt10).finish();
+
+    final String branchesLocator = "buildType:(id:" + bt10.getExternalId() + ")";
+    for (String buildsLocator : Arrays.asList("state:finished", "status:SUCCESS", "status:FAILURE")) {
+      final Map<String, List<BuildPromotion>> expected = new HashMap<>();
+      for (BranchData branch : myBranchFinder.getItems(branchesLocator).myEntries) {
+        expected.put(branch.getName(), branch.getBuilds(buildsLocator).myEntries);
+      }
+      assertEquals(3, expected.size());
+
+      final List<BranchData> branches = myBranchFinder.getItems(branchesLocator).myEntries;
+      BranchData.prefetchLatestBuilds(branches, buildsLocator, myFixture);
+      for (BranchData branch : branches) {
+        assertNotNull(branch.getName(), branch.getPrefetchedBuilds(buildsLocator));
+        assertNull(branch.getPrefetchedBuilds("count:2"));
+        assertEquals(buildsLocator + ", " + branch.getName(), expected.get(branch.getName()), branch.getBuilds(buildsLocator).myEntries);
+      }
+    }
+  }
+
   private void check(final String locator, final String defaultBranchName, final String... branchNames) {
     check(locator, new Matcher<String, BranchData>() {
       @Override
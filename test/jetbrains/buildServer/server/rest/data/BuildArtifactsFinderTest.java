@@ -17,22 +17,38 @@
 package jetbrains.buildServer.server.rest.data;
 
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.intellij.openapi.util.SystemInfo;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
+import java.lang.reflect.Proxy;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import jetbrains.BuildServerCreator;
 import jetbrains.buildServer.BaseTestCase;
 import jetbrains.buildServer.TempFiles;
+import jetbrains.buildServer.controllers.fakes.FakeHttpServletRequest;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
+import jetbrains.buildServer.server.rest.request.FilesSubResource;
+import jetbrains.buildServer.server.rest.util.ParallelProcessingPool;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.SFinishedBuild;
 import jetbrains.buildServer.serverSide.SRunningBuild;
@@ -64,6 +80,7 @@ import org.testng.annotations.Test;
 public class BuildArtifactsFinderTest extends BaseTestCase {
   private BuildServerCreator myFixture;
   private final TempFiles myTempFiles = new TempFiles();
+  private ParallelProcessingPool myParallelProcessingPool;
 
   private SFinishedBuild myBuildWithArtifacts;
   private File myFile1;
@@ -116,6 +133,8 @@ public class BuildArtifactsFinderTest extends BaseTestCase {
 
     TimeCondition timeCondition = new TimeCondition(myFixture);
     myFixture.addService(timeCondition);
+    myParallelProcessingPool = new ParallelProcessingPool();
+    myFixture.addService(myParallelProcessingPool);
 
     final SRunningBuild runningBuild = myFixture.startBuild();
     myBuildWithArtifacts = myFixture.finishBuild(runningBuild, false);
@@ -128,6 +147,7 @@ public class BuildArtifactsFinderTest extends BaseTestCase {
 
   @AfterClass
   protected void suiteTearDown() {
+    myParallelProcessingPool.dispose();
     myFixture.shutdown();
     myTempFiles.cleanup();
   }
@@ -144,6 +164,388 @@ public class BuildArtifactsFinderTest extends BaseTestCase {
     checkOrderedCollection(getNames(artifacts), "dir1", "archive.zip", "archive_nested.zip", "file.txt");
   }
 
+  public void testArchive() throws Exception {
+    final List<ArtifactTreeElement> artifacts = getArtifacts("", "recursive:true");
+    final byte[] archiveContent = Files.toByteArray(new File(myBuildWithArtifacts.getArtifactsDirectory(), "archive.zip"));
+
+    checkArchive(new ArchiveElement(artifacts, "a.zip"), archiveContent);
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), archiveContent);
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.STORE, myFixture), archiveContent);
+
+    setInternalProperty("rest.build.artifacts.archive.parallel.maxEntrySize", "10"); //compress while writing
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), archiveContent);
+    setInternalProperty("rest.build.artifacts.archive.parallel.blockSize", "100");
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), archiveContent);
+    setInternalProperty("rest.build.artifacts.archive.parallel.blockSize", "0");
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), archiveContent);
+
+    setInternalProperty("rest.parallel.enabled", "false");
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), archiveContent);
+    checkArchive(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.STORE, myFixture), archiveContent);
+  }
+
+  public void testArchiveLargeEntryBlocks() throws Exception {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; text.length() < 1024 * 1024; i++) {
+      text.append("line ").append(i).append(": ").append(Integer.toHexString(i * 31)).append('\n');
+    }
+    final byte[] content = text.toString().getBytes(Charset.forName("UTF-8"));
+    final List<ArtifactTreeElement> artifacts = Collections.singletonList(getArtifact("large.txt", content.length, () -> new ByteArrayInputStream(content)));
+    setInternalProperty("rest.build.artifacts.archive.parallel.maxEntrySize", "1000");
+
+    setInternalProperty("rest.build.artifacts.archive.parallel.blockSize", "0");
+    final byte[] serial = write(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), null, null);
+    assertTrue(Arrays.equals(content, readArchive(serial).get("large.txt")));
+
+    for (String blockSize : new String[]{"65536", "10000", "1000"}) {
+      setInternalProperty("rest.build.artifacts.archive.parallel.blockSize", blockSize);
+      final byte[] blocks = write(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), null, null);
+      assertTrue("Block size " + blockSize, Arrays.equals(content, readArchive(blocks).get("large.txt")));
+      //the preceding content is used as the dictionary, so the compression ratio is close to the serial one
+      assertTrue("Block size " + blockSize + ": " + blocks.length + " vs " + serial.length, blocks.length < serial.length * 1.2);
+    }
+  }
+
+  public void testArchiveReadErrors() throws Exception {
+    final byte[] content = "content".getBytes(Charset.forName("UTF-8"));
+    final List<ArtifactTreeElement> artifacts = Arrays.asList(
+      getArtifact("a.txt", content.length, () -> new ByteArrayInputStream(content)),
+      getArtifact("notReadable.txt", content.length, () -> {
+        throw new IOException("Not readable");
+      }),
+      getArtifact("broken.txt", content.length * 2, () -> new SequenceInputStream(new ByteArrayInputStream(content), new InputStream() {
+        @Override
+        public int read() throws IOException {
+          throw new IOException("Broken");
+        }
+      })),
+      getArtifact("b.txt", content.length, () -> new ByteArrayInputStream(content)));
+
+    setInternalProperty("rest.build.artifacts.archive.parallel.maxEntrySize", "1"); //read while writing
+    for (String blockSize : new String[]{"1024", "0"}) {
+      setInternalProperty("rest.build.artifacts.archive.parallel.blockSize", blockSize);
+      final Map<String, byte[]> entries = readArchive(write(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), null, null));
+      checkOrderedCollection(new ArrayList<>(entries.keySet()), "a.txt", "broken.txt", "b.txt");
+      assertTrue(Arrays.equals(content, entries.get("a.txt")));
+      assertTrue(Arrays.equals(content, entries.get("broken.txt"))); //truncated
+      assertTrue(Arrays.equals(content, entries.get("b.txt")));
+    }
+  }
+
+  public void testArchiveNamesEncoding() throws Exception {
+    final byte[] archive = write(new ArchiveElement(getArtifacts("", "recursive:true"), "a.zip", ArchiveElement.Compression.DEFLATE, myFixture), null, null);
+    //entry names are in the platform encoding (TW-12815), the language encoding flag is set only if it is UTF-8
+    final int flags = (archive[6] & 0xFF) | (archive[7] & 0xFF) << 8;
+    assertEquals(Charset.defaultCharset().equals(Charset.forName("UTF-8")), (flags & (1 << 11)) != 0);
+  }
+
+  @NotNull
+  private static Map<String, byte[]> readArchive(@NotNull final byte[] archive) throws IOException {
+    final Map<String, byte[]> result = new LinkedHashMap<>();
+    try (ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(archive), Charset.defaultCharset())) {
+      ZipEntry entry;
+      while ((entry = zipInput.getNextEntry()) != null) {
+        result.put(entry.getName(), ByteStreams.toByteArray(zipInput));
+      }
+    }
+    return result;
+  }
+
+  private interface ContentProvider {
+    InputStream open() throws IOException;
+  }
+
+  @NotNull
+  private static ArtifactTreeElement getArtifact(@NotNull final String name, final long size, @NotNull final ContentProvider content) {
+    return (ArtifactTreeElement)Proxy.newProxyInstance(BuildArtifactsFinderTest.class.getClassLoader(), new Class[]{ArtifactTreeElement.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getName":
+        case "getFullName":
+        case "toString":
+          return name;
+        case "isLeaf":
+        case "isContentAvailable":
+          return true;
+        case "getSize":
+          return size;
+        case "getLastModified":
+          return 0L;
+        case "getInputStream":
+          return content.open();
+        default:
+          return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+      }
+    });
+  }
+
+  public void testStoredArchiveRanges() throws Exception {
+    final List<ArtifactTreeElement> artifacts = getArtifacts("", "recursive:true");
+    final ArchiveElement archiveElement = new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.STORE, myFixture, "build");
+    assertTrue(archiveElement.isRangeSupported());
+    assertFalse(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.DEFLATE, myFixture).isRangeSupported());
+
+    final byte[] full = write(archiveElement, null, null);
+    assertEquals(full.length, archiveElement.getSize());
+    assertTrue(Arrays.equals(full, write(new ArchiveElement(artifacts, "a.zip", ArchiveElement.Compression.STORE, myFixture, "build"), null, null)));
+
+    for (int start = 0; start < full.length; start += 7) {
+      final int length = Math.min(50, full.length - start);
+      assertTrue("Range " + start + "+" + length, Arrays.equals(Arrays.copyOfRange(full, start, start + length), write(archiveElement, (long)start, (long)length)));
+    }
+    assertTrue(Arrays.equals(Arrays.copyOfRange(full, 100, full.length), write(archiveElement, 100L, null)));
+  }
+
+  public void testStoredArchiveIfRange() throws Exception {
+    setInternalProperty("rest.build.artifacts.setMimeType", "false");
+    final ArchiveElement archiveElement = new ArchiveElement(getArtifacts("", "recursive:true"), "a.zip", ArchiveElement.Compression.STORE, myFixture, "build");
+    final EntityTag eTag = archiveElement.getStrongETag();
+    assertNotNull(eTag);
+    assertFalse(eTag.isWeak());
+    assertNull(new ArchiveElement(getArtifacts("", "recursive:true"), "a.zip", ArchiveElement.Compression.DEFLATE, myFixture).getStrongETag());
+
+    final Response response = getArchiveContent(archiveElement, null, null);
+    assertEquals(200, response.getStatus());
+    assertEquals(eTag, response.getMetadata().getFirst(HttpHeaders.ETAG));
+    assertEquals(206, getArchiveContent(archiveElement, null, "bytes=0-9").getStatus());
+    assertEquals(206, getArchiveContent(archiveElement, eTag.toString(), "bytes=0-9").getStatus());
+    assertEquals(200, getArchiveContent(archiveElement, "\"other\"", "bytes=0-9").getStatus());
+    assertEquals(200, getArchiveContent(archiveElement, "W/" + eTag.toString(), "bytes=0-9").getStatus());
+    assertEquals(200, getArchiveContent(archiveElement, "Thu, 01 Jan 2015 00:00:00 GMT", "bytes=0-9").getStatus());
+
+    //archive of the same size, but with a modified file
+    final long lastModified = myFile2.lastModified();
+    try {
+      assertTrue(myFile2.setLastModified(lastModified + 2000));
+      final ArchiveElement modifiedArchiveElement = new ArchiveElement(getArtifacts("", "recursive:true"), "a.zip", ArchiveElement.Compression.STORE, myFixture, "build");
+      assertEquals(archiveElement.getSize(), modifiedArchiveElement.getSize());
+      assertFalse(eTag.equals(modifiedArchiveElement.getStrongETag()));
+      assertEquals(200, getArchiveContent(modifiedArchiveElement, eTag.toString(), "bytes=0-9").getStatus());
+    } finally {
+      myFile2.setLastModified(lastModified);
+    }
+  }
+
+  @NotNull
+  private static Response getArchiveContent(@NotNull final ArchiveElement archiveElement, @Nullable final String ifRange, @Nullable final String range) {
+    final FakeHttpServletRequest request = new FakeHttpServletRequest();
+    if (range != null) request.addHeader("Range", range);
+    if (ifRange != null) request.addHeader("If-Range", ifRange);
+    return FilesSubResource.getContentByStream(archiveElement, request, new FilesSubResource.StreamingOutputProvider() {
+      public boolean isRangeSupported() {
+        return archiveElement.isRangeSupported();
+      }
+
+      public StreamingOutput getStreamingOutput(@Nullable final Long startOffset, @Nullable final Long length) {
+        return archiveElement.getStreamingOutput(startOffset, length, () -> "test");
+      }
+
+      @Nullable
+      public EntityTag getStrongETag() {
+        return archiveElement.getStrongETag();
+      }
+    }).build();
+  }
+
+  public void testLocalFile() throws Exception {
+    final BuildPromotion build = myBuildWithArtifacts.getBuildPromotion();
+    assertEquals(myFile1.getCanonicalFile(), BuildArtifactsFinder.getLocalFile(BuildArtifactsFinder.getArtifactElement(build, "file.txt", myFixture)).getCanonicalFile());
+    assertEquals(myFile2.getCanonicalFile(), BuildArtifactsFinder.getLocalFile(BuildArtifactsFinder.getArtifactElement(build, "dir1/file.txt", myFixture)).getCanonicalFile());
+    assertNull(BuildArtifactsFinder.getLocalFile(BuildArtifactsFinder.getArtifactElement(build, "dir1", myFixture)));
+
+    final List<ArtifactTreeElement> archiveContent = getArtifacts("archive.zip", "recursive:true");
+    assertFalse(archiveContent.isEmpty());
+    for (ArtifactTreeElement element : archiveContent) {
+      assertNull(element.getFullName(), BuildArtifactsFinder.getLocalFile(element));
+    }
+  }
+
+  public void testSendfile() throws Exception {
+    setInternalProperty("rest.build.artifacts.setMimeType", "false");
+    setInternalProperty("rest.build.artifacts.sendfile.minSize", "0");
+    final Element element = BuildArtifactsFinder.getArtifactElement(myBuildWithArtifacts.getBuildPromotion(), "archive.zip", myFixture);
+    final File file = BuildArtifactsFinder.getLocalFile(element);
+    assertNotNull(file);
+    final byte[] content = Files.toByteArray(file);
+
+    final HttpServletResponse response = (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{HttpServletResponse.class}, (proxy, method, args) -> null);
+    final FakeHttpServletRequest request = new FakeHttpServletRequest();
+    assertNull("not supported by the container", FilesSubResource.getSendfile(element, request, response));
+    request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+    assertNull("the response is not the container's one", FilesSubResource.getSendfile(element, request, response));
+
+    //full content
+    FakeHttpServletRequest sendfileRequest = new FakeHttpServletRequest();
+    Response result = FilesSubResource.getContent(element, sendfileRequest, file).build();
+    assertEquals(200, result.getStatus());
+    assertEquals(String.valueOf(content.length), String.valueOf(result.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)));
+    assertEquals(file.getAbsolutePath(), sendfileRequest.getAttribute("org.apache.tomcat.sendfile.filename"));
+    assertEquals(0L, sendfileRequest.getAttribute("org.apache.tomcat.sendfile.start"));
+    assertEquals((long)content.length, sendfileRequest.getAttribute("org.apache.tomcat.sendfile.end"));
+    assertEquals("the body is sent by the container", 0, write(result).length);
+
+    //single range
+    sendfileRequest = new FakeHttpServletRequest();
+    sendfileRequest.addHeader("Range", "bytes=2-5");
+    result = FilesSubResource.getContent(element, sendfileRequest, file).build();
+    assertEquals(206, result.getStatus());
+    assertEquals("4", String.valueOf(result.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)));
+    assertEquals(2L, sendfileRequest.getAttribute("org.apache.tomcat.sendfile.start"));
+    assertEquals(6L, sendfileRequest.getAttribute("org.apache.tomcat.sendfile.end"));
+    assertEquals(0, write(result).length);
+
+    //several ranges are written by the application
+    sendfileRequest = new FakeHttpServletRequest();
+    sendfileRequest.addHeader("Range", "bytes=0-1,4-5");
+    result = FilesSubResource.getContent(element, sendfileRequest, file).build();
+    assertEquals(206, result.getStatus());
+    assertNull(sendfileRequest.getAttribute("org.apache.tomcat.sendfile.filename"));
+    assertEquals(String.valueOf(result.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)), String.valueOf(write(result).length));
+
+    //no sendfile
+    final FakeHttpServletRequest streamRequest = new FakeHttpServletRequest();
+    result = FilesSubResource.getContent(element, streamRequest).build();
+    assertNull(streamRequest.getAttribute("org.apache.tomcat.sendfile.filename"));
+    assertTrue(Arrays.equals(content, write(result)));
+  }
+
+  public void testMultipartRanges() throws Exception {
+    setInternalProperty("rest.build.artifacts.setMimeType", "false");
+    final Element element = BuildArtifactsFinder.getArtifactElement(myBuildWithArtifacts.getBuildPromotion(), "archive.zip", myFixture);
+    final byte[] content = Files.toByteArray(BuildArtifactsFinder.getLocalFile(element));
+    final int size = content.length;
+    assertTrue(size > 100);
+
+    Response response = getContent(element, "bytes=0-9,20-29,-5");
+    assertEquals(206, response.getStatus());
+    final String boundary = getMultipartBoundary(response);
+    assertNotNull(boundary);
+    byte[] body = write(response);
+    assertEquals(String.valueOf(body.length), String.valueOf(response.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)));
+
+    List<String[]> parts = parseMultipart(body, boundary);
+    assertEquals(3, parts.size());
+    checkPart(parts.get(0), content, 0, 9);
+    checkPart(parts.get(1), content, 20, 29);
+    checkPart(parts.get(2), content, size - 5, size - 1);
+
+    //overlapping ranges: each served part should match its Content-Range and all the requested bytes should be served
+    response = getContent(element, "bytes=0-9,5-14");
+    assertEquals(206, response.getStatus());
+    body = write(response);
+    assertEquals(String.valueOf(body.length), String.valueOf(response.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH)));
+    final String overlappingBoundary = getMultipartBoundary(response);
+    final boolean[] served = new boolean[size];
+    if (overlappingBoundary != null) {
+      parts = parseMultipart(body, overlappingBoundary);
+      for (String[] part : parts) {
+        final long[] range = checkPart(part, content, null, null);
+        Arrays.fill(served, (int)range[0], (int)range[1] + 1, true);
+      }
+    } else {
+      assertEquals("bytes 0-14/" + size, response.getMetadata().getFirst("Content-Range"));
+      assertTrue(Arrays.equals(Arrays.copyOfRange(content, 0, 15), body));
+      Arrays.fill(served, 0, 15, true);
+    }
+    for (int i = 0; i < 15; i++) {
+      assertTrue("Byte " + i + " is not served", served[i]);
+    }
+
+    //unsatisfiable
+    response = getContent(element, "bytes=" + (size + 10) + "-" + (size + 20));
+    assertEquals(416, response.getStatus());
+    assertEquals("bytes */" + size, response.getMetadata().getFirst("Content-Range"));
+
+    setInternalProperty("rest.build.artifacts.maxRangesCount", "2");
+    response = getContent(element, "bytes=0-1,3-4,6-7");
+    assertEquals(416, response.getStatus());
+    assertEquals("bytes */" + size, response.getMetadata().getFirst("Content-Range"));
+    assertEquals(206, getContent(element, "bytes=0-1,3-4").getStatus());
+  }
+
+  @NotNull
+  private static Response getContent(@NotNull final Element element, @NotNull final String range) {
+    final FakeHttpServletRequest request = new FakeHttpServletRequest();
+    request.addHeader("Range", range);
+    return FilesSubResource.getContent(element, request).build();
+  }
+
+  @Nullable
+  private static String getMultipartBoundary(@NotNull final Response response) {
+    final MediaType mediaType = MediaType.valueOf(String.valueOf(response.getMetadata().getFirst(HttpHeaders.CONTENT_TYPE)));
+    if (!"multipart".equals(mediaType.getType()) || !"byteranges".equals(mediaType.getSubtype())) return null;
+    return mediaType.getParameters().get("boundary");
+  }
+
+  /**
+   * @return headers block and content of each part of "multipart/byteranges" body
+   */
+  @NotNull
+  private static List<String[]> parseMultipart(@NotNull final byte[] body, @NotNull final String boundary) {
+    final String text = new String(body, Charset.forName("ISO-8859-1"));
+    final String delimiter = "\r\n--" + boundary;
+    assertTrue(text.startsWith(delimiter + "\r\n"));
+    assertTrue(text.endsWith(delimiter + "--\r\n"));
+    final List<String[]> result = new ArrayList<>();
+    final String[] parts = text.substring(0, text.length() - (delimiter + "--\r\n").length()).split(Pattern.quote(delimiter), -1);
+    assertEquals("", parts[0]);
+    for (int i = 1; i < parts.length; i++) {
+      assertTrue(parts[i].startsWith("\r\n"));
+      final int headersEnd = parts[i].indexOf("\r\n\r\n");
+      assertTrue(headersEnd >= 0);
+      result.add(new String[]{parts[i].substring(2, headersEnd), parts[i].substring(headersEnd + 4)});
+    }
+    return result;
+  }
+
+  /**
+   * @return first and last byte index of the part
+   */
+  @NotNull
+  private static long[] checkPart(@NotNull final String[] part, @NotNull final byte[] content, @Nullable final Integer expectedFirst, @Nullable final Integer expectedLast) {
+    final List<String> headers = Arrays.asList(part[0].split("\r\n"));
+    assertEquals(2, headers.size());
+    assertEquals("Content-Type: application/octet-stream", headers.get(0));
+    final Matcher matcher = Pattern.compile("Content-Range: bytes (\\d+)-(\\d+)/" + content.length).matcher(headers.get(1));
+    assertTrue(headers.get(1), matcher.matches());
+    final int first = Integer.parseInt(matcher.group(1));
+    final int last = Integer.parseInt(matcher.group(2));
+    if (expectedFirst != null) assertEquals(expectedFirst.intValue(), first);
+    if (expectedLast != null) assertEquals(expectedLast.intValue(), last);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(content, first, last + 1), part[1].getBytes(Charset.forName("ISO-8859-1"))));
+    return new long[]{first, last};
+  }
+
+  @NotNull
+  private static byte[] write(@NotNull final Response response) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ((StreamingOutput)response.getEntity()).write(output);
+    return output.toByteArray();
+  }
+
+  @NotNull
+  private static byte[] write(@NotNull final ArchiveElement archiveElement, @Nullable final Long start, @Nullable final Long length) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    archiveElement.getStreamingOutput(start, length, () -> "test").write(output);
+    return output.toByteArray();
+  }
+
+  private void checkArchive(@NotNull final ArchiveElement archiveElement, @NotNull final byte[] expectedArchiveZipContent) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    archiveElement.getStreamingOutput(null, null, () -> "test").write(output);
+
+    final List<String> names = new ArrayList<>();
+    try (ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zipInput.getNextEntry()) != null) {
+        names.add(entry.getName());
+        if ("archive.zip".equals(entry.getName())) {
+          assertTrue(Arrays.equals(expectedArchiveZipContent, ByteStreams.toByteArray(zipInput)));
+        }
+      }
+    }
+    checkOrderedCollection(names, "dir1/", "dir1/file.txt", "archive.zip", "archive_nested.zip", "file.txt");
+  }
+
   private List<ArtifactTreeElement> getArtifacts(final String path, final String filesLocator) {
     return getArtifacts(path, filesLocator, null, myBuildWithArtifacts.getBuildPromotion());
   }
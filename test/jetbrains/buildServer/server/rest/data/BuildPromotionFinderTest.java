@@ -187,6 +187,53 @@ public class BuildPromotionFinderTest extends BaseFinderTest<BuildPromotion> {
     checkBuilds("snapshotDependency:(to:(id:" + (build4.getId() + 10) + ")),state:any");
   }
 
+  @Test
+  public void testSnapshotDependenciesLazyTraversal() throws Exception {
+    final BuildTypeImpl buildConf0 = registerBuildType("buildConf0", "project");
+    final BuildTypeImpl buildConf1 = registerBuildType("buildConf1", "project");
+    final BuildTypeImpl buildConf2 = registerBuildType("buildConf2", "project");
+    final BuildTypeImpl buildConf3 = registerBuildType("buildConf3", "project");
+    addDependency(buildConf3, buildConf2);
+    addDependency(buildConf2, buildConf1);
+    addDependency(buildConf1, buildConf0);
+    final BuildPromotion build3 = build().in(buildConf3).addToQueue().getBuildPromotion();
+    final BuildPromotion build2 = build3.getDependencies().iterator().next().getDependOn();
+    final BuildPromotion build1 = build2.getDependencies().iterator().next().getDependOn();
+    final BuildPromotion build0 = build1.getDependencies().iterator().next().getDependOn();
+
+    final List<BuildPromotion> expanded = new ArrayList<>();
+    myBuildPromotionFinder.setSnapshotDependenciesTraverser(new GraphFinder.Traverser<BuildPromotion>() {
+      @NotNull
+      @Override
+      public GraphFinder.LinkRetriever<BuildPromotion> getChildren() {
+        return item -> {
+          expanded.add(item);
+          return BuildPromotionFinder.SNAPSHOT_DEPENDENCIES_TRAVERSER.getChildren().getLinked(item);
+        };
+      }
+
+      @NotNull
+      @Override
+      public GraphFinder.LinkRetriever<BuildPromotion> getParents() {
+        return item -> {
+          expanded.add(item);
+          return BuildPromotionFinder.SNAPSHOT_DEPENDENCIES_TRAVERSER.getParents().getLinked(item);
+        };
+      }
+    });
+    try {
+      checkMultipleBuilds("snapshotDependency:(to:(id:" + build3.getId() + ")),state:any", build2, build1, build0);
+      assertEquals(Arrays.asList(build3, build2, build1, build0), expanded);
+
+      //the count of the builds locator cannot stop the traversal as the builds are sorted, but the count of the dimension does
+      expanded.clear();
+      checkMultipleBuilds("snapshotDependency:(to:(id:" + build3.getId() + "),count:1),state:any", build2);
+      assertEquals(Arrays.asList(build3, build2), expanded); //"build2" is expanded to find out there are more items than "count"
+    } finally {
+      myBuildPromotionFinder.setSnapshotDependenciesTraverser(BuildPromotionFinder.SNAPSHOT_DEPENDENCIES_TRAVERSER);
+    }
+  }
+
   @Test
   public void testSnapshotDependenciesAndBranches() throws Exception {
     final BuildTypeImpl buildConf0 = registerBuildType("buildConf0", "project");
@@ -893,6 +940,100 @@ public class BuildPromotionFinderTest extends BaseFinderTest<BuildPromotion> {
     checkNoBuildFound("property:(name:a)");
   }
 
+  @Test
+  public void testCursor() {
+    final BuildTypeImpl buildConf = registerBuildType("buildConf1", "project");
+    final SFinishedBuild build10 = build().in(buildConf).finish();
+    final SFinishedBuild build20 = build().in(buildConf).failed().finish();
+    final SFinishedBuild build30 = build().in(buildConf).finish();
+    final SFinishedBuild build40 = build().in(buildConf).failed().finish();
+    final SRunningBuild build50 = build().in(buildConf).run();
+    final BuildPromotion queuedBuild = build().in(buildConf).addToQueue().getBuildPromotion();
+
+    PagedSearchResult<BuildPromotion> result = myBuildPromotionFinder.getItems("state:any,count:2");
+    assertEquals(Arrays.asList(queuedBuild, build50.getBuildPromotion()), result.myEntries);
+    assertNotNull(result.getNextCursor());
+
+    checkBuilds("state:any,count:2,cursor:" + result.getNextCursor(), getBuildPromotions(build40, build30));
+    checkBuilds("state:any,count:2,start:1,cursor:" + result.getNextCursor(), getBuildPromotions(build30, build20));
+
+    result = myBuildPromotionFinder.getItems("buildType:(id:" + buildConf.getExternalId() + "),count:1");
+    assertEquals(Arrays.asList(build40.getBuildPromotion()), result.myEntries);
+    checkBuilds("buildType:(id:" + buildConf.getExternalId() + "),cursor:" + result.getNextCursor(), getBuildPromotions(build30, build20, build10));
+    checkBuilds("buildType:(id:" + buildConf.getExternalId() + "),status:SUCCESS,cursor:" + result.getNextCursor(), getBuildPromotions(build30, build10));
+
+    result = myBuildPromotionFinder.getItems("buildType:(id:" + buildConf.getExternalId() + "),count:4");
+    assertNull(result.getNextCursor());
+
+    checkExceptionOnBuildsSearch(BadRequestException.class, "cursor:$$$");
+  }
+
+  @Test
+  public void testProcessItems() {
+    final BuildTypeImpl buildConf = registerBuildType("buildConf1", "project");
+    final SFinishedBuild build10 = build().in(buildConf).finish();
+    final SFinishedBuild build20 = build().in(buildConf).failed().finish();
+    final SFinishedBuild build30 = build().in(buildConf).finish();
+    final SRunningBuild build40 = build().in(buildConf).run();
+
+    final List<BuildPromotion> processed = new ArrayList<>();
+    PagedSearchResult<BuildPromotion> result = myBuildPromotionFinder.processItems("state:any,count:3", item -> processed.add(item));
+    assertEquals(Arrays.asList(getBuildPromotions(build40, build30, build20)), processed);
+    assertEquals(0, result.myEntries.size());
+    assertEquals(3, result.myActualCount);
+    assertTrue(result.isNextPageAvailable());
+
+    processed.clear();
+    result = myBuildPromotionFinder.processItems("id:" + build10.getBuildId(), item -> processed.add(item));
+    assertEquals(Arrays.asList(getBuildPromotions(build10)), processed);
+    assertEquals(1, result.myActualCount);
+
+    processed.clear();
+    result = myBuildPromotionFinder.processItems("state:any", item -> {
+      processed.add(item);
+      return processed.size() < 2;
+    });
+    assertEquals(Arrays.asList(getBuildPromotions(build40, build30)), processed);
+    assertEquals(2, result.myActualCount);
+  }
+
+  @Test
+  public void testBatchedSearch() {
+    final BuildTypeImpl buildConf1 = registerBuildType("buildConf1", "project");
+    final BuildTypeImpl buildConf2 = registerBuildType("buildConf2", "project");
+    final BuildTypeImpl buildConf3 = registerBuildType("buildConf3", "project");
+    build().in(buildConf1).finish();
+    build().in(buildConf2).failed().finish();
+    build().in(buildConf1).failed().finish();
+    build().in(buildConf1).withBranch("branch").finish();
+    build().in(buildConf2).finish();
+    build().in(buildConf1).finish();
+    build().in(buildConf2).run();
+    build().in(buildConf1).addToQueue();
+    final List<SBuildType> buildTypes = Arrays.asList(buildConf1, buildConf2, buildConf3);
+
+    for (String locator : Arrays.asList("count:1", "count:2", "status:SUCCESS", "status:FAILURE,count:1", "state:any", "running:any,count:2", "branch:(default:any)",
+                                        "defaultFilter:false,count:3", "count:10,lookupLimit:2")) {
+      final Map<String, List<BuildPromotion>> result = myBuildPromotionFinder.getBuildPromotionsBatched(buildTypes, locator);
+      assertNotNull(locator, result);
+      for (SBuildType buildType : buildTypes) {
+        assertEquals("Locator: " + locator + ", build type: " + buildType.getExternalId(),
+                     myBuildPromotionFinder.getBuildPromotions(buildType, locator).myEntries, result.get(buildType.getInternalId()));
+      }
+    }
+
+    assertNull(myBuildPromotionFinder.getBuildPromotionsBatched(buildTypes, "number:1"));
+    assertNull(myBuildPromotionFinder.getBuildPromotionsBatched(buildTypes, "1"));
+
+    setInternalProperty("rest.request.builds.batchedSearch.maxProcessedItemsPerBuildType", "1");
+    final Map<String, List<BuildPromotion>> result = myBuildPromotionFinder.getBuildPromotionsBatched(buildTypes, "count:1");
+    assertNotNull(result);
+    assertNull("Search for build types without enough builds is not completed", result.get(buildConf3.getInternalId()));
+    for (SBuildType buildType : Arrays.asList(buildConf1, buildConf2)) {
+      assertEquals(myBuildPromotionFinder.getBuildPromotions(buildType, "count:1").myEntries, result.get(buildType.getInternalId()));
+    }
+  }
+
   @Test
   public void testSinceWithQueuedBuilds() {
     final BuildTypeImpl buildConf = registerBuildType("buildConf1", "project");
@@ -0,0 +1,100 @@
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.testng.annotations.Test;
+
+import static org.junit.Assert.*;
+
+public class DescendingIdRangeIteratorTest {
+  @Test
+  public void testAllItemsInOrder() {
+    final List<Long> ids = LongStream.of(1, 2, 3, 5, 8, 13, 21, 34, 55, 89, 144, 1000, 1001, 1002, 5000).boxed().collect(Collectors.toList());
+    for (long startId : new long[]{1, 100, 5000, 10000}) {
+      for (int pageSize : new int[]{1, 2, 3, 100}) {
+        final List<Long> expected = new ArrayList<>(ids);
+        expected.sort((a, b) -> Long.compare(b, a));
+        assertEquals("startId " + startId + ", pageSize " + pageSize, expected, read(new DescendingIdRangeIterator<>(getLoader(ids, new int[1]), id -> id, startId, -1, pageSize)));
+
+        expected.removeIf(id -> id <= 13);
+        assertEquals("startId " + startId + ", pageSize " + pageSize, expected, read(new DescendingIdRangeIterator<>(getLoader(ids, new int[1]), id -> id, startId, 13, pageSize)));
+      }
+    }
+  }
+
+  @Test
+  public void testLazyLoading() {
+    final List<Long> ids = LongStream.rangeClosed(1, 100000).boxed().collect(Collectors.toList());
+    final int[] loads = new int[1];
+    final DescendingIdRangeIterator<Long> iterator = new DescendingIdRangeIterator<>(getLoader(ids, loads), id -> id, 100000, -1, 10);
+    for (long expected = 100000; expected > 99990; expected--) {
+      assertEquals(Long.valueOf(expected), iterator.next());
+    }
+    assertEquals(1, loads[0]);
+    iterator.next();
+    assertEquals(2, loads[0]);
+  }
+
+  @Test
+  public void testSparseIds() {
+    final int[] loads = new int[1];
+    final List<Long> result = read(new DescendingIdRangeIterator<>(getLoader(LongStream.of(3, 1000000).boxed().collect(Collectors.toList()), loads), id -> id, 1000000, -1, 10));
+    assertEquals(LongStream.of(1000000, 3).boxed().collect(Collectors.toList()), result);
+    assertTrue("Too many loads: " + loads[0], loads[0] < 25);
+  }
+
+  @Test
+  public void testMerge() {
+    final List<Long> ids1 = LongStream.of(1, 4, 7, 100, 101, 5000).boxed().collect(Collectors.toList());
+    final List<Long> ids2 = LongStream.of(2, 3, 102, 4999).boxed().collect(Collectors.toList());
+    final List<Long> ids3 = Collections.emptyList();
+    for (int pageSize : new int[]{1, 2, 100}) {
+      final List<Long> expected = new ArrayList<>(ids1);
+      expected.addAll(ids2);
+      expected.sort((a, b) -> Long.compare(b, a));
+      final List<Long> result = new ArrayList<>();
+      DescendingIdRangeIterator.merge(Arrays.asList(new DescendingIdRangeIterator<>(getLoader(ids1, new int[1]), id -> id, 5000, -1, pageSize),
+                                                    new DescendingIdRangeIterator<>(getLoader(ids2, new int[1]), id -> id, 5000, -1, pageSize),
+                                                    new DescendingIdRangeIterator<>(getLoader(ids3, new int[1]), id -> id, 5000, -1, pageSize)))
+                               .forEachRemaining(result::add);
+      assertEquals("pageSize " + pageSize, expected, result);
+    }
+  }
+
+  @Test
+  public void testMergeLoadsIdleIteratorLazily() {
+    final List<Long> ids = LongStream.rangeClosed(1000000 - 1000, 1000000).boxed().collect(Collectors.toList());
+    final int[] loads = new int[1];
+    final int[] idleLoads = new int[1];
+    final Iterator<Long> merged = DescendingIdRangeIterator.merge(Arrays.asList(new DescendingIdRangeIterator<>(getLoader(ids, loads), id -> id, 1000000, -1, 10),
+                                                                              new DescendingIdRangeIterator<>(getLoader(Collections.singletonList(3L), idleLoads), id -> id, 1000000, -1, 10)));
+    for (long expected = 1000000; expected > 1000000 - 30; expected--) {
+      assertEquals(Long.valueOf(expected), merged.next());
+    }
+    assertTrue("Too many loads of the idle iterator: " + idleLoads[0], idleLoads[0] <= 3);
+
+    final List<Long> rest = new ArrayList<>();
+    merged.forEachRemaining(rest::add);
+    assertEquals(Long.valueOf(3), rest.get(rest.size() - 1));
+    assertEquals(1001 - 30 + 1, rest.size());
+  }
+
+  private static DescendingIdRangeIterator.RangeLoader<Long> getLoader(final List<Long> ids, final int[] loadsCounter) {
+    return (fromId, toId) -> {
+      loadsCounter[0]++;
+      //inclusive bounds, the iterator should not depend on that
+      return ids.stream().filter(id -> id >= fromId && (toId == null || id <= toId)).collect(Collectors.toList());
+    };
+  }
+
+  private static List<Long> read(final DescendingIdRangeIterator<Long> iterator) {
+    final List<Long> result = new ArrayList<>();
+    iterator.forEachRemaining(result::add);
+    return result;
+  }
+}
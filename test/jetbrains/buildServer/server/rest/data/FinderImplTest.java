@@ -19,11 +19,14 @@ package jetbrains.buildServer.server.rest.data;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * Created by yaegor on 18/03/2017.
  */
@@ -50,9 +53,77 @@ public class FinderImplTest extends BaseFinderTest<String> {
     check("prefixed:(or:(firstChar:a,firstChar:b),count:4),count:10", "_a1", "_a2", "_a3", "_b1");
   }
 
+  @Test
+  public void testResultsMemoizedInReadOnlyContext() {
+    final TestItemFinder finder = new TestItemFinder(null, "a1", "a2", "b1");
+    new RestContext(name -> null, true).run(() -> {
+      assertEquals(Arrays.asList("a1", "a2"), finder.getItems("firstChar:a").myEntries);
+      finder.getItems("firstChar:a").myEntries.clear();
+      assertEquals(Arrays.asList("a1", "a2"), finder.getItems("firstChar:a").myEntries);
+      assertEquals("b1", finder.getItem("firstChar:b"));
+      assertEquals("b1", finder.getItem("firstChar:b"));
+      return null;
+    });
+    assertEquals(2, finder.myPrefilteredItemsRequests);
+
+    new RestContext(name -> null, false).run(() -> {
+      finder.getItems("firstChar:a");
+      finder.getItems("firstChar:a");
+      return null;
+    });
+    assertEquals(4, finder.myPrefilteredItemsRequests);
+
+    finder.getItems("firstChar:a");
+    assertEquals(5, finder.myPrefilteredItemsRequests);
+  }
+
+  @Test
+  public void testCursor() {
+    setFinder(new TestItemFinder(null, "a1", "a2", "a3", "b1", "b2", "b3") {
+      @Nullable
+      @Override
+      public String getCursorKey(@NotNull final String item) {
+        return item;
+      }
+
+      @Override
+      public boolean isCursorSupported() {
+        return true;
+      }
+    });
+    final PagedSearchResult<String> result = myFinder.getItems("count:2");
+    assertEquals(Arrays.asList("a1", "a2"), result.myEntries);
+    assertNotNull(result.getNextCursor());
+    check("count:2,cursor:" + result.getNextCursor(), "a3", "b1");
+    check("firstChar:b,cursor:" + result.getNextCursor(), "b1", "b2", "b3");
+  }
+
+  @Test
+  public void testCursorNotSupported() {
+    final TestItemFinder supportedFinder = new TestItemFinder(null, "a1", "a2", "a3") {
+      @Nullable
+      @Override
+      public String getCursorKey(@NotNull final String item) {
+        return item;
+      }
+
+      @Override
+      public boolean isCursorSupported() {
+        return true;
+      }
+    };
+    final String cursor = supportedFinder.getItems("count:1").getNextCursor();
+    assertNotNull(cursor);
+
+    setFinder(new TestItemFinder(null, "a1", "a2", "a3"));
+    assertNull(myFinder.getItems("count:1").getNextCursor());
+    checkExceptionOnItemsSearch(BadRequestException.class, "count:1,cursor:" + cursor);
+  }
+
   private static class TestItemFinder extends AbstractFinder<String> {
     private final List<String> testItems;
     private final Long myDefaultCount;
+    private int myPrefilteredItemsRequests;
 
     TestItemFinder(@Nullable final Long defaultCount, String... items) {
       super("text", "start", "end", "firstChar", "secondChar", "prefixed");
@@ -69,6 +140,7 @@ public class FinderImplTest extends BaseFinderTest<String> {
     @NotNull
     @Override
     public ItemHolder<String> getPrefilteredItems(@NotNull final Locator locator) {
+      myPrefilteredItemsRequests++;
       final String prefixed = locator.getSingleDimensionValue("prefixed");
       if (prefixed != null) {
         final TestItemFinder newSequence = new TestItemFinder(myDefaultCount, testItems.stream().toArray(l -> new String[l]));
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.*;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class GraphFinderTest {
+  //a -> b -> d -> e, a -> c -> d, c -> f
+  private final Map<String, List<String>> myChildren = new HashMap<>();
+  private final Map<String, List<String>> myParents = new HashMap<>();
+  private final List<String> myExpanded = new ArrayList<>();
+
+  @Test
+  public void testTraversal() {
+    final GraphFinder<String> finder = createFinder();
+    assertEquals(Arrays.asList("b", "c", "d", "f", "e"), finder.getItems("to:(text:a)").myEntries);
+    assertEquals(Arrays.asList("a", "b", "c", "d", "f", "e"), finder.getItems("to:(text:a),includeInitial:true").myEntries);
+    assertEquals(Arrays.asList("b", "c"), finder.getItems("to:(text:a),recursive:false").myEntries);
+    assertEquals(Arrays.asList("b", "c", "d", "f"), finder.getItems("to:(text:a),stop:(text:d)").myEntries);
+    assertEquals(Arrays.asList("d", "b", "c", "a"), finder.getItems("from:(text:e)").myEntries);
+    assertEquals(Arrays.asList("b", "c", "d"), finder.getItems("to:(text:a),from:(text:e)").myEntries);
+    assertEquals(Arrays.asList("a", "c", "f"), finder.getItems("to:(text:a),from:(text:f),includeInitial:true").myEntries);
+  }
+
+  @Test
+  public void testLazyTraversal() {
+    final GraphFinder<String> finder = createFinder();
+    assertEquals(Arrays.asList("b", "c"), finder.getItems("to:(text:a),count:2").myEntries);
+    assertEquals(Arrays.asList("a", "b"), myExpanded); //"b" is expanded to find out there are more items than "count"
+
+    myExpanded.clear();
+    assertEquals(Arrays.asList("a", "b", "c", "d"), finder.getItems("to:(text:a),from:(text:d),includeInitial:true").myEntries);
+    assertEquals(Arrays.asList("d", "b", "c", "a", "b"), myExpanded); //"from" side is collected fully, "to" side traversal stops when all the items are met
+  }
+
+  @NotNull
+  private GraphFinder<String> createFinder() {
+    link("a", "b");
+    link("a", "c");
+    link("b", "d");
+    link("c", "d");
+    link("c", "f");
+    link("d", "e");
+    return new GraphFinder<>(new ItemFinder(Arrays.asList("a", "b", "c", "d", "e", "f")), new GraphFinder.Traverser<String>() {
+      @NotNull
+      @Override
+      public GraphFinder.LinkRetriever<String> getChildren() {
+        return item -> {
+          myExpanded.add(item);
+          return myChildren.getOrDefault(item, Collections.emptyList());
+        };
+      }
+
+      @NotNull
+      @Override
+      public GraphFinder.LinkRetriever<String> getParents() {
+        return item -> {
+          myExpanded.add(item);
+          return myParents.getOrDefault(item, Collections.emptyList());
+        };
+      }
+    });
+  }
+
+  private void link(@NotNull final String parent, @NotNull final String child) {
+    myChildren.computeIfAbsent(parent, k -> new ArrayList<>()).add(child);
+    myParents.computeIfAbsent(child, k -> new ArrayList<>()).add(parent);
+  }
+
+  private static class ItemFinder extends AbstractFinder<String> {
+    @NotNull private final List<String> myItems;
+
+    ItemFinder(@NotNull final List<String> items) {
+      super("text");
+      myItems = items;
+    }
+
+    @NotNull
+    @Override
+    public ItemHolder<String> getPrefilteredItems(@NotNull final Locator locator) {
+      return getItemHolder(myItems);
+    }
+
+    @NotNull
+    @Override
+    public ItemFilter<String> getFilter(@NotNull final Locator locator) {
+      final MultiCheckerFilter<String> result = new MultiCheckerFilter<>();
+      final String text = locator.getSingleDimensionValue("text");
+      if (text != null) {
+        result.add(item -> item.equals(text));
+      }
+      return result;
+    }
+
+    @NotNull
+    @Override
+    public String getItemLocator(@NotNull final String s) {
+      return Locator.getStringLocator("text", s);
+    }
+  }
+}
@@ -622,6 +622,32 @@ public class LocatorTest {
     new Locator("~aa:b", true, "~a", "~aaa", "-");
   }
 
+  @Test
+  public void testParsedLocatorsAreNotAffectedByModification() {
+    final Locator first = new Locator("a:b,c:(d:e)");
+    first.setDimension("a", "x");
+    first.removeDimension("c");
+    first.getSingleDimensionValue("a");
+
+    final Locator second = new Locator("a:b,c:(d:e)");
+    check(second, false, null, "a", "b", "c", "d:e");
+    assertEquals("a:b,c:(d:e)", second.getStringRepresentation());
+    assertTrue(second.getUsedDimensions().containsAll(Arrays.asList("a", "c")));
+
+    final Locator copy = new Locator(second);
+    copy.setDimension("a", "y");
+    assertEquals("b", second.getSingleDimensionValue("a"));
+    assertEquals("y", copy.getSingleDimensionValue("a"));
+    assertEquals("a:x", first.getStringRepresentation());
+  }
+
+  @Test
+  public void testParsedLocatorsCacheRespectsSupportedDimensions() {
+    new Locator("$a:b", "$a");
+    BaseFinderTest.checkException(LocatorProcessException.class, () -> new Locator("$a:b", "a"), "creating locator with not supported dimension");
+    assertEquals("b", new Locator("$a:b", "$a").getSingleDimensionValue("$a"));
+  }
+
   @DataProvider(name = "invalid-complex-values")
   public String[][] getInvalidComplexValues() {
     return new String[][] {
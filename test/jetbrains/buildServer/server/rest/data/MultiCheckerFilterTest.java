@@ -0,0 +1,106 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import jetbrains.buildServer.serverSide.impl.BaseServerTestCase;
+import org.testng.annotations.Test;
+
+public class MultiCheckerFilterTest extends BaseServerTestCase { //need to extend BaseServerTestCase at least to get TeamCityProperties
+  @Test
+  public void testOrder() {
+    MultiCheckerFilter.resetStatistics();
+    final List<String> calls = new ArrayList<>();
+    for (int round = 0; round < 2; round++) {
+      calls.clear();
+      final MultiCheckerFilter<Integer> filter = new MultiCheckerFilter<>("test");
+      filter.add(item -> {
+        calls.add("guard");
+        return true;
+      });
+      filter.addIndependent("heavy", MultiCheckerFilter.COST_HEAVY, item -> {
+        calls.add("heavy");
+        return item % 2 == 0;
+      });
+      filter.addIndependent("selective", MultiCheckerFilter.COST_LOOKUP, item -> {
+        calls.add("selective");
+        return item % 10 == 0;
+      });
+      assertEquals(3, filter.getSubFiltersCount());
+
+      int included = 0;
+      for (int i = 0; i < 1000; i++) {
+        if (filter.isIncluded(i)) included++;
+      }
+      assertEquals(100, included);
+      //plain checker goes first, then the cheaper one; item 1 is excluded by the selective checker
+      assertEquals(Arrays.asList("guard", "selective", "heavy", "guard", "selective", "guard"), calls.subList(0, 6));
+    }
+
+    final String heavyStats = MultiCheckerFilter.getStatistics().get("test:heavy");
+    assertNotNull(heavyStats);
+    assertTrue(heavyStats, heavyStats.startsWith("included: 200, excluded: 0"));
+  }
+
+  @Test
+  public void testDeclarationOrderIsKept() {
+    MultiCheckerFilter.resetStatistics();
+    final List<String> calls = new ArrayList<>();
+    final MultiCheckerFilter<Integer> filter = new MultiCheckerFilter<>("test");
+    filter.add("heavyGuard", MultiCheckerFilter.COST_HEAVY, item -> {
+      calls.add("heavyGuard");
+      return item >= 0;
+    });
+    filter.addIndependent("heavy", MultiCheckerFilter.COST_HEAVY, item -> {
+      calls.add("heavy");
+      return item % 2 == 0;
+    });
+    filter.addIndependent("cheap", MultiCheckerFilter.COST_TRIVIAL, item -> {
+      calls.add("cheap");
+      return item % 3 == 0;
+    });
+    filter.add(item -> {
+      calls.add("plain");
+      return true;
+    });
+    filter.addIndependent("selective", MultiCheckerFilter.COST_LOOKUP, item -> {
+      calls.add("selective");
+      return item % 10 == 0;
+    });
+    filter.addIndependent("trivial", MultiCheckerFilter.COST_TRIVIAL, item -> {
+      calls.add("trivial");
+      return true;
+    });
+
+    assertTrue(filter.isIncluded(0));
+    assertEquals(Arrays.asList("heavyGuard", "cheap", "heavy", "plain", "trivial", "selective"), calls);
+
+    //the order within the runs of independent checkers can change with the collected statistics, others stay at the places of addition
+    for (int i = 0; i < 3000; i++) {
+      calls.clear();
+      assertTrue(filter.isIncluded(0));
+      assertEquals(6, calls.size());
+      assertEquals("heavyGuard", calls.get(0));
+      assertEquals(new HashSet<>(Arrays.asList("heavy", "cheap")), new HashSet<>(calls.subList(1, 3)));
+      assertEquals("plain", calls.get(3));
+      assertEquals(new HashSet<>(Arrays.asList("trivial", "selective")), new HashSet<>(calls.subList(4, 6)));
+    }
+  }
+}
@@ -18,6 +18,7 @@ package jetbrains.buildServer.server.rest.data;
 
 import jetbrains.buildServer.parameters.ParametersProvider;
 import jetbrains.buildServer.parameters.impl.MapParametersProviderImpl;
+import jetbrains.buildServer.requirements.RequirementType;
 import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import jetbrains.buildServer.server.rest.errors.LocatorProcessException;
 import jetbrains.buildServer.serverSide.impl.BaseServerTestCase;
@@ -293,6 +294,31 @@ public class ParameterConditionTest extends BaseServerTestCase { //need to exten
     exceptionSingle(LocatorProcessException.class, "name:xxx,value:aaa,matchType:equals,matchScope:any");
   }
 
+  @Test
+  public void testSpecializedMatchersAreConsistentWithRequirementType() {
+    final String[] conditionValues = {"aaa", "AbC", "a.c", "[", "", "b"};
+    final String[] values = {"aaa", "AAA", "xxaaayy", "abc", "ABC", "xAbCx", "a.c", "[", "", "b", "B"};
+    for (RequirementType type : RequirementType.ALL_REQUIREMENT_TYPES) {
+      if (!type.isParameterRequired()) continue;
+      for (String conditionValue : conditionValues) {
+        for (boolean ignoreCase : new boolean[]{false, true}) {
+          final ValueCondition condition = new ValueCondition(type, conditionValue, ignoreCase);
+          for (String value : values) {
+            boolean expected;
+            try {
+              final boolean lowerParameter = ignoreCase && !RequirementType.MATCHES.equals(type) && !RequirementType.DOES_NOT_MATCH.equals(type);
+              expected = (type.isActualValueCanBeEmpty() || value.length() > 0) &&
+                         type.matchValues(lowerParameter ? conditionValue.toLowerCase() : conditionValue, ignoreCase ? value.toLowerCase() : value);
+            } catch (Exception e) {
+              expected = false;
+            }
+            assertEquals(type.getName() + ", condition: '" + conditionValue + "', ignoreCase: " + ignoreCase + ", value: '" + value + "'", expected, condition.matches(value));
+          }
+        }
+      }
+    }
+  }
+
   // ==============================
   private static void matchesTrue(@NotNull final String propertyConditionLocator, @NotNull String... args) {
     assertTrue(matches(propertyConditionLocator, args));
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import jetbrains.buildServer.BaseTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+public class RestContextTest extends BaseTestCase {
+  private final Object myFinder = new Object();
+
+  @Test
+  public void testCachedResult() {
+    final RestContext context = new RestContext(name -> null, true);
+    final AtomicInteger calculations = new AtomicInteger();
+    final Supplier<String> calculator = () -> "result" + calculations.incrementAndGet();
+
+    assertEquals("result1", context.getCachedFinderResult(myFinder, "key", calculator));
+    assertEquals("result1", context.getCachedFinderResult(myFinder, "key", calculator));
+    assertEquals("result2", context.getCachedFinderResult(myFinder, "otherKey", calculator));
+    assertEquals("result3", context.getCachedFinderResult(new Object(), "key", calculator));
+    assertEquals("finder results cache: 1 hits of 4 lookups (25%), 3 entries with 3 items", context.getFinderResultsCacheStatistics());
+  }
+
+  @Test
+  public void testNotReadOnly() {
+    final RestContext context = new RestContext(name -> null);
+    final AtomicInteger calculations = new AtomicInteger();
+    assertEquals("result1", context.getCachedFinderResult(myFinder, "key", () -> "result" + calculations.incrementAndGet()));
+    assertEquals("result2", context.getCachedFinderResult(myFinder, "key", () -> "result" + calculations.incrementAndGet()));
+    assertNull(context.getFinderResultsCacheStatistics());
+  }
+
+  @Test
+  public void testItemsLimits() {
+    setInternalProperty("rest.request.finderResultsCache.maxResultItems", "3");
+    setInternalProperty("rest.request.finderResultsCache.maxItems", "5");
+    final RestContext context = new RestContext(name -> null, true);
+
+    final PagedSearchResult<Integer> small = getCached(context, "small", 3);
+    assertSame(small, getCached(context, "small", 3));
+
+    //too large to be cached at all
+    final PagedSearchResult<Integer> large = getCached(context, "large", 4);
+    assertNotSame(large, getCached(context, "large", 4));
+
+    //the total limit is reached
+    final PagedSearchResult<Integer> second = getCached(context, "second", 3);
+    assertNotSame(second, getCached(context, "second", 3));
+    final PagedSearchResult<Integer> third = getCached(context, "third", 2);
+    assertSame(third, getCached(context, "third", 2));
+
+    //single items count for the total limit as well
+    assertEquals("item1", context.getCachedFinderResult(myFinder, "item", () -> "item1"));
+    assertEquals("item2", context.getCachedFinderResult(myFinder, "item", () -> "item2"));
+    assertEquals("finder results cache: 2 hits of 10 lookups (20%), 2 entries with 5 items", context.getFinderResultsCacheStatistics());
+  }
+
+  @NotNull
+  private PagedSearchResult<Integer> getCached(@NotNull final RestContext context, @NotNull final String key, final int size) {
+    final Integer[] items = new Integer[size];
+    Arrays.fill(items, size);
+    return context.getCachedFinderResult(myFinder, key, () -> new PagedSearchResult<>(Collections.unmodifiableList(Arrays.asList(items)), null, null));
+  }
+}
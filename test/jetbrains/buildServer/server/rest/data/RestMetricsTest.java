@@ -0,0 +1,119 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package jetbrains.buildServer.server.rest.data;
+
+import com.sun.jersey.api.model.AbstractResource;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ResourceFilter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import jetbrains.buildServer.server.rest.jersey.MetricsResourceFilterFactory;
+import jetbrains.buildServer.server.rest.request.DebugRequest;
+import jetbrains.buildServer.serverSide.SProject;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RestMetricsTest extends BaseFinderTest<SProject> {
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    setFinder(myProjectFinder);
+    RestMetrics.reset();
+  }
+
+  @Test
+  public void testOutput() {
+    RestMetrics.registerResourceMethod("GET BuildRequest.serveBuilds", 2000000, 1000000);
+    RestMetrics.registerResourceMethod("GET BuildRequest.serveBuilds", 4000000, -1);
+    RestMetrics.registerFinderSearch("BuildPromotionFinder", 3000000, 5000, 10, true);
+
+    final Map<String, String> statistics = RestMetrics.getStatistics();
+    assertEquals("2", statistics.get("resourceMethod:GET BuildRequest.serveBuilds:count"));
+    assertEquals("1", statistics.get("resourceMethod:GET BuildRequest.serveBuilds:failed"));
+    assertEquals("3.5", statistics.get("resourceMethod:GET BuildRequest.serveBuilds:totalMs.mean"));
+    assertEquals("1", statistics.get("resourceMethod:GET BuildRequest.serveBuilds:serializationMs.p99"));
+    assertEquals("1", statistics.get("resourceMethod:GET BuildRequest.serveBuilds:serializationMs.max"));
+    assertEquals("1", statistics.get("finder:BuildPromotionFinder:count"));
+    assertEquals("1", statistics.get("finder:BuildPromotionFinder:lookupLimitReached"));
+    assertEquals("3", statistics.get("finder:BuildPromotionFinder:timeMs.mean"));
+    assertEquals("10", statistics.get("finder:BuildPromotionFinder:returnedItems.p50"));
+    assertEquals("5000", statistics.get("finder:BuildPromotionFinder:processedItems.max"));
+
+    final String text = RestMetrics.getPrometheusText();
+    assertContains(text, "# TYPE teamcity_rest_resource_method_duration_seconds summary\n");
+    assertContains(text, "teamcity_rest_resource_method_duration_seconds{method=\"GET BuildRequest.serveBuilds\",phase=\"serialization\",quantile=\"0.5\"} 0.001\n");
+    assertContains(text, "teamcity_rest_resource_method_duration_seconds_count{method=\"GET BuildRequest.serveBuilds\",phase=\"lookup\"} 2\n");
+    assertContains(text, "teamcity_rest_resource_method_failed_total{method=\"GET BuildRequest.serveBuilds\"} 1\n");
+    assertContains(text, "teamcity_rest_finder_processed_items_sum{finder=\"BuildPromotionFinder\"} 5000\n");
+    assertContains(text, "teamcity_rest_finder_lookup_limit_reached_total{finder=\"BuildPromotionFinder\"} 1\n");
+
+    RestMetrics.reset();
+    assertTrue(RestMetrics.getStatistics().isEmpty());
+  }
+
+  @Test
+  public void testFinderSearch() {
+    assertEquals(1, myProjectFinder.getItems("count:1").myEntries.size());
+    final Map<String, String> statistics = RestMetrics.getStatistics();
+    assertEquals(statistics.toString(), "1", statistics.get("finder:" + myProjectFinder.getName() + ":count"));
+    assertEquals("1", statistics.get("finder:" + myProjectFinder.getName() + ":returnedItems.max"));
+
+    setInternalProperty("rest.metrics.enabled", "false");
+    RestMetrics.reset();
+    myProjectFinder.getItems("count:1");
+    assertTrue(RestMetrics.getStatistics().isEmpty());
+  }
+
+  @Test
+  public void testResourceMethodFilter() throws Exception {
+    final Method method = DebugRequest.class.getMethod("getMetrics", String.class);
+    final AbstractResourceMethod resourceMethod = new AbstractResourceMethod(new AbstractResource(DebugRequest.class), method, method.getReturnType(),
+                                                                             method.getGenericReturnType(), "GET", new Annotation[0]);
+    final List<ResourceFilter> filters = new MetricsResourceFilterFactory().create(resourceMethod);
+    assertEquals(1, filters.size());
+    final ResourceFilter filter = filters.get(0);
+
+    new RestContext(name -> null).run(() -> {
+      filter.getRequestFilter().filter(null);
+      filter.getResponseFilter().filter(null, null);
+      RestContext.getThreadLocal().registerResourceMethodMetrics();
+      return null;
+    });
+    //the method failed before the response filter
+    new RestContext(name -> null).run(() -> {
+      filter.getRequestFilter().filter(null);
+      RestContext.getThreadLocal().registerResourceMethodMetrics();
+      //nothing is registered second time
+      RestContext.getThreadLocal().registerResourceMethodMetrics();
+      return null;
+    });
+
+    final Map<String, String> statistics = RestMetrics.getStatistics();
+    assertEquals(statistics.toString(), "2", statistics.get("resourceMethod:GET DebugRequest.getMetrics:count"));
+    assertEquals("1", statistics.get("resourceMethod:GET DebugRequest.getMetrics:failed"));
+
+    //no context - nothing is registered
+    filter.getRequestFilter().filter(null);
+    filter.getResponseFilter().filter(null, null);
+    assertEquals("2", RestMetrics.getStatistics().get("resourceMethod:GET DebugRequest.getMetrics:count"));
+  }
+}
@@ -30,6 +30,7 @@ import jetbrains.buildServer.server.rest.errors.BadRequestException;
 import jetbrains.buildServer.server.rest.model.Fields;
 import jetbrains.buildServer.server.rest.model.problem.TestOccurrence;
 import jetbrains.buildServer.server.rest.model.problem.TypedValue;
+import jetbrains.buildServer.server.rest.util.ParallelProcessingTest;
 import jetbrains.buildServer.serverSide.RunningBuildEx;
 import jetbrains.buildServer.serverSide.SFinishedBuild;
 import jetbrains.buildServer.serverSide.STestRun;
@@ -95,6 +96,25 @@ public class TestOccurrenceFinderTest extends BaseFinderTest<STestRun> {
     check("build:(id:" + build10.getBuildId() + "),test:(currentlyFailing:true)", TEST_MATCHER, t("aaa", Status.FAILURE, 1), t("ccc", Status.FAILURE, 3));
   }
 
+  @Test
+  public void testSeveralBuildsWithSaturatedPool() throws Exception {
+    final BuildTypeImpl buildType = registerBuildType("buildConf1", "project");
+    build().in(buildType).withTest("aaa", true).finish();
+    build().in(buildType).withTest("bbb", false).finish();
+    build().in(buildType).withTest("ccc", true).finish();
+
+    setInternalProperty("rest.parallel.threads", "1");
+    setInternalProperty("rest.parallel.queueSize", "1");
+    try (ParallelProcessingTest.PoolSaturation ignored = ParallelProcessingTest.saturatePool(myFixture)) {
+      //the builds' tests are loaded in the request thread
+      new RestContext(name -> null, true).run(() -> {
+        check("build:(buildType:(id:" + buildType.getExternalId() + "))", TEST_MATCHER, t("ccc", Status.NORMAL, 1), t("bbb", Status.FAILURE, 1), t("aaa", Status.NORMAL, 1));
+        check("build:(buildType:(id:" + buildType.getExternalId() + ")),test:(name:bbb)", TEST_MATCHER, t("bbb", Status.FAILURE, 1));
+        return null;
+      });
+    }
+  }
+
   @Test
   public void testSameTestInDifferentBuilds() throws Exception {
     final BuildTypeImpl buildType1 = registerBuildType("buildConf1", "project1");
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.jersey;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ResourceIndexTest extends BaseTestCase {
+  private static final String PACKAGE = ResourceIndexTest.class.getPackage().getName();
+
+  private File myClassesDir;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    myClassesDir = createTempDir();
+    copyClass(TestResource.class, myClassesDir);
+    copyClass(NotResource.class, myClassesDir);
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    final ClassLoader classLoader = createClassLoader(myClassesDir);
+    assertEquals(1, ResourceIndex.generate(myClassesDir, classLoader, PACKAGE));
+    assertEquals(Collections.singleton(TestResource.class), ResourceIndex.load(classLoader, new String[]{PACKAGE}));
+  }
+
+  @Test
+  public void testNoIndex() {
+    final ClassLoader classLoader = createClassLoader(myClassesDir);
+    assertNull(ResourceIndex.load(classLoader, new String[]{PACKAGE}));
+    assertEquals(Collections.singleton(TestResource.class), ResourceIndex.scan(classLoader, new String[]{PACKAGE}));
+  }
+
+  @Test
+  public void testOutdatedIndex() throws IOException {
+    final ClassLoader classLoader = createClassLoader(myClassesDir);
+    ResourceIndex.generate(myClassesDir, classLoader, PACKAGE);
+
+    final File added = copyClass(OtherResource.class, myClassesDir);
+    setNewerTimestamp(added);
+    assertNull(ResourceIndex.load(classLoader, new String[]{PACKAGE}));
+    assertEquals(new HashSet<Class<?>>(Arrays.asList(TestResource.class, OtherResource.class)), ResourceIndex.scan(classLoader, new String[]{PACKAGE}));
+
+    FileUtil.delete(added);
+    ResourceIndex.generate(myClassesDir, classLoader, PACKAGE);
+    assertNotNull(ResourceIndex.load(classLoader, new String[]{PACKAGE}));
+    setNewerTimestamp(new File(myClassesDir, getClassPath(TestResource.class)));
+    assertNull("recompiled class", ResourceIndex.load(classLoader, new String[]{PACKAGE}));
+  }
+
+  @Test
+  public void testIndexPackedWithClasses() throws IOException {
+    ResourceIndex.generate(myClassesDir, createClassLoader(myClassesDir), PACKAGE);
+    final File jar = new File(createTempDir(), "classes.jar");
+    createJar(myClassesDir, jar);
+    //the timestamps of the classes are not checked when they are packed together with the index
+    setNewerTimestamp(jar);
+    assertEquals(Collections.singleton(TestResource.class), ResourceIndex.load(createClassLoader(jar), new String[]{PACKAGE}));
+  }
+
+  @Test
+  public void testClassesInOtherJar() throws IOException {
+    final File jar = new File(createTempDir(), "classes.jar");
+    createJar(myClassesDir, jar);
+    final File indexDir = createTempDir();
+    final ClassLoader classLoader = createClassLoader(indexDir, jar);
+    ResourceIndex.generate(indexDir, classLoader, PACKAGE);
+    assertEquals(Collections.singleton(TestResource.class), ResourceIndex.load(classLoader, new String[]{PACKAGE}));
+
+    copyClass(OtherResource.class, myClassesDir);
+    createJar(myClassesDir, jar);
+    assertNull(ResourceIndex.load(createClassLoader(indexDir, jar), new String[]{PACKAGE}));
+  }
+
+  @Path("/test")
+  public static class TestResource {
+    @GET
+    public String get() {
+      return "test";
+    }
+  }
+
+  @Path("/other")
+  public static class OtherResource {
+    @GET
+    public String get() {
+      return "other";
+    }
+  }
+
+  public static class NotResource {
+  }
+
+  /**
+   * Looks for the resources only in the specified classpath entries, but loads the classes via the test classloader
+   */
+  @NotNull
+  private static ClassLoader createClassLoader(@NotNull final File... classpathEntries) {
+    final URL[] urls = new URL[classpathEntries.length];
+    for (int i = 0; i < classpathEntries.length; i++) {
+      try {
+        urls[i] = classpathEntries[i].toURI().toURL();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return new URLClassLoader(urls, ResourceIndexTest.class.getClassLoader()) {
+      @Override
+      public URL getResource(final String name) {
+        return findResource(name);
+      }
+
+      @Override
+      public Enumeration<URL> getResources(final String name) throws IOException {
+        return findResources(name);
+      }
+    };
+  }
+
+  @NotNull
+  private static String getClassPath(@NotNull final Class<?> c) {
+    return c.getName().replace('.', '/') + ".class";
+  }
+
+  @NotNull
+  private static File copyClass(@NotNull final Class<?> c, @NotNull final File classesDir) throws IOException {
+    final File result = new File(classesDir, getClassPath(c));
+    FileUtil.createParentDirs(result);
+    try (InputStream in = ResourceIndexTest.class.getClassLoader().getResourceAsStream(getClassPath(c));
+         OutputStream out = new FileOutputStream(result)) {
+      FileUtil.copyStreams(in, out);
+    }
+    return result;
+  }
+
+  private static void setNewerTimestamp(@NotNull final File file) {
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+  }
+
+  private static void createJar(@NotNull final File dir, @NotNull final File jar) throws IOException {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      addToJar(dir, "", out);
+    }
+  }
+
+  private static void addToJar(@NotNull final File dir, @NotNull final String path, @NotNull final JarOutputStream out) throws IOException {
+    final File[] files = dir.listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      if (file.isDirectory()) {
+        out.putNextEntry(new JarEntry(path + file.getName() + "/"));
+        out.closeEntry();
+        addToJar(file, path + file.getName() + "/", out);
+      } else {
+        out.putNextEntry(new JarEntry(path + file.getName()));
+        try (InputStream in = new FileInputStream(file)) {
+          FileUtil.copyStreams(in, out);
+        }
+        out.closeEntry();
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.model;
+
+import jetbrains.buildServer.server.rest.errors.LocatorProcessException;
+import jetbrains.buildServer.serverSide.impl.BaseServerTestCase;
+import org.testng.annotations.Test;
+
+public class FieldsTest extends BaseServerTestCase {
+
+  @Test
+  public void testBasic() {
+    Fields fields = new Fields("count,build(id,buildType(name,$locator(id:aaa)))");
+    assertTrue(fields.isIncluded("count"));
+    assertFalse(fields.isIncluded("href"));
+    assertFalse(fields.isShort());
+    assertFalse(fields.isLong());
+
+    Fields build = fields.getNestedField("build");
+    assertTrue(build.isIncluded("id"));
+    assertFalse(build.isIncluded("number"));
+    assertEquals("id:aaa", build.getNestedField("buildType").getLocator());
+
+    assertTrue(new Fields("").isShort());
+    assertTrue(new Fields("$short").isShort());
+    assertTrue(new Fields("$long,id(-)").isLong());
+    assertFalse(new Fields("$long,id(-)").isIncluded("id"));
+    assertTrue(Fields.NONE.isNone());
+    assertTrue(Fields.ALL_NESTED.getNestedField("build").isAllNested());
+  }
+
+  @Test
+  public void testNestedFieldsAreReused() {
+    Fields fields = new Fields("build(id,agent(name))");
+    Fields build = fields.getNestedField("build");
+    assertSame(build, fields.getNestedField("build"));
+    assertSame(build.getNestedField("agent"), build.getNestedField("agent"));
+    assertSame(fields.getNestedField("build", Fields.LONG, Fields.LONG), fields.getNestedField("build", Fields.LONG, Fields.LONG));
+
+    Fields longFields = new Fields("$long");
+    assertEquals("", longFields.getNestedField("agent").getFieldsSpec());
+    assertEquals("$long", longFields.getNestedField("agent", Fields.SHORT, Fields.LONG).getFieldsSpec());
+    assertEquals("", longFields.getNestedField("agent").getFieldsSpec());
+  }
+
+  @Test
+  public void testErrors() {
+    Fields fields = new Fields("id,id");
+    assertTrue(fields.isIncluded("name") != null);
+    try {
+      fields.isIncluded("id");
+      fail("Exception expected");
+    } catch (LocatorProcessException e) {
+      //expected
+    }
+
+    try {
+      new Fields("a(b").isIncluded("a");
+      fail("Exception expected");
+    } catch (LocatorProcessException e) {
+      //expected
+    }
+  }
+}
@@ -92,6 +92,17 @@ public class PagerDataTest extends BaseServerTestCase {
     check("/smth", "count:2,a:b", new PagedSearchResult<String>(items, null, 2, null, 10L, true, null), "/smth?locator=count:2,a:b", "/smth?locator=count:2,a:b,start:2,lookupLimit:20", null);
   }
 
+  @Test
+  public void testCursor() throws URISyntaxException {
+    List<String> items = Arrays.<String>asList("a", "b");
+    check("/smth", "count:2,a:b", new PagedSearchResult<String>(items, null, 2, null, 10L, false, null, "Yg"), "/smth?locator=count:2,a:b", "/smth?locator=count:2,a:b,cursor:Yg", null);
+    check("/smth", "count:2,a:b", new PagedSearchResult<String>(items, null, 2, null, 10L, true, null, "Yg"), "/smth?locator=count:2,a:b", "/smth?locator=count:2,a:b,cursor:Yg", null);
+    check("/smth", "start:5,count:2,a:b", new PagedSearchResult<String>(items, 5L, 2, null, 10L, false, null, "Yg"), "/smth?locator=start:5,count:2,a:b", "/smth?locator=count:2,a:b,cursor:Yg", "/smth?locator=start:3,count:2,a:b");
+    check("/smth", "count:2,a:b,cursor:YQ", new PagedSearchResult<String>(items, null, 2, null, 10L, false, null, "Yg"), "/smth?locator=count:2,a:b,cursor:YQ", "/smth?locator=count:2,a:b,cursor:Yg", null);
+    check("/smth", "start:1,count:2,a:b,cursor:YQ", new PagedSearchResult<String>(items, 1L, 2, null, 10L, false, null, "Yg"), "/smth?locator=start:1,count:2,a:b,cursor:YQ", "/smth?locator=count:2,a:b,cursor:Yg", null);
+    check("/smth", "count:3,a:b", new PagedSearchResult<String>(items, null, 3, null, 10L, false, null, null), "/smth?locator=count:3,a:b", null, null);
+  }
+
   @Test
   public void testSpecialSymbols() throws URISyntaxException {
     List<String> items = new ArrayList<String>();
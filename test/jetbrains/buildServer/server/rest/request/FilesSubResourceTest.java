@@ -0,0 +1,186 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.request;
+
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.WebApplication;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import jetbrains.buildServer.server.rest.data.BaseFinderTest;
+import jetbrains.buildServer.server.rest.data.BuildArtifactsFinder;
+import jetbrains.buildServer.server.rest.jersey.EntityValidatorsFilter;
+import jetbrains.buildServer.server.rest.model.files.Files;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.util.browser.Element;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FilesSubResourceTest extends BaseFinderTest<BuildPromotion> {
+  private static final WebApplication WEB_APPLICATION = (WebApplication)Proxy.newProxyInstance(FilesSubResourceTest.class.getClassLoader(), new Class[]{WebApplication.class},
+                                                                                               (proxy, method, args) -> method.getReturnType() == boolean.class ? false : null);
+
+  private File myArtifactsDir;
+  private FilesSubResource myResource;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    final SFinishedBuild build = build().in(myBuildType).finish();
+    myArtifactsDir = build.getArtifactsDirectory();
+    writeArtifact("file.txt", "content");
+    writeArtifact("dir/file2.txt", "content2");
+    myResource = new FilesSubResource(new FilesSubResource.Provider() {
+      @NotNull
+      @Override
+      public Element getElement(@NotNull final String path) {
+        return BuildArtifactsFinder.getArtifactElement(build.getBuildPromotion(), path, myFixture);
+      }
+    }, "/app/rest/builds/id:" + build.getBuildId() + "/artifacts", getBeanContext(myFixture), true);
+  }
+
+  @Test
+  public void testChildrenValidators() throws IOException {
+    final HttpContext context = getContext(null);
+    final Files files = myResource.getChildren("", null, null, null, context);
+    assertEquals(2, files.files.size());
+    final ContainerResponse response = respond(context, files);
+    assertEquals(200, response.getStatus());
+    assertEquals(EntityValidatorsFilter.VALIDATED_CACHE_CONTROL, response.getHttpHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+    final EntityTag eTag = (EntityTag)response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+    assertNotNull(eTag);
+    assertFalse(eTag.isWeak());
+
+    //same listing via the alias and the root
+    final HttpContext rootContext = getContext(null);
+    assertEquals(eTag, respond(rootContext, myResource.getRoot(null, null, null, rootContext)).getHttpHeaders().getFirst(HttpHeaders.ETAG));
+    final HttpContext aliasContext = getContext(null);
+    assertEquals(eTag, respond(aliasContext, myResource.getChildrenAlias("", null, null, null, aliasContext)).getHttpHeaders().getFirst(HttpHeaders.ETAG));
+
+    final HttpContext conditionalContext = getContext(eTag.toString());
+    final ContainerResponse notModified = respond(conditionalContext, myResource.getChildren("", null, null, null, conditionalContext));
+    assertEquals(304, notModified.getStatus());
+    assertNull(notModified.getEntity());
+    assertEquals(eTag, notModified.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+
+    //the representation depends on the requested fields
+    final HttpContext fieldsContext = getContext(eTag.toString());
+    final ContainerResponse otherFields = respond(fieldsContext, myResource.getChildren("", null, null, "file(name)", fieldsContext));
+    assertEquals(200, otherFields.getStatus());
+    assertNotNull(otherFields.getEntity());
+
+    writeArtifact("file3.txt", "content3");
+    final HttpContext changedContext = getContext(eTag.toString());
+    final Files changedFiles = myResource.getChildren("", null, null, null, changedContext);
+    assertEquals(3, changedFiles.files.size());
+    final ContainerResponse changed = respond(changedContext, changedFiles);
+    assertEquals(200, changed.getStatus());
+    assertNotNull(changed.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+    assertFalse(eTag.equals(changed.getHttpHeaders().getFirst(HttpHeaders.ETAG)));
+  }
+
+  @Test
+  public void testChildrenWithNestedChildrenHaveNoValidators() {
+    final HttpContext context = getContext("*");
+    final ContainerResponse response = respond(context, myResource.getChildren("", null, null, "file(name,children(file(name)))", context));
+    assertEquals(200, response.getStatus());
+    assertNull(response.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+  }
+
+  @Test
+  public void testMetadataValidators() throws IOException {
+    final HttpContext context = getContext(null);
+    final jetbrains.buildServer.server.rest.model.files.File file = myResource.getMetadata("/dir/file2.txt", null, context);
+    assertEquals("dir/file2.txt", file.fullName);
+    final ContainerResponse response = respond(context, file);
+    assertEquals(200, response.getStatus());
+    final EntityTag eTag = (EntityTag)response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+    assertNotNull(eTag);
+    assertNotNull(response.getHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+
+    final HttpContext conditionalContext = getContext(eTag.toString());
+    final ContainerResponse notModified = respond(conditionalContext, myResource.getMetadata("/dir/file2.txt", null, conditionalContext));
+    assertEquals(304, notModified.getStatus());
+    assertEquals(eTag, notModified.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+
+    writeArtifact("dir/file2.txt", "changed content");
+    final HttpContext changedContext = getContext(eTag.toString());
+    final ContainerResponse changed = respond(changedContext, myResource.getMetadata("/dir/file2.txt", null, changedContext));
+    assertEquals(200, changed.getStatus());
+    assertFalse(eTag.equals(changed.getHttpHeaders().getFirst(HttpHeaders.ETAG)));
+  }
+
+  @Test
+  public void testValidatorsDisabled() {
+    setInternalProperty("rest.files.listing.validators.enabled", "false");
+    final HttpContext context = getContext("*");
+    final ContainerResponse response = respond(context, myResource.getChildren("", null, null, null, context));
+    assertEquals(200, response.getStatus());
+    assertNull(response.getHttpHeaders().getFirst(HttpHeaders.ETAG));
+  }
+
+  private void writeArtifact(@NotNull final String path, @NotNull final String content) throws IOException {
+    final File file = new File(myArtifactsDir, path);
+    //noinspection ResultOfMethodCallIgnored
+    file.getParentFile().mkdirs();
+    FileUtil.writeFile(file, content, "UTF-8");
+  }
+
+  @NotNull
+  private static HttpContext getContext(@Nullable final String ifNoneMatch) {
+    final InBoundHeaders headers = new InBoundHeaders();
+    headers.putSingle(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+    if (ifNoneMatch != null) headers.putSingle(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+    final ContainerRequest request = new ContainerRequest(WEB_APPLICATION, "GET", URI.create("http://localhost/"), URI.create("http://localhost/app/rest/builds/artifacts"),
+                                                          headers, new ByteArrayInputStream(new byte[0]));
+    return (HttpContext)Proxy.newProxyInstance(FilesSubResourceTest.class.getClassLoader(), new Class[]{HttpContext.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getRequest":
+          return request;
+        case "getProperties":
+          return request.getProperties();
+        default:
+          return null;
+      }
+    });
+  }
+
+  /**
+   * Processes the resource method result the way Jersey does
+   */
+  @NotNull
+  private static ContainerResponse respond(@NotNull final HttpContext context, @NotNull final Object entity) {
+    final ContainerRequest request = (ContainerRequest)context.getRequest();
+    final ContainerResponse response = new ContainerResponse(WEB_APPLICATION, request, null);
+    response.setResponse(Response.ok(entity).build());
+    return new EntityValidatorsFilter().filter(request, response);
+  }
+}
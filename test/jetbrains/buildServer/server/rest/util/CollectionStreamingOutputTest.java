@@ -0,0 +1,239 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.Function;
+import javax.xml.parsers.DocumentBuilderFactory;
+import jetbrains.buildServer.server.rest.data.BaseFinderTest;
+import jetbrains.buildServer.server.rest.data.PagedSearchResult;
+import jetbrains.buildServer.server.rest.errors.OperationException;
+import jetbrains.buildServer.server.rest.model.Fields;
+import jetbrains.buildServer.server.rest.model.PagerData;
+import jetbrains.buildServer.server.rest.model.build.Build;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.util.ItemProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class CollectionStreamingOutputTest extends BaseFinderTest<BuildPromotion> {
+  private SBuildType myBuildType;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    setFinder(myBuildPromotionFinder);
+    myBuildType = registerBuildType("buildConf1", "project");
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    final BuildPromotion build1 = build().in(myBuildType).finish().getBuildPromotion();
+    final BuildPromotion build2 = build().in(myBuildType).finish().getBuildPromotion();
+
+    final String output = write(CollectionStreamingOutput.Format.JSON, null, processor -> myBuildPromotionFinder.processItems(null, processor));
+    final JsonNode result = new ObjectMapper().readTree(output);
+    assertEquals(2, result.get("build").size());
+    assertEquals(build2.getId(), result.get("build").get(0).get("id").asLong());
+    assertEquals(build1.getId(), result.get("build").get(1).get("id").asLong());
+    assertEquals(2, result.get("count").asInt());
+    assertEquals("/builds", result.get("href").asText());
+
+    final Iterator<String> fieldNames = result.fieldNames();
+    assertEquals("build", fieldNames.next());
+    assertEquals("count", fieldNames.next());
+  }
+
+  @Test
+  public void testXml() throws Exception {
+    final BuildPromotion build1 = build().in(myBuildType).finish().getBuildPromotion();
+    final BuildPromotion build2 = build().in(myBuildType).finish().getBuildPromotion();
+
+    final String output = write(CollectionStreamingOutput.Format.XML, null, processor -> myBuildPromotionFinder.processItems(null, processor));
+    final Element builds = parseXml(output).getDocumentElement();
+    assertEquals("builds", builds.getTagName());
+    final NodeList items = builds.getElementsByTagName("build");
+    assertEquals(2, items.getLength());
+    assertEquals(String.valueOf(build2.getId()), ((Element)items.item(0)).getAttribute("id"));
+    assertEquals(String.valueOf(build1.getId()), ((Element)items.item(1)).getAttribute("id"));
+
+    final Element pager = (Element)builds.getLastChild();
+    assertEquals(CollectionStreamingOutput.PAGER_ELEMENT_NAME, pager.getTagName());
+    assertEquals("2", pager.getAttribute("count"));
+    assertEquals("/builds", pager.getAttribute("href"));
+  }
+
+  @Test
+  public void testNoItems() throws Exception {
+    build().in(myBuildType).finish();
+
+    final JsonNode empty = new ObjectMapper().readTree(write(CollectionStreamingOutput.Format.JSON, null, processor -> myBuildPromotionFinder.processItems("id:-1", processor)));
+    assertEquals(0, empty.get("build").size());
+    assertEquals(0, empty.get("count").asInt());
+
+    final JsonNode countOnly = new ObjectMapper().readTree(write(CollectionStreamingOutput.Format.JSON, "count", processor -> myBuildPromotionFinder.processItems(null, processor)));
+    assertNull(countOnly.get("build"));
+    assertEquals(1, countOnly.get("count").asInt());
+  }
+
+  @Test
+  public void testErrorBeforeFirstItem() throws Exception {
+    build().in(myBuildType).finish();
+
+    for (CollectionStreamingOutput.Format format : CollectionStreamingOutput.Format.values()) {
+      final CommitTrackingOutputStream output = new CommitTrackingOutputStream();
+      try {
+        getOutput(format, null, processor -> myBuildPromotionFinder.processItems("buildType:(id:nonExistent)", processor)).write(output);
+        fail("Exception is expected for " + format);
+      } catch (RuntimeException e) {
+        //expected
+      }
+      assertFalse("Nothing should be written so that the error can be reported as usual for " + format, output.isCommitted());
+    }
+  }
+
+  @Test
+  public void testErrorAfterCommit() throws Exception {
+    final BuildPromotion build = build().in(myBuildType).finish().getBuildPromotion();
+
+    for (CollectionStreamingOutput.Format format : CollectionStreamingOutput.Format.values()) {
+      final CommitTrackingOutputStream output = new CommitTrackingOutputStream();
+      final OperationException error = new OperationException("Error in the middle of the search");
+      try {
+        getOutput(format, null, processor -> {
+          //enough items to get the response buffers flushed
+          for (int i = 0; i < 200; i++) {
+            processor.processItem(build);
+          }
+          assertTrue("The response should be committed for " + format, output.isCommitted());
+          throw error;
+        }).write(output);
+        fail("Exception is expected for " + format);
+      } catch (OperationException e) {
+        assertSame("The error should not be hidden once the response is committed", error, e);
+      }
+
+      final String written = output.toString(StandardCharsets.UTF_8.name());
+      assertFalse("Truncated output should not look complete for " + format, written.contains("\"count\"") || written.contains("<" + CollectionStreamingOutput.PAGER_ELEMENT_NAME));
+      try {
+        if (format == CollectionStreamingOutput.Format.JSON) {
+          new ObjectMapper().readTree(written);
+        } else {
+          parseXml(written);
+        }
+        fail("Truncated output should not be well-formed for " + format);
+      } catch (Exception e) {
+        //expected
+      }
+    }
+  }
+
+  @Test
+  public void testClientDisconnect() throws Exception {
+    final BuildPromotion build = build().in(myBuildType).finish().getBuildPromotion();
+
+    for (CollectionStreamingOutput.Format format : CollectionStreamingOutput.Format.values()) {
+      final IOException disconnect = new IOException("Connection reset by peer");
+      final int[] processed = {0};
+      try {
+        getOutput(format, null, processor -> {
+          for (int i = 0; i < 200; i++) {
+            processed[0]++;
+            if (!processor.processItem(build)) break;
+          }
+          return new PagedSearchResult<>(Collections.emptyList(), null, null);
+        }).write(new OutputStream() {
+          @Override
+          public void write(final int b) throws IOException {
+            throw disconnect;
+          }
+        });
+        fail("Exception is expected for " + format);
+      } catch (IOException e) {
+        assertTrue("The client error should be reported for " + format, isCausedBy(e, disconnect));
+      }
+      assertTrue("The search should stop on the client error for " + format, processed[0] < 200);
+    }
+  }
+
+  @NotNull
+  private String write(@NotNull final CollectionStreamingOutput.Format format, @Nullable final String fields,
+                       @NotNull final Function<ItemProcessor<BuildPromotion>, PagedSearchResult<BuildPromotion>> itemsSource) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    getOutput(format, fields, itemsSource).write(output);
+    return output.toString(StandardCharsets.UTF_8.name());
+  }
+
+  @NotNull
+  private CollectionStreamingOutput<BuildPromotion, Build> getOutput(@NotNull final CollectionStreamingOutput.Format format, @Nullable final String fields,
+                                                                     @NotNull final Function<ItemProcessor<BuildPromotion>, PagedSearchResult<BuildPromotion>> itemsSource) {
+    final Fields buildsFields = new Fields(fields);
+    final Fields buildFields = buildsFields.getNestedField("build");
+    return new CollectionStreamingOutput<>(format, "builds", "build", Build.class, buildsFields, getBeanContext(myFixture),
+                                           itemsSource,
+                                           item -> new Build(item, buildFields, getBeanContext(myFixture)),
+                                           result -> new PagerData("/builds"));
+  }
+
+  private static boolean isCausedBy(@Nullable final Throwable e, @NotNull final Throwable cause) {
+    for (Throwable current = e; current != null; current = current.getCause()) {
+      if (current == cause) return true;
+    }
+    return false;
+  }
+
+  @NotNull
+  private static Document parseXml(@NotNull final String text) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static class CommitTrackingOutputStream extends ByteArrayOutputStream {
+    private boolean myCommitted = false;
+
+    @Override
+    public synchronized void write(final int b) {
+      myCommitted = true;
+      super.write(b);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) {
+      myCommitted = true;
+      super.write(b, off, len);
+    }
+
+    public boolean isCommitted() {
+      return myCommitted;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.server.rest.util;
+
+import org.testng.annotations.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+  @Test
+  public void testPercentiles() {
+    final Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500500, histogram.getSum());
+    assertEquals(1000, histogram.getMax());
+    assertEquals(1, histogram.getValueAtPercentile(0));
+    assertEquals(1000, histogram.getValueAtPercentile(100));
+    assertInRange(histogram.getValueAtPercentile(50), 500, 500 * 9 / 8);
+    assertInRange(histogram.getValueAtPercentile(99), 990, 1000);
+
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(-1);
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+    assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+  }
+
+  private static void assertInRange(final long value, final long from, final long to) {
+    assertTrue("Value " + value + " is not in range [" + from + ", " + to + "]", value >= from && value <= to);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2000-2018 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.server.rest.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import jetbrains.buildServer.ServiceLocator;
+import jetbrains.buildServer.server.rest.data.RestContext;
+import jetbrains.buildServer.serverSide.impl.BaseServerTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ParallelProcessingTest extends BaseServerTestCase {
+  private ParallelProcessingPool myPool;
+
+  @Override
+  @BeforeMethod
+  public void setUp() throws Exception {
+    super.setUp();
+    myPool = new ParallelProcessingPool();
+    myFixture.addService(myPool);
+  }
+
+  @Override
+  @AfterMethod
+  public void tearDown() throws Exception {
+    myPool.dispose();
+    super.tearDown();
+  }
+
+  @Test
+  public void testPerRequestLimit() throws Exception {
+    setInternalProperty("rest.parallel.threads", "4");
+    setInternalProperty("rest.parallel.perRequestLimit", "2");
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final Function<String, String> task = item -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      running.decrementAndGet();
+      return item;
+    };
+
+    final List<String> result = new RestContext(name -> null, true).run(() -> {
+      try (ParallelProcessing.OrderedResults<String> lazy = ParallelProcessing.mapLazily(Arrays.asList("x", "y", "z"), task, myServer)) {
+        //submits the first tasks which hold the request's permits while the other call is processed
+        assertTrue(lazy.hasNext());
+        final List<String> items = new ArrayList<>(ParallelProcessing.map(Arrays.asList("a", "b", "c", "d"), task, myServer));
+        lazy.forEachRemaining(items::add);
+        return items;
+      }
+    });
+    assertEquals(Arrays.asList("a", "b", "c", "d", "x", "y", "z"), result);
+    assertTrue("Max running: " + maxRunning.get(), maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testDisposedPool() {
+    myPool.dispose();
+    final List<String> threads = ParallelProcessing.map(Arrays.asList("a", "b", "c"), item -> Thread.currentThread().getName(), myServer);
+    assertEquals(Collections.nCopies(3, Thread.currentThread().getName()), threads);
+  }
+
+  @Test
+  public void testSaturatedPool() throws Exception {
+    setInternalProperty("rest.parallel.threads", "1");
+    setInternalProperty("rest.parallel.queueSize", "1");
+    try (PoolSaturation saturation = saturatePool(myServer)) {
+      final List<String> lazyResult = new ArrayList<>();
+      new RestContext(name -> null, true).run(() -> {
+        try (ParallelProcessing.OrderedResults<String> results =
+               ParallelProcessing.mapLazily(Arrays.asList("x", "y", "z"), item -> item + ":" + (RestContext.getThreadLocal() != null), myServer)) {
+          results.forEachRemaining(lazyResult::add);
+        }
+        return null;
+      });
+      assertEquals(Arrays.asList("x:true", "y:true", "z:true"), lazyResult);
+
+      saturation.close();
+      assertEquals(Arrays.asList("a:true", "b:true", "c:true"), saturation.myResult.get());
+    }
+  }
+
+  /**
+   * Recreates the pool and occupies its only thread and the only place in its queue by a request which is processed in parallel until the result is closed.
+   * The caller should set "rest.parallel.threads" and "rest.parallel.queueSize" internal properties to 1 before the call.
+   */
+  @NotNull
+  public static PoolSaturation saturatePool(@NotNull final ServiceLocator serviceLocator) throws InterruptedException {
+    final ParallelProcessingPool pool = serviceLocator.getSingletonService(ParallelProcessingPool.class);
+    pool.resetExecutor();
+    final PoolSaturation result = new PoolSaturation(serviceLocator, pool);
+    result.myRequest.start();
+    if (!result.mySaturated.await(10, TimeUnit.SECONDS)) {
+      result.close();
+      throw new IllegalStateException("The pool was not saturated in time");
+    }
+    return result;
+  }
+
+  public static class PoolSaturation implements AutoCloseable {
+    private final CountDownLatch mySaturated = new CountDownLatch(1);
+    private final CountDownLatch myRelease = new CountDownLatch(1);
+    private final AtomicReference<List<String>> myResult = new AtomicReference<>();
+    private final Thread myRequest;
+    private final ParallelProcessingPool myPool;
+
+    private PoolSaturation(@NotNull final ServiceLocator serviceLocator, @NotNull final ParallelProcessingPool pool) {
+      myPool = pool;
+      myRequest = new Thread(() -> myResult.set(new RestContext(name -> null, true).run(
+        () -> ParallelProcessing.map(Arrays.asList("a", "b", "c"), item -> {
+          //"a" occupies the only pool thread and "b" the queue, so "c" is run in the calling thread
+          if (item.equals("c")) mySaturated.countDown();
+          await(myRelease);
+          return item + ":" + (RestContext.getThreadLocal() != null);
+        }, serviceLocator))));
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+      myRelease.countDown();
+      myRequest.join(10000);
+      myPool.resetExecutor();
+    }
+  }
+
+  private static void await(@NotNull final CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}